@@ -2,8 +2,10 @@ package ma.pharmachain;
 
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 @SpringBootApplication
+@EnableScheduling
 public class PharmachainApplication {
 
     public static void main(String[] args) {
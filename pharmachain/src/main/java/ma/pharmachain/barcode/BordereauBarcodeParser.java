@@ -0,0 +1,190 @@
+package ma.pharmachain.barcode;
+
+import ma.pharmachain.dto.BordereauScanRequest;
+import ma.pharmachain.dto.DeliveryItemRequest;
+
+import java.time.DateTimeException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Decodes the composite bordereau barcode printed on the delivery sheet.
+ * <pre>
+ * 500001|220824|100001|200001;300001|400001|2|1|Pharmacie Atlas|12 Rue Fes;300002|400002|1|0
+ * </pre>
+ * Records are separated by {@code ;} and fields by {@code |}. The first record is the header
+ * (bordereau number, delivery date as ddMMyy, driver code, manager code); driver and manager may be
+ * left empty. Every following record is a BL line (BL number, client code, colis, sachets and the
+ * optional client name and address).
+ * <p>
+ * The parser walks the char data by index: no split, regex or intermediate substrings, numbers and
+ * the date are read digit by digit. The only allocations are the request objects and the field
+ * values they keep.
+ */
+public final class BordereauBarcodeParser {
+
+    public static final char RECORD_SEPARATOR = ';';
+    public static final char FIELD_SEPARATOR = '|';
+
+    private BordereauBarcodeParser() {
+    }
+
+    /**
+     * @throws IllegalArgumentException when the barcode is malformed, with the offending position
+     */
+    public static BordereauScanRequest parse(CharSequence barcode) {
+        int length = barcode.length();
+        int headerEnd = indexOf(barcode, RECORD_SEPARATOR, 0, length);
+
+        BordereauScanRequest request = new BordereauScanRequest();
+        int pos = 0;
+        int end = indexOf(barcode, FIELD_SEPARATOR, pos, headerEnd);
+        request.setBordereauNumber(digits(barcode, pos, end, "bordereau number"));
+
+        pos = next(barcode, end, headerEnd, "delivery date");
+        end = indexOf(barcode, FIELD_SEPARATOR, pos, headerEnd);
+        request.setDeliveryDate(date(barcode, pos, end));
+
+        if (end < headerEnd) {
+            pos = end + 1;
+            end = indexOf(barcode, FIELD_SEPARATOR, pos, headerEnd);
+            request.setDriverCode(optionalDigits(barcode, pos, end, "driver code"));
+        }
+        if (end < headerEnd) {
+            pos = end + 1;
+            end = indexOf(barcode, FIELD_SEPARATOR, pos, headerEnd);
+            request.setManagerCode(optionalDigits(barcode, pos, end, "manager code"));
+        }
+        if (end < headerEnd) {
+            throw malformed("unexpected header field", end);
+        }
+
+        List<DeliveryItemRequest> items = new ArrayList<>(count(barcode, RECORD_SEPARATOR, headerEnd, length));
+        int recordStart = headerEnd + 1;
+        while (recordStart < length) {
+            int recordEnd = indexOf(barcode, RECORD_SEPARATOR, recordStart, length);
+            if (recordEnd > recordStart) {
+                items.add(line(barcode, recordStart, recordEnd));
+            }
+            recordStart = recordEnd + 1;
+        }
+        request.setDeliveryItems(items);
+        return request;
+    }
+
+    private static DeliveryItemRequest line(CharSequence barcode, int start, int recordEnd) {
+        DeliveryItemRequest item = new DeliveryItemRequest();
+        int end = indexOf(barcode, FIELD_SEPARATOR, start, recordEnd);
+        item.setBlNumber(digits(barcode, start, end, "BL number"));
+
+        int pos = next(barcode, end, recordEnd, "client code");
+        end = indexOf(barcode, FIELD_SEPARATOR, pos, recordEnd);
+        item.setClientCode(digits(barcode, pos, end, "client code"));
+
+        pos = next(barcode, end, recordEnd, "nombre colis");
+        end = indexOf(barcode, FIELD_SEPARATOR, pos, recordEnd);
+        item.setNombreColis(number(barcode, pos, end, "nombre colis"));
+
+        pos = next(barcode, end, recordEnd, "nombre sachets");
+        end = indexOf(barcode, FIELD_SEPARATOR, pos, recordEnd);
+        item.setNombreSachets(number(barcode, pos, end, "nombre sachets"));
+
+        if (end < recordEnd) {
+            pos = end + 1;
+            end = indexOf(barcode, FIELD_SEPARATOR, pos, recordEnd);
+            item.setClientName(text(barcode, pos, end));
+        }
+        if (end < recordEnd) {
+            // The address is the remainder of the record
+            item.setClientAddress(text(barcode, end + 1, recordEnd));
+        }
+        return item;
+    }
+
+    /**
+     * Start of the field after the separator at {@code end}, failing when the record stops there
+     */
+    private static int next(CharSequence barcode, int end, int recordEnd, String field) {
+        if (end >= recordEnd) {
+            throw malformed("missing " + field, end);
+        }
+        return end + 1;
+    }
+
+    private static String digits(CharSequence barcode, int start, int end, String field) {
+        if (start == end) {
+            throw malformed("missing " + field, start);
+        }
+        for (int i = start; i < end; i++) {
+            char c = barcode.charAt(i);
+            if (c < '0' || c > '9') {
+                throw malformed("non-digit in " + field, i);
+            }
+        }
+        return barcode.subSequence(start, end).toString();
+    }
+
+    private static String optionalDigits(CharSequence barcode, int start, int end, String field) {
+        return start == end ? null : digits(barcode, start, end, field);
+    }
+
+    private static int number(CharSequence barcode, int start, int end, String field) {
+        if (start == end) {
+            throw malformed("missing " + field, start);
+        }
+        if (end - start > 9) {
+            throw malformed(field + " out of range", start);
+        }
+        int value = 0;
+        for (int i = start; i < end; i++) {
+            char c = barcode.charAt(i);
+            if (c < '0' || c > '9') {
+                throw malformed("non-digit in " + field, i);
+            }
+            value = value * 10 + (c - '0');
+        }
+        return value;
+    }
+
+    private static LocalDate date(CharSequence barcode, int start, int end) {
+        if (end - start != 6) {
+            throw malformed("delivery date must be ddMMyy", start);
+        }
+        int day = number(barcode, start, start + 2, "delivery date");
+        int month = number(barcode, start + 2, start + 4, "delivery date");
+        int year = number(barcode, start + 4, end, "delivery date");
+        try {
+            return LocalDate.of(2000 + year, month, day);
+        } catch (DateTimeException e) {
+            throw malformed("invalid delivery date", start);
+        }
+    }
+
+    private static String text(CharSequence barcode, int start, int end) {
+        return start == end ? null : barcode.subSequence(start, end).toString();
+    }
+
+    private static int indexOf(CharSequence barcode, char separator, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (barcode.charAt(i) == separator) {
+                return i;
+            }
+        }
+        return to;
+    }
+
+    private static int count(CharSequence barcode, char separator, int from, int to) {
+        int count = 0;
+        for (int i = from; i < to; i++) {
+            if (barcode.charAt(i) == separator) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private static IllegalArgumentException malformed(String reason, int position) {
+        return new IllegalArgumentException("Malformed barcode: " + reason + " at position " + position);
+    }
+}
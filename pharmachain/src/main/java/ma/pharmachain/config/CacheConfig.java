@@ -0,0 +1,34 @@
+package ma.pharmachain.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+@ConfigurationProperties(prefix = "pharmachain.cache")
+@Getter
+@Setter
+public class CacheConfig {
+
+    // Driver, manager and client codes kept per reference cache
+    private int referenceCodesMaxSize = 5_000;
+
+    // Drivers whose sequenced route of the day is kept
+    private int driverRoutesMaxSize = 2_000;
+
+    // Keys each existence filter is sized for, and its target false-positive rate at that size
+    private long bordereauFilterCapacity = 500_000;
+    private long blNumberFilterCapacity = 2_000_000;
+    private double numberFilterFalsePositiveRate = 0.01;
+
+    // Only one instance writes to the database. The existence filters only see the numbers their own process
+    // writes, so they are built only then; with several instances every lookup goes to the database.
+    private boolean singleInstance = false;
+
+    // Share of the query trigrams a client must contain to be returned by the client search
+    private double clientSearchMinSimilarity = 0.5;
+
+    // Height of a cell of the client map grid, in km; around the radius typically asked for
+    private double clientGeoCellKm = 1.0;
+}
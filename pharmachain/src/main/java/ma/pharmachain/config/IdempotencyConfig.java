@@ -0,0 +1,24 @@
+package ma.pharmachain.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+@Configuration
+@ConfigurationProperties(prefix = "pharmachain.idempotency")
+@Getter
+@Setter
+public class IdempotencyConfig {
+
+    // How long a stored response can be replayed
+    private Duration ttl = Duration.ofHours(24);
+
+    // How long a claimed key stays taken without a stored response; past it, an attempt that crashed is retried
+    private Duration claimTimeout = Duration.ofMinutes(5);
+
+    // Entries kept in the in-memory front cache
+    private int cacheSize = 10_000;
+}
@@ -0,0 +1,26 @@
+package ma.pharmachain.config;
+
+import com.fasterxml.jackson.datatype.hibernate6.Hibernate6Module;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+public class JacksonConfig {
+
+    /**
+     * With spring.jpa.open-in-view=false entities are serialized after their session is closed:
+     * an association that was not fetched is written as its id instead of failing with a
+     * LazyInitializationException. Entity endpoints fetch their own to-one associations (entity
+     * graphs on the single lookups, references set by a write loaded before it commits), so those
+     * render as objects; the associations of those objects render as ids unless the graph fetches
+     * them too, and the lazy Bordereau.deliveryItems collection as null - the lines have their own
+     * endpoints. A graph fetches every path a row it loads could also reach, so a shape never
+     * depends on which rows happen to coincide (EntityResponseShapeTest pins them).
+     * Responses that need more map to a DTO inside the transaction (BordereauDetail).
+     */
+    @Bean
+    public Hibernate6Module hibernate6Module() {
+        return new Hibernate6Module()
+                .enable(Hibernate6Module.Feature.SERIALIZE_IDENTIFIER_FOR_LAZY_NOT_LOADED_OBJECTS);
+    }
+}
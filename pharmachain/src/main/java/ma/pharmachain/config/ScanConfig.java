@@ -0,0 +1,88 @@
+package ma.pharmachain.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.util.unit.DataSize;
+
+@Configuration
+@ConfigurationProperties(prefix = "pharmachain.scan")
+@Getter
+@Setter
+public class ScanConfig {
+
+    private Stream stream = new Stream();
+    private Journal journal = new Journal();
+    private Manifest manifest = new Manifest();
+    private Batch batch = new Batch();
+    private Archive archive = new Archive();
+
+    /**
+     * NDJSON ingestion from depot scanners
+     */
+    @Getter
+    @Setter
+    public static class Stream {
+        // Scans committed and acknowledged together before the next lines are read
+        private int chunkSize = 100;
+        // Longer lines are acknowledged as failures and skipped, not buffered
+        private int maxLineLength = 262_144;
+    }
+
+    /**
+     * Write-behind scan queue (POST /api/bordereaux/scan?async=true)
+     */
+    @Getter
+    @Setter
+    public static class Journal {
+        private boolean enabled = false;
+        private String directory = "./data/scan-journal";
+        private DataSize segmentSize = DataSize.ofMegabytes(64);
+        // fsync each appended scan before answering 202
+        private boolean forceOnAppend = true;
+        // Journal records applied per scanBordereaux call
+        private int drainBatchSize = 500;
+        // Ticket results kept in memory for the status endpoint
+        private int retainedResults = 10_000;
+    }
+
+    /**
+     * Batch scans (POST /api/bordereaux/scan/batch, stream chunks, journal drain)
+     */
+    @Getter
+    @Setter
+    public static class Batch {
+        // managerCode partitions scanned at once on virtual threads, one pooled connection each; concurrent batches
+        // add up, and past the connection pool size they queue for one
+        private int parallelism = 4;
+    }
+
+    /**
+     * Archive of applied scans, replayed by POST /api/bordereaux/scan/replays
+     */
+    @Getter
+    @Setter
+    public static class Archive {
+        private boolean enabled = false;
+        private String directory = "./data/scan-archive";
+        // Uncompressed records buffered before a block is deflated and written
+        private DataSize blockSize = DataSize.ofKilobytes(256);
+        // fsync each record to the pending file before the scan is acknowledged; off, a power loss can drop the
+        // records of the block being filled (a process crash cannot)
+        private boolean forceOnAppend = true;
+        // Scans per replayScans call and secteurs replayed at once, unless the request overrides them
+        private int replayBatchSize = 1000;
+        private int replayParallelism = 4;
+    }
+
+    /**
+     * ERP manifest import (POST /api/bordereaux/manifest)
+     */
+    @Getter
+    @Setter
+    public static class Manifest {
+        // Rejected lines listed in the import report; the rest are only counted
+        private int maxReportedRejections = 100;
+    }
+}
@@ -116,7 +116,9 @@ public class SecurityConfig {
         configuration.setExposedHeaders(Arrays.asList(
                 "Authorization",
                 "Content-Type",
-                "X-Total-Count"
+                "X-Total-Count",
+                "ETag",
+                IdempotencyFilter.REPLAYED_HEADER
         ));
         configuration.setMaxAge(3600L);
 
@@ -0,0 +1,18 @@
+package ma.pharmachain.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+@Configuration
+@ConfigurationProperties(prefix = "pharmachain.stats")
+@Getter
+@Setter
+public class StatsConfig {
+
+    // How often the status counter changes are added to status_count_rollup
+    private Duration flushInterval = Duration.ofSeconds(10);
+}
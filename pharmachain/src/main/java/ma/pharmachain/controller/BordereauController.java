@@ -1,17 +1,36 @@
 package ma.pharmachain.controller;
 
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
 import lombok.RequiredArgsConstructor;
 import ma.pharmachain.dto.*;
 import ma.pharmachain.entity.Bordereau;
 import ma.pharmachain.entity.DeliveryItem;
+import ma.pharmachain.enums.BordereauStatus;
+import ma.pharmachain.exception.InvalidRequestException;
+import ma.pharmachain.service.AsyncScanService;
+import ma.pharmachain.service.BordereauScanService;
 import ma.pharmachain.service.BordereauService;
+import ma.pharmachain.service.ManifestImportService;
+import ma.pharmachain.service.ScanReplayService;
+import ma.pharmachain.service.ScanStreamService;
 import org.springframework.data.domain.Page;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.multipart.MultipartFile;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.Instant;
+import java.time.LocalDate;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 @RestController
 @RequestMapping("/api/bordereaux")
 @RequiredArgsConstructor
@@ -19,23 +38,154 @@ import java.util.Map;
 public class BordereauController {
 
     private final BordereauService bordereauxService;
+    private final BordereauScanService bordereauScanService;
+    private final ScanStreamService scanStreamService;
+    private final ManifestImportService manifestImportService;
+    private final ScanReplayService scanReplayService;
+    private final Optional<AsyncScanService> asyncScanService;
 
+    /**
+     * Offset pages, or keyset pages when {@code after} is given (empty for the first page).
+     * withTotal=false skips the count; approximateTotal=true then adds the planner's row estimate.
+     */
     @GetMapping
-    public Page<Bordereau> list(
+    public ResponseEntity<?> list(
+            @RequestParam(defaultValue = "0") int page,
+            @RequestParam(defaultValue = "20") int size,
+            @RequestParam(required = false) String after,
+            @RequestParam(defaultValue = "true") boolean withTotal,
+            @RequestParam(defaultValue = "false") boolean approximateTotal
+    ) {
+        if (after != null) {
+            return ResponseEntity.ok(bordereauxService.listBordereauxAfter(after, size));
+        }
+        if (!withTotal) {
+            return ResponseEntity.ok(bordereauxService.listBordereauxSlice(page, size, approximateTotal));
+        }
+        return ResponseEntity.ok(bordereauxService.listBordereaux(page, size));
+    }
+
+    /**
+     * Filter by status, delivery date range, driver and secteur (all optional, combined with AND), newest first.
+     * An unknown driver or secteur code gives an empty page.
+     */
+    @GetMapping("/search")
+    public ResponseEntity<Page<BordereauSummary>> search(
+            @RequestParam(required = false) BordereauStatus status,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to,
+            @RequestParam(required = false) String driverCode,
+            @RequestParam(required = false) String secteurCode,
             @RequestParam(defaultValue = "0") int page,
             @RequestParam(defaultValue = "20") int size
     ) {
-        return bordereauxService.listBordereaux(page, size);
+        BordereauSearchCriteria criteria = new BordereauSearchCriteria(status, from, to, driverCode, secteurCode);
+        return ResponseEntity.ok(bordereauxService.searchBordereaux(criteria, page, size));
     }
 
+    /**
+     * ETag is a digest of the row version and of the drivers and secteur the response renders:
+     * If-None-Match gets a 304 from one query without loading the entities
+     */
     @GetMapping("/{bordereauNumber}")
-    public ResponseEntity<Bordereau> getOne(@PathVariable String bordereauNumber) {
-        return ResponseEntity.ok(bordereauxService.getBordereauByNumber(bordereauNumber));
+    public ResponseEntity<Bordereau> getOne(@PathVariable String bordereauNumber, WebRequest webRequest) {
+        String etag = bordereauxService.getBordereauEtag(bordereauNumber);
+        if (webRequest.checkNotModified(etag)) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(etag).build();
+        }
+        // Taken before the load: a concurrent update leaves an older ETag, so the next poll refetches
+        return ResponseEntity.ok().eTag(etag).body(bordereauxService.getBordereauByNumber(bordereauNumber));
     }
 
+    /**
+     * Answers with a compact scan acknowledgement; full=true returns the bordereau with its assignment
+     * codes and delivery items (BordereauDetail) instead
+     */
     @PostMapping("/scan")
-    public ResponseEntity<Bordereau> scan(@RequestBody BordereauScanRequest request) {
-        return ResponseEntity.ok(bordereauxService.scanBordereau(request));
+    public ResponseEntity<?> scan(
+            @RequestBody BordereauScanRequest request,
+            @RequestParam(defaultValue = "false") boolean async,
+            @RequestParam(defaultValue = "false") boolean full
+    ) {
+        // Write-behind mode: journal the scan and answer with a ticket
+        if (async) {
+            AsyncScanService service = asyncScanService.orElseThrow(() ->
+                    new InvalidRequestException("Asynchronous scans are not enabled on this server"));
+            return ResponseEntity.status(HttpStatus.ACCEPTED).body(service.submit(request));
+        }
+        if (full) {
+            return ResponseEntity.ok(bordereauScanService.scanBordereauDetail(request));
+        }
+        return ResponseEntity.ok(bordereauScanService.scanBordereauAck(request));
+    }
+
+    @GetMapping("/scan/tickets/{ticket}")
+    public ResponseEntity<ScanTicket> getScanTicket(@PathVariable long ticket) {
+        return asyncScanService
+                .map(service -> ResponseEntity.ok(service.getTicket(ticket)))
+                .orElseGet(() -> ResponseEntity.notFound().build());
+    }
+
+    @PostMapping("/scan/batch")
+    public ResponseEntity<List<BordereauScanResult>> scanBatch(@RequestBody List<BordereauScanRequest> requests) {
+        return ResponseEntity.ok(bordereauScanService.scanBordereaux(requests));
+    }
+
+    /**
+     * Raw barcodes as scanned, one per line; decoded server-side and applied like /scan/batch.
+     * driverCode and managerCode fill in barcodes whose header leaves them empty.
+     */
+    @PostMapping(value = "/scan/raw", consumes = MediaType.TEXT_PLAIN_VALUE)
+    public ResponseEntity<List<BordereauScanResult>> scanRaw(
+            @RequestBody String body,
+            @RequestParam(required = false) String driverCode,
+            @RequestParam(required = false) String managerCode
+    ) {
+        List<String> barcodes = body.lines()
+                .map(String::strip)
+                .filter(line -> !line.isEmpty())
+                .toList();
+        return ResponseEntity.ok(bordereauScanService.scanBarcodes(barcodes, driverCode, managerCode));
+    }
+
+    /**
+     * Next-day ERP manifest (CSV, one line per BL) loaded through COPY and merged set-based
+     */
+    @PostMapping(value = "/manifest", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<ManifestImportReport> importManifest(@RequestParam("file") MultipartFile file)
+            throws IOException {
+        try (InputStream in = file.getInputStream()) {
+            return ResponseEntity.ok(manifestImportService.importManifest(in));
+        }
+    }
+
+    /**
+     * Re-apply the archived scans of [from, to) in the background, e.g. after a database restore
+     */
+    @PostMapping("/scan/replays")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<ScanReplayStatus> startScanReplay(
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Instant from,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Instant to,
+            @RequestParam(required = false) Integer parallelism,
+            @RequestParam(required = false) Integer batchSize
+    ) {
+        return ResponseEntity.status(HttpStatus.ACCEPTED)
+                .body(scanReplayService.start(from, to, parallelism, batchSize));
+    }
+
+    @GetMapping("/scan/replays/{id}")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<ScanReplayStatus> getScanReplay(@PathVariable long id) {
+        return ResponseEntity.ok(scanReplayService.getStatus(id));
+    }
+
+    @PostMapping(value = "/scan/stream", consumes = MediaType.APPLICATION_NDJSON_VALUE,
+            produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public void scanStream(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        response.setContentType(MediaType.APPLICATION_NDJSON_VALUE);
+        scanStreamService.ingest(request.getInputStream(), response.getOutputStream());
     }
 
     @PutMapping("/{bordereauNumber}")
@@ -6,7 +6,6 @@ import ma.pharmachain.dto.TransferStatusRequest;
 import ma.pharmachain.dto.TransferUpdateRequest;
 import ma.pharmachain.entity.BordereauTransfer;
 import ma.pharmachain.service.BordereauTransferService;
-import org.springframework.data.domain.Page;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
@@ -30,13 +29,23 @@ public class BordereauTransferController {
         return ResponseEntity.status(HttpStatus.CREATED).body(transfer);
     }
 
-    // GET /transfers - list with pagination
+    // GET /transfers - list with pagination; ?after= switches to keyset pages (empty for the first page),
+    // ?withTotal=false to a page without count (&approximateTotal=true for the planner estimate)
     @GetMapping("/transfers")
-    public Page<BordereauTransfer> listTransfers(
+    public ResponseEntity<?> listTransfers(
             @RequestParam(defaultValue = "0") int page,
-            @RequestParam(defaultValue = "20") int size
+            @RequestParam(defaultValue = "20") int size,
+            @RequestParam(required = false) String after,
+            @RequestParam(defaultValue = "true") boolean withTotal,
+            @RequestParam(defaultValue = "false") boolean approximateTotal
     ) {
-        return transferService.listTransfers(page, size);
+        if (after != null) {
+            return ResponseEntity.ok(transferService.listTransfersAfter(after, size));
+        }
+        if (!withTotal) {
+            return ResponseEntity.ok(transferService.listTransfersSlice(page, size, approximateTotal));
+        }
+        return ResponseEntity.ok(transferService.listTransfers(page, size));
     }
 
     // GET /transfers/{id}
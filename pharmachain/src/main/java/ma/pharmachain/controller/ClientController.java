@@ -3,10 +3,11 @@ import ma.pharmachain.dto.ClientUpdateRequest;
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
 import ma.pharmachain.dto.ClientCreateRequest;
+import ma.pharmachain.dto.ClientSummary;
+import ma.pharmachain.dto.NearbyClient;
 import ma.pharmachain.entity.Client;
 import ma.pharmachain.entity.DeliveryItem;
 import ma.pharmachain.service.ClientService;
-import org.springframework.data.domain.Page;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
@@ -21,15 +22,53 @@ import java.util.Map;
 @PreAuthorize("isAuthenticated()")
 public class ClientController {
 
+    private static final int MAX_SEARCH_RESULTS = 100;
+
     private final ClientService clientService;
 
-    // GET /clients - list with pagination
+    // GET /clients - list with pagination; ?withTotal=false skips the count (&approximateTotal=true for an estimate)
     @GetMapping
-    public Page<Client> list(
+    public ResponseEntity<?> list(
             @RequestParam(defaultValue = "0") int page,
-            @RequestParam(defaultValue = "20") int size
+            @RequestParam(defaultValue = "20") int size,
+            @RequestParam(defaultValue = "true") boolean withTotal,
+            @RequestParam(defaultValue = "false") boolean approximateTotal
+    ) {
+        if (!withTotal) {
+            return ResponseEntity.ok(clientService.listClientsSlice(page, size, approximateTotal));
+        }
+        return ResponseEntity.ok(clientService.listClients(page, size));
+    }
+
+    // GET /clients/search?q= - typo-tolerant prefix search over name, address and code, best matches first
+    @GetMapping("/search")
+    public ResponseEntity<List<ClientSummary>> search(
+            @RequestParam String q,
+            @RequestParam(defaultValue = "20") int limit
+    ) {
+        return ResponseEntity.ok(clientService.searchClients(q, Math.min(limit, MAX_SEARCH_RESULTS)));
+    }
+
+    // GET /clients/nearby?lat=&lng=&radiusKm= - clients within radiusKm of a position, nearest first
+    @GetMapping("/nearby")
+    public ResponseEntity<List<NearbyClient>> nearby(
+            @RequestParam double lat,
+            @RequestParam double lng,
+            @RequestParam(defaultValue = "2") double radiusKm,
+            @RequestParam(defaultValue = "50") int limit
+    ) {
+        return ResponseEntity.ok(clientService.findClientsWithin(lat, lng, radiusKm,
+                Math.min(limit, MAX_SEARCH_RESULTS)));
+    }
+
+    // GET /clients/nearest?lat=&lng=&k= - the k clients nearest to a position
+    @GetMapping("/nearest")
+    public ResponseEntity<List<NearbyClient>> nearest(
+            @RequestParam double lat,
+            @RequestParam double lng,
+            @RequestParam(defaultValue = "10") int k
     ) {
-        return clientService.listClients(page, size);
+        return ResponseEntity.ok(clientService.findNearestClients(lat, lng, Math.min(k, MAX_SEARCH_RESULTS)));
     }
 
     // GET /clients/{clientCode}
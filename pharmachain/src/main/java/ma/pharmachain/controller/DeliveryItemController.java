@@ -5,7 +5,6 @@ import ma.pharmachain.dto.DeliveryItemUpdateRequest;
 import ma.pharmachain.dto.ProofRequest;
 import ma.pharmachain.entity.DeliveryItem;
 import ma.pharmachain.service.DeliveryItemService;
-import org.springframework.data.domain.Page;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
@@ -20,13 +19,23 @@ public class DeliveryItemController {
 
     private final DeliveryItemService deliveryItemService;
 
-    // GET /delivery-items - list with pagination
+    // GET /delivery-items - list with pagination; ?after= switches to keyset pages (empty for the first page),
+    // ?withTotal=false to a page without count (&approximateTotal=true for the planner estimate)
     @GetMapping
-    public Page<DeliveryItem> list(
+    public ResponseEntity<?> list(
             @RequestParam(defaultValue = "0") int page,
-            @RequestParam(defaultValue = "20") int size
+            @RequestParam(defaultValue = "20") int size,
+            @RequestParam(required = false) String after,
+            @RequestParam(defaultValue = "true") boolean withTotal,
+            @RequestParam(defaultValue = "false") boolean approximateTotal
     ) {
-        return deliveryItemService.listDeliveryItems(page, size);
+        if (after != null) {
+            return ResponseEntity.ok(deliveryItemService.listDeliveryItemsAfter(after, size));
+        }
+        if (!withTotal) {
+            return ResponseEntity.ok(deliveryItemService.listDeliveryItemsSlice(page, size, approximateTotal));
+        }
+        return ResponseEntity.ok(deliveryItemService.listDeliveryItems(page, size));
     }
 
     // GET /delivery-items/{blNumber}
@@ -2,21 +2,25 @@ package ma.pharmachain.controller;
 
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
+import ma.pharmachain.dto.BordereauDetail;
+import ma.pharmachain.dto.DeliveryItemDetail;
+import ma.pharmachain.dto.DriverDaySheet;
+import ma.pharmachain.dto.DriverRoute;
 import ma.pharmachain.dto.DriverCreateRequest;
 import ma.pharmachain.dto.DriverUpdateRequest;
-import ma.pharmachain.entity.Bordereau;
-import ma.pharmachain.entity.DeliveryItem;
 import ma.pharmachain.entity.Driver;
 import ma.pharmachain.service.DriverService;
 import ma.pharmachain.service.AuthenticationService;
-import org.springframework.data.domain.Page;
+import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.security.oauth2.jwt.Jwt;
 import org.springframework.security.oauth2.server.resource.authentication.JwtAuthenticationToken;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 
+import java.time.LocalDate;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -70,7 +74,7 @@ public class DriverController {
      * Get my bordereaux (driver's own deliveries)
      */
     @GetMapping("/me/bordereaux")
-    public ResponseEntity<List<Bordereau>> getMyBordereaux() {
+    public ResponseEntity<List<BordereauDetail>> getMyBordereaux() {
         String code = authenticationService.getCurrentUserCode();
         return ResponseEntity.ok(driverService.getDriverBordereaux(code));
     }
@@ -79,19 +83,56 @@ public class DriverController {
      * Get my delivery items
      */
     @GetMapping("/me/delivery-items")
-    public ResponseEntity<List<DeliveryItem>> getMyDeliveryItems() {
+    public ResponseEntity<List<DeliveryItemDetail>> getMyDeliveryItems() {
         String code = authenticationService.getCurrentUserCode();
         return ResponseEntity.ok(driverService.getDriverDeliveryItems(code));
     }
 
+    /**
+     * Get my day sheet: bordereaux of the date (default today), their delivery items and clients in one payload.
+     * The ETag is a digest of the versions and codes the sheet renders, read in one query, so a poll with
+     * If-None-Match gets an empty 304 without loading the sheet.
+     */
+    @GetMapping("/me/day-sheet")
+    public ResponseEntity<DriverDaySheet> getMyDaySheet(
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate date,
+            WebRequest webRequest
+    ) {
+        String code = authenticationService.getCurrentUserCode();
+        LocalDate day = date != null ? date : LocalDate.now();
+        String etag = driverService.getDriverDaySheetEtag(code, day);
+        if (webRequest.checkNotModified(etag)) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(etag).build();
+        }
+        // Taken before the load: a concurrent update leaves an older ETag, so the next poll refetches
+        return ResponseEntity.ok().eTag(etag).body(driverService.getDriverDaySheet(code, day));
+    }
+
+    /**
+     * Get my pending stops of the date (default today) in visiting order, one stop per client
+     */
+    @GetMapping("/me/route")
+    public ResponseEntity<DriverRoute> getMyRoute(
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate date
+    ) {
+        String code = authenticationService.getCurrentUserCode();
+        return ResponseEntity.ok(driverService.getDriverRoute(code, date != null ? date : LocalDate.now()));
+    }
+
     /**
      * List all drivers - Accessible by ADMIN and MANAGER
+     * withTotal=false skips the count; approximateTotal=true then adds the planner's row estimate
      */
     @GetMapping
-    public ResponseEntity<Page<Driver>> list(
+    public ResponseEntity<?> list(
             @RequestParam(defaultValue = "0") int page,
-            @RequestParam(defaultValue = "20") int size
+            @RequestParam(defaultValue = "20") int size,
+            @RequestParam(defaultValue = "true") boolean withTotal,
+            @RequestParam(defaultValue = "false") boolean approximateTotal
     ) {
+        if (!withTotal) {
+            return ResponseEntity.ok(driverService.listDriversSlice(page, size, approximateTotal));
+        }
         return ResponseEntity.ok(driverService.listDrivers(page, size));
     }
 
@@ -147,15 +188,26 @@ public class DriverController {
      * Get bordereaux for a specific driver
      */
     @GetMapping("/{code}/bordereaux")
-    public ResponseEntity<List<Bordereau>> getBordereaux(@PathVariable String code) {
+    public ResponseEntity<List<BordereauDetail>> getBordereaux(@PathVariable String code) {
         return ResponseEntity.ok(driverService.getDriverBordereaux(code));
     }
 
+    /**
+     * Get the pending stops of a specific driver in visiting order
+     */
+    @GetMapping("/{code}/route")
+    public ResponseEntity<DriverRoute> getRoute(
+            @PathVariable String code,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate date
+    ) {
+        return ResponseEntity.ok(driverService.getDriverRoute(code, date != null ? date : LocalDate.now()));
+    }
+
     /**
      * Get delivery items for a specific driver
      */
     @GetMapping("/{code}/delivery-items")
-    public ResponseEntity<List<DeliveryItem>> getDeliveryItems(@PathVariable String code) {
+    public ResponseEntity<List<DeliveryItemDetail>> getDeliveryItems(@PathVariable String code) {
         return ResponseEntity.ok(driverService.getDriverDeliveryItems(code));
     }
 }
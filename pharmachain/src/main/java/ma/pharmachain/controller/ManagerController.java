@@ -1,22 +1,25 @@
 package ma.pharmachain.controller;
 
 import lombok.RequiredArgsConstructor;
+import ma.pharmachain.dto.BordereauDetail;
+import ma.pharmachain.dto.ClientSummary;
+import ma.pharmachain.dto.DriverSummary;
 import ma.pharmachain.dto.ManagerCreateRequest;
 import ma.pharmachain.dto.ManagerUpdateRequest;
-import ma.pharmachain.entity.Bordereau;
-import ma.pharmachain.entity.Client;
-import ma.pharmachain.entity.Driver;
+import ma.pharmachain.dto.StatusStats;
 import ma.pharmachain.entity.Manager;
 import ma.pharmachain.service.ManagerService;
 import ma.pharmachain.service.AuthenticationService;
-import org.springframework.data.domain.Page;
+import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.security.oauth2.jwt.Jwt;
 import org.springframework.security.oauth2.server.resource.authentication.JwtAuthenticationToken;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 
+import java.time.LocalDate;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -70,7 +73,7 @@ public class ManagerController {
      * Get my drivers (drivers assigned to the authenticated manager)
      */
     @GetMapping("/me/drivers")
-    public ResponseEntity<List<Driver>> getMyDrivers() {
+    public ResponseEntity<List<DriverSummary>> getMyDrivers() {
         String code = authenticationService.getCurrentUserCode();
         return ResponseEntity.ok(managerService.getManagerDrivers(code));
     }
@@ -79,28 +82,50 @@ public class ManagerController {
      * Get my clients (clients in my sector)
      */
     @GetMapping("/me/clients")
-    public ResponseEntity<List<Client>> getMyClients() {
+    public ResponseEntity<List<ClientSummary>> getMyClients() {
         String code = authenticationService.getCurrentUserCode();
         return ResponseEntity.ok(managerService.getManagerClients(code));
     }
 
     /**
      * Get my bordereaux
+     * ETag is a digest of the bordereaux, items and clients versions and of the user codes in the list:
+     * If-None-Match gets a 304 from one aggregate query, without loading the list
      */
     @GetMapping("/me/bordereaux")
-    public ResponseEntity<List<Bordereau>> getMyBordereaux() {
+    public ResponseEntity<List<BordereauDetail>> getMyBordereaux(WebRequest webRequest) {
         String code = authenticationService.getCurrentUserCode();
-        return ResponseEntity.ok(managerService.getManagerBordereaux(code));
+        return bordereauxResponse(code, webRequest);
+    }
+
+    /**
+     * Count my bordereaux and their lines by status for a delivery date (default today), optionally for one driver;
+     * read from in-memory counters, without scanning the tables
+     */
+    @GetMapping("/me/stats")
+    public ResponseEntity<StatusStats> getMyStats(
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate date,
+            @RequestParam(required = false) String driverCode
+    ) {
+        String code = authenticationService.getCurrentUserCode();
+        return ResponseEntity.ok(managerService.getManagerStats(code, date != null ? date : LocalDate.now(),
+                driverCode));
     }
 
     /**
      * List all managers - Accessible by ADMIN and MANAGER roles
+     * withTotal=false skips the count; approximateTotal=true then adds the planner's row estimate
      */
     @GetMapping
-    public ResponseEntity<Page<Manager>> list(
+    public ResponseEntity<?> list(
             @RequestParam(defaultValue = "0") int page,
-            @RequestParam(defaultValue = "20") int size
+            @RequestParam(defaultValue = "20") int size,
+            @RequestParam(defaultValue = "true") boolean withTotal,
+            @RequestParam(defaultValue = "false") boolean approximateTotal
     ) {
+        if (!withTotal) {
+            return ResponseEntity.ok(managerService.listManagersSlice(page, size, approximateTotal));
+        }
         return ResponseEntity.ok(managerService.listManagers(page, size));
     }
 
@@ -156,7 +181,7 @@ public class ManagerController {
      * Get drivers for a specific manager - ADMIN or the manager themselves
      */
     @GetMapping("/{code}/drivers")
-    public ResponseEntity<List<Driver>> getDrivers(@PathVariable String code) {
+    public ResponseEntity<List<DriverSummary>> getDrivers(@PathVariable String code) {
         return ResponseEntity.ok(managerService.getManagerDrivers(code));
     }
 
@@ -164,7 +189,7 @@ public class ManagerController {
      * Get clients for a specific manager
      */
     @GetMapping("/{code}/clients")
-    public ResponseEntity<List<Client>> getClients(@PathVariable String code) {
+    public ResponseEntity<List<ClientSummary>> getClients(@PathVariable String code) {
         return ResponseEntity.ok(managerService.getManagerClients(code));
     }
 
@@ -172,7 +197,16 @@ public class ManagerController {
      * Get bordereaux for a specific manager
      */
     @GetMapping("/{code}/bordereaux")
-    public ResponseEntity<List<Bordereau>> getBordereaux(@PathVariable String code) {
-        return ResponseEntity.ok(managerService.getManagerBordereaux(code));
+    public ResponseEntity<List<BordereauDetail>> getBordereaux(@PathVariable String code, WebRequest webRequest) {
+        return bordereauxResponse(code, webRequest);
+    }
+
+    private ResponseEntity<List<BordereauDetail>> bordereauxResponse(String code, WebRequest webRequest) {
+        String etag = managerService.getManagerBordereauxEtag(code);
+        if (webRequest.checkNotModified(etag)) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(etag).build();
+        }
+        // Taken before the load: a concurrent update leaves an older ETag, so the next poll refetches
+        return ResponseEntity.ok().eTag(etag).body(managerService.getManagerBordereaux(code));
     }
 }
@@ -0,0 +1,58 @@
+package ma.pharmachain.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import ma.pharmachain.entity.Bordereau;
+import ma.pharmachain.entity.DeliveryItem;
+import ma.pharmachain.entity.User;
+import ma.pharmachain.enums.BordereauStatus;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class BordereauDetail {
+    private String bordereauNumber;
+    private LocalDate deliveryDate;
+    private String currentDriverCode;
+    private String originalDriverCode;
+    private String secteurCode;
+    private BordereauStatus status;
+    private LocalDateTime scannedAt;
+    private LocalDateTime completedAt;
+    private Boolean autoCreated;
+    private List<DeliveryItemDetail> deliveryItems;
+
+    /**
+     * Expects the drivers and secteur to be fetched with the bordereau (Bordereau.assignments graph)
+     */
+    public static BordereauDetail of(Bordereau bordereau, List<DeliveryItemDetail> deliveryItems) {
+        return new BordereauDetail(bordereau.getBordereauNumber(), bordereau.getDeliveryDate(),
+                codeOf(bordereau.getCurrentDriver()), codeOf(bordereau.getOriginalDriver()),
+                codeOf(bordereau.getSecteur()), bordereau.getStatus(), bordereau.getScannedAt(),
+                bordereau.getCompletedAt(), bordereau.getAutoCreated(), deliveryItems);
+    }
+
+    /**
+     * Pairs each bordereau with its items, keeping the bordereaux order
+     */
+    public static List<BordereauDetail> listOf(List<Bordereau> bordereaux, List<DeliveryItem> items) {
+        // getBordereauNumber() on the item's lazy bordereau proxy reads the id, no query
+        Map<String, List<DeliveryItemDetail>> itemsByBordereau = items.stream()
+                .collect(Collectors.groupingBy(item -> item.getBordereau().getBordereauNumber(),
+                        Collectors.mapping(DeliveryItemDetail::from, Collectors.toList())));
+        return bordereaux.stream()
+                .map(b -> of(b, itemsByBordereau.getOrDefault(b.getBordereauNumber(), List.of())))
+                .toList();
+    }
+
+    private static String codeOf(User user) {
+        return user != null ? user.getCode() : null;
+    }
+}
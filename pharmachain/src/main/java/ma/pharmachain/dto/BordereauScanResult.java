@@ -0,0 +1,39 @@
+package ma.pharmachain.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import ma.pharmachain.entity.Bordereau;
+import ma.pharmachain.enums.BordereauStatus;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class BordereauScanResult {
+    private String bordereauNumber;
+    private boolean success;
+    private BordereauStatus status;
+    private int itemCount;
+    private String error;
+    private ScanCreatedEntities created;
+    // Failed on the database being unavailable rather than on the scan itself: sending it again can succeed
+    private boolean retryable;
+
+    /**
+     * Built from scalar columns only, so no lazy association is touched
+     */
+    public static BordereauScanResult success(Bordereau bordereau, BordereauScanRequest request,
+                                              ScanCreatedEntities created) {
+        int itemCount = request.getDeliveryItems() != null ? request.getDeliveryItems().size() : 0;
+        return new BordereauScanResult(bordereau.getBordereauNumber(), true, bordereau.getStatus(), itemCount,
+                null, created, false);
+    }
+
+    public static BordereauScanResult failure(String bordereauNumber, String error) {
+        return new BordereauScanResult(bordereauNumber, false, null, 0, error, null, false);
+    }
+
+    public static BordereauScanResult retryableFailure(String bordereauNumber, String error) {
+        return new BordereauScanResult(bordereauNumber, false, null, 0, error, null, true);
+    }
+}
@@ -0,0 +1,19 @@
+package ma.pharmachain.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import ma.pharmachain.enums.BordereauStatus;
+
+import java.time.LocalDate;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class BordereauSearchCriteria {
+    private BordereauStatus status;
+    private LocalDate deliveryDateFrom;
+    private LocalDate deliveryDateTo;
+    private String driverCode;
+    private String secteurCode;
+}
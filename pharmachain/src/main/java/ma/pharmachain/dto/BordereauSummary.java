@@ -0,0 +1,40 @@
+package ma.pharmachain.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import ma.pharmachain.entity.Bordereau;
+import ma.pharmachain.entity.User;
+import ma.pharmachain.enums.BordereauStatus;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class BordereauSummary {
+    private String bordereauNumber;
+    private LocalDate deliveryDate;
+    private String currentDriverCode;
+    private String originalDriverCode;
+    private String secteurCode;
+    private BordereauStatus status;
+    private LocalDateTime scannedAt;
+    private LocalDateTime completedAt;
+    private Boolean autoCreated;
+
+    /**
+     * Expects the drivers and secteur to be fetched with the bordereau (Bordereau.assignments graph)
+     */
+    public static BordereauSummary from(Bordereau bordereau) {
+        return new BordereauSummary(bordereau.getBordereauNumber(), bordereau.getDeliveryDate(),
+                codeOf(bordereau.getCurrentDriver()), codeOf(bordereau.getOriginalDriver()),
+                codeOf(bordereau.getSecteur()), bordereau.getStatus(), bordereau.getScannedAt(),
+                bordereau.getCompletedAt(), bordereau.getAutoCreated());
+    }
+
+    private static String codeOf(User user) {
+        return user != null ? user.getCode() : null;
+    }
+}
@@ -0,0 +1,28 @@
+package ma.pharmachain.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import ma.pharmachain.entity.Client;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ClientSummary {
+    private String clientCode;
+    private String name;
+    private String address;
+    private String phone;
+    private String coordinates;
+    private String secteurCode;
+    private Boolean autoCreated;
+
+    /**
+     * Expects the secteur to be fetched with the client
+     */
+    public static ClientSummary from(Client client) {
+        return new ClientSummary(client.getClientCode(), client.getName(), client.getAddress(), client.getPhone(),
+                client.getCoordinates(), client.getSecteur() != null ? client.getSecteur().getCode() : null,
+                client.getAutoCreated());
+    }
+}
@@ -0,0 +1,34 @@
+package ma.pharmachain.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import ma.pharmachain.entity.DeliveryItem;
+import ma.pharmachain.enums.DeliveryItemStatus;
+
+import java.time.LocalDateTime;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class DeliveryItemDetail {
+    private Long id;
+    private String blNumber;
+    private String bordereauNumber;
+    private Integer nombreColis;
+    private Integer nombreSachets;
+    private DeliveryItemStatus status;
+    private LocalDateTime deliveredAt;
+    private String deliveryNotes;
+    private ClientSummary client;
+
+    /**
+     * Expects the client and its secteur to be fetched with the item; the bordereau is only read by id
+     */
+    public static DeliveryItemDetail from(DeliveryItem item) {
+        return new DeliveryItemDetail(item.getId(), item.getBlNumber(),
+                item.getBordereau() != null ? item.getBordereau().getBordereauNumber() : null,
+                item.getNombreColis(), item.getNombreSachets(), item.getStatus(), item.getDeliveredAt(),
+                item.getDeliveryNotes(), item.getClient() != null ? ClientSummary.from(item.getClient()) : null);
+    }
+}
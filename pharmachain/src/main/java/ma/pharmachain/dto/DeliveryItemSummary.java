@@ -0,0 +1,23 @@
+package ma.pharmachain.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import ma.pharmachain.enums.DeliveryItemStatus;
+
+import java.time.LocalDateTime;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class DeliveryItemSummary {
+    private Long id;
+    private String blNumber;
+    private String bordereauNumber;
+    private String clientCode;
+    private String clientName;
+    private Integer nombreColis;
+    private Integer nombreSachets;
+    private DeliveryItemStatus status;
+    private LocalDateTime deliveredAt;
+}
@@ -0,0 +1,17 @@
+package ma.pharmachain.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDate;
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class DriverDaySheet {
+    private LocalDate date;
+    private DriverSummary driver;
+    private List<BordereauDetail> bordereaux;
+}
@@ -0,0 +1,20 @@
+package ma.pharmachain.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDate;
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class DriverRoute {
+    private LocalDate date;
+    private String driverCode;
+    private double totalKm;
+    private List<RouteStop> stops;
+    // Pending lines whose client has no usable coordinates, left for the driver to place
+    private List<DeliveryItemDetail> unlocatedItems;
+}
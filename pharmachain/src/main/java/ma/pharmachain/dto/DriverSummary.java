@@ -0,0 +1,28 @@
+package ma.pharmachain.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import ma.pharmachain.entity.Driver;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class DriverSummary {
+    private Long id;
+    private String code;
+    private String username;
+    private String phone;
+    private String licenseNumber;
+    private Boolean isActive;
+    private String assignedManagerCode;
+
+    /**
+     * Expects the assigned manager to be fetched with the driver
+     */
+    public static DriverSummary from(Driver driver) {
+        return new DriverSummary(driver.getId(), driver.getCode(), driver.getUsername(), driver.getPhone(),
+                driver.getLicenseNumber(), driver.getIsActive(),
+                driver.getAssignedManager() != null ? driver.getAssignedManager().getCode() : null);
+    }
+}
@@ -0,0 +1,29 @@
+package ma.pharmachain.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+import java.util.function.Function;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class KeysetPage<T> {
+    private List<T> content;
+    private int size;
+    private boolean hasNext;
+    // Pass as ?after= for the next page; null on the last page
+    private String next;
+
+    /**
+     * @param rows up to size + 1 rows, the extra one only tells that a next page exists
+     */
+    public static <T> KeysetPage<T> of(List<T> rows, int size, Function<T, String> cursorOf) {
+        boolean hasNext = rows.size() > size;
+        List<T> content = hasNext ? rows.subList(0, size) : rows;
+        String next = hasNext ? cursorOf.apply(content.get(content.size() - 1)) : null;
+        return new KeysetPage<>(content, size, hasNext, next);
+    }
+}
@@ -0,0 +1,18 @@
+package ma.pharmachain.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ManagerSummary {
+    private Long id;
+    private String code;
+    private String username;
+    private String secteurName;
+    private String phone;
+    private String address;
+    private Boolean isActive;
+}
@@ -0,0 +1,32 @@
+package ma.pharmachain.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+public class ManifestImportReport {
+    private long linesRead;
+    private long rowsLoaded;
+    private long rejectedCount;
+    private List<RejectedLine> rejectedLines = new ArrayList<>();
+    private int driversCreated;
+    private int managersCreated;
+    private int clientsCreated;
+    private int bordereauxMerged;
+    private int deliveryItemsMerged;
+    private long elapsedMillis;
+    private double rowsPerSecond;
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class RejectedLine {
+        private long lineNumber;
+        private String reason;
+    }
+}
@@ -0,0 +1,20 @@
+package ma.pharmachain.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * One client to visit, with the pending lines to hand over there
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class RouteStop {
+    private int sequence;
+    private ClientSummary client;
+    private double legKm; // From the previous stop, 0 for the first
+    private List<DeliveryItemDetail> deliveryItems;
+}
@@ -0,0 +1,22 @@
+package ma.pharmachain.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Codes of the rows a scan auto-created; empty lists are left out of the JSON
+ */
+@Data
+@NoArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_EMPTY)
+public class ScanCreatedEntities {
+    private boolean bordereau;
+    private List<String> drivers = new ArrayList<>();
+    private List<String> managers = new ArrayList<>();
+    private List<String> clients = new ArrayList<>();
+    private List<String> deliveryItems = new ArrayList<>();
+}
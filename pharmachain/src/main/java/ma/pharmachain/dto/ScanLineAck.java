@@ -0,0 +1,27 @@
+package ma.pharmachain.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import ma.pharmachain.enums.BordereauStatus;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ScanLineAck {
+    private long line;
+    private String bordereauNumber;
+    private boolean success;
+    private BordereauStatus status;
+    private int itemCount;
+    private String error;
+
+    public static ScanLineAck of(long line, BordereauScanResult result) {
+        return new ScanLineAck(line, result.getBordereauNumber(), result.isSuccess(),
+                result.getStatus(), result.getItemCount(), result.getError());
+    }
+
+    public static ScanLineAck failure(long line, String error) {
+        return new ScanLineAck(line, null, false, null, 0, error);
+    }
+}
@@ -0,0 +1,29 @@
+package ma.pharmachain.dto;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import ma.pharmachain.enums.ScanReplayState;
+
+import java.time.Instant;
+
+@Data
+@NoArgsConstructor
+public class ScanReplayStatus {
+    private long id;
+    private Instant from;
+    private Instant to;
+    private int parallelism;
+    private int batchSize;
+    private ScanReplayState state;
+    // From the archive index: an upper bound, blocks at the range bounds are counted whole
+    private long recordsEstimated;
+    private long recordsRead;
+    private long applied;
+    private long failed;
+    private long unreadable;
+    private Instant startedAt;
+    private Instant finishedAt;
+    private long elapsedMillis;
+    private double recordsPerSecond;
+    private String error;
+}
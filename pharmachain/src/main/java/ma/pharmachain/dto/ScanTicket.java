@@ -0,0 +1,15 @@
+package ma.pharmachain.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import ma.pharmachain.enums.ScanTicketState;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ScanTicket {
+    private long ticket;
+    private ScanTicketState state;
+    private BordereauScanResult result;
+}
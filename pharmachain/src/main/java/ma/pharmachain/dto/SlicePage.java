@@ -0,0 +1,25 @@
+package ma.pharmachain.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.domain.Slice;
+
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class SlicePage<T> {
+    private List<T> content;
+    private int page;
+    private int size;
+    private boolean hasNext;
+    // Planner estimate of the whole list, only when asked for; null if the table has no statistics yet
+    private Long approximateTotal;
+
+    public static <T> SlicePage<T> of(Slice<T> slice, Long approximateTotal) {
+        return new SlicePage<>(slice.getContent(), slice.getNumber(), slice.getSize(), slice.hasNext(),
+                approximateTotal);
+    }
+}
@@ -0,0 +1,39 @@
+package ma.pharmachain.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import ma.pharmachain.entity.StatusCountRollup;
+import ma.pharmachain.enums.BordereauStatus;
+import ma.pharmachain.enums.DeliveryItemStatus;
+
+import java.time.LocalDate;
+import java.util.EnumMap;
+import java.util.Map;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class StatusStats {
+    private LocalDate date;
+    private String secteurCode;
+    // Null for the whole secteur
+    private String driverCode;
+    private Map<BordereauStatus, Long> bordereaux;
+    private Map<DeliveryItemStatus, Long> deliveryItems;
+
+    /**
+     * @param counts indexed as {@link StatusCountRollup#index}
+     */
+    public static StatusStats of(LocalDate date, String secteurCode, String driverCode, long[] counts) {
+        Map<BordereauStatus, Long> bordereaux = new EnumMap<>(BordereauStatus.class);
+        for (BordereauStatus status : BordereauStatus.values()) {
+            bordereaux.put(status, counts[StatusCountRollup.index(status)]);
+        }
+        Map<DeliveryItemStatus, Long> deliveryItems = new EnumMap<>(DeliveryItemStatus.class);
+        for (DeliveryItemStatus status : DeliveryItemStatus.values()) {
+            deliveryItems.put(status, counts[StatusCountRollup.index(status)]);
+        }
+        return new StatusStats(date, secteurCode, driverCode, bordereaux, deliveryItems);
+    }
+}
@@ -0,0 +1,22 @@
+package ma.pharmachain.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import ma.pharmachain.enums.TransferStatus;
+
+import java.time.LocalDateTime;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class TransferSummary {
+    private Long id;
+    private String bordereauNumber;
+    private String fromDriverCode;
+    private String toDriverCode;
+    private LocalDateTime transferredAt;
+    private String transferBarcode;
+    private String reason;
+    private TransferStatus status;
+}
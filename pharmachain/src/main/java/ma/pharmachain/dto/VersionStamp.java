@@ -0,0 +1,20 @@
+package ma.pharmachain.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class VersionStamp {
+    private Long rows;
+    private String digest;
+
+    /**
+     * The digest covers the membership and the version of every row, so a swapped or changed row changes it
+     */
+    public String toEtag() {
+        return "\"" + rows + "." + digest + "\"";
+    }
+}
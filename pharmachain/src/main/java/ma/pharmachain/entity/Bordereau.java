@@ -10,10 +10,26 @@ import java.util.ArrayList;
 import java.util.List;
 
 @Entity
+@NamedEntityGraph(name = Bordereau.ASSIGNMENTS_GRAPH, attributeNodes = {
+        @NamedAttributeNode("currentDriver"),
+        @NamedAttributeNode("originalDriver"),
+        @NamedAttributeNode("secteur")
+})
+@Table(indexes = {
+        @Index(name = "idx_bordereau_delivery_date_number", columnList = "deliveryDate, bordereauNumber"),
+        // GET /bordereaux/search, see BordereauSpecifications
+        @Index(name = "idx_bordereau_secteur_delivery_date", columnList = "secteur_id, deliveryDate"),
+        @Index(name = "idx_bordereau_current_driver_status", columnList = "current_driver_id, status"),
+        @Index(name = "idx_bordereau_status_delivery_date", columnList = "status, deliveryDate")
+})
 @Getter
 @Setter
 @NoArgsConstructor
 public class Bordereau {
+
+    // Drivers and secteur, for responses that show their codes
+    public static final String ASSIGNMENTS_GRAPH = "Bordereau.assignments";
+
     @Id
     private String bordereauNumber; // 500001
 
@@ -38,4 +54,27 @@ public class Bordereau {
     private LocalDateTime completedAt;
 
     private Boolean autoCreated;
+
+    // Fingerprint of the scanned columns, null when the row was written outside JPA (manifest import)
+    private Long scanFingerprint;
+
+    // Optimistic lock and ETag source; the manifest upsert bumps it too
+    @Version
+    @Column(nullable = false, columnDefinition = "bigint default 0")
+    private Long version;
+
+    public static long scanFingerprintOf(LocalDate deliveryDate, Long currentDriverId, Long originalDriverId,
+                                         Long secteurId) {
+        return ScanFingerprints.of(deliveryDate, currentDriverId, originalDriverId, secteurId);
+    }
+
+    @PrePersist
+    @PreUpdate
+    public void refreshScanFingerprint() {
+        // getId() on a lazy proxy does not initialize it
+        scanFingerprint = scanFingerprintOf(deliveryDate,
+                currentDriver != null ? currentDriver.getId() : null,
+                originalDriver != null ? originalDriver.getId() : null,
+                secteur != null ? secteur.getId() : null);
+    }
 }
\ No newline at end of file
@@ -7,6 +7,7 @@ import ma.pharmachain.enums.TransferStatus;
 import java.time.LocalDateTime;
 
 @Entity
+@Table(indexes = @Index(name = "idx_bordereau_transfer_transferred_at_id", columnList = "transferredAt, id"))
 @Getter
 @Setter
 @NoArgsConstructor
@@ -30,4 +31,9 @@ public class BordereauTransfer {
 
     @Enumerated(EnumType.STRING)
     private TransferStatus status;
+
+    // Optimistic lock: two concurrent status updates cannot both finalize a PENDING transfer
+    @Version
+    @Column(nullable = false, columnDefinition = "bigint default 0")
+    private Long version;
 }
\ No newline at end of file
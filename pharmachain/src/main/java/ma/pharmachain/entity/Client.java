@@ -1,9 +1,11 @@
 package ma.pharmachain.entity;
 
+import jakarta.persistence.Column;
 import jakarta.persistence.Entity;
 import jakarta.persistence.FetchType;
 import jakarta.persistence.Id;
 import jakarta.persistence.ManyToOne;
+import jakarta.persistence.Version;
 import lombok.*;
 
 @Entity
@@ -22,4 +24,9 @@ public class Client {
     private Manager secteur;
 
     private Boolean autoCreated;
+
+    // Optimistic lock and ETag source; auto-created rows are inserted with JDBC and start at the column default
+    @Version
+    @Column(nullable = false, columnDefinition = "bigint default 0")
+    private Long version;
 }
\ No newline at end of file
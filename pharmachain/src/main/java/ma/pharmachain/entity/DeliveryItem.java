@@ -7,6 +7,8 @@ import ma.pharmachain.enums.DeliveryItemStatus;
 import java.time.LocalDateTime;
 
 @Entity
+// Lines of a bordereau: its listing, cascaded delete and line counts by status
+@Table(indexes = @Index(name = "idx_delivery_item_bordereau", columnList = "bordereau_bordereau_number"))
 @Getter
 @Setter
 @NoArgsConstructor
@@ -33,4 +35,24 @@ public class DeliveryItem {
     private LocalDateTime deliveredAt;
     private String deliveryNotes;
     private String recipientSignature;
+
+    // Fingerprint of the scanned columns, null when the row was written outside JPA (manifest import)
+    private Long scanFingerprint;
+
+    // Optimistic lock and ETag source; batchInsert and the manifest rely on the column default
+    @Version
+    @Column(nullable = false, columnDefinition = "bigint default 0")
+    private Long version;
+
+    public static long scanFingerprintOf(String bordereauNumber, String clientCode, Integer nombreColis,
+                                         Integer nombreSachets) {
+        return ScanFingerprints.of(bordereauNumber, clientCode, nombreColis, nombreSachets);
+    }
+
+    @PrePersist
+    @PreUpdate
+    public void refreshScanFingerprint() {
+        scanFingerprint = scanFingerprintOf(bordereau != null ? bordereau.getBordereauNumber() : null,
+                client != null ? client.getClientCode() : null, nombreColis, nombreSachets);
+    }
 }
\ No newline at end of file
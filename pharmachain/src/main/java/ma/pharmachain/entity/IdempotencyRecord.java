@@ -0,0 +1,32 @@
+package ma.pharmachain.entity;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.time.LocalDateTime;
+
+@Entity
+@Table(name = "idempotency_key", indexes = @Index(name = "idx_idempotency_key_expires_at", columnList = "expiresAt"))
+@Getter
+@Setter
+@NoArgsConstructor
+public class IdempotencyRecord {
+
+    // Status of a key claimed by an attempt that has not stored its response yet
+    public static final int IN_PROGRESS = 0;
+
+    @Id
+    @Column(length = 64)
+    private String keyHash; // SHA-256 of user, method, path and Idempotency-Key
+
+    @Column(length = 64)
+    private String requestHash; // SHA-256 of the request body, null on rows stored before it was recorded
+
+    private int statusCode; // IN_PROGRESS until the response is stored
+    private String contentType;
+
+    @Column(columnDefinition = "text")
+    private String responseBody;
+
+    private LocalDateTime expiresAt; // end of the claim while IN_PROGRESS, then of the replay window
+}
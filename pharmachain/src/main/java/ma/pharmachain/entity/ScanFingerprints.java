@@ -0,0 +1,36 @@
+package ma.pharmachain.entity;
+
+/**
+ * 64-bit FNV-1a over the scanned columns of a row, used to detect re-scans that change nothing.
+ */
+final class ScanFingerprints {
+
+    private static final long OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long PRIME = 0x100000001b3L;
+    private static final char NULL_MARKER = '\u0000';
+    private static final char SEPARATOR = '\u001f';
+
+    private ScanFingerprints() {
+    }
+
+    static long of(Object... values) {
+        long hash = OFFSET_BASIS;
+        for (Object value : values) {
+            if (value == null) {
+                hash = mix(hash, NULL_MARKER);
+            } else {
+                String text = value.toString();
+                for (int i = 0; i < text.length(); i++) {
+                    hash = mix(hash, text.charAt(i));
+                }
+            }
+            hash = mix(hash, SEPARATOR);
+        }
+        return hash;
+    }
+
+    private static long mix(long hash, char c) {
+        hash = (hash ^ (c & 0xff)) * PRIME;
+        return (hash ^ (c >>> 8)) * PRIME;
+    }
+}
@@ -0,0 +1,43 @@
+package ma.pharmachain.entity;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.time.LocalDateTime;
+
+/**
+ * Last flush of the status counters to status_count_rollup (see StatusCounters), so a startup can tell whether
+ * the rollup holds every change of the previous run.
+ */
+@Entity
+@Getter
+@Setter
+@NoArgsConstructor
+public class StatusCountFlush {
+
+    // Id of the single row
+    public static final long ID = 1;
+
+    @Id
+    private Long id;
+
+    private LocalDateTime flushedAt;
+
+    // Set by the flush on shutdown; a run that stopped without it lost the changes after its last flush
+    private boolean closed;
+
+    // pg_current_snapshot() of the last recount: the transitions it saw are already in the rollup
+    @Column(columnDefinition = "text")
+    private String recountSnapshot;
+
+    public StatusCountFlush(LocalDateTime flushedAt, boolean closed, String recountSnapshot) {
+        this.id = ID;
+        this.flushedAt = flushedAt;
+        this.closed = closed;
+        this.recountSnapshot = recountSnapshot;
+    }
+}
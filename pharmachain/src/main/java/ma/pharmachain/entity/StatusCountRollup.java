@@ -0,0 +1,82 @@
+package ma.pharmachain.entity;
+
+import jakarta.persistence.*;
+import lombok.*;
+import ma.pharmachain.enums.BordereauStatus;
+import ma.pharmachain.enums.DeliveryItemStatus;
+
+import java.time.LocalDate;
+
+/**
+ * Flushed copy of one cell of the in-memory status counters (see StatusCounters): the bordereaux of a secteur,
+ * driver and delivery date, and their lines, counted by status.
+ */
+@Entity
+@Table(uniqueConstraints = @UniqueConstraint(name = "uk_status_count_rollup_cell",
+        columnNames = {"secteurId", "driverId", "deliveryDate"}))
+@Getter
+@Setter
+@NoArgsConstructor
+public class StatusCountRollup {
+
+    // BordereauStatus then DeliveryItemStatus, each in declaration order
+    public static final int METRICS = BordereauStatus.values().length + DeliveryItemStatus.values().length;
+
+    // Secteur or driver id of bordereaux that have none
+    public static final long NONE = 0;
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    private long secteurId;
+    private long driverId;
+
+    @Column(nullable = false)
+    private LocalDate deliveryDate;
+
+    private long bordereauxCreated;
+    private long bordereauxAssigned;
+    private long bordereauxInTransit;
+    private long bordereauxCompleted;
+    private long itemsPending;
+    private long itemsDelivered;
+    private long itemsFailed;
+
+    public StatusCountRollup(long secteurId, long driverId, LocalDate deliveryDate, long[] counts) {
+        this.secteurId = secteurId;
+        this.driverId = driverId;
+        this.deliveryDate = deliveryDate;
+        setCounts(counts);
+    }
+
+    public static int index(BordereauStatus status) {
+        return status.ordinal();
+    }
+
+    public static int index(DeliveryItemStatus status) {
+        return BordereauStatus.values().length + status.ordinal();
+    }
+
+    public long[] getCounts() {
+        long[] counts = new long[METRICS];
+        counts[index(BordereauStatus.CREATED)] = bordereauxCreated;
+        counts[index(BordereauStatus.ASSIGNED)] = bordereauxAssigned;
+        counts[index(BordereauStatus.IN_TRANSIT)] = bordereauxInTransit;
+        counts[index(BordereauStatus.COMPLETED)] = bordereauxCompleted;
+        counts[index(DeliveryItemStatus.PENDING)] = itemsPending;
+        counts[index(DeliveryItemStatus.DELIVERED)] = itemsDelivered;
+        counts[index(DeliveryItemStatus.FAILED)] = itemsFailed;
+        return counts;
+    }
+
+    public void setCounts(long[] counts) {
+        bordereauxCreated = counts[index(BordereauStatus.CREATED)];
+        bordereauxAssigned = counts[index(BordereauStatus.ASSIGNED)];
+        bordereauxInTransit = counts[index(BordereauStatus.IN_TRANSIT)];
+        bordereauxCompleted = counts[index(BordereauStatus.COMPLETED)];
+        itemsPending = counts[index(DeliveryItemStatus.PENDING)];
+        itemsDelivered = counts[index(DeliveryItemStatus.DELIVERED)];
+        itemsFailed = counts[index(DeliveryItemStatus.FAILED)];
+    }
+}
@@ -0,0 +1,7 @@
+package ma.pharmachain.enums;
+
+public enum ScanReplayState {
+    RUNNING,
+    COMPLETED,
+    FAILED      // Stopped early, see error; scans applied before the failure stay applied
+}
@@ -0,0 +1,8 @@
+package ma.pharmachain.enums;
+
+public enum ScanTicketState {
+    PENDING,    // Journaled, not applied yet
+    APPLIED,    // Applied successfully
+    FAILED,     // Applied with an error
+    PROCESSED   // Applied, outcome unknown: older than the failures kept in the journal directory
+}
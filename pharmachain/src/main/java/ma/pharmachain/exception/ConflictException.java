@@ -0,0 +1,10 @@
+package ma.pharmachain.exception;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+@Data
+@AllArgsConstructor
+public class ConflictException extends RuntimeException {
+    private String message;
+}
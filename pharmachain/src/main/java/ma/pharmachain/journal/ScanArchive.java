@@ -0,0 +1,397 @@
+package ma.pharmachain.journal;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Long-term, append-only archive of applied scan payloads, kept to replay a time range after an incident.
+ * <p>
+ * One segment file and one index file per day ({@code 2024-08-22.seg}, {@code 2024-08-22.idx}).
+ * Records are buffered into blocks of timestamp (long, epoch millis) | length (int) | payload, and each
+ * block is deflated and appended to the segment when it reaches the block size or on {@link #flush()}.
+ * Index entry per block: first timestamp (long) | last timestamp (long) | offset (long) |
+ * compressed length (int) | uncompressed length (int) | record count (int) | crc32 of the compressed bytes (int).
+ * The index entry is written after its block, so a block without a complete entry is cut off on the next open.
+ * <p>
+ * Records of the block being filled are also appended to {@code pending.log} as crc32 (int) | timestamp | length |
+ * payload, forced to disk before {@link #append} returns when configured, and the file is emptied once their block
+ * is indexed. On open, its intact records are written to the archive, so a crash loses no appended record; one that
+ * was already indexed when the crash hit is archived twice.
+ */
+@Slf4j
+public class ScanArchive implements Closeable {
+
+    private static final int INDEX_ENTRY_BYTES = 3 * Long.BYTES + 4 * Integer.BYTES;
+    private static final int RECORD_HEADER_BYTES = Long.BYTES + Integer.BYTES;
+    private static final String SEGMENT_SUFFIX = ".seg";
+    private static final String INDEX_SUFFIX = ".idx";
+    private static final String PENDING_FILE = "pending.log";
+    private static final int PENDING_HEADER_BYTES = Integer.BYTES + RECORD_HEADER_BYTES;
+
+    private final Path directory;
+    private final int blockSize;
+    private final ZoneId zone;
+    private final boolean forceOnAppend;
+
+    private final FileChannel pending;
+    private final ByteArrayOutputStream block;
+    private final ByteBuffer recordHeader = ByteBuffer.allocate(RECORD_HEADER_BYTES);
+    private int blockRecords;
+    private long blockFirst;
+    private long blockLast;
+
+    private LocalDate day;
+    private FileChannel segment;
+    private FileChannel index;
+
+    public ScanArchive(Path directory, int blockSize, ZoneId zone) {
+        this(directory, blockSize, zone, true);
+    }
+
+    public ScanArchive(Path directory, int blockSize, ZoneId zone, boolean forceOnAppend) {
+        this.directory = directory;
+        this.blockSize = blockSize;
+        this.zone = zone;
+        this.forceOnAppend = forceOnAppend;
+        this.block = new ByteArrayOutputStream(blockSize + blockSize / 4);
+        try {
+            Files.createDirectories(directory);
+            pending = FileChannel.open(directory.resolve(PENDING_FILE), StandardOpenOption.CREATE,
+                    StandardOpenOption.READ, StandardOpenOption.WRITE);
+            recoverPending();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot open scan archive in " + directory, e);
+        }
+    }
+
+    /**
+     * Archive the records a crash left in the pending file; they all belong to one block, hence one day
+     */
+    private void recoverPending() throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate((int) pending.size());
+        while (buffer.hasRemaining()) {
+            if (pending.read(buffer, buffer.position()) < 0) {
+                break;
+            }
+        }
+        buffer.flip();
+        int recovered = 0;
+        while (buffer.remaining() >= PENDING_HEADER_BYTES) {
+            int expectedCrc = buffer.getInt();
+            int start = buffer.position();
+            long millis = buffer.getLong();
+            int length = buffer.getInt();
+            if (length < 0 || length > buffer.remaining()) {
+                break;
+            }
+            byte[] payload = new byte[length];
+            buffer.get(payload);
+            CRC32 crc = new CRC32();
+            crc.update(buffer.array(), start, RECORD_HEADER_BYTES + length);
+            if ((int) crc.getValue() != expectedCrc) {
+                break;
+            }
+            LocalDate recordDay = LocalDate.ofInstant(Instant.ofEpochMilli(millis), zone);
+            if (!recordDay.equals(day)) {
+                openDay(recordDay);
+            }
+            addToBlock(millis, payload);
+            recovered++;
+        }
+        if (recovered > 0) {
+            log.warn("Scan archive: recovered {} records left unflushed by the previous run", recovered);
+        }
+        // Writes the recovered block, or drops a torn record
+        flush();
+        pending.truncate(0);
+    }
+
+    /**
+     * Buffer a record into the current block; it is on disk (forced when configured) when this returns
+     */
+    public synchronized void append(Instant at, byte[] payload) {
+        LocalDate recordDay = LocalDate.ofInstant(at, zone);
+        if (!recordDay.equals(day)) {
+            flush();
+            openDay(recordDay);
+        }
+
+        long millis = at.toEpochMilli();
+        writePending(millis, payload);
+        addToBlock(millis, payload);
+        if (block.size() >= blockSize) {
+            flush();
+        }
+    }
+
+    private void writePending(long millis, byte[] payload) {
+        ByteBuffer record = ByteBuffer.allocate(PENDING_HEADER_BYTES + payload.length);
+        record.putInt(0).putLong(millis).putInt(payload.length).put(payload);
+        CRC32 crc = new CRC32();
+        crc.update(record.array(), Integer.BYTES, RECORD_HEADER_BYTES + payload.length);
+        record.putInt(0, (int) crc.getValue()).flip();
+        try {
+            long position = pending.size();
+            while (record.hasRemaining()) {
+                position += pending.write(record, position);
+            }
+            if (forceOnAppend) {
+                pending.force(false);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot write scan archive pending record", e);
+        }
+    }
+
+    private void addToBlock(long millis, byte[] payload) {
+        if (blockRecords == 0) {
+            blockFirst = millis;
+        }
+        blockLast = Math.max(blockLast, millis);
+        recordHeader.clear();
+        recordHeader.putLong(millis).putInt(payload.length);
+        block.write(recordHeader.array(), 0, RECORD_HEADER_BYTES);
+        block.write(payload, 0, payload.length);
+        blockRecords++;
+    }
+
+    /**
+     * Compress the pending records into a block and force it, then its index entry, to disk, then empty the
+     * pending file.
+     */
+    public synchronized void flush() {
+        if (blockRecords == 0) {
+            return;
+        }
+        byte[] raw = block.toByteArray();
+        byte[] compressed = deflate(raw);
+        CRC32 crc = new CRC32();
+        crc.update(compressed);
+        try {
+            long offset = segment.size();
+            segment.write(ByteBuffer.wrap(compressed), offset);
+            segment.force(false);
+
+            ByteBuffer entry = ByteBuffer.allocate(INDEX_ENTRY_BYTES)
+                    .putLong(blockFirst).putLong(blockLast).putLong(offset)
+                    .putInt(compressed.length).putInt(raw.length).putInt(blockRecords).putInt((int) crc.getValue())
+                    .flip();
+            index.write(entry, index.size());
+            index.force(false);
+
+            pending.truncate(0);
+            pending.force(false);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot write scan archive block for " + day, e);
+        }
+        block.reset();
+        blockRecords = 0;
+        blockLast = 0;
+    }
+
+    private void openDay(LocalDate recordDay) {
+        closeDay();
+        try {
+            index = FileChannel.open(indexPath(recordDay), StandardOpenOption.CREATE,
+                    StandardOpenOption.READ, StandardOpenOption.WRITE);
+            segment = FileChannel.open(segmentPath(recordDay), StandardOpenOption.CREATE,
+                    StandardOpenOption.READ, StandardOpenOption.WRITE);
+
+            // Drop a torn index entry and any block written after the last complete one
+            long entries = index.size() / INDEX_ENTRY_BYTES;
+            index.truncate(entries * INDEX_ENTRY_BYTES);
+            long end = 0;
+            if (entries > 0) {
+                ByteBuffer last = ByteBuffer.allocate(INDEX_ENTRY_BYTES);
+                index.read(last, (entries - 1) * INDEX_ENTRY_BYTES);
+                end = last.getLong(2 * Long.BYTES) + last.getInt(3 * Long.BYTES);
+            }
+            if (segment.size() > end) {
+                log.warn("Scan archive {}: dropping {} bytes after the last indexed block",
+                        recordDay, segment.size() - end);
+                segment.truncate(end);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot open scan archive segment for " + recordDay, e);
+        }
+        day = recordDay;
+    }
+
+    /**
+     * Records with {@code from <= timestamp < to}, oldest block first and in append order within a block.
+     * Only sees flushed blocks.
+     */
+    public void read(Instant from, Instant to, Consumer<Entry> consumer) {
+        long fromMillis = from.toEpochMilli();
+        long toMillis = to.toEpochMilli();
+        for (LocalDate d = LocalDate.ofInstant(from, zone); !d.isAfter(LocalDate.ofInstant(to, zone)); d = d.plusDays(1)) {
+            List<IndexEntry> entries = readIndex(d, fromMillis, toMillis);
+            if (entries.isEmpty()) {
+                continue;
+            }
+            try (FileChannel channel = FileChannel.open(segmentPath(d), StandardOpenOption.READ)) {
+                for (IndexEntry entry : entries) {
+                    ByteBuffer raw = readBlock(channel, entry, d);
+                    while (raw.hasRemaining()) {
+                        long millis = raw.getLong();
+                        byte[] payload = new byte[raw.getInt()];
+                        raw.get(payload);
+                        if (millis >= fromMillis && millis < toMillis) {
+                            consumer.accept(new Entry(Instant.ofEpochMilli(millis), payload));
+                        }
+                    }
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException("Cannot read scan archive segment for " + d, e);
+            }
+        }
+    }
+
+    /**
+     * Records in the blocks overlapping the range, read from the indexes only; an upper bound of
+     * what {@link #read} returns, since the first and last block can straddle the bounds.
+     */
+    public long count(Instant from, Instant to) {
+        long count = 0;
+        for (LocalDate d = LocalDate.ofInstant(from, zone); !d.isAfter(LocalDate.ofInstant(to, zone)); d = d.plusDays(1)) {
+            for (IndexEntry entry : readIndex(d, from.toEpochMilli(), to.toEpochMilli())) {
+                count += entry.records();
+            }
+        }
+        return count;
+    }
+
+    private List<IndexEntry> readIndex(LocalDate d, long fromMillis, long toMillis) {
+        Path path = indexPath(d);
+        if (!Files.exists(path)) {
+            return List.of();
+        }
+        List<IndexEntry> entries = new ArrayList<>();
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long count = channel.size() / INDEX_ENTRY_BYTES;
+            ByteBuffer buffer = ByteBuffer.allocate((int) (count * INDEX_ENTRY_BYTES));
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer, buffer.position()) < 0) {
+                    throw new IOException("Scan archive index for " + d + " shrank while reading");
+                }
+            }
+            buffer.flip();
+            for (long i = 0; i < count; i++) {
+                IndexEntry entry = new IndexEntry(buffer.getLong(), buffer.getLong(), buffer.getLong(),
+                        buffer.getInt(), buffer.getInt(), buffer.getInt(), buffer.getInt());
+                if (entry.last() >= fromMillis && entry.first() < toMillis) {
+                    entries.add(entry);
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot read scan archive index for " + d, e);
+        }
+        return entries;
+    }
+
+    private static ByteBuffer readBlock(FileChannel channel, IndexEntry entry, LocalDate d) throws IOException {
+        ByteBuffer compressed = ByteBuffer.allocate(entry.compressedLength());
+        while (compressed.hasRemaining()) {
+            if (channel.read(compressed, entry.offset() + compressed.position()) < 0) {
+                throw new IOException("Scan archive " + d + " truncated at offset " + entry.offset());
+            }
+        }
+        CRC32 crc = new CRC32();
+        crc.update(compressed.array());
+        if ((int) crc.getValue() != entry.crc()) {
+            throw new IOException("Scan archive " + d + " block at offset " + entry.offset() + " is corrupt");
+        }
+
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(compressed.array());
+            byte[] raw = new byte[entry.rawLength()];
+            int length = 0;
+            while (length < raw.length && !inflater.finished()) {
+                length += inflater.inflate(raw, length, raw.length - length);
+            }
+            return ByteBuffer.wrap(raw, 0, length);
+        } catch (DataFormatException e) {
+            throw new IOException("Scan archive " + d + " block at offset " + entry.offset() + " is corrupt", e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    private static byte[] deflate(byte[] raw) {
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION);
+        try {
+            deflater.setInput(raw);
+            deflater.finish();
+            ByteArrayOutputStream out = new ByteArrayOutputStream(raw.length / 4 + 64);
+            byte[] chunk = new byte[8192];
+            while (!deflater.finished()) {
+                out.write(chunk, 0, deflater.deflate(chunk));
+            }
+            return out.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private Path segmentPath(LocalDate d) {
+        return directory.resolve(d + SEGMENT_SUFFIX);
+    }
+
+    private Path indexPath(LocalDate d) {
+        return directory.resolve(d + INDEX_SUFFIX);
+    }
+
+    private void closeDay() {
+        try {
+            if (segment != null) {
+                segment.close();
+            }
+            if (index != null) {
+                index.close();
+            }
+        } catch (IOException e) {
+            log.warn("Cannot close scan archive files for {}: {}", day, e.getMessage());
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        flush();
+        closeDay();
+        try {
+            pending.close();
+        } catch (IOException e) {
+            log.warn("Cannot close scan archive pending file: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * An archived scan payload and when it was applied
+     */
+    public record Entry(Instant at, byte[] payload) {
+    }
+
+    private record IndexEntry(long first, long last, long offset, int compressedLength, int rawLength,
+                              int records, int crc) {
+    }
+}
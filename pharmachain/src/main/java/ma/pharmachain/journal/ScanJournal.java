@@ -0,0 +1,253 @@
+package ma.pharmachain.journal;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Durable append-only journal of scan payloads, stored in fixed-size memory-mapped segment files.
+ * <p>
+ * Record layout: length (int) | ticket (long) | crc32 (int) | payload. The length is written last,
+ * so a torn append is never read back; a zero length marks the end of a segment.
+ * A small checkpoint file records the position and ticket of the last applied record.
+ */
+@Slf4j
+public class ScanJournal implements Closeable {
+
+    private static final int HEADER_BYTES = Integer.BYTES + Long.BYTES + Integer.BYTES;
+    private static final int CHECKPOINT_BYTES = Long.BYTES + Long.BYTES + Long.BYTES;
+    private static final String SEGMENT_SUFFIX = ".journal";
+
+    private final Path directory;
+    private final int segmentSize;
+    private final boolean forceOnAppend;
+
+    private final MappedByteBuffer checkpoint;
+    private long readSegment;
+    private int readOffset;
+    private long appliedTicket;
+
+    private long writeSegment;
+    private MappedByteBuffer writeBuffer;
+    private long lastTicket;
+
+    public ScanJournal(Path directory, int segmentSize, boolean forceOnAppend) {
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.forceOnAppend = forceOnAppend;
+        try {
+            Files.createDirectories(directory);
+            checkpoint = map(directory.resolve("checkpoint"), CHECKPOINT_BYTES);
+            readSegment = checkpoint.getLong(0);
+            readOffset = (int) checkpoint.getLong(Long.BYTES);
+            appliedTicket = checkpoint.getLong(2 * Long.BYTES);
+            recover();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot open scan journal in " + directory, e);
+        }
+    }
+
+    /**
+     * Re-open the segments left by the previous run and position the writer after the last intact record.
+     */
+    private void recover() throws IOException {
+        List<Long> segments = listSegments();
+        lastTicket = appliedTicket;
+        writeSegment = segments.isEmpty() ? readSegment : Math.max(readSegment, segments.get(segments.size() - 1));
+
+        for (long segment = readSegment; segment <= writeSegment; segment++) {
+            MappedByteBuffer buffer = map(segmentPath(segment), segmentSize);
+            int offset = segment == readSegment ? readOffset : 0;
+            Record record;
+            while ((record = readRecord(buffer, segment, offset)) != null) {
+                lastTicket = Math.max(lastTicket, record.ticket());
+                offset = record.nextOffset();
+            }
+            if (segment == writeSegment) {
+                writeBuffer = buffer;
+                writeBuffer.position(offset);
+            }
+        }
+        log.info("Scan journal opened at {}: applied ticket {}, last ticket {}", directory, appliedTicket, lastTicket);
+    }
+
+    /**
+     * Append a payload and return its ticket; the record is forced to disk before returning when configured.
+     */
+    public synchronized long append(byte[] payload) {
+        int recordSize = HEADER_BYTES + payload.length;
+        if (recordSize + Integer.BYTES > segmentSize) {
+            throw new IllegalArgumentException("Scan payload of " + payload.length + " bytes exceeds journal segment size");
+        }
+        if (writeBuffer.remaining() < recordSize + Integer.BYTES) {
+            roll();
+        }
+
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        long ticket = lastTicket + 1;
+        int start = writeBuffer.position();
+
+        writeBuffer.putLong(start + Integer.BYTES, ticket);
+        writeBuffer.putInt(start + Integer.BYTES + Long.BYTES, (int) crc.getValue());
+        writeBuffer.put(start + HEADER_BYTES, payload);
+        writeBuffer.putInt(start, payload.length);
+        writeBuffer.position(start + recordSize);
+        if (forceOnAppend) {
+            writeBuffer.force(start, recordSize);
+        }
+
+        lastTicket = ticket;
+        return ticket;
+    }
+
+    private void roll() {
+        writeSegment++;
+        try {
+            writeBuffer = map(segmentPath(writeSegment), segmentSize);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot create scan journal segment " + writeSegment, e);
+        }
+    }
+
+    /**
+     * Records after the checkpoint, oldest first; the checkpoint only moves on {@link #commit(Record)}.
+     */
+    public synchronized List<Record> read(int max) {
+        List<Record> records = new ArrayList<>();
+        long segment = readSegment;
+        int offset = readOffset;
+        try {
+            MappedByteBuffer buffer = segment == writeSegment ? writeBuffer : map(segmentPath(segment), segmentSize);
+            while (records.size() < max) {
+                Record record = readRecord(buffer, segment, offset);
+                if (record == null) {
+                    if (segment >= writeSegment) {
+                        break;
+                    }
+                    segment++;
+                    offset = 0;
+                    buffer = segment == writeSegment ? writeBuffer : map(segmentPath(segment), segmentSize);
+                    continue;
+                }
+                records.add(record);
+                offset = record.nextOffset();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot read scan journal segment " + segment, e);
+        }
+        return records;
+    }
+
+    /**
+     * Mark every record up to and including {@code record} as applied and drop fully drained segments.
+     */
+    public synchronized void commit(Record record) {
+        readSegment = record.segment();
+        readOffset = record.nextOffset();
+        appliedTicket = record.ticket();
+
+        checkpoint.putLong(0, readSegment);
+        checkpoint.putLong(Long.BYTES, readOffset);
+        checkpoint.putLong(2 * Long.BYTES, appliedTicket);
+        checkpoint.force();
+
+        try {
+            for (long segment : listSegments()) {
+                if (segment < readSegment) {
+                    Files.deleteIfExists(segmentPath(segment));
+                }
+            }
+        } catch (IOException e) {
+            log.warn("Cannot delete drained scan journal segments: {}", e.getMessage());
+        }
+    }
+
+    public synchronized long getLastTicket() {
+        return lastTicket;
+    }
+
+    public synchronized long getAppliedTicket() {
+        return appliedTicket;
+    }
+
+    /**
+     * Records appended but not yet applied
+     */
+    public synchronized long lag() {
+        return lastTicket - appliedTicket;
+    }
+
+    /**
+     * Bytes appended but not yet applied
+     */
+    public synchronized long lagBytes() {
+        return (writeSegment - readSegment) * segmentSize + writeBuffer.position() - readOffset;
+    }
+
+    private Record readRecord(MappedByteBuffer buffer, long segment, int offset) {
+        if (offset + HEADER_BYTES > segmentSize) {
+            return null;
+        }
+        int length = buffer.getInt(offset);
+        if (length <= 0 || offset + HEADER_BYTES + length > segmentSize) {
+            return null;
+        }
+        long ticket = buffer.getLong(offset + Integer.BYTES);
+        int expectedCrc = buffer.getInt(offset + Integer.BYTES + Long.BYTES);
+        byte[] payload = new byte[length];
+        buffer.get(offset + HEADER_BYTES, payload);
+
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        if ((int) crc.getValue() != expectedCrc) {
+            log.warn("Scan journal segment {} truncated at offset {} (checksum mismatch)", segment, offset);
+            return null;
+        }
+        return new Record(ticket, payload, segment, offset + HEADER_BYTES + length);
+    }
+
+    private List<Long> listSegments() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.map(path -> path.getFileName().toString())
+                    .filter(name -> name.endsWith(SEGMENT_SUFFIX))
+                    .map(name -> Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length())))
+                    .sorted()
+                    .toList();
+        }
+    }
+
+    private Path segmentPath(long segment) {
+        return directory.resolve(String.format("%020d%s", segment, SEGMENT_SUFFIX));
+    }
+
+    private static MappedByteBuffer map(Path path, int size) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            return channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        writeBuffer.force();
+        checkpoint.force();
+    }
+
+    /**
+     * A journal record and the position right after it
+     */
+    public record Record(long ticket, byte[] payload, long segment, int nextOffset) {
+    }
+}
@@ -0,0 +1,164 @@
+package ma.pharmachain.journal;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * Outcome of the journaled scans that failed, kept next to the journal so a ticket still reads FAILED after a
+ * restart. Scans that succeeded are not recorded: a drained ticket with no failure was applied.
+ * <p>
+ * Record layout: crc32 (int) | ticket (long) | length (int) | payload, appended and forced before the journal
+ * checkpoint moves past the ticket. Only the latest {@code retained} failures are kept; the outcome of a ticket
+ * up to {@link #getUnknownThrough()} is unknown, because its failure may have been dropped or, for a journal
+ * drained before this file existed, never recorded. A torn record at the end is cut off on open, and the file is
+ * rewritten with the retained failures when it holds more.
+ */
+@Slf4j
+public class TicketFailureLog implements Closeable {
+
+    private static final int HEADER_BYTES = Integer.BYTES + Long.BYTES + Integer.BYTES;
+    private static final String FILE = "failures.log";
+
+    private final Path file;
+    private final int retained;
+    private final Map<Long, byte[]> failures = new LinkedHashMap<>();
+    private final ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+    private FileChannel channel;
+    private long unknownThrough;
+
+    /**
+     * @param appliedTicket last ticket the journal checkpoint moved past
+     */
+    public TicketFailureLog(Path directory, int retained, long appliedTicket) {
+        this.file = directory.resolve(FILE);
+        this.retained = retained;
+        try {
+            if (Files.exists(file)) {
+                boolean trimmed = load();
+                if (trimmed) {
+                    compact();
+                }
+            } else {
+                unknownThrough = appliedTicket;
+            }
+            channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.APPEND);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot open ticket failure log " + file, e);
+        }
+    }
+
+    /**
+     * Reads the intact records and cuts a torn one off; true when records were dropped or cut
+     */
+    private boolean load() throws IOException {
+        byte[] bytes = Files.readAllBytes(file);
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        while (buffer.remaining() >= HEADER_BYTES) {
+            int start = buffer.position();
+            int crc = buffer.getInt();
+            long ticket = buffer.getLong();
+            int length = buffer.getInt();
+            if (length < 0 || length > buffer.remaining()) {
+                buffer.position(start);
+                break;
+            }
+            byte[] payload = new byte[length];
+            buffer.get(payload);
+            if (crc != crcOf(ticket, payload)) {
+                buffer.position(start);
+                break;
+            }
+            put(ticket, payload);
+        }
+        if (buffer.hasRemaining()) {
+            log.warn("Ticket failure log {} cut at byte {} of {}", file, buffer.position(), bytes.length);
+            return true;
+        }
+        return unknownThrough > 0;
+    }
+
+    private void compact() throws IOException {
+        Path rewritten = file.resolveSibling(FILE + ".tmp");
+        try (FileChannel out = FileChannel.open(rewritten, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            for (Map.Entry<Long, byte[]> failure : failures.entrySet()) {
+                write(out, failure.getKey(), failure.getValue());
+            }
+            out.force(true);
+        }
+        Files.move(rewritten, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Record a failed ticket; it is on disk once this returns
+     */
+    public synchronized void append(long ticket, byte[] payload) {
+        try {
+            write(channel, ticket, payload);
+            channel.force(false);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot append to ticket failure log " + file, e);
+        }
+        put(ticket, payload);
+    }
+
+    /**
+     * Payload recorded for a failed ticket, or null
+     */
+    public synchronized byte[] get(long ticket) {
+        return failures.get(ticket);
+    }
+
+    public synchronized long getUnknownThrough() {
+        return unknownThrough;
+    }
+
+    private void put(long ticket, byte[] payload) {
+        // A ticket applied again after a crash before the checkpoint keeps its latest outcome
+        failures.remove(ticket);
+        failures.put(ticket, payload);
+        if (failures.size() > retained) {
+            Map.Entry<Long, byte[]> eldest = failures.entrySet().iterator().next();
+            unknownThrough = Math.max(unknownThrough, eldest.getKey());
+            failures.remove(eldest.getKey());
+        }
+    }
+
+    private void write(FileChannel out, long ticket, byte[] payload) throws IOException {
+        header.clear();
+        header.putInt(crcOf(ticket, payload)).putLong(ticket).putInt(payload.length).flip();
+        ByteBuffer record = ByteBuffer.allocate(HEADER_BYTES + payload.length).put(header).put(payload).flip();
+        while (record.hasRemaining()) {
+            out.write(record);
+        }
+    }
+
+    private static int crcOf(long ticket, byte[] payload) {
+        CRC32 crc = new CRC32();
+        crc.update(ByteBuffer.allocate(Long.BYTES).putLong(0, ticket));
+        crc.update(payload);
+        return (int) crc.getValue();
+    }
+
+    @Override
+    public synchronized void close() {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            log.warn("Cannot close ticket failure log {}: {}", file, e.getMessage());
+        }
+    }
+}
@@ -1,10 +1,18 @@
 package ma.pharmachain.repository;
 
+import ma.pharmachain.dto.BordereauSummary;
 import ma.pharmachain.entity.*;
 import ma.pharmachain.enums.BordereauStatus;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.jpa.repository.EntityGraph;
+import org.springframework.data.jpa.domain.Specification;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.time.LocalDate;
@@ -12,23 +20,66 @@ import java.util.List;
 import java.util.Optional;
 
 @Repository
-public interface BordereauRepository extends JpaRepository<Bordereau, String> {
+public interface BordereauRepository extends JpaRepository<Bordereau, String>, JpaSpecificationExecutor<Bordereau>,
+        BordereauRepositoryCustom {
+
+    String SUMMARY_SELECT = "select new ma.pharmachain.dto.BordereauSummary(b.bordereauNumber, b.deliveryDate, "
+            + "cd.code, od.code, s.code, b.status, b.scannedAt, b.completedAt, b.autoCreated) "
+            + "from Bordereau b left join b.currentDriver cd left join b.originalDriver od left join b.secteur s ";
+    String SUMMARY_KEYSET_ORDER = " order by b.deliveryDate desc, b.bordereauNumber desc";
 
     // GET /bordereaux - list all with pagination
     Page<Bordereau> findAll(Pageable pageable);
 
-    // GET /bordereaux/{bordereauNumber} - single lookup
+    // GET /bordereaux - list rows with driver and secteur codes joined in: one data and one count statement
+    @Query(value = SUMMARY_SELECT, countQuery = "select count(b) from Bordereau b")
+    Page<BordereauSummary> findSummaries(Pageable pageable);
+
+    // ?withTotal=false - size + 1 rows decide hasNext, no count statement
+    @Query(SUMMARY_SELECT)
+    Slice<BordereauSummary> findSummarySlice(Pageable pageable);
+
+    // GET /bordereaux?after= - keyset pages on idx_bordereau_delivery_date_number, newest first.
+    // Undated bordereaux sort first (NULLS FIRST for desc in Postgres) and are not matched by the row comparison.
+    @Query(SUMMARY_SELECT + SUMMARY_KEYSET_ORDER)
+    List<BordereauSummary> findSummariesFirst(Limit limit);
+
+    @Query(SUMMARY_SELECT + "where (b.deliveryDate, b.bordereauNumber) < (:deliveryDate, :bordereauNumber)"
+            + SUMMARY_KEYSET_ORDER)
+    List<BordereauSummary> findSummariesAfter(@Param("deliveryDate") LocalDate deliveryDate,
+                                              @Param("bordereauNumber") String bordereauNumber, Limit limit);
+
+    @Query(SUMMARY_SELECT + "where b.deliveryDate is not null "
+            + "or (b.deliveryDate is null and b.bordereauNumber < :bordereauNumber)" + SUMMARY_KEYSET_ORDER)
+    List<BordereauSummary> findSummariesAfterUndated(@Param("bordereauNumber") String bordereauNumber, Limit limit);
+
+    // GET /bordereaux/search - BordereauSpecifications filters, drivers and secteur fetched for the summary rows
+    @EntityGraph(Bordereau.ASSIGNMENTS_GRAPH)
+    Page<Bordereau> findAll(Specification<Bordereau> spec, Pageable pageable);
+
+    // POST /bordereaux/scan, POST /transfers - single lookup with drivers and secteur
+    @EntityGraph(Bordereau.ASSIGNMENTS_GRAPH)
     Optional<Bordereau> findByBordereauNumber(String bordereauNumber);
 
+    // GET /bordereaux/{bordereauNumber} - drivers with their managers and secteur, all rendered as objects
+    @EntityGraph(attributePaths = {"currentDriver.assignedManager", "originalDriver.assignedManager", "secteur"})
+    Optional<Bordereau> findDetailedByBordereauNumber(String bordereauNumber);
+
     // POST /bordereaux/scan - existence check for upsert logic
     boolean existsByBordereauNumber(String bordereauNumber);
 
     // DELETE /bordereaux/{bordereauNumber}
     void deleteByBordereauNumber(String bordereauNumber);
 
-
+    // GET /drivers/{code}/bordereaux - with drivers and secteur, items loaded by the caller in one more query
+    @EntityGraph(Bordereau.ASSIGNMENTS_GRAPH)
     List<Bordereau> findByCurrentDriver_Code(String code);
 
-    // GET /managers/{code}/bordereaux - list bordereaux for manager
+    // GET /drivers/me/day-sheet - one delivery date, same fetch plan
+    @EntityGraph(Bordereau.ASSIGNMENTS_GRAPH)
+    List<Bordereau> findByCurrentDriver_CodeAndDeliveryDateOrderByBordereauNumber(String code, LocalDate deliveryDate);
+
+    // GET /managers/{code}/bordereaux - list bordereaux for manager, same fetch plan
+    @EntityGraph(Bordereau.ASSIGNMENTS_GRAPH)
     List<Bordereau> findBySecteur_Code(String managerCode);
 }
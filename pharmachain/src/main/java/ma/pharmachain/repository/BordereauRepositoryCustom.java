@@ -0,0 +1,51 @@
+package ma.pharmachain.repository;
+
+import ma.pharmachain.dto.VersionStamp;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.time.LocalDate;
+import java.util.Optional;
+import java.util.function.Consumer;
+
+public interface BordereauRepositoryCustom {
+
+    // POST /bordereaux/manifest - transaction-scoped staging table for the COPY load
+    void createManifestStaging();
+
+    // POST /bordereaux/manifest - COPY ... FROM STDIN of the CSV rows the writer emits, returns rows loaded
+    long copyManifestStaging(CopyWriter writer);
+
+    // POST /bordereaux/manifest - set-based merge steps, each returns the rows inserted or updated
+    int insertManifestDrivers();
+
+    int insertManifestManagers();
+
+    int insertManifestClients();
+
+    int upsertManifestBordereaux();
+
+    int upsertManifestDeliveryItems();
+
+    // POST /bordereaux/manifest - numbers written by the merge, for the existence filters
+    void forEachStagedManifestNumber(Consumer<String> bordereauNumbers, Consumer<String> blNumbers);
+
+    // GET /managers/{code}/bordereaux - ETag of the list: digest of every row and user code it serializes
+    VersionStamp findVersionStampBySecteurCode(String managerCode);
+
+    // GET /drivers/me/day-sheet - ETag of the sheet: digest of the date, the driver row and every bordereau, item
+    // and client it serializes; empty when the driver does not exist
+    Optional<VersionStamp> findDaySheetVersionStamp(String driverCode, LocalDate deliveryDate);
+
+    // GET /bordereaux/{bordereauNumber} - ETag of the response: digest of the row version and of the drivers, their
+    // managers and the secteur it serializes, users having no version column; empty when the bordereau does not exist
+    Optional<String> findEtagDigestByBordereauNumber(String bordereauNumber);
+
+    // Startup - stream every bordereau number into the existence filter
+    void forEachBordereauNumber(Consumer<String> action);
+
+    @FunctionalInterface
+    interface CopyWriter {
+        void writeTo(OutputStream out) throws IOException;
+    }
+}
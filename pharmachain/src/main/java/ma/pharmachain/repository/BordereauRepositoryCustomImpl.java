@@ -0,0 +1,258 @@
+package ma.pharmachain.repository;
+
+import lombok.RequiredArgsConstructor;
+import ma.pharmachain.dto.VersionStamp;
+import org.postgresql.PGConnection;
+import org.postgresql.copy.PGCopyOutputStream;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+
+import java.io.IOException;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.time.LocalDate;
+import java.util.Optional;
+import java.util.function.Consumer;
+
+@RequiredArgsConstructor
+public class BordereauRepositoryCustomImpl implements BordereauRepositoryCustom {
+
+    // Dropped at commit; line_no keeps the file order so the last line of a duplicated key wins
+    private static final String CREATE_STAGING_SQL = """
+            CREATE TEMP TABLE manifest_staging (
+                line_no          bigint NOT NULL,
+                bordereau_number varchar(255) NOT NULL,
+                delivery_date    date NOT NULL,
+                driver_code      varchar(255),
+                manager_code     varchar(255),
+                bl_number        varchar(255) NOT NULL,
+                client_code      varchar(255),
+                client_name      varchar(255),
+                client_address   varchar(255),
+                nombre_colis     integer,
+                nombre_sachets   integer
+            ) ON COMMIT DROP
+            """;
+
+    private static final String COPY_SQL = """
+            COPY manifest_staging (line_no, bordereau_number, delivery_date, driver_code, manager_code,
+                                   bl_number, client_code, client_name, client_address,
+                                   nombre_colis, nombre_sachets)
+            FROM STDIN WITH (FORMAT csv)
+            """;
+
+    // Same placeholders as UserRepositoryCustomImpl.insertIfAbsent; %1$s is the user type, %2$s its staging column
+    private static final String INSERT_USERS_SQL = """
+            INSERT INTO users (user_type, keycloak_user_id, username, code, is_active, created_at)
+            SELECT '%1$s', 'auto:' || lower('%1$s') || ':' || s.code, lower('%1$s') || '_' || s.code, s.code,
+                   true, now()
+            FROM (SELECT DISTINCT %2$s AS code FROM manifest_staging WHERE %2$s IS NOT NULL) s
+            ON CONFLICT (code) DO NOTHING
+            """;
+
+    // First line of a client wins, as in the scan path; existing clients are left untouched
+    private static final String INSERT_CLIENTS_SQL = """
+            INSERT INTO client (client_code, name, address, secteur_id, auto_created)
+            SELECT DISTINCT ON (s.client_code) s.client_code, s.client_name, s.client_address, m.id, true
+            FROM manifest_staging s
+            LEFT JOIN users m ON m.code = s.manager_code AND m.user_type = 'MANAGER'
+            WHERE s.client_code IS NOT NULL
+            ORDER BY s.client_code, s.line_no
+            ON CONFLICT (client_code) DO NOTHING
+            """;
+
+    // New bordereaux are auto-created; existing ones get the scan's date, driver and secteur.
+    // scan_fingerprint is left NULL so the next scan of these rows is treated as a change.
+    private static final String UPSERT_BORDEREAUX_SQL = """
+            INSERT INTO bordereau (bordereau_number, delivery_date, current_driver_id, original_driver_id,
+                                   secteur_id, status, scanned_at, auto_created)
+            SELECT DISTINCT ON (s.bordereau_number) s.bordereau_number, s.delivery_date, d.id, d.id, m.id,
+                   'CREATED', now(), true
+            FROM manifest_staging s
+            LEFT JOIN users d ON d.code = s.driver_code AND d.user_type = 'DRIVER'
+            LEFT JOIN users m ON m.code = s.manager_code AND m.user_type = 'MANAGER'
+            ORDER BY s.bordereau_number, s.line_no DESC
+            ON CONFLICT (bordereau_number) DO UPDATE SET
+                delivery_date = EXCLUDED.delivery_date,
+                current_driver_id = COALESCE(EXCLUDED.current_driver_id, bordereau.current_driver_id),
+                original_driver_id = COALESCE(EXCLUDED.original_driver_id, bordereau.original_driver_id),
+                secteur_id = COALESCE(EXCLUDED.secteur_id, bordereau.secteur_id),
+                scan_fingerprint = NULL,
+                version = bordereau.version + 1
+            """;
+
+    private static final String UPSERT_DELIVERY_ITEMS_SQL = """
+            INSERT INTO delivery_item (bordereau_bordereau_number, bl_number, client_client_code,
+                                       nombre_colis, nombre_sachets, status)
+            SELECT DISTINCT ON (s.bl_number) s.bordereau_number, s.bl_number, s.client_code,
+                   s.nombre_colis, s.nombre_sachets, 'PENDING'
+            FROM manifest_staging s
+            ORDER BY s.bl_number, s.line_no DESC
+            ON CONFLICT (bl_number) DO UPDATE SET
+                bordereau_bordereau_number = EXCLUDED.bordereau_bordereau_number,
+                client_client_code = COALESCE(EXCLUDED.client_client_code, delivery_item.client_client_code),
+                nombre_colis = EXCLUDED.nombre_colis,
+                nombre_sachets = EXCLUDED.nombre_sachets,
+                scan_fingerprint = NULL,
+                version = delivery_item.version + 1
+            """;
+
+    // One line per bordereau, in number order, with its version, the codes of its drivers and secteur, and its items
+    // with their client's version and secteur code: a bordereau swapped for another, an item moved or a user code
+    // changed all change the digest. The lateral join keeps each bordereau once however many items it has.
+    private static final String VERSION_STAMP_SQL = """
+            SELECT count(*),
+                   md5(coalesce(string_agg(format('%s:%s:%s:%s:%s[%s]', b.bordereau_number, b.version, cd.code,
+                                                  od.code, m.code, items.state), ';' ORDER BY b.bordereau_number), ''))
+            FROM bordereau b
+            JOIN users m ON m.id = b.secteur_id
+            LEFT JOIN users cd ON cd.id = b.current_driver_id
+            LEFT JOIN users od ON od.id = b.original_driver_id
+            LEFT JOIN LATERAL (
+                SELECT string_agg(format('%s:%s:%s:%s:%s', i.id, i.version, c.client_code, c.version, cm.code),
+                                  ',' ORDER BY i.id) AS state
+                FROM delivery_item i
+                LEFT JOIN client c ON c.client_code = i.client_client_code
+                LEFT JOIN users cm ON cm.id = c.secteur_id
+                WHERE i.bordereau_bordereau_number = b.bordereau_number
+            ) items ON true
+            WHERE m.code = ?
+            """;
+
+    // The manager list's line per bordereau, for the driver's bordereaux of the date, after the date and the driver
+    // row with its manager's code. Grouped by the driver, so an unknown code gives no row and an empty day one row.
+    private static final String DAY_SHEET_STAMP_SQL = """
+            SELECT count(b.bordereau_number),
+                   md5(format('%s|%s|%s|%s', ?::date, d, dm.code,
+                              coalesce(string_agg(format('%s:%s:%s:%s[%s]', b.bordereau_number, b.version, od.code,
+                                                         m.code, items.state), ';' ORDER BY b.bordereau_number), '')))
+            FROM users d
+            LEFT JOIN users dm ON dm.id = d.assigned_manager_id
+            LEFT JOIN bordereau b ON b.current_driver_id = d.id AND b.delivery_date = ?
+            LEFT JOIN users od ON od.id = b.original_driver_id
+            LEFT JOIN users m ON m.id = b.secteur_id
+            LEFT JOIN LATERAL (
+                SELECT string_agg(format('%s:%s:%s:%s:%s', i.id, i.version, c.client_code, c.version, cm.code),
+                                  ',' ORDER BY i.id) AS state
+                FROM delivery_item i
+                LEFT JOIN client c ON c.client_code = i.client_client_code
+                LEFT JOIN users cm ON cm.id = c.secteur_id
+                WHERE i.bordereau_bordereau_number = b.bordereau_number
+            ) items ON true
+            WHERE d.code = ? AND d.user_type = 'DRIVER'
+            GROUP BY d.id, dm.id
+            """;
+
+    // Whole user rows: every column of the drivers, their managers and the secteur is in the response, and a
+    // missing one renders as ''
+    private static final String ETAG_DIGEST_SQL = """
+            SELECT md5(format('%s|%s|%s|%s|%s|%s', b.version, cd, od, m, cdm, odm))
+            FROM bordereau b
+            LEFT JOIN users cd ON cd.id = b.current_driver_id
+            LEFT JOIN users od ON od.id = b.original_driver_id
+            LEFT JOIN users m ON m.id = b.secteur_id
+            LEFT JOIN users cdm ON cdm.id = cd.assigned_manager_id
+            LEFT JOIN users odm ON odm.id = od.assigned_manager_id
+            WHERE b.bordereau_number = ?
+            """;
+
+    private static final int COPY_BUFFER_SIZE = 1 << 16;
+    // Rows per round trip when streaming numbers (PostgreSQL only uses a cursor inside a transaction)
+    private static final int STREAM_FETCH_SIZE = 10_000;
+
+    private final JdbcTemplate jdbcTemplate;
+
+    @Override
+    public void createManifestStaging() {
+        jdbcTemplate.execute(CREATE_STAGING_SQL);
+    }
+
+    @Override
+    public long copyManifestStaging(CopyWriter writer) {
+        // Runs on the transaction's connection so the merge sees the staged rows
+        Long rows = jdbcTemplate.execute((ConnectionCallback<Long>) connection -> {
+            PGCopyOutputStream out = new PGCopyOutputStream(
+                    connection.unwrap(PGConnection.class), COPY_SQL, COPY_BUFFER_SIZE);
+            try {
+                writer.writeTo(out);
+                return out.endCopy();
+            } catch (IOException | RuntimeException e) {
+                // Leave the connection usable for the rollback
+                if (out.isActive()) {
+                    out.cancelCopy();
+                }
+                if (e instanceof RuntimeException runtimeException) {
+                    throw runtimeException;
+                }
+                throw new DataAccessResourceFailureException("Manifest COPY failed: " + e.getMessage(), e);
+            }
+        });
+        return rows != null ? rows : 0;
+    }
+
+    @Override
+    public int insertManifestDrivers() {
+        return jdbcTemplate.update(INSERT_USERS_SQL.formatted("DRIVER", "driver_code"));
+    }
+
+    @Override
+    public int insertManifestManagers() {
+        return jdbcTemplate.update(INSERT_USERS_SQL.formatted("MANAGER", "manager_code"));
+    }
+
+    @Override
+    public int insertManifestClients() {
+        return jdbcTemplate.update(INSERT_CLIENTS_SQL);
+    }
+
+    @Override
+    public int upsertManifestBordereaux() {
+        return jdbcTemplate.update(UPSERT_BORDEREAUX_SQL);
+    }
+
+    @Override
+    public int upsertManifestDeliveryItems() {
+        return jdbcTemplate.update(UPSERT_DELIVERY_ITEMS_SQL);
+    }
+
+    @Override
+    public void forEachStagedManifestNumber(Consumer<String> bordereauNumbers, Consumer<String> blNumbers) {
+        stream("SELECT DISTINCT bordereau_number FROM manifest_staging", bordereauNumbers);
+        stream("SELECT DISTINCT bl_number FROM manifest_staging", blNumbers);
+    }
+
+    @Override
+    public VersionStamp findVersionStampBySecteurCode(String managerCode) {
+        return jdbcTemplate.queryForObject(VERSION_STAMP_SQL,
+                (rs, rowNum) -> new VersionStamp(rs.getLong(1), rs.getString(2)), managerCode);
+    }
+
+    @Override
+    public Optional<VersionStamp> findDaySheetVersionStamp(String driverCode, LocalDate deliveryDate) {
+        Date date = Date.valueOf(deliveryDate);
+        return jdbcTemplate.query(DAY_SHEET_STAMP_SQL,
+                (rs, rowNum) -> new VersionStamp(rs.getLong(1), rs.getString(2)), date, date, driverCode)
+                .stream()
+                .findFirst();
+    }
+
+    @Override
+    public Optional<String> findEtagDigestByBordereauNumber(String bordereauNumber) {
+        return jdbcTemplate.queryForList(ETAG_DIGEST_SQL, String.class, bordereauNumber).stream().findFirst();
+    }
+
+    @Override
+    public void forEachBordereauNumber(Consumer<String> action) {
+        stream("SELECT bordereau_number FROM bordereau", action);
+    }
+
+    private void stream(String sql, Consumer<String> action) {
+        jdbcTemplate.query(connection -> {
+            PreparedStatement statement = connection.prepareStatement(sql);
+            statement.setFetchSize(STREAM_FETCH_SIZE);
+            return statement;
+        }, (RowCallbackHandler) rs -> action.accept(rs.getString(1)));
+    }
+}
@@ -0,0 +1,72 @@
+package ma.pharmachain.repository;
+
+import ma.pharmachain.entity.Bordereau;
+import ma.pharmachain.entity.Driver;
+import ma.pharmachain.entity.Manager;
+import ma.pharmachain.enums.BordereauStatus;
+import org.springframework.data.jpa.domain.Specification;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Filters of GET /bordereaux/search. Drivers and secteurs are compared as references, so the
+ * predicates stay on the bordereau's foreign key columns and each combination has a leading index column:
+ * <ul>
+ *     <li>secteur (+ dates, status): idx_bordereau_secteur_delivery_date</li>
+ *     <li>driver (+ status, dates): idx_bordereau_current_driver_status</li>
+ *     <li>status (+ dates): idx_bordereau_status_delivery_date</li>
+ *     <li>dates only, or no filter: idx_bordereau_delivery_date_number, which also serves the sort</li>
+ * </ul>
+ */
+public final class BordereauSpecifications {
+
+    private BordereauSpecifications() {
+    }
+
+    /**
+     * All given filters combined with AND; null arguments are left out
+     */
+    public static Specification<Bordereau> matching(BordereauStatus status, LocalDate deliveryDateFrom,
+                                                    LocalDate deliveryDateTo, Driver currentDriver,
+                                                    Manager secteur) {
+        List<Specification<Bordereau>> filters = new ArrayList<>();
+        if (status != null) {
+            filters.add(hasStatus(status));
+        }
+        if (deliveryDateFrom != null) {
+            filters.add(deliveredOnOrAfter(deliveryDateFrom));
+        }
+        if (deliveryDateTo != null) {
+            filters.add(deliveredOnOrBefore(deliveryDateTo));
+        }
+        if (currentDriver != null) {
+            filters.add(hasCurrentDriver(currentDriver));
+        }
+        if (secteur != null) {
+            filters.add(inSecteur(secteur));
+        }
+        return Specification.allOf(filters);
+    }
+
+    public static Specification<Bordereau> hasStatus(BordereauStatus status) {
+        return (root, query, cb) -> cb.equal(root.get("status"), status);
+    }
+
+    public static Specification<Bordereau> deliveredOnOrAfter(LocalDate date) {
+        return (root, query, cb) -> cb.greaterThanOrEqualTo(root.get("deliveryDate"), date);
+    }
+
+    public static Specification<Bordereau> deliveredOnOrBefore(LocalDate date) {
+        return (root, query, cb) -> cb.lessThanOrEqualTo(root.get("deliveryDate"), date);
+    }
+
+    public static Specification<Bordereau> hasCurrentDriver(Driver driver) {
+        return (root, query, cb) -> cb.equal(root.get("currentDriver"), driver);
+    }
+
+    public static Specification<Bordereau> inSecteur(Manager secteur) {
+        return (root, query, cb) -> cb.equal(root.get("secteur"), secteur);
+    }
+}
@@ -1,19 +1,32 @@
 package ma.pharmachain.repository;
 
+import ma.pharmachain.dto.TransferSummary;
 import ma.pharmachain.entity.Bordereau;
 import ma.pharmachain.entity.BordereauTransfer;
 import ma.pharmachain.entity.Driver;
 import ma.pharmachain.enums.TransferStatus;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Optional;
 
 @Repository
 public interface BordereauTransferRepository extends JpaRepository<BordereauTransfer, Long> {
+
+    String SUMMARY_SELECT = "select new ma.pharmachain.dto.TransferSummary(t.id, t.bordereau.bordereauNumber, "
+            + "fd.code, td.code, t.transferredAt, t.transferBarcode, t.reason, t.status) "
+            + "from BordereauTransfer t left join t.fromDriver fd left join t.toDriver td ";
+    String SUMMARY_KEYSET_ORDER = " order by t.transferredAt desc, t.id desc";
+
     List<BordereauTransfer> findByBordereau(Bordereau bordereau);
     List<BordereauTransfer> findByFromDriver(Driver fromDriver);
     List<BordereauTransfer> findByToDriver(Driver toDriver);
@@ -25,7 +38,26 @@ public interface BordereauTransferRepository extends JpaRepository<BordereauTran
     // GET /transfers - list all with pagination
     Page<BordereauTransfer> findAll(Pageable pageable);
 
-    // GET /transfers/{id} - single lookup
+    // GET /transfers - list rows with driver codes joined in: one data and one count statement
+    @Query(value = SUMMARY_SELECT, countQuery = "select count(t) from BordereauTransfer t")
+    Page<TransferSummary> findSummaries(Pageable pageable);
+
+    // ?withTotal=false - size + 1 rows decide hasNext, no count statement
+    @Query(SUMMARY_SELECT)
+    Slice<TransferSummary> findSummarySlice(Pageable pageable);
+
+    // GET /transfers?after= - keyset pages on idx_bordereau_transfer_transferred_at_id, newest first
+    // (transferredAt is set when the transfer is created)
+    @Query(SUMMARY_SELECT + SUMMARY_KEYSET_ORDER)
+    List<TransferSummary> findSummariesFirst(Limit limit);
+
+    @Query(SUMMARY_SELECT + "where (t.transferredAt, t.id) < (:transferredAt, :id)" + SUMMARY_KEYSET_ORDER)
+    List<TransferSummary> findSummariesAfter(@Param("transferredAt") LocalDateTime transferredAt,
+                                             @Param("id") Long id, Limit limit);
+
+    // GET /transfers/{id} - single lookup, bordereau with its drivers and the transfer drivers
+    @EntityGraph(attributePaths = {"bordereau", "bordereau.currentDriver", "bordereau.originalDriver", "fromDriver",
+            "toDriver"})
     Optional<BordereauTransfer> findById(Long id);
 
     // Existence check
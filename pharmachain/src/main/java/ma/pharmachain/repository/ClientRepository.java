@@ -1,25 +1,55 @@
 package ma.pharmachain.repository;
 
+import ma.pharmachain.dto.ClientSummary;
 import ma.pharmachain.entity.Client;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
 @Repository
-public interface ClientRepository extends JpaRepository<Client, String> {
+public interface ClientRepository extends JpaRepository<Client, String>, ClientRepositoryCustom {
+
+    String SUMMARY_SELECT = "select new ma.pharmachain.dto.ClientSummary(c.clientCode, c.name, c.address, c.phone, "
+            + "c.coordinates, s.code, c.autoCreated) from Client c left join c.secteur s";
+
     // GET /managers/{code}/clients - list clients for manager
+    @EntityGraph(attributePaths = "secteur")
     List<Client> findBySecteur_Code(String managerCode);
 
     // GET /clients - list all with pagination
     Page<Client> findAll(Pageable pageable);
 
-    // GET /clients/{clientCode} - single lookup
+    // GET /clients - list rows with the secteur code joined in: one data and one count statement
+    @Query(value = SUMMARY_SELECT, countQuery = "select count(c) from Client c")
+    Page<ClientSummary> findSummaries(Pageable pageable);
+
+    // ?withTotal=false - size + 1 rows decide hasNext, no count statement
+    @Query(SUMMARY_SELECT)
+    Slice<ClientSummary> findSummarySlice(Pageable pageable);
+
+    // Client search and map indexes - every client once at startup and after a manifest import
+    @Query(SUMMARY_SELECT)
+    List<ClientSummary> findAllSummaries();
+
+    // GET /clients/{clientCode} - single lookup, secteur fetched for the response
+    @EntityGraph(attributePaths = "secteur")
     Optional<Client> findByClientCode(String clientCode);
 
+    // POST /bordereaux/scan - resolve every client code of a scan in one query
+    List<Client> findByClientCodeIn(Collection<String> clientCodes);
+
+    // Reference code cache - existence of many codes without loading the rows
+    @Query("select c.clientCode from Client c where c.clientCode in :clientCodes")
+    List<String> findExistingClientCodes(Collection<String> clientCodes);
+
     // Existence check
     boolean existsByClientCode(String clientCode);
 
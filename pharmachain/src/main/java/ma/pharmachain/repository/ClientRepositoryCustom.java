@@ -0,0 +1,11 @@
+package ma.pharmachain.repository;
+
+import ma.pharmachain.entity.Client;
+
+import java.util.List;
+
+public interface ClientRepositoryCustom {
+
+    // POST /bordereaux/scan - insert auto-created clients in a single JDBC batch, skipping existing codes
+    void batchInsertIfAbsent(List<Client> clients);
+}
@@ -0,0 +1,34 @@
+package ma.pharmachain.repository;
+
+import lombok.RequiredArgsConstructor;
+import ma.pharmachain.entity.Client;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.sql.Types;
+import java.util.List;
+
+@RequiredArgsConstructor
+public class ClientRepositoryCustomImpl implements ClientRepositoryCustom {
+
+    private static final String INSERT_SQL = """
+            INSERT INTO client (client_code, name, address, secteur_id, auto_created)
+            VALUES (?, ?, ?, ?, ?)
+            ON CONFLICT (client_code) DO NOTHING
+            """;
+
+    private final JdbcTemplate jdbcTemplate;
+
+    @Override
+    public void batchInsertIfAbsent(List<Client> clients) {
+        if (clients.isEmpty()) {
+            return;
+        }
+        jdbcTemplate.batchUpdate(INSERT_SQL, clients, clients.size(), (ps, client) -> {
+            ps.setString(1, client.getClientCode());
+            ps.setString(2, client.getName());
+            ps.setString(3, client.getAddress());
+            ps.setObject(4, client.getSecteur() != null ? client.getSecteur().getId() : null, Types.BIGINT);
+            ps.setObject(5, client.getAutoCreated(), Types.BOOLEAN);
+        });
+    }
+}
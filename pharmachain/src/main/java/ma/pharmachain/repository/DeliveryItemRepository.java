@@ -1,30 +1,67 @@
 package ma.pharmachain.repository;
 
+import ma.pharmachain.dto.DeliveryItemSummary;
 import ma.pharmachain.entity.Bordereau;
 import ma.pharmachain.entity.Client;
 import ma.pharmachain.entity.DeliveryItem;
 import ma.pharmachain.enums.DeliveryItemStatus;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.time.LocalDate;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
 @Repository
-public interface DeliveryItemRepository extends JpaRepository<DeliveryItem, Long> {
+public interface DeliveryItemRepository extends JpaRepository<DeliveryItem, Long>, DeliveryItemRepositoryCustom {
 
-    // GET /bordereaux/{bordereauNumber}/delivery-items
+    String SUMMARY_SELECT = "select new ma.pharmachain.dto.DeliveryItemSummary(d.id, d.blNumber, "
+            + "d.bordereau.bordereauNumber, c.clientCode, c.name, d.nombreColis, d.nombreSachets, d.status, "
+            + "d.deliveredAt) from DeliveryItem d left join d.client c ";
+
+    // GET /bordereaux/{bordereauNumber}/delivery-items - with their clients
+    @EntityGraph(attributePaths = {"client", "client.secteur"})
     List<DeliveryItem> findByBordereau_BordereauNumber(String bordereauNumber);
 
     // POST /bordereaux/scan - existence check for BL numbers
     boolean existsByBlNumber(String blNumber);
 
+    // POST /bordereaux/scan - resolve every BL number of a scan in one query
+    List<DeliveryItem> findByBlNumberIn(Collection<String> blNumbers);
+
+    // POST /bordereaux/scan - change detection without loading the lines
+    @Query("select d.blNumber as blNumber, d.scanFingerprint as scanFingerprint "
+            + "from DeliveryItem d where d.blNumber in :blNumbers")
+    List<ScanFingerprint> findScanFingerprintsByBlNumberIn(@Param("blNumbers") Collection<String> blNumbers);
+
     // GET /delivery-items - list all with pagination
     Page<DeliveryItem> findAll(Pageable pageable);
 
-    // GET /delivery-items/{blNumber} - single lookup
+    // GET /delivery-items - list rows with the client name joined in: one data and one count statement
+    @Query(value = SUMMARY_SELECT, countQuery = "select count(d) from DeliveryItem d")
+    Page<DeliveryItemSummary> findSummaries(Pageable pageable);
+
+    // ?withTotal=false - size + 1 rows decide hasNext, no count statement
+    @Query(SUMMARY_SELECT)
+    Slice<DeliveryItemSummary> findSummarySlice(Pageable pageable);
+
+    // GET /delivery-items?after= - keyset pages on the primary key, newest first
+    @Query(SUMMARY_SELECT + "order by d.id desc")
+    List<DeliveryItemSummary> findSummariesFirst(Limit limit);
+
+    @Query(SUMMARY_SELECT + "where d.id < :id order by d.id desc")
+    List<DeliveryItemSummary> findSummariesAfter(@Param("id") Long id, Limit limit);
+
+    // GET /delivery-items/{blNumber} - single lookup, bordereau and client fetched with their secteurs
+    @EntityGraph(attributePaths = {"bordereau", "bordereau.secteur", "client", "client.secteur"})
     Optional<DeliveryItem> findByBlNumber(String blNumber);
 
 
@@ -32,9 +69,37 @@ public interface DeliveryItemRepository extends JpaRepository<DeliveryItem, Long
     void deleteByBlNumber(String blNumber);
 
 
-    // GET /drivers/{code}/delivery-items - list delivery items for driver
+    // GET /drivers/{code}/delivery-items - list delivery items for driver, with their clients
+    @EntityGraph(attributePaths = {"client", "client.secteur"})
     List<DeliveryItem> findByBordereau_CurrentDriver_Code(String driverCode);
 
-    // GET /clients/{clientCode}/delivery-items - list delivery items for client
+    // GET /drivers/{code}/route - lines of the driver's bordereaux of a day in one status, with their clients
+    @EntityGraph(attributePaths = {"client", "client.secteur"})
+    List<DeliveryItem> findByBordereau_CurrentDriver_CodeAndBordereau_DeliveryDateAndStatus(
+            String driverCode, LocalDate deliveryDate, DeliveryItemStatus status);
+
+    // GET /drivers|managers/{code}/bordereaux - the items of the listed bordereaux, with their clients
+    @EntityGraph(attributePaths = {"client", "client.secteur"})
+    List<DeliveryItem> findByBordereauIn(Collection<Bordereau> bordereaux);
+
+    // Status counters - lines of a bordereau that moves to another secteur, driver or date, or is deleted
+    @Query("select d.status as status, count(d) as count from DeliveryItem d "
+            + "where d.bordereau.bordereauNumber = :bordereauNumber group by d.status")
+    List<StatusCount> countByStatusForBordereau(@Param("bordereauNumber") String bordereauNumber);
+
+    // GET /clients/{clientCode}/delivery-items - list delivery items for client, with their bordereaux
+    @EntityGraph(attributePaths = {"bordereau", "bordereau.secteur", "client", "client.secteur"})
     List<DeliveryItem> findByClient_ClientCode(String clientCode);
+
+    interface ScanFingerprint {
+        String getBlNumber();
+
+        Long getScanFingerprint();
+    }
+
+    interface StatusCount {
+        DeliveryItemStatus getStatus();
+
+        Long getCount();
+    }
 }
@@ -0,0 +1,16 @@
+package ma.pharmachain.repository;
+
+import ma.pharmachain.entity.DeliveryItem;
+
+import java.util.List;
+import java.util.function.Consumer;
+
+public interface DeliveryItemRepositoryCustom {
+
+    // POST /bordereaux/scan - insert new BL lines in one statement, returns the BL numbers that were already there
+    // (inserted concurrently since the lookup) and were updated in place instead
+    List<String> batchInsert(List<DeliveryItem> items);
+
+    // Startup - stream every BL number into the existence filter
+    void forEachBlNumber(Consumer<String> action);
+}
@@ -0,0 +1,91 @@
+package ma.pharmachain.repository;
+
+import lombok.RequiredArgsConstructor;
+import ma.pharmachain.entity.DeliveryItem;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+
+import java.sql.PreparedStatement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+@RequiredArgsConstructor
+public class DeliveryItemRepositoryCustomImpl implements DeliveryItemRepositoryCustom {
+
+    // One statement for all the lines. A BL inserted by a concurrent scan or manifest since the lines were looked
+    // up is taken over as the manifest merge does; its version is bumped, so a returned version above 0 marks it.
+    private static final String INSERT_SQL = """
+            INSERT INTO delivery_item (bordereau_bordereau_number, bl_number, client_client_code,
+                                       nombre_colis, nombre_sachets, status, scan_fingerprint)
+            SELECT * FROM unnest(?::varchar[], ?::varchar[], ?::varchar[], ?::integer[], ?::integer[], ?::varchar[],
+                                 ?::bigint[])
+            ON CONFLICT (bl_number) DO UPDATE SET
+                bordereau_bordereau_number = EXCLUDED.bordereau_bordereau_number,
+                client_client_code = COALESCE(EXCLUDED.client_client_code, delivery_item.client_client_code),
+                nombre_colis = EXCLUDED.nombre_colis,
+                nombre_sachets = EXCLUDED.nombre_sachets,
+                scan_fingerprint = NULL,
+                version = delivery_item.version + 1
+            RETURNING bl_number, version
+            """;
+
+    private static final int STREAM_FETCH_SIZE = 10_000;
+
+    private final JdbcTemplate jdbcTemplate;
+
+    @Override
+    public List<String> batchInsert(List<DeliveryItem> items) {
+        if (items.isEmpty()) {
+            return List.of();
+        }
+        int size = items.size();
+        String[] bordereauNumbers = new String[size];
+        String[] blNumbers = new String[size];
+        String[] clientCodes = new String[size];
+        Integer[] colis = new Integer[size];
+        Integer[] sachets = new Integer[size];
+        String[] statuses = new String[size];
+        Long[] fingerprints = new Long[size];
+        for (int i = 0; i < size; i++) {
+            DeliveryItem item = items.get(i);
+            bordereauNumbers[i] = item.getBordereau().getBordereauNumber();
+            blNumbers[i] = item.getBlNumber();
+            clientCodes[i] = item.getClient() != null ? item.getClient().getClientCode() : null;
+            colis[i] = item.getNombreColis();
+            sachets[i] = item.getNombreSachets();
+            statuses[i] = item.getStatus().name();
+            // Bypasses the entity callbacks, so compute the fingerprint here
+            fingerprints[i] = DeliveryItem.scanFingerprintOf(bordereauNumbers[i], clientCodes[i], colis[i],
+                    sachets[i]);
+        }
+
+        List<String> takenOver = new ArrayList<>();
+        jdbcTemplate.query(connection -> {
+            PreparedStatement statement = connection.prepareStatement(INSERT_SQL);
+            statement.setArray(1, connection.createArrayOf("varchar", bordereauNumbers));
+            statement.setArray(2, connection.createArrayOf("varchar", blNumbers));
+            statement.setArray(3, connection.createArrayOf("varchar", clientCodes));
+            statement.setArray(4, connection.createArrayOf("int4", colis));
+            statement.setArray(5, connection.createArrayOf("int4", sachets));
+            statement.setArray(6, connection.createArrayOf("varchar", statuses));
+            statement.setArray(7, connection.createArrayOf("int8", fingerprints));
+            return statement;
+        }, (RowCallbackHandler) rs -> {
+            if (rs.getLong(2) > 0) {
+                takenOver.add(rs.getString(1));
+            }
+        });
+        return takenOver;
+    }
+
+    @Override
+    public void forEachBlNumber(Consumer<String> action) {
+        // PostgreSQL only streams with a cursor inside a transaction
+        jdbcTemplate.query(connection -> {
+            PreparedStatement statement = connection.prepareStatement("SELECT bl_number FROM delivery_item WHERE bl_number IS NOT NULL");
+            statement.setFetchSize(STREAM_FETCH_SIZE);
+            return statement;
+        }, (RowCallbackHandler) rs -> action.accept(rs.getString(1)));
+    }
+}
@@ -1,18 +1,28 @@
 package ma.pharmachain.repository;
 
+import ma.pharmachain.dto.DriverSummary;
 import ma.pharmachain.entity.Driver;
 import ma.pharmachain.entity.Manager;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
 @Repository
 public interface DriverRepository extends JpaRepository<Driver, Long> {
 
+    String SUMMARY_SELECT = "select new ma.pharmachain.dto.DriverSummary(d.id, d.code, d.username, d.phone, "
+            + "d.licenseNumber, d.isActive, m.code) from Driver d left join d.assignedManager m";
+
+    // GET /drivers/me/profile - manager fetched for the response
+    @EntityGraph(attributePaths = "assignedManager")
     Optional<Driver> findByKeycloakUserId(String keycloakUserId);
 
     boolean existsByCode(String code);
@@ -20,9 +30,29 @@ public interface DriverRepository extends JpaRepository<Driver, Long> {
     // GET /drivers - list all with pagination
     Page<Driver> findAll(Pageable pageable);
 
-    // GET /drivers/{code} - single lookup
+    // GET /drivers - list rows with the manager code joined in: one data and one count statement
+    @Query(value = SUMMARY_SELECT, countQuery = "select count(d) from Driver d")
+    Page<DriverSummary> findSummaries(Pageable pageable);
+
+    // ?withTotal=false - size + 1 rows decide hasNext, no count statement
+    @Query(SUMMARY_SELECT)
+    Slice<DriverSummary> findSummarySlice(Pageable pageable);
+
+    // GET /drivers/me/day-sheet - the driver's header row, manager code joined in
+    @Query(SUMMARY_SELECT + " where d.code = :code")
+    Optional<DriverSummary> findSummaryByCode(String code);
+
+    // GET /drivers/{code} - single lookup, manager fetched for the response
+    @EntityGraph(attributePaths = "assignedManager")
     Optional<Driver> findByCode(String code);
 
+    // POST /bordereaux/scan - resolve every code of a scan batch in one query
+    List<Driver> findByCodeIn(Collection<String> codes);
+
+    // Reference code cache - id-only lookup
+    @Query("select d.id from Driver d where d.code = :code")
+    Optional<Long> findIdByCode(String code);
+
     // Existence check
     boolean existsByLicenseNumber(String licenseNumber);
 
@@ -30,6 +60,7 @@ public interface DriverRepository extends JpaRepository<Driver, Long> {
     void deleteByCode(String code);
 
     // GET /managers/{code}/drivers - list drivers for manager
+    @EntityGraph(attributePaths = "assignedManager")
     List<Driver> findByAssignedManager_Code(String managerCode);
 }
 
@@ -0,0 +1,25 @@
+package ma.pharmachain.repository;
+
+import ma.pharmachain.entity.IdempotencyRecord;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+
+@Repository
+public interface IdempotencyRecordRepository extends JpaRepository<IdempotencyRecord, String>,
+        IdempotencyRecordRepositoryCustom {
+
+    // Scheduled purge of expired keys
+    @Modifying
+    @Query("delete from IdempotencyRecord r where r.expiresAt < :now")
+    int deleteExpired(LocalDateTime now);
+
+    // Idempotency-Key - free the key of an attempt that failed, so it can be retried
+    @Modifying
+    @Query("delete from IdempotencyRecord r where r.keyHash = :keyHash and r.statusCode = "
+            + IdempotencyRecord.IN_PROGRESS)
+    int deleteClaim(String keyHash);
+}
@@ -0,0 +1,9 @@
+package ma.pharmachain.repository;
+
+import java.time.LocalDateTime;
+
+public interface IdempotencyRecordRepositoryCustom {
+
+    // Idempotency-Key - take the key for this attempt unless another one holds it or stored its response
+    boolean claim(String keyHash, String requestHash, LocalDateTime claimExpiresAt, LocalDateTime now);
+}
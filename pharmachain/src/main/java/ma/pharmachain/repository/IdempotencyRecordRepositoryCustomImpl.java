@@ -0,0 +1,34 @@
+package ma.pharmachain.repository;
+
+import lombok.RequiredArgsConstructor;
+import ma.pharmachain.entity.IdempotencyRecord;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+
+@RequiredArgsConstructor
+public class IdempotencyRecordRepositoryCustomImpl implements IdempotencyRecordRepositoryCustom {
+
+    // One statement, so two attempts (on any instance) cannot both take the key; an expired response or a claim
+    // left by a crashed attempt is taken over
+    private static final String CLAIM_SQL = """
+            INSERT INTO idempotency_key (key_hash, request_hash, status_code, expires_at)
+            VALUES (?, ?, %1$d, ?)
+            ON CONFLICT (key_hash) DO UPDATE SET
+                request_hash = EXCLUDED.request_hash,
+                status_code = EXCLUDED.status_code,
+                content_type = NULL,
+                response_body = NULL,
+                expires_at = EXCLUDED.expires_at
+            WHERE idempotency_key.expires_at < ?
+            """.formatted(IdempotencyRecord.IN_PROGRESS);
+
+    private final JdbcTemplate jdbcTemplate;
+
+    @Override
+    public boolean claim(String keyHash, String requestHash, LocalDateTime claimExpiresAt, LocalDateTime now) {
+        return jdbcTemplate.update(CLAIM_SQL, keyHash, requestHash, Timestamp.valueOf(claimExpiresAt),
+                Timestamp.valueOf(now)) == 1;
+    }
+}
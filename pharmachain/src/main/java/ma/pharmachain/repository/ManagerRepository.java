@@ -1,26 +1,52 @@
 package ma.pharmachain.repository;
 
+import ma.pharmachain.dto.ManagerSummary;
 import ma.pharmachain.entity.Admin;
 import ma.pharmachain.entity.Manager;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
 @Repository
 public interface ManagerRepository extends JpaRepository<Manager, Long> {
 
+    String SUMMARY_SELECT = "select new ma.pharmachain.dto.ManagerSummary(m.id, m.code, m.username, m.secteurName, "
+            + "m.phone, m.address, m.isActive) from Manager m";
+
+    // GET /managers/me/profile - admin fetched for the response
+    @EntityGraph(attributePaths = "assignedAdmin")
     Optional<Manager> findByKeycloakUserId(String keycloakUserId);
 
     // GET /managers - list all with pagination
     Page<Manager> findAll(Pageable pageable);
 
-    // GET /managers/{code} - single lookup
+    // GET /managers - list rows without the Keycloak fields: one data and one count statement
+    @Query(value = SUMMARY_SELECT, countQuery = "select count(m) from Manager m")
+    Page<ManagerSummary> findSummaries(Pageable pageable);
+
+    // ?withTotal=false - size + 1 rows decide hasNext, no count statement
+    @Query(SUMMARY_SELECT)
+    Slice<ManagerSummary> findSummarySlice(Pageable pageable);
+
+    // GET /managers/{code} - single lookup, admin fetched for the response
+    @EntityGraph(attributePaths = "assignedAdmin")
     Optional<Manager> findByCode(String code);
 
+    // POST /bordereaux/scan - resolve every code of a scan batch in one query
+    List<Manager> findByCodeIn(Collection<String> codes);
+
+    // Reference code cache - id-only lookup
+    @Query("select m.id from Manager m where m.code = :code")
+    Optional<Long> findIdByCode(String code);
+
     // Existence check
     boolean existsByCode(String code);
     boolean existsBySecteurName(String secteurName);
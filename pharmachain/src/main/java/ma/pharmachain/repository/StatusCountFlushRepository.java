@@ -0,0 +1,9 @@
+package ma.pharmachain.repository;
+
+import ma.pharmachain.entity.StatusCountFlush;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface StatusCountFlushRepository extends JpaRepository<StatusCountFlush, Long> {
+}
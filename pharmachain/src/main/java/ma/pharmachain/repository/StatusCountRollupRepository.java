@@ -0,0 +1,10 @@
+package ma.pharmachain.repository;
+
+import ma.pharmachain.entity.StatusCountRollup;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface StatusCountRollupRepository extends JpaRepository<StatusCountRollup, Long>,
+        StatusCountRollupRepositoryCustom {
+}
@@ -0,0 +1,27 @@
+package ma.pharmachain.repository;
+
+import ma.pharmachain.entity.StatusCountRollup;
+
+import java.util.List;
+
+public interface StatusCountRollupRepositoryCustom {
+
+    // Status counters flush - add the deltas of the changed cells, so instances do not overwrite each other
+    void addAll(List<StatusCountRollup> deltas);
+
+    // Status counters recount - the counted cells replace the whole rollup
+    void replaceAll(List<StatusCountRollup> rollups);
+
+    // Status counters flush and recount - serializes them across instances until the transaction ends;
+    // returns the snapshot of the last recount, null before the first one
+    String lockForFlush();
+
+    // Status counters - id of the current transaction, compared with a recount's snapshot
+    Long currentTransactionId();
+
+    // Status counters recount - cells counted from bordereau and delivery_item in one statement, with its snapshot
+    SourceCount countFromSource();
+
+    record SourceCount(String snapshot, List<StatusCountRollup> cells) {
+    }
+}
@@ -0,0 +1,135 @@
+package ma.pharmachain.repository;
+
+import lombok.RequiredArgsConstructor;
+import ma.pharmachain.entity.StatusCountRollup;
+import ma.pharmachain.enums.BordereauStatus;
+import ma.pharmachain.enums.DeliveryItemStatus;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+
+import java.sql.Date;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+@RequiredArgsConstructor
+public class StatusCountRollupRepositoryCustomImpl implements StatusCountRollupRepositoryCustom {
+
+    private static final String ADD_SQL = """
+            INSERT INTO status_count_rollup AS r (secteur_id, driver_id, delivery_date,
+                                                  bordereaux_created, bordereaux_assigned, bordereaux_in_transit,
+                                                  bordereaux_completed, items_pending, items_delivered, items_failed)
+            VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?)
+            ON CONFLICT (secteur_id, driver_id, delivery_date) DO UPDATE SET
+                bordereaux_created = r.bordereaux_created + EXCLUDED.bordereaux_created,
+                bordereaux_assigned = r.bordereaux_assigned + EXCLUDED.bordereaux_assigned,
+                bordereaux_in_transit = r.bordereaux_in_transit + EXCLUDED.bordereaux_in_transit,
+                bordereaux_completed = r.bordereaux_completed + EXCLUDED.bordereaux_completed,
+                items_pending = r.items_pending + EXCLUDED.items_pending,
+                items_delivered = r.items_delivered + EXCLUDED.items_delivered,
+                items_failed = r.items_failed + EXCLUDED.items_failed
+            """;
+
+    private static final String DELETE_ALL_SQL = "DELETE FROM status_count_rollup";
+
+    // The row is created by the first flush ever; FOR UPDATE holds it until the flush or recount commits
+    private static final String CREATE_FLUSH_SQL = """
+            INSERT INTO status_count_flush (id, flushed_at, closed) VALUES (1, now(), false)
+            ON CONFLICT (id) DO NOTHING
+            """;
+
+    private static final String LOCK_FLUSH_SQL = """
+            SELECT recount_snapshot FROM status_count_flush WHERE id = 1 FOR UPDATE
+            """;
+
+    private static final String TRANSACTION_ID_SQL = "SELECT pg_current_xact_id()::text::bigint";
+
+    // Undated bordereaux are not counted; 0 stands for a missing secteur or driver, as in the rollup key.
+    // One statement, so both counts and the returned snapshot are the same view of the tables; a row with
+    // a null kind only carries the snapshot
+    private static final String COUNT_FROM_SOURCE_SQL = """
+            WITH counts AS (
+                SELECT 'B' AS kind, coalesce(secteur_id, 0) AS secteur_id,
+                       coalesce(current_driver_id, 0) AS driver_id, delivery_date, status, count(*) AS n
+                FROM bordereau
+                WHERE delivery_date IS NOT NULL AND status IS NOT NULL
+                GROUP BY 2, 3, 4, 5
+                UNION ALL
+                SELECT 'I', coalesce(b.secteur_id, 0), coalesce(b.current_driver_id, 0), b.delivery_date, i.status,
+                       count(*)
+                FROM delivery_item i
+                JOIN bordereau b ON b.bordereau_number = i.bordereau_bordereau_number
+                WHERE b.delivery_date IS NOT NULL AND i.status IS NOT NULL
+                GROUP BY 2, 3, 4, 5
+            )
+            SELECT pg_current_snapshot()::text, c.kind, c.secteur_id, c.driver_id, c.delivery_date, c.status, c.n
+            FROM (SELECT 1) s
+            LEFT JOIN counts c ON true
+            """;
+
+    private final JdbcTemplate jdbcTemplate;
+
+    @Override
+    public void addAll(List<StatusCountRollup> deltas) {
+        if (deltas.isEmpty()) {
+            return;
+        }
+        jdbcTemplate.batchUpdate(ADD_SQL, deltas, deltas.size(), (ps, rollup) -> {
+            ps.setLong(1, rollup.getSecteurId());
+            ps.setLong(2, rollup.getDriverId());
+            ps.setDate(3, Date.valueOf(rollup.getDeliveryDate()));
+            long[] counts = rollup.getCounts();
+            for (int i = 0; i < counts.length; i++) {
+                ps.setLong(4 + i, counts[i]);
+            }
+        });
+    }
+
+    @Override
+    public void replaceAll(List<StatusCountRollup> rollups) {
+        jdbcTemplate.update(DELETE_ALL_SQL);
+        addAll(rollups);
+    }
+
+    @Override
+    public String lockForFlush() {
+        jdbcTemplate.update(CREATE_FLUSH_SQL);
+        return jdbcTemplate.queryForObject(LOCK_FLUSH_SQL, String.class);
+    }
+
+    @Override
+    public Long currentTransactionId() {
+        return jdbcTemplate.queryForObject(TRANSACTION_ID_SQL, Long.class);
+    }
+
+    @Override
+    public SourceCount countFromSource() {
+        Map<Cell, long[]> cells = new HashMap<>();
+        String[] snapshot = new String[1];
+        jdbcTemplate.query(COUNT_FROM_SOURCE_SQL, (RowCallbackHandler) rs -> {
+            snapshot[0] = rs.getString(1);
+            String kind = rs.getString(2);
+            if (kind == null) {
+                return;
+            }
+            int index = kind.equals("B")
+                    ? StatusCountRollup.index(BordereauStatus.valueOf(rs.getString(6)))
+                    : StatusCountRollup.index(DeliveryItemStatus.valueOf(rs.getString(6)));
+            cell(cells, rs.getLong(3), rs.getLong(4), rs.getDate(5).toLocalDate())[index] += rs.getLong(7);
+        });
+
+        List<StatusCountRollup> rollups = new ArrayList<>(cells.size());
+        cells.forEach((key, counts) ->
+                rollups.add(new StatusCountRollup(key.secteurId(), key.driverId(), key.date(), counts)));
+        return new SourceCount(snapshot[0], rollups);
+    }
+
+    private static long[] cell(Map<Cell, long[]> cells, long secteurId, long driverId, LocalDate date) {
+        return cells.computeIfAbsent(new Cell(secteurId, driverId, date), key -> new long[StatusCountRollup.METRICS]);
+    }
+
+    private record Cell(long secteurId, long driverId, LocalDate date) {
+    }
+}
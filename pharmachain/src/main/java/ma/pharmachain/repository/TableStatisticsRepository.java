@@ -0,0 +1,46 @@
+package ma.pharmachain.repository;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+/**
+ * Row estimates from the Postgres planner statistics, refreshed by (auto)vacuum and ANALYZE.
+ * Free to read, but only as fresh as the last analyze; null when the table was never analyzed.
+ */
+@Repository
+@RequiredArgsConstructor
+public class TableStatisticsRepository {
+
+    // reltuples is -1 (Postgres 14+) or 0 with relpages = 0 before the first analyze
+    private static final String TABLE_ESTIMATE_SQL = """
+            SELECT CASE WHEN c.reltuples < 0 OR (c.reltuples = 0 AND c.relpages = 0) THEN NULL
+                        ELSE c.reltuples::bigint END
+            FROM pg_class c
+            WHERE c.oid = to_regclass(?)
+            """;
+
+    // users is single-table: scale by the analyzed frequency of the user_type value
+    private static final String USER_TYPE_ESTIMATE_SQL = """
+            SELECT (c.reltuples * s.most_common_freqs[array_position(s.most_common_vals::text::text[], ?)])::bigint
+            FROM pg_class c
+            JOIN pg_stats s ON s.schemaname = current_schema() AND s.tablename = c.relname AND s.attname = 'user_type'
+            WHERE c.oid = to_regclass('users') AND c.reltuples > 0
+            """;
+
+    private final JdbcTemplate jdbcTemplate;
+
+    // GET /bordereaux, /delivery-items, /transfers, /clients?withTotal=false&approximateTotal=true
+    public Long estimateRows(String table) {
+        List<Long> rows = jdbcTemplate.queryForList(TABLE_ESTIMATE_SQL, Long.class, table);
+        return rows.isEmpty() ? null : rows.get(0);
+    }
+
+    // GET /drivers, /managers?withTotal=false&approximateTotal=true
+    public Long estimateUsers(String userType) {
+        List<Long> rows = jdbcTemplate.queryForList(USER_TYPE_ESTIMATE_SQL, Long.class, userType);
+        return rows.isEmpty() ? null : rows.get(0);
+    }
+}
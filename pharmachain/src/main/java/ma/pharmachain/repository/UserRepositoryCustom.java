@@ -0,0 +1,7 @@
+package ma.pharmachain.repository;
+
+public interface UserRepositoryCustom {
+
+    // POST /bordereaux/scan - race-free auto-creation of a driver or manager, returns its id
+    Long insertIfAbsent(String userType, String code);
+}
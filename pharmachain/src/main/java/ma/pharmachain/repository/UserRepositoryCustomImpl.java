@@ -0,0 +1,40 @@
+package ma.pharmachain.repository;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.List;
+
+@RequiredArgsConstructor
+public class UserRepositoryCustomImpl implements UserRepositoryCustom {
+
+    // Auto-created users have no Keycloak account yet; the placeholder keeps keycloak_user_id unique and non-null.
+    // Only a taken code is absorbed: a clash on username or keycloak_user_id still fails the scan
+    private static final String INSERT_SQL = """
+            INSERT INTO users (user_type, keycloak_user_id, username, code, is_active, created_at)
+            VALUES (?, ?, ?, ?, true, now())
+            ON CONFLICT (code) DO NOTHING
+            RETURNING id
+            """;
+
+    private static final String SELECT_SQL = "SELECT id FROM users WHERE code = ? AND user_type = ?";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    @Override
+    public Long insertIfAbsent(String userType, String code) {
+        String prefix = userType.toLowerCase();
+        List<Long> inserted = jdbcTemplate.queryForList(INSERT_SQL, Long.class,
+                userType, "auto:" + prefix + ":" + code, prefix + "_" + code, code);
+        if (!inserted.isEmpty()) {
+            return inserted.get(0);
+        }
+
+        // Conflict: the row was committed by another scan, read it with a fresh snapshot
+        List<Long> existing = jdbcTemplate.queryForList(SELECT_SQL, Long.class, code, userType);
+        if (existing.isEmpty()) {
+            throw new IllegalStateException("Code " + code + " is already used by another user type");
+        }
+        return existing.get(0);
+    }
+}
@@ -0,0 +1,194 @@
+package ma.pharmachain.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import ma.pharmachain.config.ScanConfig;
+import ma.pharmachain.dto.BordereauScanRequest;
+import ma.pharmachain.dto.BordereauScanResult;
+import ma.pharmachain.dto.ScanTicket;
+import ma.pharmachain.enums.ScanTicketState;
+import ma.pharmachain.exception.ResourceNotFoundException;
+import ma.pharmachain.journal.ScanJournal;
+import ma.pharmachain.journal.TicketFailureLog;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.*;
+
+/**
+ * Write-behind scan mode: scans are appended to the local journal and answered with a ticket,
+ * then drained in large batches through {@link BordereauScanService#scanBordereaux(List)}.
+ * Records left in the journal by a crash are drained after restart; scans are upserts, so a record
+ * applied again because the checkpoint was not written yet is harmless. Failed tickets are recorded in a
+ * {@link TicketFailureLog} before the checkpoint moves past them, so their outcome survives a restart.
+ */
+@Service
+@ConditionalOnProperty(prefix = "pharmachain.scan.journal", name = "enabled", havingValue = "true")
+@Slf4j
+public class AsyncScanService {
+
+    private final BordereauScanService bordereauScanService;
+    private final ObjectMapper objectMapper;
+    private final ScanConfig.Journal journalConfig;
+    private final ScanJournal journal;
+    private final TicketFailureLog failureLog;
+    private final Map<Long, BordereauScanResult> results;
+    private final Counter appliedCounter;
+    private final Counter failedCounter;
+    private final Counter retriedCounter;
+
+    public AsyncScanService(BordereauScanService bordereauScanService, ObjectMapper objectMapper,
+                            ScanConfig scanConfig, MeterRegistry meterRegistry) {
+        this.bordereauScanService = bordereauScanService;
+        this.objectMapper = objectMapper;
+        this.journalConfig = scanConfig.getJournal();
+        this.journal = new ScanJournal(Path.of(journalConfig.getDirectory()),
+                (int) journalConfig.getSegmentSize().toBytes(), journalConfig.isForceOnAppend());
+
+        int retainedResults = journalConfig.getRetainedResults();
+        this.failureLog = new TicketFailureLog(Path.of(journalConfig.getDirectory()), retainedResults,
+                journal.getAppliedTicket());
+        this.results = Collections.synchronizedMap(new LinkedHashMap<>() {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, BordereauScanResult> eldest) {
+                return size() > retainedResults;
+            }
+        });
+
+        Gauge.builder("pharmachain.scan.journal.lag", journal, ScanJournal::lag)
+                .description("Journaled scans not yet applied to the database")
+                .register(meterRegistry);
+        Gauge.builder("pharmachain.scan.journal.lag.bytes", journal, ScanJournal::lagBytes)
+                .description("Journal bytes not yet applied to the database")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        this.appliedCounter = Counter.builder("pharmachain.scan.journal.applied")
+                .description("Journaled scans applied successfully")
+                .register(meterRegistry);
+        this.failedCounter = Counter.builder("pharmachain.scan.journal.failed")
+                .description("Journaled scans applied with an error")
+                .register(meterRegistry);
+        this.retriedCounter = Counter.builder("pharmachain.scan.journal.retried")
+                .description("Drains stopped by a database failure, left in the journal for the next run")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Append a scan to the journal; it is durable once this returns
+     */
+    public ScanTicket submit(BordereauScanRequest request) {
+        byte[] payload;
+        try {
+            payload = objectMapper.writeValueAsBytes(request);
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException("Cannot serialize scan request: " + e.getOriginalMessage(), e);
+        }
+        long ticket = journal.append(payload);
+        return new ScanTicket(ticket, ScanTicketState.PENDING, null);
+    }
+
+    public ScanTicket getTicket(long ticket) {
+        if (ticket <= 0 || ticket > journal.getLastTicket()) {
+            throw new ResourceNotFoundException("Scan ticket not found: " + ticket);
+        }
+        if (ticket > journal.getAppliedTicket()) {
+            return new ScanTicket(ticket, ScanTicketState.PENDING, null);
+        }
+        BordereauScanResult result = results.get(ticket);
+        if (result != null) {
+            return new ScanTicket(ticket, result.isSuccess() ? ScanTicketState.APPLIED : ScanTicketState.FAILED,
+                    result);
+        }
+        // Evicted from memory or applied before a restart
+        byte[] failure = failureLog.get(ticket);
+        if (failure != null) {
+            return new ScanTicket(ticket, ScanTicketState.FAILED, readFailure(ticket, failure));
+        }
+        if (ticket <= failureLog.getUnknownThrough()) {
+            return new ScanTicket(ticket, ScanTicketState.PROCESSED, null);
+        }
+        return new ScanTicket(ticket, ScanTicketState.APPLIED, null);
+    }
+
+    private BordereauScanResult readFailure(long ticket, byte[] failure) {
+        try {
+            return objectMapper.readValue(failure, BordereauScanResult.class);
+        } catch (IOException e) {
+            log.warn("Unreadable failure of scan ticket {}: {}", ticket, e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Applies the journal in order. The checkpoint only moves past records that were applied or rejected for good:
+     * from the first scan that failed on the database (down, pool exhausted, transaction aborted) onwards the records
+     * stay in the journal and the drain stops until the next run. A call that throws leaves the batch untouched too.
+     */
+    @Scheduled(fixedDelayString = "${pharmachain.scan.journal.drain-interval:PT0.5S}")
+    public void drain() {
+        List<ScanJournal.Record> records;
+        while (!(records = journal.read(journalConfig.getDrainBatchSize())).isEmpty()) {
+            BordereauScanResult[] recordResults = new BordereauScanResult[records.size()];
+            List<Integer> parsedPositions = new ArrayList<>(records.size());
+            List<BordereauScanRequest> requests = new ArrayList<>(records.size());
+            for (int i = 0; i < records.size(); i++) {
+                try {
+                    requests.add(objectMapper.readValue(records.get(i).payload(), BordereauScanRequest.class));
+                    parsedPositions.add(i);
+                } catch (IOException e) {
+                    recordResults[i] = BordereauScanResult.failure(null, "Unreadable journal record");
+                }
+            }
+
+            List<BordereauScanResult> batchResults = requests.isEmpty()
+                    ? List.of()
+                    : bordereauScanService.scanBordereaux(requests);
+            for (int i = 0; i < batchResults.size(); i++) {
+                recordResults[parsedPositions.get(i)] = batchResults.get(i);
+            }
+
+            int done = 0;
+            while (done < records.size() && !recordResults[done].isRetryable()) {
+                recordResult(records.get(done).ticket(), recordResults[done]);
+                done++;
+            }
+            if (done > 0) {
+                journal.commit(records.get(done - 1));
+            }
+            if (done < records.size()) {
+                // Scans after it may have been applied already; applying them again is harmless
+                retriedCounter.increment();
+                log.warn("Journal drain stopped at ticket {}, retried on the next run: {}",
+                        records.get(done).ticket(), recordResults[done].getError());
+                return;
+            }
+            log.debug("Applied {} journaled scans, lag {}", records.size(), journal.lag());
+        }
+    }
+
+    private void recordResult(long ticket, BordereauScanResult result) {
+        if (!result.isSuccess()) {
+            try {
+                failureLog.append(ticket, objectMapper.writeValueAsBytes(result));
+            } catch (JsonProcessingException e) {
+                throw new IllegalStateException("Cannot serialize the result of scan ticket " + ticket, e);
+            }
+        }
+        results.put(ticket, result);
+        (result.isSuccess() ? appliedCounter : failedCounter).increment();
+    }
+
+    @PreDestroy
+    public void close() {
+        journal.close();
+        failureLog.close();
+    }
+}
@@ -0,0 +1,78 @@
+package ma.pharmachain.service;
+
+import ma.pharmachain.dto.ClientSummary;
+import ma.pharmachain.entity.Client;
+import ma.pharmachain.repository.ClientRepository;
+import ma.pharmachain.repository.UserRepository;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.Comparator;
+import java.util.List;
+
+import static ma.pharmachain.service.TransactionHooks.afterCommit;
+
+/**
+ * Race-free auto-creation of the drivers, managers and clients referenced by scans.
+ * <p>
+ * Each creation is a native {@code INSERT ... ON CONFLICT (code) DO NOTHING} on the scan transaction's own
+ * connection, so a scan holds a single pooled connection and the rows it creates roll back with it. A concurrent
+ * scan of the same unknown code waits on the unique index until the first one ends, then reads the committed row
+ * instead of failing on the constraint; a clash on any other unique column still fails. Clients are inserted in code order so two scans never lock them in opposite orders.
+ * The code caches and the search index only learn the new rows once the scan commits.
+ */
+@Service
+@Transactional(propagation = Propagation.MANDATORY)
+public class AutoCreateService {
+
+    private final UserRepository userRepository;
+    private final ClientRepository clientRepository;
+    private final ReferenceCodeCache referenceCodeCache;
+    private final ClientSearchIndex clientSearchIndex;
+
+    public AutoCreateService(UserRepository userRepository, ClientRepository clientRepository,
+                             ReferenceCodeCache referenceCodeCache, ClientSearchIndex clientSearchIndex) {
+        this.userRepository = userRepository;
+        this.clientRepository = clientRepository;
+        this.referenceCodeCache = referenceCodeCache;
+        this.clientSearchIndex = clientSearchIndex;
+    }
+
+    /**
+     * Id of the driver with this code, created if missing
+     */
+    public Long ensureDriver(String code) {
+        Long id = userRepository.insertIfAbsent("DRIVER", code);
+        afterCommit(() -> referenceCodeCache.putDriver(code, id));
+        return id;
+    }
+
+    /**
+     * Id of the manager with this code, created if missing
+     */
+    public Long ensureManager(String code) {
+        Long id = userRepository.insertIfAbsent("MANAGER", code);
+        afterCommit(() -> referenceCodeCache.putManager(code, id));
+        return id;
+    }
+
+    /**
+     * Insert the given clients, leaving rows created meanwhile by another scan untouched
+     */
+    public void ensureClients(List<Client> clients) {
+        if (clients.isEmpty()) {
+            return;
+        }
+        List<Client> sorted = clients.stream().sorted(Comparator.comparing(Client::getClientCode)).toList();
+        clientRepository.batchInsertIfAbsent(sorted);
+        List<String> codes = sorted.stream().map(Client::getClientCode).toList();
+        // Summaries taken now: the entities may be changed before the commit
+        List<ClientSummary> summaries = sorted.stream().map(ClientSummary::from).toList();
+        afterCommit(() -> {
+            referenceCodeCache.putClients(codes);
+            // A client created meanwhile by another scan stays as is
+            clientSearchIndex.putAllAbsent(summaries);
+        });
+    }
+}
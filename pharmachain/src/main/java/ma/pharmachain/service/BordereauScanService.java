@@ -0,0 +1,33 @@
+package ma.pharmachain.service;
+
+import ma.pharmachain.dto.BordereauDetail;
+import ma.pharmachain.dto.BordereauScanRequest;
+import ma.pharmachain.dto.BordereauScanResult;
+import ma.pharmachain.entity.Bordereau;
+
+import java.util.List;
+
+/**
+ * Applies bordereau scans: finds or creates the bordereau, auto-creates the drivers, secteurs and clients it names
+ * and upserts its BL lines. Reads and edits of stored bordereaux go through {@link BordereauService}.
+ */
+public interface BordereauScanService {
+
+    Bordereau scanBordereau(BordereauScanRequest request);
+
+    /**
+     * Scan like {@link #scanBordereau}, answering with the bordereau and its lines mapped inside the transaction
+     */
+    BordereauDetail scanBordereauDetail(BordereauScanRequest request);
+
+    BordereauScanResult scanBordereauAck(BordereauScanRequest request);
+
+    List<BordereauScanResult> scanBordereaux(List<BordereauScanRequest> requests);
+
+    /**
+     * Re-apply archived scans like {@link #scanBordereaux(List)}, without archiving them again
+     */
+    List<BordereauScanResult> replayScans(List<BordereauScanRequest> requests, int parallelism);
+
+    List<BordereauScanResult> scanBarcodes(List<String> barcodes, String driverCode, String managerCode);
+}
@@ -1,7 +1,10 @@
 package ma.pharmachain.service;
 
-import ma.pharmachain.dto.BordereauScanRequest;
+import ma.pharmachain.dto.BordereauSearchCriteria;
+import ma.pharmachain.dto.BordereauSummary;
 import ma.pharmachain.dto.BordereauUpdateRequest;
+import ma.pharmachain.dto.KeysetPage;
+import ma.pharmachain.dto.SlicePage;
 import ma.pharmachain.entity.Bordereau;
 import ma.pharmachain.entity.DeliveryItem;
 import org.springframework.data.domain.Page;
@@ -11,11 +14,17 @@ import java.util.Map;
 
 public interface BordereauService {
 
-    Page<Bordereau> listBordereaux(int page, int size);
+    Page<BordereauSummary> listBordereaux(int page, int size);
+
+    SlicePage<BordereauSummary> listBordereauxSlice(int page, int size, boolean approximateTotal);
+
+    KeysetPage<BordereauSummary> listBordereauxAfter(String after, int size);
+
+    Page<BordereauSummary> searchBordereaux(BordereauSearchCriteria criteria, int page, int size);
 
     Bordereau getBordereauByNumber(String bordereauNumber);
 
-    Bordereau scanBordereau(BordereauScanRequest request);
+    String getBordereauEtag(String bordereauNumber);
 
     Bordereau updateBordereau(String bordereauNumber, BordereauUpdateRequest request);
 
@@ -1,6 +1,9 @@
 package ma.pharmachain.service;
 
+import ma.pharmachain.dto.KeysetPage;
+import ma.pharmachain.dto.SlicePage;
 import ma.pharmachain.dto.TransferCreateRequest;
+import ma.pharmachain.dto.TransferSummary;
 import ma.pharmachain.dto.TransferUpdateRequest;
 import ma.pharmachain.entity.BordereauTransfer;
 import ma.pharmachain.enums.TransferStatus;
@@ -10,7 +13,11 @@ public interface BordereauTransferService {
 
     BordereauTransfer createTransfer(String bordereauNumber, TransferCreateRequest request);
 
-    Page<BordereauTransfer> listTransfers(int page, int size);
+    Page<TransferSummary> listTransfers(int page, int size);
+
+    SlicePage<TransferSummary> listTransfersSlice(int page, int size, boolean approximateTotal);
+
+    KeysetPage<TransferSummary> listTransfersAfter(String after, int size);
 
     BordereauTransfer getTransferById(Long id);
 
@@ -0,0 +1,113 @@
+package ma.pharmachain.service;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import ma.pharmachain.config.CacheConfig;
+import ma.pharmachain.dto.ClientSummary;
+import ma.pharmachain.repository.ClientRepository;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.util.List;
+
+import static ma.pharmachain.service.TransactionHooks.afterCommit;
+
+/**
+ * In-memory {@link GeoIndex} of the clients with valid {@code "lat,lng"} coordinates, behind GET /clients/nearby
+ * and /clients/nearest.
+ * <p>
+ * Loaded with the search index and kept current the same way by ClientServiceImpl, after commit. Clients created
+ * by scans and manifest imports have no coordinates, so they only show up here once someone sets them.
+ */
+@Service
+@Slf4j
+public class ClientGeoIndex {
+
+    private final ClientIndexLoader loader;
+    private final GeoIndex<ClientSummary> index;
+    private final Timer queryTimer;
+
+    public ClientGeoIndex(ClientRepository clientRepository, CacheConfig cacheConfig,
+                          PlatformTransactionManager transactionManager, MeterRegistry meterRegistry) {
+        this.loader = new ClientIndexLoader(clientRepository, transactionManager);
+        this.index = new GeoIndex<>(cacheConfig.getClientGeoCellKm());
+        this.queryTimer = Timer.builder("pharmachain.client.geo")
+                .description("Client map index lookups")
+                .publishPercentiles(0.5, 0.99)
+                .register(meterRegistry);
+        Gauge.builder("pharmachain.client.geo.size", index, GeoIndex::size)
+                .description("Clients with coordinates in the map index")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Adds every client with coordinates that is not indexed yet
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void load() {
+        long start = System.currentTimeMillis();
+        try {
+            loader.load(clients -> index.putAllAbsent(clients,
+                    ClientSummary::getClientCode, c -> parseCoordinates(c.getCoordinates())));
+        } catch (RuntimeException e) {
+            log.error("Client map index could not be loaded, it only sees clients written since startup", e);
+            return;
+        }
+        log.info("Client map index loaded in {} ms: {} clients with coordinates",
+                System.currentTimeMillis() - start, index.size());
+    }
+
+    public List<GeoIndex.Hit<ClientSummary>> within(double lat, double lng, double radiusKm, int limit) {
+        return queryTimer.record(() -> index.within(lat, lng, radiusKm, limit));
+    }
+
+    public List<GeoIndex.Hit<ClientSummary>> nearest(double lat, double lng, int k) {
+        return queryTimer.record(() -> index.nearest(lat, lng, k));
+    }
+
+    /**
+     * Place a created or updated client once the current transaction commits; a client whose coordinates were
+     * cleared or cannot be parsed leaves the index
+     */
+    public void put(ClientSummary client) {
+        double[] position = parseCoordinates(client.getCoordinates());
+        afterCommit(() -> {
+            if (position != null) {
+                index.put(client.getClientCode(), position[0], position[1], client);
+            } else {
+                index.remove(client.getClientCode());
+            }
+        });
+    }
+
+    public void remove(String clientCode) {
+        loader.removeAfterCommit(clientCode, index::remove);
+    }
+
+    /**
+     * {lat, lng} from {@code "33.5731,-7.5898"}, or null when blank, malformed or out of range
+     */
+    public static double[] parseCoordinates(String coordinates) {
+        if (coordinates == null) {
+            return null;
+        }
+        int comma = coordinates.indexOf(',');
+        if (comma < 0) {
+            return null;
+        }
+        try {
+            double lat = Double.parseDouble(coordinates.substring(0, comma).strip());
+            double lng = Double.parseDouble(coordinates.substring(comma + 1).strip());
+            if (lat >= -90 && lat <= 90 && lng >= -180 && lng <= 180) {
+                return new double[]{lat, lng};
+            }
+        } catch (NumberFormatException e) {
+            // not a position
+        }
+        return null;
+    }
+}
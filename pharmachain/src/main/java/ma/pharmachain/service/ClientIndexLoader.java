@@ -0,0 +1,57 @@
+package ma.pharmachain.service;
+
+import ma.pharmachain.dto.ClientSummary;
+import ma.pharmachain.repository.ClientRepository;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+import static ma.pharmachain.service.TransactionHooks.afterCommit;
+
+/**
+ * Bulk load shared by the in-memory client indexes. The load only adds the codes that are not indexed yet, so it
+ * never overwrites a newer write, and a client removed while it runs is not brought back by it.
+ */
+final class ClientIndexLoader {
+
+    private final ClientRepository clientRepository;
+    private final TransactionTemplate readOnlyTransaction;
+    private final Set<String> removedDuringLoad = ConcurrentHashMap.newKeySet();
+    private volatile boolean loading;
+
+    ClientIndexLoader(ClientRepository clientRepository, PlatformTransactionManager transactionManager) {
+        this.clientRepository = clientRepository;
+        this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction.setReadOnly(true);
+    }
+
+    /**
+     * Read every client and hand the ones not removed meanwhile to {@code putAllAbsent}
+     */
+    void load(Consumer<List<ClientSummary>> putAllAbsent) {
+        loading = true;
+        try {
+            List<ClientSummary> clients = readOnlyTransaction.execute(status -> clientRepository.findAllSummaries());
+            putAllAbsent.accept(clients.stream().filter(c -> !removedDuringLoad.contains(c.getClientCode())).toList());
+        } finally {
+            loading = false;
+            removedDuringLoad.clear();
+        }
+    }
+
+    /**
+     * Remove a client from the index once the current transaction commits
+     */
+    void removeAfterCommit(String clientCode, Consumer<String> remove) {
+        afterCommit(() -> {
+            if (loading) {
+                removedDuringLoad.add(clientCode);
+            }
+            remove.accept(clientCode);
+        });
+    }
+}
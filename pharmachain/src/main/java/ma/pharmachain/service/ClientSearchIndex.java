@@ -0,0 +1,102 @@
+package ma.pharmachain.service;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import ma.pharmachain.config.CacheConfig;
+import ma.pharmachain.dto.ClientSummary;
+import ma.pharmachain.repository.ClientRepository;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.util.Collection;
+import java.util.List;
+
+import static ma.pharmachain.service.TransactionHooks.afterCommit;
+
+/**
+ * In-memory {@link TrigramIndex} over client name, address and code, behind GET /clients/search.
+ * <p>
+ * Loaded once the application is up, then kept current by the client writes: ClientServiceImpl after commit,
+ * auto-created clients once the scan that created them commits, and the manifest import by a reload that
+ * only adds the codes not indexed yet. A load never overwrites a newer write, and a client deleted while the
+ * load runs is not brought back by it.
+ */
+@Service
+@Slf4j
+public class ClientSearchIndex {
+
+    private final ClientIndexLoader loader;
+    private final TrigramIndex<ClientSummary> index;
+    private final Timer searchTimer;
+
+    public ClientSearchIndex(ClientRepository clientRepository, CacheConfig cacheConfig,
+                             PlatformTransactionManager transactionManager, MeterRegistry meterRegistry) {
+        this.loader = new ClientIndexLoader(clientRepository, transactionManager);
+        this.index = new TrigramIndex<>(cacheConfig.getClientSearchMinSimilarity());
+        this.searchTimer = Timer.builder("pharmachain.client.search")
+                .description("Client search index lookups")
+                .publishPercentiles(0.5, 0.99)
+                .register(meterRegistry);
+        Gauge.builder("pharmachain.client.search.size", index, TrigramIndex::size)
+                .description("Clients in the search index")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Adds every client that is not indexed yet
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void load() {
+        long start = System.currentTimeMillis();
+        try {
+            loader.load(clients -> index.putAllAbsent(clients,
+                    ClientSummary::getClientCode, ClientSearchIndex::searchableText));
+        } catch (RuntimeException e) {
+            log.error("Client search index could not be loaded, search only sees clients written since startup", e);
+            return;
+        }
+        log.info("Client search index loaded in {} ms: {} clients", System.currentTimeMillis() - start, index.size());
+    }
+
+    public List<ClientSummary> search(String query, int limit) {
+        return searchTimer.record(() -> index.search(query, limit));
+    }
+
+    /**
+     * Index a created or updated client once the current transaction commits
+     */
+    public void put(ClientSummary client) {
+        afterCommit(() -> index.put(client.getClientCode(), searchableText(client), client));
+    }
+
+    /**
+     * Index clients already committed by an insert that skips existing codes
+     */
+    public void putAllAbsent(Collection<ClientSummary> clients) {
+        index.putAllAbsent(List.copyOf(clients), ClientSummary::getClientCode, ClientSearchIndex::searchableText);
+    }
+
+    public void remove(String clientCode) {
+        loader.removeAfterCommit(clientCode, index::remove);
+    }
+
+    /**
+     * Reload once the current transaction commits, to pick up clients inserted in bulk
+     */
+    public void loadAfterCommit() {
+        afterCommit(this::load);
+    }
+
+    private static String searchableText(ClientSummary client) {
+        return String.join(" ", nullToEmpty(client.getName()), nullToEmpty(client.getAddress()),
+                client.getClientCode());
+    }
+
+    private static String nullToEmpty(String value) {
+        return value != null ? value : "";
+    }
+}
@@ -1,7 +1,10 @@
 package ma.pharmachain.service;
 
+import ma.pharmachain.dto.ClientSummary;
 import ma.pharmachain.dto.ClientUpdateRequest;
 import ma.pharmachain.dto.ClientCreateRequest;
+import ma.pharmachain.dto.NearbyClient;
+import ma.pharmachain.dto.SlicePage;
 import ma.pharmachain.entity.Client;
 import ma.pharmachain.entity.DeliveryItem;
 import org.springframework.data.domain.Page;
@@ -11,7 +14,9 @@ import java.util.Map;
 
 public interface ClientService {
 
-    Page<Client> listClients(int page, int size);
+    Page<ClientSummary> listClients(int page, int size);
+
+    SlicePage<ClientSummary> listClientsSlice(int page, int size, boolean approximateTotal);
 
     Client getClientByCode(String clientCode);
 
@@ -24,4 +29,10 @@ public interface ClientService {
     void deleteClient(String clientCode);
 
     List<DeliveryItem> getClientDeliveryItems(String clientCode);
+
+    List<ClientSummary> searchClients(String query, int limit);
+
+    List<NearbyClient> findClientsWithin(double lat, double lng, double radiusKm, int limit);
+
+    List<NearbyClient> findNearestClients(double lat, double lng, int k);
 }
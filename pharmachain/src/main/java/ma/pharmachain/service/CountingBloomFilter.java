@@ -0,0 +1,131 @@
+package ma.pharmachain.service;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counting Bloom filter over strings: 4-bit counters packed 16 per long and updated lock-free.
+ * <p>
+ * Counters make deletes possible without false negatives, provided only added keys are removed.
+ * A counter that reaches 15 sticks there and is never decremented, which can only leave a false positive.
+ */
+class CountingBloomFilter {
+
+    private static final int COUNTER_BITS = 4;
+    private static final int COUNTERS_PER_WORD = Long.SIZE / COUNTER_BITS;
+    private static final long MAX_COUNT = (1L << COUNTER_BITS) - 1;
+
+    private final AtomicLongArray words;
+    private final long counters;
+    private final int hashes;
+    private final LongAdder count = new LongAdder();
+
+    /**
+     * Sized with the textbook optimum for the target false-positive rate:
+     * m = -n ln(p) / ln(2)^2 counters and k = m/n ln(2) hash functions.
+     */
+    CountingBloomFilter(long expectedKeys, double falsePositiveRate) {
+        long n = Math.max(1, expectedKeys);
+        long m = (long) Math.ceil(-n * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2)));
+        long words = (m + COUNTERS_PER_WORD - 1) / COUNTERS_PER_WORD;
+        if (words > Integer.MAX_VALUE - 8) {
+            throw new IllegalArgumentException("Bloom filter too large for " + expectedKeys + " keys");
+        }
+        this.words = new AtomicLongArray((int) words);
+        this.counters = words * COUNTERS_PER_WORD;
+        this.hashes = Math.max(1, (int) Math.round((double) counters / n * Math.log(2)));
+    }
+
+    boolean mightContain(String key) {
+        long hash = hash(key);
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        for (int i = 0; i < hashes; i++) {
+            if (counter(position(h1, h2, i)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    void add(String key) {
+        long hash = hash(key);
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        for (int i = 0; i < hashes; i++) {
+            update(position(h1, h2, i), 1);
+        }
+        count.increment();
+    }
+
+    void remove(String key) {
+        long hash = hash(key);
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        for (int i = 0; i < hashes; i++) {
+            update(position(h1, h2, i), -1);
+        }
+        count.decrement();
+    }
+
+    long count() {
+        return Math.max(0, count.sum());
+    }
+
+    long memoryBytes() {
+        return (long) words.length() * Long.BYTES;
+    }
+
+    /**
+     * (1 - e^(-k n / m))^k for the keys currently counted
+     */
+    double expectedFalsePositiveRate() {
+        return Math.pow(1 - Math.exp(-(double) hashes * count() / counters), hashes);
+    }
+
+    // Kirsch-Mitzenmacher double hashing
+    private long position(int h1, int h2, int i) {
+        int combined = h1 + i * h2;
+        return Integer.toUnsignedLong(combined) % counters;
+    }
+
+    private long counter(long position) {
+        long word = words.get((int) (position / COUNTERS_PER_WORD));
+        return (word >>> shift(position)) & MAX_COUNT;
+    }
+
+    private void update(long position, int delta) {
+        int index = (int) (position / COUNTERS_PER_WORD);
+        int shift = shift(position);
+        while (true) {
+            long word = words.get(index);
+            long value = (word >>> shift) & MAX_COUNT;
+            // Saturated counters stay saturated; empty ones are never decremented
+            if (value == MAX_COUNT || (delta < 0 && value == 0)) {
+                return;
+            }
+            long updated = (word & ~(MAX_COUNT << shift)) | ((value + delta) << shift);
+            if (words.compareAndSet(index, word, updated)) {
+                return;
+            }
+        }
+    }
+
+    private static int shift(long position) {
+        return (int) (position % COUNTERS_PER_WORD) * COUNTER_BITS;
+    }
+
+    private static long hash(String key) {
+        long hash = 0;
+        for (int i = 0; i < key.length(); i++) {
+            hash = hash * 31 + key.charAt(i);
+        }
+        // murmur3 fmix64
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb93e05cc3553L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
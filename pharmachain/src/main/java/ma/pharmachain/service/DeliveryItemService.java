@@ -1,7 +1,10 @@
 package ma.pharmachain.service;
 
+import ma.pharmachain.dto.DeliveryItemSummary;
 import ma.pharmachain.dto.DeliveryItemUpdateRequest;
+import ma.pharmachain.dto.KeysetPage;
 import ma.pharmachain.dto.ProofRequest;
+import ma.pharmachain.dto.SlicePage;
 import ma.pharmachain.entity.DeliveryItem;
 import org.springframework.data.domain.Page;
 
@@ -9,7 +12,11 @@ import java.util.Map;
 
 public interface DeliveryItemService {
 
-    Page<DeliveryItem> listDeliveryItems(int page, int size);
+    Page<DeliveryItemSummary> listDeliveryItems(int page, int size);
+
+    SlicePage<DeliveryItemSummary> listDeliveryItemsSlice(int page, int size, boolean approximateTotal);
+
+    KeysetPage<DeliveryItemSummary> listDeliveryItemsAfter(String after, int size);
 
     DeliveryItem getDeliveryItemByBlNumber(String blNumber);
 
@@ -0,0 +1,74 @@
+package ma.pharmachain.service;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import ma.pharmachain.config.CacheConfig;
+import ma.pharmachain.dto.DriverRoute;
+import ma.pharmachain.entity.Driver;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDate;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Last sequenced route of each driver, for one delivery date.
+ * <p>
+ * Writes that change a driver's pending stops (line status, transfer, reassignment, scan) evict that driver, at
+ * once and again when their transaction completes. Every eviction also bumps a generation: a route is only stored
+ * if no eviction happened since its stops were read, so a route computed from data being replaced is never kept.
+ */
+@Service
+public class DriverRouteCache {
+
+    private final BoundedCache<String, DriverRoute> routes;
+    private final AtomicLong generation = new AtomicLong();
+
+    public DriverRouteCache(CacheConfig cacheConfig, MeterRegistry meterRegistry) {
+        this.routes = new BoundedCache<>("driverRoutes", cacheConfig.getDriverRoutesMaxSize(), meterRegistry);
+    }
+
+    public DriverRoute get(String driverCode, LocalDate date) {
+        DriverRoute route = routes.get(driverCode);
+        return route != null && route.getDate().equals(date) ? route : null;
+    }
+
+    /**
+     * Read before loading the stops, then passed to {@link #put}
+     */
+    public long generation() {
+        return generation.get();
+    }
+
+    public void put(DriverRoute route, long loadedAtGeneration) {
+        synchronized (generation) {
+            if (generation.get() == loadedAtGeneration) {
+                routes.put(route.getDriverCode(), route);
+            }
+        }
+    }
+
+    public void evict(String driverCode) {
+        if (driverCode != null) {
+            evict(() -> routes.remove(driverCode));
+        }
+    }
+
+    public void evict(Driver driver) {
+        if (driver != null) {
+            evict(driver.getCode());
+        }
+    }
+
+    public void evictAll() {
+        evict(routes::clear);
+    }
+
+    private void evict(Runnable eviction) {
+        Runnable bumpAndEvict = () -> {
+            synchronized (generation) {
+                generation.incrementAndGet();
+                eviction.run();
+            }
+        };
+        TransactionHooks.nowAndAfterCompletion(bumpAndEvict);
+    }
+}
@@ -1,12 +1,17 @@
 package ma.pharmachain.service;
 
+import ma.pharmachain.dto.BordereauDetail;
+import ma.pharmachain.dto.DeliveryItemDetail;
+import ma.pharmachain.dto.DriverDaySheet;
+import ma.pharmachain.dto.DriverRoute;
 import ma.pharmachain.dto.DriverCreateRequest;
+import ma.pharmachain.dto.DriverSummary;
 import ma.pharmachain.dto.DriverUpdateRequest;
-import ma.pharmachain.entity.Bordereau;
-import ma.pharmachain.entity.DeliveryItem;
+import ma.pharmachain.dto.SlicePage;
 import ma.pharmachain.entity.Driver;
 import org.springframework.data.domain.Page;
 
+import java.time.LocalDate;
 import java.util.List;
 import java.util.Map;
 
@@ -14,7 +19,9 @@ public interface DriverService {
 
     Driver getDriverByKeycloakUserId(String keycloakUserId);
 
-    Page<Driver> listDrivers(int page, int size);
+    Page<DriverSummary> listDrivers(int page, int size);
+
+    SlicePage<DriverSummary> listDriversSlice(int page, int size, boolean approximateTotal);
 
     Driver getDriverByCode(String code);
 
@@ -26,8 +33,14 @@ public interface DriverService {
 
     void deleteDriver(String code);
 
-    List<Bordereau> getDriverBordereaux(String code);
+    List<BordereauDetail> getDriverBordereaux(String code);
+
+    List<DeliveryItemDetail> getDriverDeliveryItems(String code);
+
+    DriverDaySheet getDriverDaySheet(String code, LocalDate date);
+
+    String getDriverDaySheetEtag(String code, LocalDate date);
 
-    List<DeliveryItem> getDriverDeliveryItems(String code);
+    DriverRoute getDriverRoute(String code, LocalDate date);
 }
 
@@ -0,0 +1,426 @@
+package ma.pharmachain.service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Function;
+
+/**
+ * Points keyed by a unique string, answering "within R km" and "k nearest" by great-circle distance.
+ * <p>
+ * Points live in a uniform grid of {@code cellKm}-high cells (the same angle in longitude, so narrower cells away
+ * from the equator), each cell an int array of point ids. A radius query reads the cells of the bounding box; a
+ * nearest query reads rings of cells around the origin until no unread cell can be closer than the k-th point
+ * found. Positions are plain double arrays by id, and ids of removed points are reused. The grid does not wrap
+ * around the antimeridian.
+ */
+public class GeoIndex<T> {
+
+    static final double EARTH_RADIUS_KM = 6371.0088;
+    private static final double KM_PER_DEGREE = Math.PI * EARTH_RADIUS_KM / 180;
+    // Longitude cells shrink with cos(lat); below this the poles would make the bounding boxes unbounded
+    private static final double MIN_COS_LAT = 0.01;
+
+    private final double cellKm;
+    private final double cellDegrees;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    // Point id -> payload and position; payload null for a free id
+    private final List<T> payloads = new ArrayList<>();
+    private double[] lats = new double[1024];
+    private double[] lngs = new double[1024];
+    private double[] cosLats = new double[1024];
+    private int[] freeIds = new int[16];
+    private int freeCount;
+    private final Map<String, Integer> idsByKey = new HashMap<>();
+
+    private final Map<Long, Cell> cells = new HashMap<>();
+
+    public GeoIndex(double cellKm) {
+        if (!(cellKm > 0)) {
+            throw new IllegalArgumentException("Cell size must be positive: " + cellKm);
+        }
+        this.cellKm = cellKm;
+        this.cellDegrees = cellKm / KM_PER_DEGREE;
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return idsByKey.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public boolean contains(String key) {
+        lock.readLock().lock();
+        try {
+            return idsByKey.containsKey(key);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Place {@code payload} at (lat, lng) under {@code key}, replacing any previous point with that key
+     */
+    public void put(String key, double lat, double lng, T payload) {
+        requirePosition(lat, lng);
+        lock.writeLock().lock();
+        try {
+            removeLocked(key);
+            addLocked(key, lat, lng, payload);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Place the payloads whose key is not indexed yet, leaving existing ones untouched.
+     * {@code positionOf} returns {lat, lng}, or null for a payload without a position.
+     */
+    public void putAllAbsent(Collection<T> payloads, Function<T, String> keyOf, Function<T, double[]> positionOf) {
+        lock.writeLock().lock();
+        try {
+            for (T payload : payloads) {
+                String key = keyOf.apply(payload);
+                if (idsByKey.containsKey(key)) {
+                    continue;
+                }
+                double[] position = positionOf.apply(payload);
+                if (position != null) {
+                    requirePosition(position[0], position[1]);
+                    addLocked(key, position[0], position[1], payload);
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void remove(String key) {
+        lock.writeLock().lock();
+        try {
+            removeLocked(key);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Points at most {@code radiusKm} from (lat, lng), nearest first, at most {@code limit} of them
+     */
+    public List<Hit<T>> within(double lat, double lng, double radiusKm, int limit) {
+        requirePosition(lat, lng);
+        if (!(radiusKm >= 0)) {
+            throw new IllegalArgumentException("Radius must not be negative: " + radiusKm);
+        }
+        if (limit <= 0) {
+            return List.of();
+        }
+
+        lock.readLock().lock();
+        try {
+            Nearest nearest = new Nearest(limit, haversine(radiusKm));
+            int row = row(lat);
+            int col = col(lng);
+            int rows = (int) Math.ceil(radiusKm / cellKm);
+            int cols = (int) Math.ceil(radiusKm / (cellKm * minCos(lat, rows)));
+            if ((2L * rows + 1) * (2L * cols + 1) > cells.size()) {
+                // Fewer occupied cells than cells in the box
+                for (Cell cell : cells.values()) {
+                    collect(cell, lat, lng, nearest);
+                }
+            } else {
+                for (int r = row - rows; r <= row + rows; r++) {
+                    for (int c = col - cols; c <= col + cols; c++) {
+                        collect(cells.get(cellKey(r, c)), lat, lng, nearest);
+                    }
+                }
+            }
+            return nearest.hits();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * The {@code k} points nearest to (lat, lng), nearest first
+     */
+    public List<Hit<T>> nearest(double lat, double lng, int k) {
+        requirePosition(lat, lng);
+        if (k <= 0) {
+            return List.of();
+        }
+
+        lock.readLock().lock();
+        try {
+            Nearest nearest = new Nearest(k, 1);
+            int row = row(lat);
+            int col = col(lng);
+            for (int ring = 0; ; ring++) {
+                // Cells outside rings 0..ring-1 are at least (ring - 1) cell heights or widths away
+                if (nearest.isFull() && kilometers(nearest.worst()) <= (ring - 1) * cellKm * minCos(lat, ring)) {
+                    break;
+                }
+                if ((2L * ring + 1) * (2L * ring + 1) > cells.size()) {
+                    // The ring has outgrown the occupied cells: finish with every cell not read yet
+                    int inner = ring - 1;
+                    for (Map.Entry<Long, Cell> entry : cells.entrySet()) {
+                        long key = entry.getKey();
+                        if (Math.abs((int) (key >> 32) - row) > inner || Math.abs((int) key - col) > inner) {
+                            collect(entry.getValue(), lat, lng, nearest);
+                        }
+                    }
+                    break;
+                }
+                for (int r = row - ring; r <= row + ring; r++) {
+                    boolean edgeRow = r == row - ring || r == row + ring;
+                    int step = edgeRow || ring == 0 ? 1 : 2 * ring;
+                    for (int c = col - ring; c <= col + ring; c += step) {
+                        collect(cells.get(cellKey(r, c)), lat, lng, nearest);
+                    }
+                }
+            }
+            return nearest.hits();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void collect(Cell cell, double lat, double lng, Nearest nearest) {
+        if (cell == null) {
+            return;
+        }
+        double cosLat = Math.cos(Math.toRadians(lat));
+        for (int i = 0; i < cell.size; i++) {
+            int id = cell.ids[i];
+            // The latitude term alone is a lower bound: most points of a crowded cell stop here
+            double sinLat = Math.sin(Math.toRadians(lats[id] - lat) / 2);
+            double a = sinLat * sinLat;
+            double bound = nearest.bound();
+            if (a > bound) {
+                continue;
+            }
+            double sinLng = Math.sin(Math.toRadians(lngs[id] - lng) / 2);
+            a += cosLat * cosLats[id] * sinLng * sinLng;
+            if (a <= bound) {
+                nearest.offer(a, id);
+            }
+        }
+    }
+
+    private void addLocked(String key, double lat, double lng, T payload) {
+        int id;
+        if (freeCount > 0) {
+            id = freeIds[--freeCount];
+            payloads.set(id, payload);
+        } else {
+            id = payloads.size();
+            payloads.add(payload);
+            if (id == lats.length) {
+                lats = Arrays.copyOf(lats, id * 2);
+                lngs = Arrays.copyOf(lngs, id * 2);
+                cosLats = Arrays.copyOf(cosLats, id * 2);
+            }
+        }
+        lats[id] = lat;
+        lngs[id] = lng;
+        cosLats[id] = Math.cos(Math.toRadians(lat));
+        idsByKey.put(key, id);
+        cells.computeIfAbsent(cellKey(row(lat), col(lng)), k -> new Cell()).add(id);
+    }
+
+    private void removeLocked(String key) {
+        Integer id = idsByKey.remove(key);
+        if (id == null) {
+            return;
+        }
+        long cellKey = cellKey(row(lats[id]), col(lngs[id]));
+        Cell cell = cells.get(cellKey);
+        cell.remove(id);
+        if (cell.size == 0) {
+            cells.remove(cellKey);
+        }
+        payloads.set(id, null);
+        if (freeCount == freeIds.length) {
+            freeIds = Arrays.copyOf(freeIds, freeCount * 2);
+        }
+        freeIds[freeCount++] = id;
+    }
+
+    private int row(double lat) {
+        return (int) Math.floor(lat / cellDegrees);
+    }
+
+    private int col(double lng) {
+        return (int) Math.floor(lng / cellDegrees);
+    }
+
+    private static long cellKey(int row, int col) {
+        return ((long) row << 32) | (col & 0xFFFFFFFFL);
+    }
+
+    // Smallest cos(lat) over the rows read around lat, so that cell widths are never overestimated
+    private double minCos(double lat, int rows) {
+        double farthest = Math.min(90, Math.abs(lat) + (rows + 1) * cellDegrees);
+        return Math.max(MIN_COS_LAT, Math.cos(Math.toRadians(farthest)));
+    }
+
+    private static void requirePosition(double lat, double lng) {
+        if (!(lat >= -90 && lat <= 90 && lng >= -180 && lng <= 180)) {
+            throw new IllegalArgumentException("Invalid position: " + lat + "," + lng);
+        }
+    }
+
+    public static double distanceKm(double lat1, double lng1, double lat2, double lng2) {
+        double sinLat = Math.sin(Math.toRadians(lat2 - lat1) / 2);
+        double sinLng = Math.sin(Math.toRadians(lng2 - lng1) / 2);
+        return kilometers(sinLat * sinLat
+                + Math.cos(Math.toRadians(lat1)) * Math.cos(Math.toRadians(lat2)) * sinLng * sinLng);
+    }
+
+    /**
+     * Points are compared by the haversine term a = sin²(d / 2R), which grows with the distance d;
+     * the arc sine is only taken for the points returned
+     */
+    private static double haversine(double km) {
+        double sin = Math.sin(Math.min(km / (2 * EARTH_RADIUS_KM), Math.PI / 2));
+        return sin * sin;
+    }
+
+    private static double kilometers(double haversine) {
+        return 2 * EARTH_RADIUS_KM * Math.asin(Math.min(1, Math.sqrt(haversine)));
+    }
+
+    /**
+     * A payload and its distance from the query point
+     */
+    public record Hit<T>(T value, double distanceKm) {
+    }
+
+    private static final class Cell {
+        private int[] ids = new int[4];
+        private int size;
+
+        void add(int id) {
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size * 2);
+            }
+            ids[size++] = id;
+        }
+
+        void remove(int id) {
+            for (int i = 0; i < size; i++) {
+                if (ids[i] == id) {
+                    ids[i] = ids[--size];
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Bounded max-heap on the haversine term keeping the closest points offered, ties to the lower id
+     */
+    private final class Nearest {
+        private final double[] distances;
+        private final int[] ids;
+        private final double limit;
+        private int size;
+
+        Nearest(int capacity, double limit) {
+            this.distances = new double[capacity];
+            this.ids = new int[capacity];
+            this.limit = limit;
+        }
+
+        // Farthest a point may be and still be kept
+        double bound() {
+            return size == distances.length ? Math.min(limit, distances[0]) : limit;
+        }
+
+        boolean isFull() {
+            return size == distances.length;
+        }
+
+        double worst() {
+            return distances[0];
+        }
+
+        void offer(double distance, int id) {
+            if (size < distances.length) {
+                distances[size] = distance;
+                ids[size] = id;
+                siftUp(size++);
+            } else if (before(distance, id, distances[0], ids[0])) {
+                distances[0] = distance;
+                ids[0] = id;
+                siftDown();
+            }
+        }
+
+        List<Hit<T>> hits() {
+            Integer[] order = new Integer[size];
+            for (int i = 0; i < size; i++) {
+                order[i] = i;
+            }
+            Arrays.sort(order, (a, b) -> before(distances[a], ids[a], distances[b], ids[b]) ? -1 : 1);
+            List<Hit<T>> hits = new ArrayList<>(size);
+            for (int i : order) {
+                hits.add(new Hit<>(payloads.get(ids[i]), kilometers(distances[i])));
+            }
+            return hits;
+        }
+
+        private static boolean before(double distance, int id, double otherDistance, int otherId) {
+            return distance < otherDistance || (distance == otherDistance && id < otherId);
+        }
+
+        private void siftUp(int i) {
+            while (i > 0) {
+                int parent = (i - 1) >>> 1;
+                if (!before(distances[parent], ids[parent], distances[i], ids[i])) {
+                    return;
+                }
+                swap(parent, i);
+                i = parent;
+            }
+        }
+
+        private void siftDown() {
+            int i = 0;
+            while (true) {
+                int worst = i;
+                int left = 2 * i + 1;
+                int right = left + 1;
+                if (left < size && before(distances[worst], ids[worst], distances[left], ids[left])) {
+                    worst = left;
+                }
+                if (right < size && before(distances[worst], ids[worst], distances[right], ids[right])) {
+                    worst = right;
+                }
+                if (worst == i) {
+                    return;
+                }
+                swap(worst, i);
+                i = worst;
+            }
+        }
+
+        private void swap(int i, int j) {
+            double distance = distances[i];
+            distances[i] = distances[j];
+            distances[j] = distance;
+            int id = ids[i];
+            ids[i] = ids[j];
+            ids[j] = id;
+        }
+    }
+}
@@ -0,0 +1,143 @@
+package ma.pharmachain.service;
+
+import lombok.extern.slf4j.Slf4j;
+import ma.pharmachain.config.IdempotencyConfig;
+import ma.pharmachain.entity.IdempotencyRecord;
+import ma.pharmachain.repository.IdempotencyRecordRepository;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.LocalDateTime;
+import java.util.*;
+
+@Service
+@Slf4j
+public class IdempotencyService {
+
+    private final IdempotencyRecordRepository idempotencyRecordRepository;
+    private final IdempotencyConfig idempotencyConfig;
+    private final Map<String, IdempotencyRecord> cache;
+
+    public IdempotencyService(IdempotencyRecordRepository idempotencyRecordRepository,
+                              IdempotencyConfig idempotencyConfig) {
+        this.idempotencyRecordRepository = idempotencyRecordRepository;
+        this.idempotencyConfig = idempotencyConfig;
+        int cacheSize = idempotencyConfig.getCacheSize();
+        this.cache = Collections.synchronizedMap(new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, IdempotencyRecord> eldest) {
+                return size() > cacheSize;
+            }
+        });
+    }
+
+    /**
+     * Compact storage key scoped to the caller and the endpoint, so keys cannot collide across users
+     */
+    public static String keyHash(String principal, String method, String path, String idempotencyKey) {
+        String material = principal + '\n' + method + ' ' + path + '\n' + idempotencyKey;
+        return sha256(material.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Hash of the raw request body, stored with the claim: a retry sends the same bytes
+     */
+    public static String requestHash(byte[] body) {
+        return sha256(body);
+    }
+
+    private static String sha256(byte[] bytes) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(bytes));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    /**
+     * Claim a key for the current attempt, unless a response is stored for it (from the front cache first) or
+     * another attempt holds it. Claim and lookup are one statement, so a retry racing the first attempt either
+     * replays its response or gets IN_PROGRESS, on any instance. A key taken by a request with another body is
+     * MISMATCHED, whatever the state of its attempt.
+     */
+    @Transactional
+    public Claim claim(String keyHash, String requestHash) {
+        LocalDateTime now = LocalDateTime.now();
+        IdempotencyRecord cached = cache.get(keyHash);
+        if (cached != null) {
+            if (cached.getExpiresAt().isAfter(now)) {
+                return completed(cached, requestHash);
+            }
+            cache.remove(keyHash);
+        }
+
+        if (idempotencyRecordRepository.claim(keyHash, requestHash, now.plus(idempotencyConfig.getClaimTimeout()),
+                now)) {
+            return new Claim(ClaimState.CLAIMED, null);
+        }
+        Optional<IdempotencyRecord> stored = idempotencyRecordRepository.findById(keyHash);
+        if (stored.isPresent() && isMismatched(stored.get(), requestHash)) {
+            return new Claim(ClaimState.MISMATCHED, null);
+        }
+        if (stored.isEmpty() || stored.get().getStatusCode() == IdempotencyRecord.IN_PROGRESS) {
+            return new Claim(ClaimState.IN_PROGRESS, null);
+        }
+        cache.put(keyHash, stored.get());
+        return new Claim(ClaimState.COMPLETED, stored.get());
+    }
+
+    private static Claim completed(IdempotencyRecord record, String requestHash) {
+        return isMismatched(record, requestHash)
+                ? new Claim(ClaimState.MISMATCHED, null)
+                : new Claim(ClaimState.COMPLETED, record);
+    }
+
+    private static boolean isMismatched(IdempotencyRecord record, String requestHash) {
+        return record.getRequestHash() != null && !record.getRequestHash().equals(requestHash);
+    }
+
+    /**
+     * Free a claimed key whose attempt stored no response
+     */
+    @Transactional
+    public void release(String keyHash) {
+        idempotencyRecordRepository.deleteClaim(keyHash);
+    }
+
+    @Transactional
+    public void complete(String keyHash, String requestHash, int statusCode, String contentType, byte[] body) {
+        IdempotencyRecord record = new IdempotencyRecord();
+        record.setKeyHash(keyHash);
+        record.setRequestHash(requestHash);
+        record.setStatusCode(statusCode);
+        record.setContentType(contentType);
+        record.setResponseBody(new String(body, StandardCharsets.UTF_8));
+        record.setExpiresAt(LocalDateTime.now().plus(idempotencyConfig.getTtl()));
+
+        idempotencyRecordRepository.save(record);
+        cache.put(keyHash, record);
+    }
+
+    @Scheduled(fixedDelayString = "${pharmachain.idempotency.purge-interval:PT1H}")
+    @Transactional
+    public void purgeExpired() {
+        int purged = idempotencyRecordRepository.deleteExpired(LocalDateTime.now());
+        if (purged > 0) {
+            log.info("Purged {} expired idempotency keys", purged);
+        }
+    }
+
+    public enum ClaimState {
+        CLAIMED, COMPLETED, IN_PROGRESS, MISMATCHED
+    }
+
+    /**
+     * @param record the stored response when COMPLETED
+     */
+    public record Claim(ClaimState state, IdempotencyRecord record) {
+    }
+}
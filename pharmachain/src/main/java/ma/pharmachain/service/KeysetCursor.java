@@ -0,0 +1,59 @@
+package ma.pharmachain.service;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * Opaque {@code after} tokens of the keyset list endpoints: the sort key and id of the last row
+ * of a page, URL-safe base64 encoded. An empty token asks for the first page.
+ */
+public final class KeysetCursor {
+
+    private static final char SEPARATOR = '|';
+
+    private KeysetCursor() {
+    }
+
+    public static String encode(Object sortKey, Object id) {
+        String raw = (sortKey != null ? sortKey.toString() : "") + SEPARATOR + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public static String encode(Object id) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(id.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * @return the sort key (null when it was null) and the id
+     * @throws IllegalArgumentException when the token was not produced by {@link #encode(Object, Object)}
+     */
+    public static String[] decode(String token) {
+        String raw = decodeRaw(token);
+        int separator = raw.lastIndexOf(SEPARATOR);
+        if (separator < 0 || separator == raw.length() - 1) {
+            throw new IllegalArgumentException("Invalid after cursor: " + token);
+        }
+        String sortKey = raw.substring(0, separator);
+        return new String[]{sortKey.isEmpty() ? null : sortKey, raw.substring(separator + 1)};
+    }
+
+    public static String decodeId(String token) {
+        String raw = decodeRaw(token);
+        if (raw.isEmpty()) {
+            throw new IllegalArgumentException("Invalid after cursor: " + token);
+        }
+        return raw;
+    }
+
+    public static boolean isFirstPage(String token) {
+        return token == null || token.isEmpty();
+    }
+
+    private static String decodeRaw(String token) {
+        try {
+            return new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Invalid after cursor: " + token, e);
+        }
+    }
+}
@@ -0,0 +1,165 @@
+package ma.pharmachain.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import ma.pharmachain.config.CacheConfig;
+import ma.pharmachain.repository.BordereauRepository;
+import ma.pharmachain.repository.DeliveryItemRepository;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import static ma.pharmachain.service.TransactionHooks.afterCommit;
+
+/**
+ * Counting Bloom filters over every bordereau number and BL number, so lookups of numbers that do not
+ * exist yet (most scans) skip the database.
+ * <p>
+ * The filters live in this process and only learn the numbers it writes after the startup scan, so they
+ * assume a single instance on the database: another instance's inserts would be reported as absent. They are
+ * built only with pharmachain.cache.single-instance=true; otherwise every number is reported as possibly
+ * present and the lookups always hit the database.
+ * <p>
+ * Numbers are added as soon as they are written, before commit: a rollback only leaves a false positive.
+ * Deletes are applied after commit, since a rolled-back delete must not make an existing number look absent,
+ * and are ignored until the startup scan has completed, as the deleted number may not have been added yet.
+ * Until then every number is reported as possibly present.
+ */
+@Service
+@Slf4j
+public class KnownNumbersFilter {
+
+    private final BordereauRepository bordereauRepository;
+    private final DeliveryItemRepository deliveryItemRepository;
+    private final TransactionTemplate readOnlyTransaction;
+    private final boolean enabled;
+    private final CountingBloomFilter bordereaux;
+    private final CountingBloomFilter blNumbers;
+    private final Counter bordereauAbsent;
+    private final Counter blNumberAbsent;
+    private final Counter bordereauFalsePositives;
+    private final Counter blNumberFalsePositives;
+    private volatile boolean ready;
+
+    public KnownNumbersFilter(BordereauRepository bordereauRepository, DeliveryItemRepository deliveryItemRepository,
+                              CacheConfig cacheConfig, PlatformTransactionManager transactionManager,
+                              MeterRegistry meterRegistry) {
+        this.bordereauRepository = bordereauRepository;
+        this.deliveryItemRepository = deliveryItemRepository;
+        this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction.setReadOnly(true);
+        this.enabled = cacheConfig.isSingleInstance();
+        // Not allocated when off: they are never read
+        this.bordereaux = enabled ? new CountingBloomFilter(cacheConfig.getBordereauFilterCapacity(),
+                cacheConfig.getNumberFilterFalsePositiveRate()) : null;
+        this.blNumbers = enabled ? new CountingBloomFilter(cacheConfig.getBlNumberFilterCapacity(),
+                cacheConfig.getNumberFilterFalsePositiveRate()) : null;
+        if (enabled) {
+            registerGauges("bordereaux", bordereaux, meterRegistry);
+            registerGauges("blNumbers", blNumbers, meterRegistry);
+        }
+        // Observed false-positive rate = false.positives / (false.positives + absent)
+        this.bordereauAbsent = meterRegistry.counter("pharmachain.filter.absent", "filter", "bordereaux");
+        this.blNumberAbsent = meterRegistry.counter("pharmachain.filter.absent", "filter", "blNumbers");
+        this.bordereauFalsePositives = meterRegistry.counter("pharmachain.filter.false.positives", "filter", "bordereaux");
+        this.blNumberFalsePositives = meterRegistry.counter("pharmachain.filter.false.positives", "filter", "blNumbers");
+    }
+
+    /**
+     * Streams every number into the filters once the application is up; writes made meanwhile go
+     * straight into the same filters, so nothing committed during the scan is missed.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void rebuild() {
+        if (!enabled) {
+            log.info("Number filters off (pharmachain.cache.single-instance=false), lookups all hit the database");
+            return;
+        }
+        long start = System.currentTimeMillis();
+        try {
+            readOnlyTransaction.executeWithoutResult(status -> {
+                bordereauRepository.forEachBordereauNumber(bordereaux::add);
+                deliveryItemRepository.forEachBlNumber(blNumbers::add);
+            });
+        } catch (RuntimeException e) {
+            // Stay "possibly present" for everything: slower, never wrong
+            log.error("Number filters could not be built, lookups will all hit the database", e);
+            return;
+        }
+        ready = true;
+        log.info("Number filters built in {} ms: {} bordereaux, {} BL numbers",
+                System.currentTimeMillis() - start, bordereaux.count(), blNumbers.count());
+    }
+
+    public boolean mightContainBordereau(String bordereauNumber) {
+        if (!ready || bordereaux.mightContain(bordereauNumber)) {
+            return true;
+        }
+        bordereauAbsent.increment();
+        return false;
+    }
+
+    public boolean mightContainBlNumber(String blNumber) {
+        if (!ready || blNumbers.mightContain(blNumber)) {
+            return true;
+        }
+        blNumberAbsent.increment();
+        return false;
+    }
+
+    public void addBordereau(String bordereauNumber) {
+        if (enabled) {
+            bordereaux.add(bordereauNumber);
+        }
+    }
+
+    public void addBlNumber(String blNumber) {
+        if (enabled) {
+            blNumbers.add(blNumber);
+        }
+    }
+
+    public void removeBordereau(String bordereauNumber) {
+        afterCommit(() -> {
+            if (ready) {
+                bordereaux.remove(bordereauNumber);
+            }
+        });
+    }
+
+    public void removeBlNumber(String blNumber) {
+        afterCommit(() -> {
+            if (ready) {
+                blNumbers.remove(blNumber);
+            }
+        });
+    }
+
+    /**
+     * The filter said "maybe" and the database said no
+     */
+    public void recordBordereauFalsePositive() {
+        bordereauFalsePositives.increment();
+    }
+
+    public void recordBlNumberFalsePositives(int count) {
+        blNumberFalsePositives.increment(count);
+    }
+
+    private static void registerGauges(String name, CountingBloomFilter filter, MeterRegistry meterRegistry) {
+        Gauge.builder("pharmachain.filter.size", filter, CountingBloomFilter::count)
+                .tag("filter", name)
+                .register(meterRegistry);
+        Gauge.builder("pharmachain.filter.memory", filter, CountingBloomFilter::memoryBytes)
+                .tag("filter", name)
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        Gauge.builder("pharmachain.filter.fpp.expected", filter, CountingBloomFilter::expectedFalsePositiveRate)
+                .tag("filter", name)
+                .register(meterRegistry);
+    }
+}
@@ -1,13 +1,17 @@
 package ma.pharmachain.service;
 
+import ma.pharmachain.dto.BordereauDetail;
+import ma.pharmachain.dto.ClientSummary;
+import ma.pharmachain.dto.DriverSummary;
 import ma.pharmachain.dto.ManagerCreateRequest;
+import ma.pharmachain.dto.ManagerSummary;
 import ma.pharmachain.dto.ManagerUpdateRequest;
-import ma.pharmachain.entity.Bordereau;
-import ma.pharmachain.entity.Client;
-import ma.pharmachain.entity.Driver;
+import ma.pharmachain.dto.SlicePage;
+import ma.pharmachain.dto.StatusStats;
 import ma.pharmachain.entity.Manager;
 import org.springframework.data.domain.Page;
 
+import java.time.LocalDate;
 import java.util.List;
 import java.util.Map;
 
@@ -15,7 +19,9 @@ public interface ManagerService {
 
     Manager getManagerByKeycloakUserId(String keycloakUserId);
 
-    Page<Manager> listManagers(int page, int size);
+    Page<ManagerSummary> listManagers(int page, int size);
+
+    SlicePage<ManagerSummary> listManagersSlice(int page, int size, boolean approximateTotal);
 
     Manager getManagerByCode(String code);
 
@@ -27,9 +33,13 @@ public interface ManagerService {
 
     void deleteManager(String code);
 
-    List<Driver> getManagerDrivers(String code);
+    List<DriverSummary> getManagerDrivers(String code);
+
+    List<ClientSummary> getManagerClients(String code);
+
+    List<BordereauDetail> getManagerBordereaux(String code);
 
-    List<Client> getManagerClients(String code);
+    String getManagerBordereauxEtag(String code);
 
-    List<Bordereau> getManagerBordereaux(String code);
+    StatusStats getManagerStats(String code, LocalDate date, String driverCode);
 }
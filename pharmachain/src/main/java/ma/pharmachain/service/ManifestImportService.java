@@ -0,0 +1,233 @@
+package ma.pharmachain.service;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import ma.pharmachain.config.ScanConfig;
+import ma.pharmachain.dto.ManifestImportReport;
+import ma.pharmachain.repository.BordereauRepository;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+
+/**
+ * Loads the ERP's next-day manifest: one CSV line per BL,
+ * <pre>
+ * bordereau_number,delivery_date,driver_code,manager_code,bl_number,client_code,client_name,client_address,nombre_colis,nombre_sachets
+ * 500001,2024-08-22,100001,200001,300001,400001,"Pharmacie Atlas","12 Rue Fes",2,1
+ * </pre>
+ * Lines are validated while they are streamed into a COPY staging table, so one bad line is rejected
+ * instead of aborting the COPY. The staged rows are then merged with one statement per table, with the
+ * auto-creation rules of the scan path (autoCreated=true for new bordereaux, clients and users).
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class ManifestImportService {
+
+    private static final int COLUMNS = 10;
+    private static final String HEADER_PREFIX = "bordereau_number";
+    // varchar(255) columns: a longer value would fail the whole COPY
+    private static final int MAX_TEXT_LENGTH = 255;
+
+    private final BordereauRepository bordereauRepository;
+    private final ScanConfig scanConfig;
+    private final KnownNumbersFilter knownNumbersFilter;
+    private final ClientSearchIndex clientSearchIndex;
+    private final DriverRouteCache driverRouteCache;
+    private final StatusCounters statusCounters;
+
+    @Transactional
+    public ManifestImportReport importManifest(InputStream in) {
+        long start = System.nanoTime();
+        ManifestImportReport report = new ManifestImportReport();
+
+        bordereauRepository.createManifestStaging();
+        report.setRowsLoaded(bordereauRepository.copyManifestStaging(out -> stage(in, out, report)));
+
+        // Users before the rows that reference them, bordereaux before their lines
+        report.setManagersCreated(bordereauRepository.insertManifestManagers());
+        report.setDriversCreated(bordereauRepository.insertManifestDrivers());
+        report.setClientsCreated(bordereauRepository.insertManifestClients());
+        report.setBordereauxMerged(bordereauRepository.upsertManifestBordereaux());
+        report.setDeliveryItemsMerged(bordereauRepository.upsertManifestDeliveryItems());
+        bordereauRepository.forEachStagedManifestNumber(
+                knownNumbersFilter::addBordereau, knownNumbersFilter::addBlNumber);
+        if (report.getClientsCreated() > 0) {
+            clientSearchIndex.loadAfterCommit();
+        }
+        if (report.getRowsLoaded() > 0) {
+            driverRouteCache.evictAll();
+            statusCounters.recountAfterCommit();
+        }
+
+        long elapsedNanos = System.nanoTime() - start;
+        report.setElapsedMillis(elapsedNanos / 1_000_000);
+        report.setRowsPerSecond(elapsedNanos > 0 ? report.getRowsLoaded() * 1e9 / elapsedNanos : 0);
+        log.info("Manifest imported: {} rows in {} ms ({} rows/s), {} rejected",
+                report.getRowsLoaded(), report.getElapsedMillis(), Math.round(report.getRowsPerSecond()),
+                report.getRejectedCount());
+        return report;
+    }
+
+    /**
+     * Validates each manifest line and writes it to the COPY stream as
+     * {@code line_no,<the ten columns>}, re-quoting the text fields.
+     */
+    void stage(InputStream in, OutputStream out, ManifestImportReport report) throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+        Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), 1 << 16);
+        int maxReported = scanConfig.getManifest().getMaxReportedRejections();
+        String[] fields = new String[COLUMNS];
+        StringBuilder row = new StringBuilder(256);
+
+        long lineNumber = 0;
+        String line;
+        while ((line = reader.readLine()) != null) {
+            lineNumber++;
+            if (line.isBlank() || (lineNumber == 1 && line.startsWith(HEADER_PREFIX))) {
+                continue;
+            }
+            String error = split(line, fields);
+            if (error == null) {
+                error = validate(fields);
+            }
+            if (error != null) {
+                report.setRejectedCount(report.getRejectedCount() + 1);
+                if (report.getRejectedLines().size() < maxReported) {
+                    report.getRejectedLines().add(new ManifestImportReport.RejectedLine(lineNumber, error));
+                }
+                continue;
+            }
+
+            row.setLength(0);
+            row.append(lineNumber);
+            for (String field : fields) {
+                row.append(',');
+                appendQuoted(row, field);
+            }
+            row.append('\n');
+            writer.append(row);
+        }
+        // Flush only: closing would end the COPY, which the repository does
+        writer.flush();
+        report.setLinesRead(lineNumber);
+    }
+
+    /**
+     * Splits one CSV line into {@code fields}; empty fields become null.
+     * @return null, or why the line cannot be split into exactly {@value COLUMNS} columns
+     */
+    static String split(String line, String[] fields) {
+        int column = 0;
+        int pos = 0;
+        int length = line.length();
+        StringBuilder quoted = null;
+        while (true) {
+            if (column == fields.length) {
+                return "more than " + fields.length + " columns";
+            }
+            String value;
+            if (pos < length && line.charAt(pos) == '"') {
+                if (quoted == null) {
+                    quoted = new StringBuilder();
+                }
+                quoted.setLength(0);
+                pos++;
+                while (true) {
+                    if (pos >= length) {
+                        return "unterminated quote";
+                    }
+                    char c = line.charAt(pos++);
+                    if (c == '"') {
+                        if (pos < length && line.charAt(pos) == '"') {
+                            quoted.append('"');
+                            pos++;
+                        } else {
+                            break;
+                        }
+                    } else {
+                        quoted.append(c);
+                    }
+                }
+                if (pos < length && line.charAt(pos) != ',') {
+                    return "unexpected character after quote in column " + (column + 1);
+                }
+                value = quoted.toString();
+            } else {
+                int end = line.indexOf(',', pos);
+                if (end < 0) {
+                    end = length;
+                }
+                value = line.substring(pos, end).strip();
+                pos = end;
+            }
+            fields[column++] = value.isEmpty() ? null : value;
+            if (pos >= length) {
+                break;
+            }
+            pos++; // separator
+        }
+        return column == fields.length ? null : "expected " + fields.length + " columns, got " + column;
+    }
+
+    private static String validate(String[] fields) {
+        for (int i = 0; i < COLUMNS; i++) {
+            if (fields[i] != null && fields[i].length() > MAX_TEXT_LENGTH) {
+                return "column " + (i + 1) + " longer than " + MAX_TEXT_LENGTH + " characters";
+            }
+        }
+        if (fields[0] == null) {
+            return "missing bordereau_number";
+        }
+        if (fields[1] == null) {
+            return "missing delivery_date";
+        }
+        try {
+            LocalDate.parse(fields[1]);
+        } catch (DateTimeParseException e) {
+            return "invalid delivery_date " + fields[1];
+        }
+        if (fields[4] == null) {
+            return "missing bl_number";
+        }
+        for (int i = 8; i < COLUMNS; i++) {
+            if (fields[i] != null && !isCount(fields[i])) {
+                return "invalid " + (i == 8 ? "nombre_colis " : "nombre_sachets ") + fields[i];
+            }
+        }
+        return null;
+    }
+
+    private static boolean isCount(String value) {
+        if (value.length() > 9) {
+            return false;
+        }
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c < '0' || c > '9') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static void appendQuoted(StringBuilder row, String value) {
+        // Unquoted empty is NULL for COPY csv
+        if (value == null) {
+            return;
+        }
+        row.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"') {
+                row.append('"');
+            }
+            row.append(c);
+        }
+        row.append('"');
+    }
+}
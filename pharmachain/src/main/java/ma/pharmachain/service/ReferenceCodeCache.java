@@ -0,0 +1,162 @@
+package ma.pharmachain.service;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import ma.pharmachain.config.CacheConfig;
+import ma.pharmachain.entity.Client;
+import ma.pharmachain.entity.Driver;
+import ma.pharmachain.entity.Manager;
+import ma.pharmachain.repository.ClientRepository;
+import ma.pharmachain.repository.DriverRepository;
+import ma.pharmachain.repository.ManagerRepository;
+import org.springframework.stereotype.Service;
+
+import java.util.*;
+
+/**
+ * Resolves 6-digit business codes to entity references without a SELECT once a code has been seen.
+ * <p>
+ * Only codes known to exist are cached; the *ServiceImpl write methods evict a code when its entity
+ * is created, updated or deleted, again after commit so a concurrent reader cannot re-cache a stale id.
+ */
+@Service
+public class ReferenceCodeCache {
+
+    private final DriverRepository driverRepository;
+    private final ManagerRepository managerRepository;
+    private final ClientRepository clientRepository;
+    private final BoundedCache<String, Long> driverIds;
+    private final BoundedCache<String, Long> managerIds;
+    private final BoundedCache<String, Boolean> clientCodes;
+
+    public ReferenceCodeCache(DriverRepository driverRepository, ManagerRepository managerRepository,
+                              ClientRepository clientRepository, CacheConfig cacheConfig,
+                              MeterRegistry meterRegistry) {
+        this.driverRepository = driverRepository;
+        this.managerRepository = managerRepository;
+        this.clientRepository = clientRepository;
+        int maxSize = cacheConfig.getReferenceCodesMaxSize();
+        this.driverIds = new BoundedCache<>("driverCodes", maxSize, meterRegistry);
+        this.managerIds = new BoundedCache<>("managerCodes", maxSize, meterRegistry);
+        this.clientCodes = new BoundedCache<>("clientCodes", maxSize, meterRegistry);
+    }
+
+    public Optional<Driver> driverReference(String code) {
+        Long id = driverIds.get(code);
+        if (id == null) {
+            id = driverRepository.findIdByCode(code).orElse(null);
+            if (id == null) {
+                return Optional.empty();
+            }
+            driverIds.put(code, id);
+        }
+        return Optional.of(driverRepository.getReferenceById(id));
+    }
+
+    public Optional<Manager> managerReference(String code) {
+        Long id = managerIds.get(code);
+        if (id == null) {
+            id = managerRepository.findIdByCode(code).orElse(null);
+            if (id == null) {
+                return Optional.empty();
+            }
+            managerIds.put(code, id);
+        }
+        return Optional.of(managerRepository.getReferenceById(id));
+    }
+
+    /**
+     * Ids of the drivers among {@code codes}, loading all cache misses with one query
+     */
+    public Map<String, Long> driverIds(Collection<String> codes) {
+        Map<String, Long> ids = new HashMap<>();
+        List<String> missing = new ArrayList<>();
+        for (String code : codes) {
+            Long id = driverIds.get(code);
+            if (id != null) {
+                ids.put(code, id);
+            } else {
+                missing.add(code);
+            }
+        }
+        if (!missing.isEmpty()) {
+            driverRepository.findByCodeIn(missing).forEach(driver -> {
+                ids.put(driver.getCode(), driver.getId());
+                driverIds.put(driver.getCode(), driver.getId());
+            });
+        }
+        return ids;
+    }
+
+    /**
+     * Ids of the managers among {@code codes}, loading all cache misses with one query
+     */
+    public Map<String, Long> managerIds(Collection<String> codes) {
+        Map<String, Long> ids = new HashMap<>();
+        List<String> missing = new ArrayList<>();
+        for (String code : codes) {
+            Long id = managerIds.get(code);
+            if (id != null) {
+                ids.put(code, id);
+            } else {
+                missing.add(code);
+            }
+        }
+        if (!missing.isEmpty()) {
+            managerRepository.findByCodeIn(missing).forEach(manager -> {
+                ids.put(manager.getCode(), manager.getId());
+                managerIds.put(manager.getCode(), manager.getId());
+            });
+        }
+        return ids;
+    }
+
+    /**
+     * The client codes among {@code codes} that exist, loading all cache misses with one query
+     */
+    public Set<String> existingClientCodes(Collection<String> codes) {
+        Set<String> existing = new HashSet<>();
+        List<String> missing = new ArrayList<>();
+        for (String code : codes) {
+            if (clientCodes.get(code) != null) {
+                existing.add(code);
+            } else {
+                missing.add(code);
+            }
+        }
+        if (!missing.isEmpty()) {
+            clientRepository.findExistingClientCodes(missing).forEach(code -> {
+                existing.add(code);
+                clientCodes.put(code, Boolean.TRUE);
+            });
+        }
+        return existing;
+    }
+
+    public void putDriver(String code, Long id) {
+        driverIds.put(code, id);
+    }
+
+    public void putManager(String code, Long id) {
+        managerIds.put(code, id);
+    }
+
+    public void putClients(Collection<String> codes) {
+        codes.forEach(code -> clientCodes.put(code, Boolean.TRUE));
+    }
+
+    public void evictDriver(String code) {
+        evict(() -> driverIds.remove(code));
+    }
+
+    public void evictManager(String code) {
+        evict(() -> managerIds.remove(code));
+    }
+
+    public void evictClient(String code) {
+        evict(() -> clientCodes.remove(code));
+    }
+
+    private static void evict(Runnable eviction) {
+        TransactionHooks.nowAndAfterCompletion(eviction);
+    }
+}
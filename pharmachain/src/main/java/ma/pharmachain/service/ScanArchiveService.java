@@ -0,0 +1,125 @@
+package ma.pharmachain.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import ma.pharmachain.config.ScanConfig;
+import ma.pharmachain.dto.BordereauScanRequest;
+import ma.pharmachain.exception.ConflictException;
+import ma.pharmachain.journal.ScanArchive;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.HealthIndicator;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.util.function.Consumer;
+
+/**
+ * Keeps every applied scan in the {@link ScanArchive} so a time range can be re-applied later
+ * (see {@link ScanReplayService}). A scan is archived once it commits and before it is acknowledged; the archive's
+ * pending file keeps the records of the block being filled across a crash, and flush-interval only bounds how long
+ * they wait to be compressed. Archiving never fails a scan: a scan that cannot be archived is logged, counted, and
+ * turns this health check DOWN, since replaying its time range would miss it.
+ */
+@Service
+@Slf4j
+public class ScanArchiveService implements HealthIndicator {
+
+    private final ObjectMapper objectMapper;
+    private final ScanArchive archive;
+    private final Counter archivedCounter;
+    private final Counter errorCounter;
+
+    public ScanArchiveService(ObjectMapper objectMapper, ScanConfig scanConfig, MeterRegistry meterRegistry) {
+        this.objectMapper = objectMapper;
+        ScanConfig.Archive archiveConfig = scanConfig.getArchive();
+        this.archive = archiveConfig.isEnabled()
+                ? new ScanArchive(Path.of(archiveConfig.getDirectory()),
+                        (int) archiveConfig.getBlockSize().toBytes(), ZoneId.systemDefault(),
+                        archiveConfig.isForceOnAppend())
+                : null;
+        this.archivedCounter = Counter.builder("pharmachain.scan.archive.records")
+                .description("Applied scans written to the scan archive")
+                .register(meterRegistry);
+        this.errorCounter = Counter.builder("pharmachain.scan.archive.errors")
+                .description("Applied scans that could not be archived")
+                .register(meterRegistry);
+    }
+
+    public boolean isEnabled() {
+        return archive != null;
+    }
+
+    public void record(BordereauScanRequest request) {
+        if (archive == null) {
+            return;
+        }
+        try {
+            archive.append(Instant.now(), objectMapper.writeValueAsBytes(request));
+            archivedCounter.increment();
+        } catch (JsonProcessingException | RuntimeException e) {
+            log.error("Cannot archive scan of bordereau {}: {}", request.getBordereauNumber(), e.getMessage());
+            errorCounter.increment();
+        }
+    }
+
+    /**
+     * Archived scans applied in [from, to), in the order they were applied
+     */
+    public void read(Instant from, Instant to, Consumer<ScanArchive.Entry> consumer) {
+        requireEnabled().flush();
+        archive.read(from, to, consumer);
+    }
+
+    public long count(Instant from, Instant to) {
+        requireEnabled().flush();
+        return archive.count(from, to);
+    }
+
+    @Scheduled(fixedDelayString = "${pharmachain.scan.archive.flush-interval:PT1S}")
+    public void flush() {
+        if (archive == null) {
+            return;
+        }
+        try {
+            archive.flush();
+        } catch (RuntimeException e) {
+            log.warn("Cannot flush scan archive: {}", e.getMessage());
+        }
+    }
+
+    private ScanArchive requireEnabled() {
+        if (archive == null) {
+            throw new ConflictException("Scan archive is disabled (pharmachain.scan.archive.enabled)");
+        }
+        return archive;
+    }
+
+    /**
+     * DOWN once a scan could not be archived since startup
+     */
+    @Override
+    public Health health() {
+        if (archive == null) {
+            return Health.unknown().withDetail("enabled", false).build();
+        }
+        long dropped = (long) errorCounter.count();
+        return (dropped > 0 ? Health.down() : Health.up())
+                .withDetail("archived", (long) archivedCounter.count())
+                .withDetail("dropped", dropped)
+                .build();
+    }
+
+    @PreDestroy
+    public void close() {
+        if (archive != null) {
+            archive.close();
+        }
+    }
+}
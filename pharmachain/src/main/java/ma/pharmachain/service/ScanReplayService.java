@@ -0,0 +1,190 @@
+package ma.pharmachain.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import ma.pharmachain.config.ScanConfig;
+import ma.pharmachain.dto.BordereauScanRequest;
+import ma.pharmachain.dto.BordereauScanResult;
+import ma.pharmachain.dto.ScanReplayStatus;
+import ma.pharmachain.enums.ScanReplayState;
+import ma.pharmachain.exception.ConflictException;
+import ma.pharmachain.exception.InvalidRequestException;
+import ma.pharmachain.exception.ResourceNotFoundException;
+import ma.pharmachain.journal.ScanArchive;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Re-applies the archived scans of a time range, e.g. against a database restored to an earlier point.
+ * Scans are read in the order they were first applied and sent through
+ * {@link BordereauScanService#replayScans(List, int)} in batches; scans are upserts, so replaying a range
+ * that is partly in the database already is harmless. One replay runs at a time, and the status of the last
+ * 100 is kept.
+ */
+@Service
+@Slf4j
+public class ScanReplayService {
+
+    private static final int KEPT_REPLAYS = 100;
+
+    private final BordereauScanService bordereauScanService;
+    private final ScanArchiveService scanArchiveService;
+    private final ObjectMapper objectMapper;
+    private final ScanConfig.Archive archiveConfig;
+    // Latest replays by id; one runs at a time, so the running one is never evicted
+    private final Map<Long, ScanReplayStatus> replays = Collections.synchronizedMap(new LinkedHashMap<>() {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, ScanReplayStatus> eldest) {
+            return size() > KEPT_REPLAYS;
+        }
+    });
+    private final AtomicLong ids = new AtomicLong();
+    private ScanReplayStatus running;
+
+    public ScanReplayService(BordereauScanService bordereauScanService, ScanArchiveService scanArchiveService,
+                             ObjectMapper objectMapper, ScanConfig scanConfig) {
+        this.bordereauScanService = bordereauScanService;
+        this.scanArchiveService = scanArchiveService;
+        this.objectMapper = objectMapper;
+        this.archiveConfig = scanConfig.getArchive();
+    }
+
+    public synchronized ScanReplayStatus start(Instant from, Instant to, Integer parallelism, Integer batchSize) {
+        if (!from.isBefore(to)) {
+            throw new InvalidRequestException("Replay range is empty: " + from + " to " + to);
+        }
+        if (running != null && running.getState() == ScanReplayState.RUNNING) {
+            throw new ConflictException("Scan replay " + running.getId() + " is still running");
+        }
+
+        ScanReplayStatus status = new ScanReplayStatus();
+        status.setId(ids.incrementAndGet());
+        status.setFrom(from);
+        status.setTo(to);
+        status.setParallelism(parallelism != null ? parallelism : archiveConfig.getReplayParallelism());
+        status.setBatchSize(batchSize != null ? batchSize : archiveConfig.getReplayBatchSize());
+        if (status.getParallelism() < 1 || status.getBatchSize() < 1) {
+            throw new InvalidRequestException("Replay parallelism and batch size must be positive");
+        }
+        status.setRecordsEstimated(scanArchiveService.count(from, to));
+        status.setState(ScanReplayState.RUNNING);
+        status.setStartedAt(Instant.now());
+        replays.put(status.getId(), status);
+        running = status;
+
+        Thread.ofVirtual().name("scan-replay-" + status.getId()).start(() -> run(status));
+        return snapshot(status);
+    }
+
+    public ScanReplayStatus getStatus(long id) {
+        ScanReplayStatus status = replays.get(id);
+        if (status == null) {
+            throw new ResourceNotFoundException("Scan replay not found: " + id);
+        }
+        return snapshot(status);
+    }
+
+    void run(ScanReplayStatus status) {
+        long start = System.nanoTime();
+        List<BordereauScanRequest> batch = new ArrayList<>(status.getBatchSize());
+        try {
+            scanArchiveService.read(status.getFrom(), status.getTo(), entry -> {
+                BordereauScanRequest request = parse(entry, status);
+                if (request != null) {
+                    batch.add(request);
+                }
+                if (batch.size() >= status.getBatchSize()) {
+                    apply(batch, status, start);
+                }
+            });
+            apply(batch, status, start);
+            finish(status, ScanReplayState.COMPLETED, null);
+            log.info("Scan replay {} completed: {} scans in {} ms ({} scans/s), {} failed, {} unreadable",
+                    status.getId(), status.getRecordsRead(), status.getElapsedMillis(),
+                    Math.round(status.getRecordsPerSecond()), status.getFailed(), status.getUnreadable());
+        } catch (RuntimeException e) {
+            log.error("Scan replay {} failed after {} scans", status.getId(), status.getRecordsRead(), e);
+            finish(status, ScanReplayState.FAILED, e.getMessage());
+        }
+    }
+
+    private BordereauScanRequest parse(ScanArchive.Entry entry, ScanReplayStatus status) {
+        synchronized (status) {
+            status.setRecordsRead(status.getRecordsRead() + 1);
+        }
+        try {
+            return objectMapper.readValue(entry.payload(), BordereauScanRequest.class);
+        } catch (IOException e) {
+            synchronized (status) {
+                status.setUnreadable(status.getUnreadable() + 1);
+            }
+            return null;
+        }
+    }
+
+    private void apply(List<BordereauScanRequest> batch, ScanReplayStatus status, long start) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        List<BordereauScanResult> results = bordereauScanService.replayScans(batch, status.getParallelism());
+        long failed = results.stream().filter(result -> !result.isSuccess()).count();
+        batch.clear();
+
+        synchronized (status) {
+            status.setApplied(status.getApplied() + results.size() - failed);
+            status.setFailed(status.getFailed() + failed);
+            updateRate(status, start);
+        }
+        log.debug("Scan replay {}: {}/{} scans, {} scans/s", status.getId(), status.getRecordsRead(),
+                status.getRecordsEstimated(), Math.round(status.getRecordsPerSecond()));
+    }
+
+    private void finish(ScanReplayStatus status, ScanReplayState state, String error) {
+        synchronized (status) {
+            status.setFinishedAt(Instant.now());
+            status.setElapsedMillis(status.getFinishedAt().toEpochMilli() - status.getStartedAt().toEpochMilli());
+            status.setRecordsPerSecond(status.getElapsedMillis() > 0
+                    ? (status.getApplied() + status.getFailed()) * 1000.0 / status.getElapsedMillis() : 0);
+            status.setError(error);
+            status.setState(state);
+        }
+    }
+
+    private static void updateRate(ScanReplayStatus status, long start) {
+        long elapsedNanos = System.nanoTime() - start;
+        status.setElapsedMillis(elapsedNanos / 1_000_000);
+        status.setRecordsPerSecond(elapsedNanos > 0
+                ? (status.getApplied() + status.getFailed()) * 1e9 / elapsedNanos : 0);
+    }
+
+    private static ScanReplayStatus snapshot(ScanReplayStatus status) {
+        synchronized (status) {
+            ScanReplayStatus copy = new ScanReplayStatus();
+            copy.setId(status.getId());
+            copy.setFrom(status.getFrom());
+            copy.setTo(status.getTo());
+            copy.setParallelism(status.getParallelism());
+            copy.setBatchSize(status.getBatchSize());
+            copy.setState(status.getState());
+            copy.setRecordsEstimated(status.getRecordsEstimated());
+            copy.setRecordsRead(status.getRecordsRead());
+            copy.setApplied(status.getApplied());
+            copy.setFailed(status.getFailed());
+            copy.setUnreadable(status.getUnreadable());
+            copy.setStartedAt(status.getStartedAt());
+            copy.setFinishedAt(status.getFinishedAt());
+            copy.setElapsedMillis(status.getElapsedMillis());
+            copy.setRecordsPerSecond(status.getRecordsPerSecond());
+            copy.setError(status.getError());
+            return copy;
+        }
+    }
+}
@@ -0,0 +1,194 @@
+package ma.pharmachain.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import ma.pharmachain.config.ScanConfig;
+import ma.pharmachain.dto.BordereauScanRequest;
+import ma.pharmachain.dto.BordereauScanResult;
+import ma.pharmachain.dto.ScanLineAck;
+import org.springframework.stereotype.Service;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class ScanStreamService {
+
+    private final BordereauScanService bordereauScanService;
+    private final ObjectMapper objectMapper;
+    private final ScanConfig scanConfig;
+
+    /**
+     * Reads newline-delimited BordereauScanRequest JSON and writes one acknowledgement line per input line.
+     * Only one chunk is held in memory, and the next one is read only after the previous one is committed,
+     * so a slow database pushes back on the scanner through TCP flow control.
+     * A chunk whose batch scan throws is acknowledged as failed line by line and ends the stream: the lines
+     * after it are not read, and the client resends from the first failed line (scans are upserts).
+     */
+    public long ingest(InputStream in, OutputStream out) throws IOException {
+        int maxLineLength = scanConfig.getStream().getMaxLineLength();
+        BoundedLineReader reader = new BoundedLineReader(new InputStreamReader(in, StandardCharsets.UTF_8),
+                maxLineLength);
+        int chunkSize = Math.max(1, scanConfig.getStream().getChunkSize());
+        List<PendingLine> chunk = new ArrayList<>(chunkSize);
+
+        long lineNumber = 0;
+        String line;
+        while ((line = reader.readLine()) != null) {
+            lineNumber++;
+            if (reader.isTooLong()) {
+                chunk.add(new PendingLine(lineNumber, null,
+                        "Scan line longer than " + maxLineLength + " characters"));
+            } else if (line.isBlank()) {
+                continue;
+            } else {
+                try {
+                    chunk.add(new PendingLine(lineNumber, objectMapper.readValue(line, BordereauScanRequest.class),
+                            null));
+                } catch (JsonProcessingException e) {
+                    chunk.add(new PendingLine(lineNumber, null, "Invalid scan line: " + e.getOriginalMessage()));
+                }
+            }
+            if (chunk.size() >= chunkSize && !processChunk(chunk, out)) {
+                return lineNumber;
+            }
+        }
+        if (!processChunk(chunk, out)) {
+            return lineNumber;
+        }
+
+        log.info("Scan stream ingested {} lines", lineNumber);
+        return lineNumber;
+    }
+
+    /**
+     * Scans and acknowledges a chunk; false when the batch scan threw and the stream must stop
+     */
+    private boolean processChunk(List<PendingLine> chunk, OutputStream out) throws IOException {
+        if (chunk.isEmpty()) {
+            return true;
+        }
+
+        List<BordereauScanRequest> requests = chunk.stream()
+                .filter(pending -> pending.request() != null)
+                .map(PendingLine::request)
+                .toList();
+        Iterator<BordereauScanResult> results;
+        try {
+            results = requests.isEmpty()
+                    ? List.<BordereauScanResult>of().iterator()
+                    : bordereauScanService.scanBordereaux(requests).iterator();
+        } catch (RuntimeException e) {
+            log.error("Scan stream stopped at line {}: chunk of {} lines failed", chunk.get(0).line(), chunk.size(),
+                    e);
+            // Some scans of the chunk may be applied; sending them again is harmless
+            String error = "Chunk failed, stream stopped: " + e.getMessage();
+            for (PendingLine pending : chunk) {
+                writeAck(out, ScanLineAck.failure(pending.line(), pending.request() != null ? error : pending.error()));
+            }
+            out.flush();
+            chunk.clear();
+            return false;
+        }
+
+        // Acknowledge in input order, parse failures included
+        for (PendingLine pending : chunk) {
+            writeAck(out, pending.request() != null
+                    ? ScanLineAck.of(pending.line(), results.next())
+                    : ScanLineAck.failure(pending.line(), pending.error()));
+        }
+        out.flush();
+        chunk.clear();
+        return true;
+    }
+
+    private void writeAck(OutputStream out, ScanLineAck ack) throws IOException {
+        out.write(objectMapper.writeValueAsBytes(ack));
+        out.write('\n');
+    }
+
+    private record PendingLine(long line, BordereauScanRequest request, String error) {
+    }
+
+    /**
+     * readLine with a cap: the rest of an over-long line is skipped instead of buffered, so one
+     * line without a newline cannot hold the whole request body in memory
+     */
+    static final class BoundedLineReader {
+
+        private final Reader in;
+        private final int maxLength;
+        private final char[] buffer = new char[8192];
+        private final StringBuilder line = new StringBuilder();
+        private int position;
+        private int limit;
+        private boolean tooLong;
+
+        BoundedLineReader(Reader in, int maxLength) {
+            this.in = in;
+            this.maxLength = maxLength;
+        }
+
+        /**
+         * The next line without its terminator (\n or \r\n), empty when it was too long, null at the end
+         */
+        String readLine() throws IOException {
+            line.setLength(0);
+            tooLong = false;
+            boolean read = false;
+            while (true) {
+                if (position == limit) {
+                    limit = Math.max(0, in.read(buffer, 0, buffer.length));
+                    position = 0;
+                    if (limit == 0) {
+                        return read ? finish() : null;
+                    }
+                }
+                read = true;
+                int start = position;
+                while (position < limit && buffer[position] != '\n') {
+                    position++;
+                }
+                append(start, position);
+                if (position < limit) {
+                    position++;
+                    return finish();
+                }
+            }
+        }
+
+        /**
+         * Whether the line last returned went past the cap
+         */
+        boolean isTooLong() {
+            return tooLong;
+        }
+
+        private void append(int start, int end) {
+            if (tooLong) {
+                return;
+            }
+            if (line.length() + end - start > maxLength) {
+                tooLong = true;
+                line.setLength(0);
+            } else {
+                line.append(buffer, start, end - start);
+            }
+        }
+
+        private String finish() {
+            int length = line.length();
+            if (length > 0 && line.charAt(length - 1) == '\r') {
+                line.setLength(length - 1);
+            }
+            return line.toString();
+        }
+    }
+}
@@ -0,0 +1,466 @@
+package ma.pharmachain.service;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import ma.pharmachain.config.StatsConfig;
+import ma.pharmachain.entity.Bordereau;
+import ma.pharmachain.entity.StatusCountFlush;
+import ma.pharmachain.entity.StatusCountRollup;
+import ma.pharmachain.entity.User;
+import ma.pharmachain.enums.BordereauStatus;
+import ma.pharmachain.enums.DeliveryItemStatus;
+import ma.pharmachain.repository.DeliveryItemRepository;
+import ma.pharmachain.repository.StatusCountFlushRepository;
+import ma.pharmachain.repository.StatusCountRollupRepository;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import static ma.pharmachain.service.TransactionHooks.afterCommit;
+
+/**
+ * Bordereaux and their lines counted by status per secteur, driver and delivery date, behind GET /managers/me/stats.
+ * <p>
+ * Each (secteur, driver, date) cell holds one {@link LongAdder} per bordereau status and per line status, and
+ * every change is added to the secteur's total of the date as well ({@link #ALL} drivers), so a read is one map
+ * lookup. The services report each transition with the bordereau's key before and after it; the deltas are applied
+ * once the transaction commits. Bordereaux without a delivery date are not counted.
+ * <p>
+ * The deltas are added to status_count_rollup every flush-interval and on shutdown, so instances sharing the table
+ * add up instead of overwriting each other; each instance reads its own cells, which see the other instances'
+ * changes as of its last load or recount. The rollup is read back at startup when the previous run flushed on
+ * shutdown (or an instance flushed within the last interval). Otherwise, and after a manifest import (whose merge
+ * bypasses the services), the cells are recounted from bordereau and delivery_item and replace the rollup.
+ * <p>
+ * Every transition carries the id of the transaction that made it, and a recount keeps the snapshot its counts
+ * were read with: a transition the snapshot saw is already counted, so it is neither replayed onto the recount nor
+ * flushed afterwards, whichever instance made it. Flushes and recounts lock the status_count_flush row, so they
+ * run one at a time across instances.
+ */
+@Service
+@Slf4j
+public class StatusCounters {
+
+    // Driver id of a secteur's total
+    public static final long ALL = -1;
+
+    // Resource key of the current transaction's id
+    private static final Object TRANSACTION_ID = new Object();
+
+    private final StatusCountRollupRepository rollupRepository;
+    private final StatusCountFlushRepository flushRepository;
+    private final DeliveryItemRepository deliveryItemRepository;
+    private final Duration flushInterval;
+    private final TransactionTemplate readTransaction;
+    private final TransactionTemplate writeTransaction;
+    // Applied transitions not added to the rollup yet
+    private final Queue<Change> unflushed = new ConcurrentLinkedQueue<>();
+    private volatile Map<Key, LongAdder[]> cells = new ConcurrentHashMap<>();
+    // Deltas are applied under the read lock; a recount swaps the cells under the write lock
+    private final ReadWriteLock swapLock = new ReentrantReadWriteLock();
+    // Transitions applied while a recount reads the source tables, replayed onto its result unless it saw them
+    private Queue<Change> recountBuffer;
+    // No flush before the rollup is loaded: the next load would add the flushed transitions a second time
+    private volatile boolean loaded;
+
+    public StatusCounters(StatusCountRollupRepository rollupRepository, StatusCountFlushRepository flushRepository,
+                          DeliveryItemRepository deliveryItemRepository, StatsConfig statsConfig,
+                          PlatformTransactionManager transactionManager, MeterRegistry meterRegistry) {
+        this.rollupRepository = rollupRepository;
+        this.flushRepository = flushRepository;
+        this.deliveryItemRepository = deliveryItemRepository;
+        this.flushInterval = statsConfig.getFlushInterval();
+        // Also runs after the commit of the manifest import, whose resources are still bound
+        this.readTransaction = new TransactionTemplate(transactionManager);
+        this.readTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.readTransaction.setReadOnly(true);
+        this.writeTransaction = new TransactionTemplate(transactionManager);
+        this.writeTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        Gauge.builder("pharmachain.stats.cells", this, counters -> counters.cells.size())
+                .description("Secteur, driver and date cells of the status counters")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Cell of a bordereau, or null when it has no delivery date
+     */
+    public static Key keyOf(Bordereau bordereau) {
+        if (bordereau.getDeliveryDate() == null) {
+            return null;
+        }
+        return new Key(idOf(bordereau.getSecteur()), idOf(bordereau.getCurrentDriver()), bordereau.getDeliveryDate());
+    }
+
+    private static long idOf(User user) {
+        // getId() on a lazy proxy does not initialize it
+        return user != null && user.getId() != null ? user.getId() : StatusCountRollup.NONE;
+    }
+
+    /**
+     * Counts of a cell, indexed as {@link StatusCountRollup#index}; all zero for a cell nothing was counted in
+     */
+    public long[] counts(Key key) {
+        long[] counts = new long[StatusCountRollup.METRICS];
+        LongAdder[] cell = cells.get(key);
+        if (cell != null) {
+            for (int i = 0; i < counts.length; i++) {
+                counts[i] = cell[i].sum();
+            }
+        }
+        return counts;
+    }
+
+    /**
+     * A bordereau was created (null before key), deleted (null after key), or changed status, secteur, driver or
+     * date. Its lines move with it, so when its key changes they are counted by status here, in the current
+     * transaction; a bordereau being created has no lines yet.
+     */
+    public void bordereauChanged(String bordereauNumber, Key before, BordereauStatus statusBefore,
+                                 Key after, BordereauStatus statusAfter) {
+        if (Objects.equals(before, after) && statusBefore == statusAfter) {
+            return;
+        }
+        Map<Key, long[]> deltas = new HashMap<>();
+        if (statusBefore != null) {
+            add(deltas, before, StatusCountRollup.index(statusBefore), -1);
+        }
+        if (statusAfter != null) {
+            add(deltas, after, StatusCountRollup.index(statusAfter), 1);
+        }
+        if (before != null && !before.equals(after)) {
+            for (DeliveryItemRepository.StatusCount count :
+                    deliveryItemRepository.countByStatusForBordereau(bordereauNumber)) {
+                if (count.getStatus() != null) {
+                    int index = StatusCountRollup.index(count.getStatus());
+                    add(deltas, before, index, -count.getCount());
+                    add(deltas, after, index, count.getCount());
+                }
+            }
+        }
+        applyAfterCommit(deltas);
+    }
+
+    /**
+     * {@code count} lines left {@code before} in {@code statusBefore} for {@code after} in {@code statusAfter};
+     * a null side counts lines that were inserted or deleted
+     */
+    public void itemsChanged(Key before, DeliveryItemStatus statusBefore, Key after, DeliveryItemStatus statusAfter,
+                             long count) {
+        if (count == 0 || (Objects.equals(before, after) && statusBefore == statusAfter)) {
+            return;
+        }
+        Map<Key, long[]> deltas = new HashMap<>();
+        if (statusBefore != null) {
+            add(deltas, before, StatusCountRollup.index(statusBefore), -count);
+        }
+        if (statusAfter != null) {
+            add(deltas, after, StatusCountRollup.index(statusAfter), count);
+        }
+        applyAfterCommit(deltas);
+    }
+
+    private static void add(Map<Key, long[]> deltas, Key key, int index, long delta) {
+        if (key != null) {
+            deltas.computeIfAbsent(key, k -> new long[StatusCountRollup.METRICS])[index] += delta;
+        }
+    }
+
+    private void applyAfterCommit(Map<Key, long[]> deltas) {
+        if (deltas.isEmpty()) {
+            return;
+        }
+        Long transactionId = currentTransactionId();
+        afterCommit(() -> deltas.forEach((key, delta) -> apply(new Change(transactionId, key, delta))));
+    }
+
+    /**
+     * Read once per transaction; null outside one, for a transition no recount snapshot can have seen
+     */
+    private Long currentTransactionId() {
+        if (!TransactionSynchronizationManager.isActualTransactionActive()
+                || !TransactionSynchronizationManager.isSynchronizationActive()) {
+            return null;
+        }
+        Long transactionId = (Long) TransactionSynchronizationManager.getResource(TRANSACTION_ID);
+        if (transactionId == null) {
+            transactionId = rollupRepository.currentTransactionId();
+            TransactionSynchronizationManager.bindResource(TRANSACTION_ID, transactionId);
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    TransactionSynchronizationManager.unbindResourceIfPossible(TRANSACTION_ID);
+                }
+            });
+        }
+        return transactionId;
+    }
+
+    private void apply(Change change) {
+        swapLock.readLock().lock();
+        try {
+            add(cells, change.key(), change.delta());
+            if (recountBuffer != null) {
+                recountBuffer.add(change);
+            }
+        } finally {
+            swapLock.readLock().unlock();
+        }
+        unflushed.add(change);
+    }
+
+    private static void add(Map<Key, LongAdder[]> cells, Key key, long[] delta) {
+        LongAdder[] cell = cell(cells, key);
+        LongAdder[] total = cell(cells, key.secteurTotal());
+        for (int i = 0; i < delta.length; i++) {
+            if (delta[i] != 0) {
+                cell[i].add(delta[i]);
+                total[i].add(delta[i]);
+            }
+        }
+    }
+
+    private static LongAdder[] cell(Map<Key, LongAdder[]> cells, Key key) {
+        return cells.computeIfAbsent(key, k -> {
+            LongAdder[] cell = new LongAdder[StatusCountRollup.METRICS];
+            for (int i = 0; i < cell.length; i++) {
+                cell[i] = new LongAdder();
+            }
+            return cell;
+        });
+    }
+
+    /**
+     * Adds the flushed cells to the counts applied since startup, or recounts when nothing was flushed yet or the
+     * previous run stopped without flushing; retried by the scheduled flush until it succeeds
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void load() {
+        if (loadCells()) {
+            // Clears the shutdown mark, so a crash of this run is seen by the next one
+            flush();
+        }
+    }
+
+    private synchronized boolean loadCells() {
+        if (loaded) {
+            return true;
+        }
+        long start = System.currentTimeMillis();
+        List<StatusCountRollup> rollups;
+        StatusCountFlush lastFlush;
+        try {
+            rollups = readTransaction.execute(status -> rollupRepository.findAll());
+            lastFlush = readTransaction.execute(status ->
+                    flushRepository.findById(StatusCountFlush.ID).orElse(null));
+        } catch (RuntimeException e) {
+            log.error("Status counters could not be loaded, retried on the next flush", e);
+            return false;
+        }
+        if (rollups.isEmpty() || isStale(lastFlush)) {
+            if (!recount()) {
+                return false;
+            }
+            log.info("Status counters recounted in {} ms: {} cells{}", System.currentTimeMillis() - start,
+                    cells.size(), rollups.isEmpty() ? "" : ", the previous run stopped without flushing");
+            return true;
+        }
+        for (StatusCountRollup rollup : rollups) {
+            add(cells, new Key(rollup.getSecteurId(), rollup.getDriverId(), rollup.getDeliveryDate()),
+                    rollup.getCounts());
+        }
+        loaded = true;
+        log.info("Status counters loaded in {} ms: {} cells", System.currentTimeMillis() - start, rollups.size());
+        return true;
+    }
+
+    /**
+     * The rollup misses the changes made after the last flush of a run that did not stop cleanly, unless another
+     * instance is still flushing it
+     */
+    private boolean isStale(StatusCountFlush lastFlush) {
+        return lastFlush == null || (!lastFlush.isClosed()
+                && lastFlush.getFlushedAt().isBefore(LocalDateTime.now().minus(flushInterval)));
+    }
+
+    /**
+     * Recount every cell once the current transaction commits
+     */
+    public void recountAfterCommit() {
+        afterCommit(this::recount);
+    }
+
+    // One recount or flush at a time, each recount with its own buffer
+    private synchronized boolean recount() {
+        Queue<Change> buffer = new ConcurrentLinkedQueue<>();
+        swapLock.writeLock().lock();
+        try {
+            recountBuffer = buffer;
+        } finally {
+            swapLock.writeLock().unlock();
+        }
+
+        // The buffer is started before the snapshot is taken: a transition committed in between is in both,
+        // and dropped from the buffer by its transaction id
+        StatusCountRollupRepository.SourceCount source;
+        try {
+            source = writeTransaction.execute(status -> {
+                rollupRepository.lockForFlush();
+                StatusCountRollupRepository.SourceCount counted = rollupRepository.countFromSource();
+                rollupRepository.replaceAll(counted.cells());
+                flushRepository.save(new StatusCountFlush(LocalDateTime.now(), false, counted.snapshot()));
+                return counted;
+            });
+        } catch (RuntimeException e) {
+            stopBuffering();
+            log.error("Status counters could not be recounted", e);
+            return false;
+        }
+        Snapshot snapshot = Snapshot.parse(source.snapshot());
+        Map<Key, LongAdder[]> recounted = new ConcurrentHashMap<>();
+        for (StatusCountRollup rollup : source.cells()) {
+            add(recounted, new Key(rollup.getSecteurId(), rollup.getDriverId(), rollup.getDeliveryDate()),
+                    rollup.getCounts());
+        }
+
+        swapLock.writeLock().lock();
+        try {
+            buffer.stream()
+                    .filter(change -> !snapshot.saw(change.transactionId()))
+                    .forEach(change -> add(recounted, change.key(), change.delta()));
+            recountBuffer = null;
+            cells = recounted;
+        } finally {
+            swapLock.writeLock().unlock();
+        }
+        loaded = true;
+        return true;
+    }
+
+    private void stopBuffering() {
+        swapLock.writeLock().lock();
+        try {
+            recountBuffer = null;
+        } finally {
+            swapLock.writeLock().unlock();
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${pharmachain.stats.flush-interval:PT10S}")
+    public void flush() {
+        flush(false);
+    }
+
+    /**
+     * Adds the transitions applied since the last flush to the rollup, except those the last recount already
+     * counted, and records the time of the flush; {@code closing} marks the flush on shutdown
+     */
+    private synchronized void flush(boolean closing) {
+        if (!loadCells()) {
+            return;
+        }
+        List<Change> changes = new ArrayList<>();
+        for (Change change; (change = unflushed.poll()) != null; ) {
+            changes.add(change);
+        }
+        try {
+            writeTransaction.executeWithoutResult(status -> {
+                String recountSnapshot = rollupRepository.lockForFlush();
+                Snapshot snapshot = Snapshot.parse(recountSnapshot);
+                Map<Key, long[]> deltas = new HashMap<>();
+                for (Change change : changes) {
+                    if (!snapshot.saw(change.transactionId())) {
+                        long[] delta = deltas.computeIfAbsent(change.key(), k -> new long[StatusCountRollup.METRICS]);
+                        for (int i = 0; i < delta.length; i++) {
+                            delta[i] += change.delta()[i];
+                        }
+                    }
+                }
+                List<StatusCountRollup> rollups = new ArrayList<>(deltas.size());
+                deltas.forEach((key, delta) ->
+                        rollups.add(new StatusCountRollup(key.secteurId(), key.driverId(), key.date(), delta)));
+                rollupRepository.addAll(rollups);
+                flushRepository.save(new StatusCountFlush(LocalDateTime.now(), closing, recountSnapshot));
+            });
+        } catch (RuntimeException e) {
+            unflushed.addAll(changes);
+            log.warn("Cannot flush {} status counter changes: {}", changes.size(), e.getMessage());
+        }
+    }
+
+    @PreDestroy
+    public void close() {
+        flush(true);
+    }
+
+    /**
+     * A secteur, a driver ({@link #ALL} for the secteur's total) and a delivery date; secteur and driver ids are
+     * {@link StatusCountRollup#NONE} for bordereaux that have none
+     */
+    public record Key(long secteurId, long driverId, LocalDate date) {
+
+        Key secteurTotal() {
+            return new Key(secteurId, ALL, date);
+        }
+    }
+
+    /**
+     * The deltas of one committed transaction to one cell
+     */
+    private record Change(Long transactionId, Key key, long[] delta) {
+    }
+
+    /**
+     * A pg_current_snapshot() value, {@code xmin:xmax:xip,...}: the transactions it saw committed
+     */
+    record Snapshot(long xmin, long xmax, Set<Long> inProgress) {
+
+        // Before the first recount nothing is excluded
+        static final Snapshot NONE = new Snapshot(0, 0, Set.of());
+
+        static Snapshot parse(String value) {
+            if (value == null) {
+                return NONE;
+            }
+            String[] parts = value.split(":", -1);
+            Set<Long> inProgress = new HashSet<>();
+            if (!parts[2].isEmpty()) {
+                for (String xid : parts[2].split(",")) {
+                    inProgress.add(Long.parseLong(xid));
+                }
+            }
+            return new Snapshot(Long.parseLong(parts[0]), Long.parseLong(parts[1]), inProgress);
+        }
+
+        boolean saw(Long transactionId) {
+            if (transactionId == null) {
+                return false;
+            }
+            return transactionId < xmin || (transactionId < xmax && !inProgress.contains(transactionId));
+        }
+    }
+}
@@ -0,0 +1,143 @@
+package ma.pharmachain.service;
+
+/**
+ * Orders delivery stops into a short open path: nearest neighbour from the stop farthest from the others'
+ * centroid, then 2-opt until no segment reversal shortens the path.
+ * <p>
+ * Distances are great-circle, precomputed once into a flat n * n matrix; 200 stops are 40k doubles and the
+ * 2-opt passes only read that array. The path has free ends, so a reversal may also swap which stop comes first.
+ */
+public final class StopSequencer {
+
+    // Each pass is n²/2 reversal checks; real stop sets converge in a handful
+    private static final int MAX_PASSES = 100;
+    private static final double MIN_GAIN_KM = 1e-9;
+
+    private StopSequencer() {
+    }
+
+    /**
+     * Visiting order, as indexes into {@code lats} and {@code lngs}
+     */
+    public static int[] sequence(double[] lats, double[] lngs) {
+        int n = lats.length;
+        if (n != lngs.length) {
+            throw new IllegalArgumentException("Expected as many latitudes as longitudes");
+        }
+        int[] order = new int[n];
+        if (n <= 2) {
+            for (int i = 0; i < n; i++) {
+                order[i] = i;
+            }
+            return order;
+        }
+        double[] distances = distanceMatrix(lats, lngs);
+        nearestNeighbour(distances, n, outermost(lats, lngs), order);
+        twoOpt(distances, n, order);
+        return order;
+    }
+
+    static double lengthKm(double[] lats, double[] lngs, int[] order) {
+        double length = 0;
+        for (int i = 1; i < order.length; i++) {
+            length += GeoIndex.distanceKm(lats[order[i - 1]], lngs[order[i - 1]], lats[order[i]], lngs[order[i]]);
+        }
+        return length;
+    }
+
+    static double[] distanceMatrix(double[] lats, double[] lngs) {
+        int n = lats.length;
+        double[] distances = new double[n * n];
+        for (int i = 0; i < n; i++) {
+            for (int j = i + 1; j < n; j++) {
+                double d = GeoIndex.distanceKm(lats[i], lngs[i], lats[j], lngs[j]);
+                distances[i * n + j] = d;
+                distances[j * n + i] = d;
+            }
+        }
+        return distances;
+    }
+
+    // A stop at the edge of the area, so the path starts at one end rather than crossing it twice
+    private static int outermost(double[] lats, double[] lngs) {
+        double lat = 0;
+        double lng = 0;
+        for (int i = 0; i < lats.length; i++) {
+            lat += lats[i];
+            lng += lngs[i];
+        }
+        lat /= lats.length;
+        lng /= lngs.length;
+        int outermost = 0;
+        double farthest = -1;
+        for (int i = 0; i < lats.length; i++) {
+            double d = GeoIndex.distanceKm(lat, lng, lats[i], lngs[i]);
+            if (d > farthest) {
+                farthest = d;
+                outermost = i;
+            }
+        }
+        return outermost;
+    }
+
+    static void nearestNeighbour(double[] distances, int n, int start, int[] order) {
+        boolean[] visited = new boolean[n];
+        int current = start;
+        visited[current] = true;
+        order[0] = current;
+        for (int k = 1; k < n; k++) {
+            int next = -1;
+            double nearest = Double.POSITIVE_INFINITY;
+            int row = current * n;
+            for (int j = 0; j < n; j++) {
+                if (!visited[j] && distances[row + j] < nearest) {
+                    nearest = distances[row + j];
+                    next = j;
+                }
+            }
+            visited[next] = true;
+            order[k] = next;
+            current = next;
+        }
+    }
+
+    /**
+     * Reverses order[i..j] whenever that shortens the path, until a full pass finds nothing
+     */
+    static void twoOpt(double[] distances, int n, int[] order) {
+        for (int pass = 0; pass < MAX_PASSES; pass++) {
+            boolean improved = false;
+            for (int i = 0; i < n - 1; i++) {
+                int before = i > 0 ? order[i - 1] : -1;
+                int first = order[i];
+                for (int j = i + 1; j < n; j++) {
+                    int last = order[j];
+                    int after = j < n - 1 ? order[j + 1] : -1;
+                    double gain = 0;
+                    if (before >= 0) {
+                        gain += distances[before * n + first] - distances[before * n + last];
+                    }
+                    if (after >= 0) {
+                        gain += distances[last * n + after] - distances[first * n + after];
+                    }
+                    if (gain > MIN_GAIN_KM) {
+                        reverse(order, i, j);
+                        first = order[i];
+                        improved = true;
+                    }
+                }
+            }
+            if (!improved) {
+                return;
+            }
+        }
+    }
+
+    private static void reverse(int[] order, int i, int j) {
+        while (i < j) {
+            int tmp = order[i];
+            order[i++] = order[j];
+            order[j--] = tmp;
+        }
+    }
+}
@@ -0,0 +1,459 @@
+package ma.pharmachain.service;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Function;
+
+/**
+ * Typo-tolerant prefix search over short texts, keyed by a unique string.
+ * <p>
+ * Texts are folded (lower case, accents and punctuation dropped) and split into words; each word padded as
+ * {@code "  word "} contributes its trigrams, as in PostgreSQL's pg_trgm. A query matches a document when at
+ * least {@code minSimilarity} of its trigrams occur in it, not counting those common to over a quarter of the
+ * documents. The last query word is taken as a prefix (no trailing pad), so "pharmacie al" finds "Pharmacie Alami".
+ * <p>
+ * Posting lists are int arrays of document ids in ascending order, keyed by the trigram packed into a long in an
+ * open-addressing table. Replacing or removing a document only drops its payload; its stale postings are skipped
+ * at query time and purged by a compaction once they outnumber the live documents.
+ */
+public class TrigramIndex<T> {
+
+    private static final int MIN_COMPACTION = 1024;
+    // Below this many documents no trigram is treated as too common to count
+    private static final int MIN_STOP_GRAM_DOCUMENTS = 256;
+    private static final long EMPTY = -1L;
+
+    private final double minSimilarity;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    // Document id -> payload and folded text, null once removed or replaced
+    private List<T> payloads = new ArrayList<>();
+    private List<String> texts = new ArrayList<>();
+    private int[] gramCounts = new int[1024];
+    private final Map<String, Integer> idsByKey = new HashMap<>();
+    private int removed;
+
+    private long[] gramKeys;
+    private int[][] postings;
+    private int[] postingSizes;
+    private int grams;
+
+    // A fresh byte per document on every search costs more than the counting itself
+    private final ThreadLocal<Scratch> scratch = ThreadLocal.withInitial(Scratch::new);
+
+    public TrigramIndex(double minSimilarity) {
+        this.minSimilarity = minSimilarity;
+        clearPostings();
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return idsByKey.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public boolean contains(String key) {
+        lock.readLock().lock();
+        try {
+            return idsByKey.containsKey(key);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Index {@code payload} under {@code key}, replacing any previous document with that key
+     */
+    public void put(String key, String text, T payload) {
+        lock.writeLock().lock();
+        try {
+            removeLocked(key);
+            addLocked(key, fold(text), payload);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Index the documents whose key is not indexed yet, leaving existing ones untouched
+     */
+    public void putAllAbsent(List<T> payloads, Function<T, String> keyOf, Function<T, String> textOf) {
+        lock.writeLock().lock();
+        try {
+            for (T payload : payloads) {
+                String key = keyOf.apply(payload);
+                if (!idsByKey.containsKey(key)) {
+                    addLocked(key, fold(textOf.apply(payload)), payload);
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void remove(String key) {
+        lock.writeLock().lock();
+        try {
+            removeLocked(key);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Best matches first: most query trigrams found, then the shortest document, then the oldest
+     */
+    public List<T> search(String query, int limit) {
+        long[] queryGrams = queryGrams(fold(query));
+        if (queryGrams.length == 0 || limit <= 0) {
+            return List.of();
+        }
+
+        lock.readLock().lock();
+        try {
+            int documents = payloads.size();
+            int[] slots = informativeSlots(queryGrams, documents);
+            // A query trigram found nowhere still counts as a miss
+            int queried = slots.length;
+            int minHits = Math.max(1, (int) Math.ceil(queried * minSimilarity));
+
+            // Per-thread counters, zeroed again through `touched` before returning
+            Scratch scratch = this.scratch.get();
+            byte[] hits = scratch.hits(documents);
+            int[] touched = scratch.touched;
+            int candidates = 0;
+            for (int slot : slots) {
+                if (slot < 0) {
+                    continue;
+                }
+                int[] list = postings[slot];
+                for (int i = 0, n = postingSizes[slot]; i < n; i++) {
+                    int id = list[i];
+                    if (hits[id]++ == 0) {
+                        if (candidates == touched.length) {
+                            touched = Arrays.copyOf(touched, candidates * 2);
+                            scratch.touched = touched;
+                        }
+                        touched[candidates++] = id;
+                    }
+                }
+            }
+
+            // Min-heap of the best `limit` ranks so far
+            long[] heap = new long[Math.min(limit, Math.max(candidates, 1))];
+            int heapSize = 0;
+            for (int c = 0; c < candidates; c++) {
+                int id = touched[c];
+                int h = hits[id] & 0xFF;
+                if (h < minHits || payloads.get(id) == null) {
+                    continue;
+                }
+                long rank = rank(h, gramCounts[id], id);
+                if (heapSize < heap.length) {
+                    heap[heapSize] = rank;
+                    siftUp(heap, heapSize++);
+                } else if (rank > heap[0]) {
+                    heap[0] = rank;
+                    siftDown(heap, heapSize);
+                }
+            }
+
+            for (int c = 0; c < candidates; c++) {
+                hits[touched[c]] = 0;
+            }
+
+            long[] ranks = Arrays.copyOf(heap, heapSize);
+            Arrays.sort(ranks);
+            List<T> results = new ArrayList<>(heapSize);
+            for (int i = heapSize - 1; i >= 0; i--) {
+                results.add(payloads.get(idOf(ranks[i])));
+            }
+            return results;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Table slots of the query trigrams worth counting, -1 for those not indexed at all.
+     * Trigrams found in over a quarter of the documents ("pharmacie", "avenue") barely narrow the result but
+     * would dominate the counting, so they are left out; a query made only of them keeps its two rarest.
+     */
+    private int[] informativeSlots(long[] queryGrams, int documents) {
+        int stopLength = Math.max(MIN_STOP_GRAM_DOCUMENTS, documents / 4);
+        int[] slots = new int[queryGrams.length];
+        int informative = 0;
+        int common = 0;
+        int[] commonSlots = new int[queryGrams.length];
+        for (long gram : queryGrams) {
+            int slot = slotOf(gram);
+            if (gramKeys[slot] == EMPTY) {
+                slots[informative++] = -1;
+            } else if (postingSizes[slot] <= stopLength) {
+                slots[informative++] = slot;
+            } else {
+                commonSlots[common++] = slot;
+            }
+        }
+        if (informative > 0 || common == 0) {
+            return Arrays.copyOf(slots, informative);
+        }
+        int first = -1;
+        int second = -1;
+        for (int i = 0; i < common; i++) {
+            int slot = commonSlots[i];
+            if (first < 0 || postingSizes[slot] < postingSizes[first]) {
+                second = first;
+                first = slot;
+            } else if (second < 0 || postingSizes[slot] < postingSizes[second]) {
+                second = slot;
+            }
+        }
+        return second < 0 ? new int[]{first} : new int[]{first, second};
+    }
+
+    private void addLocked(String key, String folded, T payload) {
+        int id = payloads.size();
+        payloads.add(payload);
+        texts.add(folded);
+        if (id == gramCounts.length) {
+            gramCounts = Arrays.copyOf(gramCounts, id * 2);
+        }
+        long[] documentGrams = documentGrams(folded);
+        gramCounts[id] = documentGrams.length;
+        for (long gram : documentGrams) {
+            addPosting(gram, id);
+        }
+        idsByKey.put(key, id);
+    }
+
+    private void removeLocked(String key) {
+        Integer id = idsByKey.remove(key);
+        if (id == null) {
+            return;
+        }
+        payloads.set(id, null);
+        texts.set(id, null);
+        removed++;
+        if (removed >= MIN_COMPACTION && removed > idsByKey.size()) {
+            compact();
+        }
+    }
+
+    /**
+     * Re-number the live documents and rebuild the postings without the removed ones
+     */
+    private void compact() {
+        List<T> oldPayloads = payloads;
+        List<String> oldTexts = texts;
+        Map<Integer, String> keysById = new HashMap<>(idsByKey.size() * 2);
+        idsByKey.forEach((key, id) -> keysById.put(id, key));
+
+        payloads = new ArrayList<>(idsByKey.size());
+        texts = new ArrayList<>(idsByKey.size());
+        gramCounts = new int[Math.max(1024, idsByKey.size())];
+        idsByKey.clear();
+        removed = 0;
+        clearPostings();
+        for (int id = 0; id < oldPayloads.size(); id++) {
+            if (oldPayloads.get(id) != null) {
+                addLocked(keysById.get(id), oldTexts.get(id), oldPayloads.get(id));
+            }
+        }
+    }
+
+    private void clearPostings() {
+        gramKeys = new long[4096];
+        Arrays.fill(gramKeys, EMPTY);
+        postings = new int[4096][];
+        postingSizes = new int[4096];
+        grams = 0;
+    }
+
+    private void addPosting(long gram, int id) {
+        int slot = slotOf(gram);
+        if (gramKeys[slot] == EMPTY) {
+            if ((grams + 1) * 4 > gramKeys.length * 3) {
+                growTable();
+                slot = slotOf(gram);
+            }
+            gramKeys[slot] = gram;
+            postings[slot] = new int[4];
+            grams++;
+        }
+        int[] list = postings[slot];
+        int size = postingSizes[slot];
+        if (size == list.length) {
+            list = Arrays.copyOf(list, size * 2);
+            postings[slot] = list;
+        }
+        list[size] = id;
+        postingSizes[slot] = size + 1;
+    }
+
+    private void growTable() {
+        long[] oldKeys = gramKeys;
+        int[][] oldPostings = postings;
+        int[] oldSizes = postingSizes;
+        gramKeys = new long[oldKeys.length * 2];
+        Arrays.fill(gramKeys, EMPTY);
+        postings = new int[oldKeys.length * 2][];
+        postingSizes = new int[oldKeys.length * 2];
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != EMPTY) {
+                int slot = slotOf(oldKeys[i]);
+                gramKeys[slot] = oldKeys[i];
+                postings[slot] = oldPostings[i];
+                postingSizes[slot] = oldSizes[i];
+            }
+        }
+    }
+
+    /**
+     * Slot holding {@code gram}, or the empty slot where it would go (linear probing)
+     */
+    private int slotOf(long gram) {
+        int mask = gramKeys.length - 1;
+        int slot = (int) (mix(gram) & mask);
+        while (gramKeys[slot] != EMPTY && gramKeys[slot] != gram) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private static long mix(long gram) {
+        long h = gram * 0x9E3779B97F4A7C15L;
+        return h ^ (h >>> 29);
+    }
+
+    // Higher is better: hits, then fewer document trigrams, then lower id
+    private static long rank(int hits, int documentGrams, int id) {
+        return ((long) hits << 47) | ((long) (0xFFFF - Math.min(documentGrams, 0xFFFF)) << 31)
+                | (Integer.MAX_VALUE - id);
+    }
+
+    private static int idOf(long rank) {
+        return Integer.MAX_VALUE - (int) (rank & Integer.MAX_VALUE);
+    }
+
+    private static void siftUp(long[] heap, int i) {
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (heap[parent] <= heap[i]) {
+                return;
+            }
+            swap(heap, parent, i);
+            i = parent;
+        }
+    }
+
+    private static void siftDown(long[] heap, int size) {
+        int i = 0;
+        while (true) {
+            int smallest = i;
+            int left = 2 * i + 1;
+            int right = left + 1;
+            if (left < size && heap[left] < heap[smallest]) {
+                smallest = left;
+            }
+            if (right < size && heap[right] < heap[smallest]) {
+                smallest = right;
+            }
+            if (smallest == i) {
+                return;
+            }
+            swap(heap, smallest, i);
+            i = smallest;
+        }
+    }
+
+    private static void swap(long[] heap, int i, int j) {
+        long tmp = heap[i];
+        heap[i] = heap[j];
+        heap[j] = tmp;
+    }
+
+    /**
+     * Lower case without accents, every run of non letters/digits collapsed to one space
+     */
+    static String fold(String text) {
+        if (text == null || text.isEmpty()) {
+            return "";
+        }
+        String decomposed = Normalizer.normalize(text, Normalizer.Form.NFD);
+        StringBuilder folded = new StringBuilder(decomposed.length());
+        boolean space = true;
+        for (int i = 0; i < decomposed.length(); i++) {
+            char c = decomposed.charAt(i);
+            if (Character.getType(c) == Character.NON_SPACING_MARK) {
+                continue;
+            }
+            if (Character.isLetterOrDigit(c)) {
+                folded.append(Character.toLowerCase(c));
+                space = false;
+            } else if (!space) {
+                folded.append(' ');
+                space = true;
+            }
+        }
+        int length = folded.length();
+        return length > 0 && folded.charAt(length - 1) == ' ' ? folded.substring(0, length - 1) : folded.toString();
+    }
+
+    private static long[] documentGrams(String folded) {
+        return grams(folded, true);
+    }
+
+    private static long[] queryGrams(String folded) {
+        // The user may still be typing the last word: no end-of-word trigram for it.
+        // Hits are counted in a byte per document, hence at most 255 query trigrams.
+        long[] grams = grams(folded, false);
+        return grams.length > 255 ? Arrays.copyOf(grams, 255) : grams;
+    }
+
+    private static long[] grams(String folded, boolean padLastWord) {
+        if (folded.isEmpty()) {
+            return new long[0];
+        }
+        String[] words = folded.split(" ");
+        long[] result = new long[folded.length() + 3 * words.length];
+        int count = 0;
+        for (int w = 0; w < words.length; w++) {
+            String padded = "  " + words[w] + (padLastWord || w < words.length - 1 ? " " : "");
+            for (int i = 0; i + 3 <= padded.length(); i++) {
+                result[count++] = ((long) padded.charAt(i) << 32) | ((long) padded.charAt(i + 1) << 16)
+                        | padded.charAt(i + 2);
+            }
+        }
+        long[] sorted = Arrays.copyOf(result, count);
+        Arrays.sort(sorted);
+        int distinct = 0;
+        for (int i = 0; i < sorted.length; i++) {
+            if (i == 0 || sorted[i] != sorted[i - 1]) {
+                sorted[distinct++] = sorted[i];
+            }
+        }
+        return Arrays.copyOf(sorted, distinct);
+    }
+
+    private static final class Scratch {
+        private byte[] hits = new byte[0];
+        private int[] touched = new int[64];
+
+        byte[] hits(int documents) {
+            if (hits.length < documents) {
+                hits = new byte[Math.max(documents, hits.length * 2)];
+            }
+            return hits;
+        }
+    }
+}
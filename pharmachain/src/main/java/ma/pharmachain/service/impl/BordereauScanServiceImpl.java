@@ -0,0 +1,577 @@
+package ma.pharmachain.service.impl;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import ma.pharmachain.barcode.BordereauBarcodeParser;
+import ma.pharmachain.config.ScanConfig;
+import ma.pharmachain.dto.*;
+import ma.pharmachain.entity.*;
+import ma.pharmachain.enums.*;
+import ma.pharmachain.repository.*;
+import ma.pharmachain.service.AutoCreateService;
+import ma.pharmachain.service.BordereauScanService;
+import ma.pharmachain.service.DriverRouteCache;
+import ma.pharmachain.service.KnownNumbersFilter;
+import ma.pharmachain.service.ReferenceCodeCache;
+import ma.pharmachain.service.ScanArchiveService;
+import ma.pharmachain.service.StatusCounters;
+import ma.pharmachain.service.TransactionHooks;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.dao.RecoverableDataAccessException;
+import org.springframework.dao.TransientDataAccessException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.TransactionException;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.net.ConnectException;
+import java.sql.SQLRecoverableException;
+import java.sql.SQLTransientException;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.stream.Collectors;
+
+@Service
+@RequiredArgsConstructor
+@Transactional
+@Slf4j
+public class BordereauScanServiceImpl implements BordereauScanService {
+
+    private final BordereauRepository bordereauxRepository;
+    private final DeliveryItemRepository deliveryItemRepository;
+    private final DriverRepository driverRepository;
+    private final ManagerRepository managerRepository;
+    private final ClientRepository clientRepository;
+    private final AutoCreateService autoCreateService;
+    private final ReferenceCodeCache referenceCodeCache;
+    private final KnownNumbersFilter knownNumbersFilter;
+    private final ScanArchiveService scanArchiveService;
+    private final TransactionTemplate transactionTemplate;
+    private final MeterRegistry meterRegistry;
+    private final ScanConfig scanConfig;
+    private final DriverRouteCache driverRouteCache;
+    private final StatusCounters statusCounters;
+
+    @Override
+    public Bordereau scanBordereau(BordereauScanRequest request) {
+        Bordereau bordereau = scan(request, ScanLookup.load(List.of(request), referenceCodeCache),
+                new ScanCreatedEntities());
+        archiveAfterCommit(request);
+        return bordereau;
+    }
+
+    @Override
+    public BordereauDetail scanBordereauDetail(BordereauScanRequest request) {
+        Bordereau bordereau = scanBordereau(request);
+        // Mapped before the transaction ends: the drivers, secteur and lines are lazy and the session closes with it
+        List<DeliveryItemDetail> items = deliveryItemRepository
+                .findByBordereau_BordereauNumber(bordereau.getBordereauNumber()).stream()
+                .map(DeliveryItemDetail::from)
+                .toList();
+        return BordereauDetail.of(bordereau, items);
+    }
+
+    @Override
+    public BordereauScanResult scanBordereauAck(BordereauScanRequest request) {
+        ScanCreatedEntities created = new ScanCreatedEntities();
+        Bordereau bordereau = scan(request, ScanLookup.load(List.of(request), referenceCodeCache), created);
+        archiveAfterCommit(request);
+        return BordereauScanResult.success(bordereau, request, created);
+    }
+
+    @Override
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public List<BordereauScanResult> scanBordereaux(List<BordereauScanRequest> requests) {
+        return scanBatch(requests, scanConfig.getBatch().getParallelism(), true);
+    }
+
+    @Override
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public List<BordereauScanResult> replayScans(List<BordereauScanRequest> requests, int parallelism) {
+        return scanBatch(requests, parallelism, false);
+    }
+
+    private List<BordereauScanResult> scanBatch(List<BordereauScanRequest> requests, int maxParallelism,
+                                                boolean archive) {
+        // Resolve drivers, managers and clients of the whole batch once
+        ScanLookup lookup = transactionTemplate.execute(status -> ScanLookup.load(requests, referenceCodeCache));
+
+        BordereauScanResult[] results = new BordereauScanResult[requests.size()];
+        List<List<Integer>> partitions = partitionBySecteur(requests);
+        int parallelism = Math.min(maxParallelism, partitions.size());
+        if (parallelism <= 1) {
+            for (int i = 0; i < requests.size(); i++) {
+                results[i] = scanInOwnTransaction(requests.get(i), lookup, archive);
+            }
+            return Arrays.asList(results);
+        }
+
+        // Secteurs run side by side, each one in input order on its own virtual thread
+        Semaphore permits = new Semaphore(parallelism);
+        List<Future<?>> futures = new ArrayList<>(partitions.size());
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (List<Integer> partition : partitions) {
+                futures.add(executor.submit(() -> {
+                    permits.acquireUninterruptibly();
+                    try {
+                        for (int i : partition) {
+                            results[i] = scanInOwnTransaction(requests.get(i), lookup, archive);
+                        }
+                    } finally {
+                        permits.release();
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Batch scan interrupted", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Batch scan failed", e.getCause());
+        }
+        return Arrays.asList(results);
+    }
+
+    /**
+     * One transaction per bordereau so a bad one does not fail the batch
+     */
+    private BordereauScanResult scanInOwnTransaction(BordereauScanRequest request, ScanLookup lookup,
+                                                     boolean archive) {
+        try {
+            ScanCreatedEntities created = new ScanCreatedEntities();
+            Bordereau bordereau = transactionTemplate.execute(status -> scan(request, lookup, created));
+            lookup.remember(request, bordereau);
+            if (archive) {
+                scanArchiveService.record(request);
+            }
+            return BordereauScanResult.success(bordereau, request, created);
+        } catch (RuntimeException e) {
+            log.warn("Batch scan failed for bordereau {}: {}", request.getBordereauNumber(), e.getMessage());
+            return isTransient(e)
+                    ? BordereauScanResult.retryableFailure(request.getBordereauNumber(), e.getMessage())
+                    : BordereauScanResult.failure(request.getBordereauNumber(), e.getMessage());
+        }
+    }
+
+    /**
+     * The database could not be reached or the transaction could not be run: the same scan can succeed later,
+     * unlike one that is rejected (invalid input, constraint violation)
+     */
+    static boolean isTransient(Throwable e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof TransientDataAccessException
+                    || cause instanceof RecoverableDataAccessException
+                    || cause instanceof DataAccessResourceFailureException
+                    || cause instanceof TransactionException
+                    || cause instanceof SQLTransientException
+                    || cause instanceof SQLRecoverableException
+                    || cause instanceof ConnectException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void archiveAfterCommit(BordereauScanRequest request) {
+        TransactionHooks.afterCommit(() -> scanArchiveService.record(request));
+    }
+
+    /**
+     * Request indexes grouped by managerCode, in input order. Every scan of a bordereau number goes to the
+     * partition of its first occurrence, so re-scans of one bordereau are never applied out of order.
+     */
+    private static List<List<Integer>> partitionBySecteur(List<BordereauScanRequest> requests) {
+        Map<String, List<Integer>> partitions = new LinkedHashMap<>();
+        Map<String, List<Integer>> byBordereau = new HashMap<>();
+        for (int i = 0; i < requests.size(); i++) {
+            BordereauScanRequest request = requests.get(i);
+            List<Integer> partition = request.getBordereauNumber() != null
+                    ? byBordereau.get(request.getBordereauNumber()) : null;
+            if (partition == null) {
+                partition = partitions.computeIfAbsent(String.valueOf(request.getManagerCode()),
+                        code -> new ArrayList<>());
+                if (request.getBordereauNumber() != null) {
+                    byBordereau.put(request.getBordereauNumber(), partition);
+                }
+            }
+            partition.add(i);
+        }
+        return new ArrayList<>(partitions.values());
+    }
+
+    @Override
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public List<BordereauScanResult> scanBarcodes(List<String> barcodes, String driverCode, String managerCode) {
+        // Decode server-side; undecodable barcodes fail alone and keep their position in the response
+        BordereauScanResult[] results = new BordereauScanResult[barcodes.size()];
+        List<BordereauScanRequest> requests = new ArrayList<>(barcodes.size());
+        int[] positions = new int[barcodes.size()];
+        for (int i = 0; i < barcodes.size(); i++) {
+            try {
+                BordereauScanRequest request = BordereauBarcodeParser.parse(barcodes.get(i));
+                if (request.getDriverCode() == null) {
+                    request.setDriverCode(driverCode);
+                }
+                if (request.getManagerCode() == null) {
+                    request.setManagerCode(managerCode);
+                }
+                positions[requests.size()] = i;
+                requests.add(request);
+            } catch (IllegalArgumentException e) {
+                results[i] = BordereauScanResult.failure(null, e.getMessage());
+            }
+        }
+
+        List<BordereauScanResult> scanned = requests.isEmpty() ? List.of() : scanBordereaux(requests);
+        for (int i = 0; i < scanned.size(); i++) {
+            results[positions[i]] = scanned.get(i);
+        }
+        return Arrays.asList(results);
+    }
+
+    private Bordereau scan(BordereauScanRequest request, ScanLookup lookup, ScanCreatedEntities created) {
+        if (request.getBordereauNumber() == null || request.getBordereauNumber().isBlank()) {
+            throw new IllegalArgumentException("Bordereau number is required");
+        }
+
+        Optional<Bordereau> existing = findIfKnown(request.getBordereauNumber());
+        List<DeliveryItemRequest> itemRequests = request.getDeliveryItems() != null
+                ? request.getDeliveryItems() : List.of();
+        Map<String, Long> storedFingerprints = loadScanFingerprints(itemRequests);
+
+        // Identical re-scan: nothing to write
+        if (existing.isPresent() && isUnchanged(existing.get(), request, storedFingerprints, lookup)) {
+            scanOutcome("unchanged").increment();
+            return existing.get();
+        }
+
+        // Find or create bordereau
+        Bordereau bordereau = existing
+                .orElseGet(() -> {
+                    Bordereau newBordereau = new Bordereau();
+                    newBordereau.setBordereauNumber(request.getBordereauNumber());
+                    newBordereau.setAutoCreated(true);
+                    newBordereau.setScannedAt(LocalDateTime.now());
+                    newBordereau.setStatus(BordereauStatus.CREATED);
+                    return newBordereau;
+                });
+
+        // Read before it is replaced: a bordereau moving to another driver changes both routes
+        Driver previousDriver = bordereau.getCurrentDriver();
+        StatusCounters.Key previousKey = existing.isPresent() ? StatusCounters.keyOf(bordereau) : null;
+
+        // Update fields
+        bordereau.setDeliveryDate(request.getDeliveryDate());
+
+        // Auto-create/link Driver
+        if (request.getDriverCode() != null) {
+            Long driverId = lookup.driverIds.get(request.getDriverCode());
+            if (driverId == null) {
+                driverId = autoCreateService.ensureDriver(request.getDriverCode());
+                created.getDrivers().add(request.getDriverCode());
+            }
+            Driver driver = driverRepository.getReferenceById(driverId);
+            bordereau.setCurrentDriver(driver);
+            bordereau.setOriginalDriver(driver);
+            if (previousDriver != null && !driverId.equals(previousDriver.getId())) {
+                driverRouteCache.evict(previousDriver);
+            }
+        }
+
+        // Auto-create/link Manager
+        if (request.getManagerCode() != null) {
+            Long managerId = lookup.managerIds.get(request.getManagerCode());
+            if (managerId == null) {
+                managerId = autoCreateService.ensureManager(request.getManagerCode());
+                created.getManagers().add(request.getManagerCode());
+            }
+            Manager manager = managerRepository.getReferenceById(managerId);
+            bordereau.setSecteur(manager);
+        }
+
+        // Save bordereau first; refreshing here also backfills rows that have no fingerprint yet
+        bordereau.refreshScanFingerprint();
+        Bordereau savedBordereau = bordereauxRepository.save(bordereau);
+        if (existing.isEmpty()) {
+            knownNumbersFilter.addBordereau(savedBordereau.getBordereauNumber());
+            created.setBordereau(true);
+        }
+        // Before the lines are upserted: a bordereau changing driver, secteur or date takes its stored lines along
+        StatusCounters.Key key = StatusCounters.keyOf(savedBordereau);
+        statusCounters.bordereauChanged(savedBordereau.getBordereauNumber(), previousKey, savedBordereau.getStatus(),
+                key, savedBordereau.getStatus());
+
+        // Auto-create/link DeliveryItems
+        if (!itemRequests.isEmpty()) {
+            upsertDeliveryItems(savedBordereau, key, itemRequests, storedFingerprints, lookup, created);
+        }
+
+        if (request.getDriverCode() != null) {
+            driverRouteCache.evict(request.getDriverCode());
+        } else {
+            driverRouteCache.evict(savedBordereau.getCurrentDriver());
+        }
+
+        scanOutcome(existing.isPresent() ? "changed" : "new").increment();
+        return savedBordereau;
+    }
+
+    /**
+     * Skips the SELECT when the existence filter knows the bordereau number is new
+     */
+    private Optional<Bordereau> findIfKnown(String bordereauNumber) {
+        if (!knownNumbersFilter.mightContainBordereau(bordereauNumber)) {
+            return Optional.empty();
+        }
+        Optional<Bordereau> bordereau = bordereauxRepository.findByBordereauNumber(bordereauNumber);
+        if (bordereau.isEmpty()) {
+            knownNumbersFilter.recordBordereauFalsePositive();
+        }
+        return bordereau;
+    }
+
+    /**
+     * Stored fingerprints of the scanned BL lines that already exist (null for rows written outside JPA).
+     * BL numbers the existence filter knows to be new are not queried.
+     */
+    private Map<String, Long> loadScanFingerprints(List<DeliveryItemRequest> itemRequests) {
+        Set<String> blNumbers = itemRequests.stream()
+                .map(DeliveryItemRequest::getBlNumber)
+                .filter(Objects::nonNull)
+                .filter(knownNumbersFilter::mightContainBlNumber)
+                .collect(Collectors.toSet());
+        Map<String, Long> fingerprints = new HashMap<>();
+        if (!blNumbers.isEmpty()) {
+            deliveryItemRepository.findScanFingerprintsByBlNumberIn(blNumbers)
+                    .forEach(row -> fingerprints.put(row.getBlNumber(), row.getScanFingerprint()));
+            knownNumbersFilter.recordBlNumberFalsePositives(blNumbers.size() - fingerprints.size());
+        }
+        return fingerprints;
+    }
+
+    /**
+     * True when applying the scan would leave the bordereau and every one of its scanned lines as they are
+     */
+    private boolean isUnchanged(Bordereau bordereau, BordereauScanRequest request,
+                                Map<String, Long> storedFingerprints, ScanLookup lookup) {
+        Long currentDriverId = bordereau.getCurrentDriver() != null ? bordereau.getCurrentDriver().getId() : null;
+        Long originalDriverId = bordereau.getOriginalDriver() != null ? bordereau.getOriginalDriver().getId() : null;
+        Long secteurId = bordereau.getSecteur() != null ? bordereau.getSecteur().getId() : null;
+        if (request.getDriverCode() != null) {
+            currentDriverId = lookup.driverIds.get(request.getDriverCode());
+            originalDriverId = currentDriverId;
+        }
+        if (request.getManagerCode() != null) {
+            secteurId = lookup.managerIds.get(request.getManagerCode());
+        }
+        // Unknown codes still have to be auto-created
+        if ((request.getDriverCode() != null && currentDriverId == null)
+                || (request.getManagerCode() != null && secteurId == null)) {
+            return false;
+        }
+
+        long expected = Bordereau.scanFingerprintOf(request.getDeliveryDate(), currentDriverId, originalDriverId, secteurId);
+        if (!Objects.equals(bordereau.getScanFingerprint(), expected)) {
+            return false;
+        }
+        if (request.getDeliveryItems() != null) {
+            for (DeliveryItemRequest itemRequest : request.getDeliveryItems()) {
+                if (!isLineUnchanged(bordereau.getBordereauNumber(), itemRequest, storedFingerprints)) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    private static boolean isLineUnchanged(String bordereauNumber, DeliveryItemRequest itemRequest,
+                                           Map<String, Long> storedFingerprints) {
+        // A line without client code keeps its stored client, which the fingerprint cannot predict
+        if (itemRequest.getBlNumber() == null || itemRequest.getClientCode() == null) {
+            return false;
+        }
+        Long stored = storedFingerprints.get(itemRequest.getBlNumber());
+        return stored != null && stored == DeliveryItem.scanFingerprintOf(bordereauNumber,
+                itemRequest.getClientCode(), itemRequest.getNombreColis(), itemRequest.getNombreSachets());
+    }
+
+    private Counter scanOutcome(String outcome) {
+        return meterRegistry.counter("pharmachain.scan.bordereaux", "outcome", outcome);
+    }
+
+    /**
+     * Set-based upsert of the BL lines of a scan: lines whose fingerprint matches are skipped,
+     * changed ones are loaded with one IN query and updated in one flush, new rows are inserted
+     * through JDBC batches.
+     */
+    private void upsertDeliveryItems(Bordereau bordereau, StatusCounters.Key key,
+                                     List<DeliveryItemRequest> itemRequests,
+                                     Map<String, Long> storedFingerprints, ScanLookup lookup,
+                                     ScanCreatedEntities created) {
+        // Load only the existing lines this scan changes
+        Set<String> unchanged = new HashSet<>();
+        Set<String> changed = new HashSet<>();
+        for (DeliveryItemRequest itemRequest : itemRequests) {
+            String blNumber = itemRequest.getBlNumber();
+            if (blNumber == null || !storedFingerprints.containsKey(blNumber)) {
+                continue;
+            }
+            if (isLineUnchanged(bordereau.getBordereauNumber(), itemRequest, storedFingerprints)) {
+                unchanged.add(blNumber);
+            } else {
+                changed.add(blNumber);
+            }
+        }
+        unchanged.removeAll(changed);
+        Map<String, DeliveryItem> items = new HashMap<>();
+        if (!changed.isEmpty()) {
+            deliveryItemRepository.findByBlNumberIn(changed)
+                    .forEach(item -> items.put(item.getBlNumber(), item));
+        }
+
+        // Auto-create missing clients (first line wins, as with the per-line lookup)
+        Map<String, Client> clients = new HashMap<>();
+        List<Client> newClients = new ArrayList<>();
+        for (DeliveryItemRequest itemRequest : itemRequests) {
+            String clientCode = itemRequest.getClientCode();
+            if (clientCode == null || clients.containsKey(clientCode)) {
+                continue;
+            }
+            if (lookup.clientCodes.contains(clientCode)) {
+                clients.put(clientCode, clientRepository.getReferenceById(clientCode));
+            } else {
+                Client newClient = new Client();
+                newClient.setClientCode(clientCode);
+                newClient.setName(itemRequest.getClientName());
+                newClient.setAddress(itemRequest.getClientAddress());
+                newClient.setSecteur(bordereau.getSecteur());
+                newClient.setAutoCreated(true);
+                clients.put(clientCode, newClient);
+                newClients.add(newClient);
+            }
+        }
+        autoCreateService.ensureClients(newClients);
+        newClients.forEach(client -> created.getClients().add(client.getClientCode()));
+        newClients.forEach(client ->
+                clients.put(client.getClientCode(), clientRepository.getReferenceById(client.getClientCode())));
+
+        // Link lines to the bordereau, updating loaded rows in place
+        List<DeliveryItem> newItems = new ArrayList<>();
+        for (DeliveryItemRequest itemRequest : itemRequests) {
+            if (unchanged.contains(itemRequest.getBlNumber())) {
+                continue;
+            }
+            DeliveryItem item = itemRequest.getBlNumber() != null ? items.get(itemRequest.getBlNumber()) : null;
+            if (item == null) {
+                item = new DeliveryItem();
+                item.setBlNumber(itemRequest.getBlNumber());
+                item.setStatus(DeliveryItemStatus.PENDING);
+                newItems.add(item);
+                if (itemRequest.getBlNumber() != null) {
+                    items.put(itemRequest.getBlNumber(), item);
+                }
+            }
+
+            if (item.getBordereau() != null
+                    && !bordereau.getBordereauNumber().equals(item.getBordereau().getBordereauNumber())) {
+                // A line moving over from another bordereau
+                statusCounters.itemsChanged(StatusCounters.keyOf(item.getBordereau()), item.getStatus(),
+                        key, item.getStatus(), 1);
+            }
+            item.setBordereau(bordereau);
+            item.setNombreColis(itemRequest.getNombreColis());
+            item.setNombreSachets(itemRequest.getNombreSachets());
+
+            if (itemRequest.getClientCode() != null) {
+                item.setClient(clients.get(itemRequest.getClientCode()));
+            }
+            item.refreshScanFingerprint();
+        }
+
+        // Flush the bordereau and the dirty lines before inserting rows that reference it
+        bordereauxRepository.flush();
+        List<String> takenOver = deliveryItemRepository.batchInsert(newItems);
+        statusCounters.itemsChanged(null, null, key, DeliveryItemStatus.PENDING, newItems.size());
+        if (!takenOver.isEmpty()) {
+            // Lines another transaction inserted since the lookup were moved here with their status: the deltas
+            // above count them twice
+            log.info("Scan of {} took over lines inserted concurrently: {}", bordereau.getBordereauNumber(),
+                    takenOver);
+            statusCounters.recountAfterCommit();
+        }
+        newItems.stream()
+                .map(DeliveryItem::getBlNumber)
+                .filter(blNumber -> blNumber != null && !takenOver.contains(blNumber))
+                .forEach(blNumber -> {
+                    knownNumbersFilter.addBlNumber(blNumber);
+                    created.getDeliveryItems().add(blNumber);
+                });
+    }
+
+    /**
+     * Driver, manager and client codes already known to exist, shared across the bordereaux of a scan batch.
+     */
+    private static final class ScanLookup {
+        // Shared by the partitions of a parallel batch
+        private final Map<String, Long> driverIds = new ConcurrentHashMap<>();
+        private final Map<String, Long> managerIds = new ConcurrentHashMap<>();
+        private final Set<String> clientCodes = ConcurrentHashMap.newKeySet();
+
+        static ScanLookup load(List<BordereauScanRequest> requests, ReferenceCodeCache referenceCodeCache) {
+            Set<String> driverCodes = new HashSet<>();
+            Set<String> managerCodes = new HashSet<>();
+            Set<String> clientCodes = new HashSet<>();
+            for (BordereauScanRequest request : requests) {
+                if (request.getDriverCode() != null) {
+                    driverCodes.add(request.getDriverCode());
+                }
+                if (request.getManagerCode() != null) {
+                    managerCodes.add(request.getManagerCode());
+                }
+                if (request.getDeliveryItems() != null) {
+                    request.getDeliveryItems().stream()
+                            .map(DeliveryItemRequest::getClientCode)
+                            .filter(Objects::nonNull)
+                            .forEach(clientCodes::add);
+                }
+            }
+
+            // Codes already cached cost nothing; the misses of each type are loaded with one query
+            ScanLookup lookup = new ScanLookup();
+            if (!driverCodes.isEmpty()) {
+                lookup.driverIds.putAll(referenceCodeCache.driverIds(driverCodes));
+            }
+            if (!managerCodes.isEmpty()) {
+                lookup.managerIds.putAll(referenceCodeCache.managerIds(managerCodes));
+            }
+            if (!clientCodes.isEmpty()) {
+                lookup.clientCodes.addAll(referenceCodeCache.existingClientCodes(clientCodes));
+            }
+            return lookup;
+        }
+
+        /**
+         * Record the entities created by a committed scan so later bordereaux of the batch reuse them.
+         */
+        void remember(BordereauScanRequest request, Bordereau bordereau) {
+            if (request.getDriverCode() != null && bordereau.getCurrentDriver() != null) {
+                driverIds.put(request.getDriverCode(), bordereau.getCurrentDriver().getId());
+            }
+            if (request.getManagerCode() != null && bordereau.getSecteur() != null) {
+                managerIds.put(request.getManagerCode(), bordereau.getSecteur().getId());
+            }
+            if (request.getDeliveryItems() != null) {
+                request.getDeliveryItems().stream()
+                        .map(DeliveryItemRequest::getClientCode)
+                        .filter(Objects::nonNull)
+                        .forEach(clientCodes::add);
+            }
+        }
+    }
+}
@@ -7,16 +7,23 @@ import ma.pharmachain.enums.*;
 import ma.pharmachain.exception.ResourceNotFoundException;
 import ma.pharmachain.repository.*;
 import ma.pharmachain.service.BordereauService;
+import ma.pharmachain.service.DriverRouteCache;
+import ma.pharmachain.service.KeysetCursor;
+import ma.pharmachain.service.KnownNumbersFilter;
+import ma.pharmachain.service.ReferenceCodeCache;
+import ma.pharmachain.service.StatusCounters;
+import org.hibernate.Hibernate;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.domain.Sort;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDate;
-import java.time.LocalDateTime;
-import java.util.List;
-import java.util.Map;
+import java.time.format.DateTimeParseException;
+import java.util.*;
 
 @Service
 @RequiredArgsConstructor
@@ -25,128 +32,118 @@ public class BordereauServiceImpl implements BordereauService {
 
     private final BordereauRepository bordereauxRepository;
     private final DeliveryItemRepository deliveryItemRepository;
-    private final DriverRepository driverRepository;
-    private final ManagerRepository managerRepository;
-    private final ClientRepository clientRepository;
+    private final ReferenceCodeCache referenceCodeCache;
+    private final KnownNumbersFilter knownNumbersFilter;
+    private final TableStatisticsRepository tableStatisticsRepository;
+    private final DriverRouteCache driverRouteCache;
+    private final StatusCounters statusCounters;
 
     @Override
     @Transactional(readOnly = true)
-    public Page<Bordereau> listBordereaux(int page, int size) {
-        return bordereauxRepository.findAll(
+    public Page<BordereauSummary> listBordereaux(int page, int size) {
+        return bordereauxRepository.findSummaries(
                 PageRequest.of(page, size, Sort.by("deliveryDate").descending())
         );
     }
 
     @Override
     @Transactional(readOnly = true)
-    public Bordereau getBordereauByNumber(String bordereauNumber) {
-        return bordereauxRepository.findByBordereauNumber(bordereauNumber)
-                .orElseThrow(() -> new ResourceNotFoundException("Bordereau not found: " + bordereauNumber));
+    public SlicePage<BordereauSummary> listBordereauxSlice(int page, int size, boolean approximateTotal) {
+        Slice<BordereauSummary> slice = bordereauxRepository.findSummarySlice(
+                PageRequest.of(page, size, Sort.by("deliveryDate").descending()));
+        return SlicePage.of(slice, approximateTotal ? tableStatisticsRepository.estimateRows("bordereau") : null);
     }
 
     @Override
-    public Bordereau scanBordereau(BordereauScanRequest request) {
-        // Find or create bordereau
-        Bordereau bordereau = bordereauxRepository.findByBordereauNumber(request.getBordereauNumber())
-                .orElseGet(() -> {
-                    Bordereau newBordereau = new Bordereau();
-                    newBordereau.setBordereauNumber(request.getBordereauNumber());
-                    newBordereau.setAutoCreated(true);
-                    newBordereau.setScannedAt(LocalDateTime.now());
-                    newBordereau.setStatus(BordereauStatus.CREATED);
-                    return newBordereau;
-                });
-
-        // Update fields
-        bordereau.setDeliveryDate(request.getDeliveryDate());
-
-        // Auto-create/link Driver
-        if (request.getDriverCode() != null) {
-            Driver driver = driverRepository.findByCode(request.getDriverCode())
-                    .orElseGet(() -> {
-                        Driver newDriver = new Driver();
-                        newDriver.setCode(request.getDriverCode());
-                        newDriver.setUsername("driver_" + request.getDriverCode());
-                        newDriver.setIsActive(true);
-                        newDriver.setCreatedAt(LocalDateTime.now());
-                        return driverRepository.save(newDriver);
-                    });
-            bordereau.setCurrentDriver(driver);
-            bordereau.setOriginalDriver(driver);
+    @Transactional(readOnly = true)
+    public KeysetPage<BordereauSummary> listBordereauxAfter(String after, int size) {
+        Limit limit = Limit.of(size + 1);
+        List<BordereauSummary> rows;
+        if (KeysetCursor.isFirstPage(after)) {
+            rows = bordereauxRepository.findSummariesFirst(limit);
+        } else {
+            String[] cursor = KeysetCursor.decode(after);
+            rows = cursor[0] == null
+                    ? bordereauxRepository.findSummariesAfterUndated(cursor[1], limit)
+                    : bordereauxRepository.findSummariesAfter(parseCursorDate(cursor[0]), cursor[1], limit);
         }
+        return KeysetPage.of(rows, size,
+                row -> KeysetCursor.encode(row.getDeliveryDate(), row.getBordereauNumber()));
+    }
 
-        // Auto-create/link Manager
-        if (request.getManagerCode() != null) {
-            Manager manager = managerRepository.findByCode(request.getManagerCode())
-                    .orElseGet(() -> {
-                        Manager newManager = new Manager();
-                        newManager.setCode(request.getManagerCode());
-                        newManager.setUsername("manager_" + request.getManagerCode());
-                        newManager.setIsActive(true);
-                        newManager.setCreatedAt(LocalDateTime.now());
-                        return managerRepository.save(newManager);
-                    });
-            bordereau.setSecteur(manager);
+    private static LocalDate parseCursorDate(String value) {
+        try {
+            return LocalDate.parse(value);
+        } catch (DateTimeParseException e) {
+            throw new IllegalArgumentException("Invalid after cursor date: " + value, e);
         }
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public Bordereau getBordereauByNumber(String bordereauNumber) {
+        return bordereauxRepository.findDetailedByBordereauNumber(bordereauNumber)
+                .orElseThrow(() -> new ResourceNotFoundException("Bordereau not found: " + bordereauNumber));
+    }
 
-        // Save bordereau first
-        Bordereau savedBordereau = bordereauxRepository.save(bordereau);
-
-        // Auto-create/link DeliveryItems
-        if (request.getDeliveryItems() != null) {
-            for (DeliveryItemRequest itemRequest : request.getDeliveryItems()) {
-                DeliveryItem item = deliveryItemRepository.findByBlNumber(itemRequest.getBlNumber())
-                        .orElseGet(() -> {
-                            DeliveryItem newItem = new DeliveryItem();
-                            newItem.setBlNumber(itemRequest.getBlNumber());
-                            newItem.setStatus(DeliveryItemStatus.PENDING);
-                            return newItem;
-                        });
-
-                item.setBordereau(savedBordereau);
-                item.setNombreColis(itemRequest.getNombreColis());
-                item.setNombreSachets(itemRequest.getNombreSachets());
-
-                // Auto-create/link Client
-                if (itemRequest.getClientCode() != null) {
-                    Client client = clientRepository.findByClientCode(itemRequest.getClientCode())
-                            .orElseGet(() -> {
-                                Client newClient = new Client();
-                                newClient.setClientCode(itemRequest.getClientCode());
-                                newClient.setName(itemRequest.getClientName());
-                                newClient.setAddress(itemRequest.getClientAddress());
-                                newClient.setSecteur(savedBordereau.getSecteur());
-                                newClient.setAutoCreated(true);
-                                return clientRepository.save(newClient);
-                            });
-                    item.setClient(client);
-                }
-
-                deliveryItemRepository.save(item);
+    @Override
+    @Transactional(readOnly = true)
+    public Page<BordereauSummary> searchBordereaux(BordereauSearchCriteria criteria, int page, int size) {
+        PageRequest pageRequest = PageRequest.of(page, size,
+                Sort.by("deliveryDate").descending().and(Sort.by("bordereauNumber").descending()));
+
+        // Codes become references so the filters compare foreign keys instead of joining users
+        Driver driver = null;
+        if (criteria.getDriverCode() != null) {
+            driver = referenceCodeCache.driverReference(criteria.getDriverCode()).orElse(null);
+            if (driver == null) {
+                return Page.empty(pageRequest);
+            }
+        }
+        Manager secteur = null;
+        if (criteria.getSecteurCode() != null) {
+            secteur = referenceCodeCache.managerReference(criteria.getSecteurCode()).orElse(null);
+            if (secteur == null) {
+                return Page.empty(pageRequest);
             }
         }
 
-        return savedBordereau;
+        return bordereauxRepository.findAll(BordereauSpecifications.matching(criteria.getStatus(),
+                        criteria.getDeliveryDateFrom(), criteria.getDeliveryDateTo(), driver, secteur), pageRequest)
+                .map(BordereauSummary::from);
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public String getBordereauEtag(String bordereauNumber) {
+        return bordereauxRepository.findEtagDigestByBordereauNumber(bordereauNumber)
+                .map(digest -> "\"" + digest + "\"")
+                .orElseThrow(() -> new ResourceNotFoundException("Bordereau not found: " + bordereauNumber));
     }
 
     @Override
     public Bordereau updateBordereau(String bordereauNumber, BordereauUpdateRequest request) {
         Bordereau bordereau = getBordereauByNumber(bordereauNumber);
+        StatusCounters.Key previousKey = StatusCounters.keyOf(bordereau);
+        BordereauStatus previousStatus = bordereau.getStatus();
 
         // Update mutable fields
         if (request.getDeliveryDate() != null) {
             bordereau.setDeliveryDate(request.getDeliveryDate());
+            driverRouteCache.evict(bordereau.getCurrentDriver());
         }
         if (request.getStatus() != null) {
             bordereau.setStatus(request.getStatus());
         }
 
-        return bordereauxRepository.save(bordereau);
+        return saveCounted(bordereau, previousKey, previousStatus);
     }
 
     @Override
     public Bordereau partialUpdateBordereau(String bordereauNumber, Map<String, Object> updates) {
         Bordereau bordereau = getBordereauByNumber(bordereauNumber);
+        StatusCounters.Key previousKey = StatusCounters.keyOf(bordereau);
+        BordereauStatus previousStatus = bordereau.getStatus();
 
         // Apply partial updates
         updates.forEach((key, value) -> {
@@ -156,45 +153,71 @@ public class BordereauServiceImpl implements BordereauService {
                     break;
                 case "deliveryDate":
                     bordereau.setDeliveryDate(LocalDate.parse(value.toString()));
+                    driverRouteCache.evict(bordereau.getCurrentDriver());
                     break;
                 // Add other fields as needed
             }
         });
 
-        return bordereauxRepository.save(bordereau);
+        return saveCounted(bordereau, previousKey, previousStatus);
+    }
+
+    /**
+     * Saves a loaded bordereau and moves its counts from the key and status it had when loaded
+     */
+    private Bordereau saveCounted(Bordereau bordereau, StatusCounters.Key previousKey, BordereauStatus previousStatus) {
+        Bordereau saved = bordereauxRepository.save(bordereau);
+        statusCounters.bordereauChanged(saved.getBordereauNumber(), previousKey, previousStatus,
+                StatusCounters.keyOf(saved), saved.getStatus());
+        return saved;
     }
 
     @Override
     public void deleteBordereau(String bordereauNumber) {
-        if (!bordereauxRepository.existsByBordereauNumber(bordereauNumber)) {
+        if (!knownNumbersFilter.mightContainBordereau(bordereauNumber)) {
             throw new ResourceNotFoundException("Bordereau not found: " + bordereauNumber);
         }
+        // Loaded anyway by the derived delete; its lines are counted out before they cascade
+        Bordereau bordereau = getBordereauByNumber(bordereauNumber);
+        statusCounters.bordereauChanged(bordereauNumber, StatusCounters.keyOf(bordereau), bordereau.getStatus(),
+                null, null);
+        // The cascaded lines' BL numbers stay in their filter as false positives
         bordereauxRepository.deleteByBordereauNumber(bordereauNumber);
+        knownNumbersFilter.removeBordereau(bordereauNumber);
+        driverRouteCache.evict(bordereau.getCurrentDriver());
     }
 
     @Override
     public Bordereau reassignBordereau(String bordereauNumber, String driverCode, String managerCode) {
         Bordereau bordereau = getBordereauByNumber(bordereauNumber);
+        StatusCounters.Key previousKey = StatusCounters.keyOf(bordereau);
 
         if (driverCode != null) {
-            Driver driver = driverRepository.findByCode(driverCode)
+            Driver driver = referenceCodeCache.driverReference(driverCode)
                     .orElseThrow(() -> new ResourceNotFoundException("Driver not found: " + driverCode));
+            driverRouteCache.evict(bordereau.getCurrentDriver());
+            driverRouteCache.evict(driverCode);
             bordereau.setCurrentDriver(driver);
         }
 
         if (managerCode != null) {
-            Manager manager = managerRepository.findByCode(managerCode)
+            Manager manager = referenceCodeCache.managerReference(managerCode)
                     .orElseThrow(() -> new ResourceNotFoundException("Manager not found: " + managerCode));
             bordereau.setSecteur(manager);
         }
 
-        return bordereauxRepository.save(bordereau);
+        Bordereau saved = saveCounted(bordereau, previousKey, bordereau.getStatus());
+        // Set by reference: loaded while the session is open so they render as objects and not their ids
+        Hibernate.initialize(saved.getCurrentDriver());
+        Hibernate.initialize(saved.getSecteur());
+        return saved;
     }
 
     @Override
     @Transactional(readOnly = true)
     public List<DeliveryItem> getDeliveryItems(String bordereauNumber) {
-        if (!bordereauxRepository.existsByBordereauNumber(bordereauNumber)) {
+        if (!knownNumbersFilter.mightContainBordereau(bordereauNumber)
+                || !bordereauxRepository.existsByBordereauNumber(bordereauNumber)) {
             throw new ResourceNotFoundException("Bordereau not found: " + bordereauNumber);
         }
         return deliveryItemRepository.findByBordereau_BordereauNumber(bordereauNumber);
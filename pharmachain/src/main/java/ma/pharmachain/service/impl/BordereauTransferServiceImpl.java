@@ -1,8 +1,11 @@
 package ma.pharmachain.service.impl;
 
 import lombok.RequiredArgsConstructor;
+import ma.pharmachain.dto.SlicePage;
 import ma.pharmachain.exception.ResourceNotFoundException;
+import ma.pharmachain.dto.KeysetPage;
 import ma.pharmachain.dto.TransferCreateRequest;
+import ma.pharmachain.dto.TransferSummary;
 import ma.pharmachain.dto.TransferUpdateRequest;
 import ma.pharmachain.entity.Bordereau;
 import ma.pharmachain.entity.BordereauTransfer;
@@ -10,15 +13,24 @@ import ma.pharmachain.entity.Driver;
 import ma.pharmachain.enums.TransferStatus;
 import ma.pharmachain.repository.BordereauRepository;
 import ma.pharmachain.repository.BordereauTransferRepository;
-import ma.pharmachain.repository.DriverRepository;
+import ma.pharmachain.repository.TableStatisticsRepository;
 import ma.pharmachain.service.BordereauTransferService;
+import ma.pharmachain.service.DriverRouteCache;
+import ma.pharmachain.service.KeysetCursor;
+import ma.pharmachain.service.ReferenceCodeCache;
+import ma.pharmachain.service.StatusCounters;
+import org.hibernate.Hibernate;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.domain.Sort;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.List;
 
 @Service
 @RequiredArgsConstructor
@@ -26,8 +38,11 @@ import java.time.LocalDateTime;
 public class BordereauTransferServiceImpl implements BordereauTransferService {
 
     private final BordereauTransferRepository transferRepository;
+    private final TableStatisticsRepository tableStatisticsRepository;
     private final BordereauRepository bordereauxRepository;
-    private final DriverRepository driverRepository;
+    private final ReferenceCodeCache referenceCodeCache;
+    private final DriverRouteCache driverRouteCache;
+    private final StatusCounters statusCounters;
 
     @Override
     public BordereauTransfer createTransfer(String bordereauNumber, TransferCreateRequest request) {
@@ -42,11 +57,11 @@ public class BordereauTransferServiceImpl implements BordereauTransferService {
         }
 
         // Find toDriver
-        Driver toDriver = driverRepository.findByCode(request.getToDriverCode())
+        Driver toDriver = referenceCodeCache.driverReference(request.getToDriverCode())
                 .orElseThrow(() -> new ResourceNotFoundException("Driver not found: " + request.getToDriverCode()));
 
         // Validate: cannot transfer to the same driver
-        if (fromDriver.getCode().equals(toDriver.getCode())) {
+        if (fromDriver.getId().equals(toDriver.getId())) {
             throw new IllegalArgumentException("Cannot transfer to the same driver");
         }
 
@@ -62,17 +77,50 @@ public class BordereauTransferServiceImpl implements BordereauTransferService {
 
         // Save transfer - DO NOT update bordereau's driver yet
         // Driver will be updated only when status changes to ACCEPTED
-        return transferRepository.save(transfer);
+        BordereauTransfer saved = transferRepository.save(transfer);
+        // Set by reference: loaded while the session is open so it renders as an object and not its id
+        Hibernate.initialize(saved.getToDriver());
+        return saved;
     }
 
     @Override
     @Transactional(readOnly = true)
-    public Page<BordereauTransfer> listTransfers(int page, int size) {
-        return transferRepository.findAll(
+    public Page<TransferSummary> listTransfers(int page, int size) {
+        return transferRepository.findSummaries(
                 PageRequest.of(page, size, Sort.by("transferredAt").descending())
         );
     }
 
+    @Override
+    @Transactional(readOnly = true)
+    public SlicePage<TransferSummary> listTransfersSlice(int page, int size, boolean approximateTotal) {
+        Slice<TransferSummary> slice = transferRepository.findSummarySlice(
+                PageRequest.of(page, size, Sort.by("transferredAt").descending()));
+        return SlicePage.of(slice, approximateTotal ? tableStatisticsRepository.estimateRows("bordereau_transfer") : null);
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public KeysetPage<TransferSummary> listTransfersAfter(String after, int size) {
+        Limit limit = Limit.of(size + 1);
+        List<TransferSummary> rows;
+        if (KeysetCursor.isFirstPage(after)) {
+            rows = transferRepository.findSummariesFirst(limit);
+        } else {
+            String[] cursor = KeysetCursor.decode(after);
+            if (cursor[0] == null) {
+                throw new IllegalArgumentException("Invalid after cursor: " + after);
+            }
+            try {
+                rows = transferRepository.findSummariesAfter(LocalDateTime.parse(cursor[0]), Long.valueOf(cursor[1]),
+                        limit);
+            } catch (DateTimeParseException | NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid after cursor: " + after, e);
+            }
+        }
+        return KeysetPage.of(rows, size, row -> KeysetCursor.encode(row.getTransferredAt(), row.getId()));
+    }
+
     @Override
     @Transactional(readOnly = true)
     public BordereauTransfer getTransferById(Long id) {
@@ -125,12 +173,16 @@ public class BordereauTransferServiceImpl implements BordereauTransferService {
         }
 
         Bordereau bordereau = transfer.getBordereau();
+        StatusCounters.Key previousKey = StatusCounters.keyOf(bordereau);
 
         // Handle status transitions
         if (status == TransferStatus.ACCEPTED) {
             // ACCEPTED: Transfer the bordereau to the new driver
+            driverRouteCache.evict(bordereau.getCurrentDriver());
+            driverRouteCache.evict(transfer.getToDriver());
             bordereau.setCurrentDriver(transfer.getToDriver());
             bordereauxRepository.save(bordereau);
+            countDriverChange(bordereau, previousKey);
 
         } else if (status == TransferStatus.REJECTED) {
             // REJECTED: Keep the bordereau with the original driver (no change needed)
@@ -138,8 +190,11 @@ public class BordereauTransferServiceImpl implements BordereauTransferService {
             // Optionally verify this:
             if (!bordereau.getCurrentDriver().getCode().equals(transfer.getFromDriver().getCode())) {
                 // If somehow the driver was changed, revert it
+                driverRouteCache.evict(bordereau.getCurrentDriver());
+                driverRouteCache.evict(transfer.getFromDriver());
                 bordereau.setCurrentDriver(transfer.getFromDriver());
                 bordereauxRepository.save(bordereau);
+                countDriverChange(bordereau, previousKey);
             }
         }
 
@@ -148,6 +203,14 @@ public class BordereauTransferServiceImpl implements BordereauTransferService {
         return transferRepository.save(transfer);
     }
 
+    /**
+     * The bordereau's counts, lines included, follow it to its new driver
+     */
+    private void countDriverChange(Bordereau bordereau, StatusCounters.Key previousKey) {
+        statusCounters.bordereauChanged(bordereau.getBordereauNumber(), previousKey, bordereau.getStatus(),
+                StatusCounters.keyOf(bordereau), bordereau.getStatus());
+    }
+
     @Override
     public void deleteTransfer(Long id) {
         BordereauTransfer transfer = transferRepository.findById(id)
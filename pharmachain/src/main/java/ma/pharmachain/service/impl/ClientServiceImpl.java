@@ -2,19 +2,29 @@ package ma.pharmachain.service.impl;
 
 import lombok.RequiredArgsConstructor;
 import ma.pharmachain.dto.ClientCreateRequest;
+import ma.pharmachain.dto.SlicePage;
 import ma.pharmachain.exception.ResourceNotFoundException;
+import ma.pharmachain.dto.ClientSummary;
 import ma.pharmachain.dto.ClientUpdateRequest;
+import ma.pharmachain.dto.NearbyClient;
 import ma.pharmachain.entity.Client;
 import ma.pharmachain.entity.DeliveryItem;
 import ma.pharmachain.entity.Manager;
 import ma.pharmachain.repository.ClientRepository;
 import ma.pharmachain.repository.DeliveryItemRepository;
-import ma.pharmachain.repository.ManagerRepository;
+import ma.pharmachain.repository.TableStatisticsRepository;
+import ma.pharmachain.service.ClientGeoIndex;
+import ma.pharmachain.service.ClientSearchIndex;
 import ma.pharmachain.service.ClientService;
+import ma.pharmachain.service.DriverRouteCache;
+import ma.pharmachain.service.GeoIndex;
+import ma.pharmachain.service.ReferenceCodeCache;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.domain.Sort;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.util.List;
@@ -26,17 +36,29 @@ import java.util.Map;
 public class ClientServiceImpl implements ClientService {
 
     private final ClientRepository clientRepository;
-    private final ManagerRepository managerRepository;
+    private final TableStatisticsRepository tableStatisticsRepository;
+    private final ReferenceCodeCache referenceCodeCache;
     private final DeliveryItemRepository deliveryItemRepository;
+    private final ClientSearchIndex clientSearchIndex;
+    private final ClientGeoIndex clientGeoIndex;
+    private final DriverRouteCache driverRouteCache;
 
     @Override
     @Transactional(readOnly = true)
-    public Page<Client> listClients(int page, int size) {
-        return clientRepository.findAll(
+    public Page<ClientSummary> listClients(int page, int size) {
+        return clientRepository.findSummaries(
                 PageRequest.of(page, size, Sort.by("name").ascending())
         );
     }
 
+    @Override
+    @Transactional(readOnly = true)
+    public SlicePage<ClientSummary> listClientsSlice(int page, int size, boolean approximateTotal) {
+        Slice<ClientSummary> slice = clientRepository.findSummarySlice(
+                PageRequest.of(page, size, Sort.by("name").ascending()));
+        return SlicePage.of(slice, approximateTotal ? tableStatisticsRepository.estimateRows("client") : null);
+    }
+
     @Override
     @Transactional(readOnly = true)
     public Client getClientByCode(String clientCode) {
@@ -57,7 +79,7 @@ public class ClientServiceImpl implements ClientService {
         }
 
         // Find secteur (Manager)
-        Manager secteur = managerRepository.findByCode(request.getSecteurCode())
+        Manager secteur = referenceCodeCache.managerReference(request.getSecteurCode())
                 .orElseThrow(() -> new ResourceNotFoundException("Manager not found: " + request.getSecteurCode()));
 
         // Create client
@@ -70,7 +92,8 @@ public class ClientServiceImpl implements ClientService {
         client.setSecteur(secteur);
         client.setAutoCreated(false); // Manually created
 
-        return clientRepository.save(client);
+        referenceCodeCache.evictClient(client.getClientCode());
+        return saveAndIndex(client);
     }
 
     @Override
@@ -91,12 +114,13 @@ public class ClientServiceImpl implements ClientService {
             client.setCoordinates(request.getCoordinates());
         }
         if (request.getSecteurCode() != null) {
-            Manager secteur = managerRepository.findByCode(request.getSecteurCode())
+            Manager secteur = referenceCodeCache.managerReference(request.getSecteurCode())
                     .orElseThrow(() -> new ResourceNotFoundException("Manager not found: " + request.getSecteurCode()));
             client.setSecteur(secteur);
         }
 
-        return clientRepository.save(client);
+        referenceCodeCache.evictClient(clientCode);
+        return saveAndIndex(client);
     }
 
     @Override
@@ -119,14 +143,15 @@ public class ClientServiceImpl implements ClientService {
                     client.setCoordinates(value.toString());
                     break;
                 case "secteurCode":
-                    Manager secteur = managerRepository.findByCode(value.toString())
+                    Manager secteur = referenceCodeCache.managerReference(value.toString())
                             .orElseThrow(() -> new ResourceNotFoundException("Manager not found: " + value));
                     client.setSecteur(secteur);
                     break;
             }
         });
 
-        return clientRepository.save(client);
+        referenceCodeCache.evictClient(clientCode);
+        return saveAndIndex(client);
     }
 
     @Override
@@ -135,6 +160,28 @@ public class ClientServiceImpl implements ClientService {
             throw new ResourceNotFoundException("Client not found: " + clientCode);
         }
         clientRepository.deleteByClientCode(clientCode);
+        referenceCodeCache.evictClient(clientCode);
+        clientSearchIndex.remove(clientCode);
+        clientGeoIndex.remove(clientCode);
+        driverRouteCache.evictAll();
+    }
+
+    @Override
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public List<ClientSummary> searchClients(String query, int limit) {
+        return clientSearchIndex.search(query, limit);
+    }
+
+    @Override
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public List<NearbyClient> findClientsWithin(double lat, double lng, double radiusKm, int limit) {
+        return toNearbyClients(clientGeoIndex.within(lat, lng, radiusKm, limit));
+    }
+
+    @Override
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public List<NearbyClient> findNearestClients(double lat, double lng, int k) {
+        return toNearbyClients(clientGeoIndex.nearest(lat, lng, k));
     }
 
     @Override
@@ -145,5 +192,20 @@ public class ClientServiceImpl implements ClientService {
         }
         return deliveryItemRepository.findByClient_ClientCode(clientCode);
     }
+
+    private Client saveAndIndex(Client client) {
+        Client saved = clientRepository.save(client);
+        // Mapped now, while the secteur can still be loaded; indexed after commit
+        ClientSummary summary = ClientSummary.from(saved);
+        clientSearchIndex.put(summary);
+        clientGeoIndex.put(summary);
+        // Routes carry the client and were ordered by its coordinates
+        driverRouteCache.evictAll();
+        return saved;
+    }
+
+    private static List<NearbyClient> toNearbyClients(List<GeoIndex.Hit<ClientSummary>> hits) {
+        return hits.stream().map(hit -> new NearbyClient(hit.value(), hit.distanceKm())).toList();
+    }
 }
 
@@ -1,22 +1,33 @@
 package ma.pharmachain.service.impl;
 
 import lombok.RequiredArgsConstructor;
+import ma.pharmachain.dto.DeliveryItemSummary;
 import ma.pharmachain.dto.DeliveryItemUpdateRequest;
+import ma.pharmachain.dto.KeysetPage;
 import ma.pharmachain.dto.ProofRequest;
+import ma.pharmachain.dto.SlicePage;
 import ma.pharmachain.exception.ResourceNotFoundException;
 import ma.pharmachain.entity.DeliveryItem;
 import ma.pharmachain.enums.DeliveryItemStatus;
 import ma.pharmachain.repository.BordereauRepository;
 import ma.pharmachain.repository.ClientRepository;
 import ma.pharmachain.repository.DeliveryItemRepository;
+import ma.pharmachain.repository.TableStatisticsRepository;
 import ma.pharmachain.service.DeliveryItemService;
+import ma.pharmachain.service.DriverRouteCache;
+import ma.pharmachain.service.KeysetCursor;
+import ma.pharmachain.service.KnownNumbersFilter;
+import ma.pharmachain.service.StatusCounters;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.domain.Sort;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDateTime;
+import java.util.List;
 import java.util.Map;
 
 @Service
@@ -25,17 +36,50 @@ import java.util.Map;
 public class DeliveryItemServiceImpl implements DeliveryItemService {
 
     private final DeliveryItemRepository deliveryItemRepository;
+    private final TableStatisticsRepository tableStatisticsRepository;
     private final ClientRepository clientRepository;
     private final BordereauRepository bordereauxRepository;
+    private final KnownNumbersFilter knownNumbersFilter;
+    private final DriverRouteCache driverRouteCache;
+    private final StatusCounters statusCounters;
 
     @Override
     @Transactional(readOnly = true)
-    public Page<DeliveryItem> listDeliveryItems(int page, int size) {
-        return deliveryItemRepository.findAll(
+    public Page<DeliveryItemSummary> listDeliveryItems(int page, int size) {
+        return deliveryItemRepository.findSummaries(
                 PageRequest.of(page, size, Sort.by("id").descending())
         );
     }
 
+    @Override
+    @Transactional(readOnly = true)
+    public SlicePage<DeliveryItemSummary> listDeliveryItemsSlice(int page, int size, boolean approximateTotal) {
+        Slice<DeliveryItemSummary> slice = deliveryItemRepository.findSummarySlice(
+                PageRequest.of(page, size, Sort.by("id").descending()));
+        return SlicePage.of(slice, approximateTotal ? tableStatisticsRepository.estimateRows("delivery_item") : null);
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public KeysetPage<DeliveryItemSummary> listDeliveryItemsAfter(String after, int size) {
+        Limit limit = Limit.of(size + 1);
+        List<DeliveryItemSummary> rows;
+        if (KeysetCursor.isFirstPage(after)) {
+            rows = deliveryItemRepository.findSummariesFirst(limit);
+        } else {
+            rows = deliveryItemRepository.findSummariesAfter(parseCursorId(KeysetCursor.decodeId(after)), limit);
+        }
+        return KeysetPage.of(rows, size, row -> KeysetCursor.encode(row.getId()));
+    }
+
+    private static Long parseCursorId(String value) {
+        try {
+            return Long.valueOf(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid after cursor id: " + value, e);
+        }
+    }
+
     @Override
     @Transactional(readOnly = true)
     public DeliveryItem getDeliveryItemByBlNumber(String blNumber) {
@@ -46,6 +90,7 @@ public class DeliveryItemServiceImpl implements DeliveryItemService {
     @Override
     public DeliveryItem updateDeliveryItem(String blNumber, DeliveryItemUpdateRequest request) {
         DeliveryItem item = getDeliveryItemByBlNumber(blNumber);
+        DeliveryItemStatus previousStatus = item.getStatus();
 
         // Update mutable fields
         if (request.getNombreColis() != null) {
@@ -56,6 +101,7 @@ public class DeliveryItemServiceImpl implements DeliveryItemService {
         }
         if (request.getStatus() != null) {
             item.setStatus(request.getStatus());
+            evictRoute(item);
 
             // Auto-update deliveredAt timestamp when status changes to DELIVERED
             if (request.getStatus() == DeliveryItemStatus.DELIVERED && item.getDeliveredAt() == null) {
@@ -69,12 +115,14 @@ public class DeliveryItemServiceImpl implements DeliveryItemService {
             item.setRecipientSignature(request.getRecipientSignature());
         }
 
+        countStatusChange(item, previousStatus);
         return deliveryItemRepository.save(item);
     }
 
     @Override
     public DeliveryItem partialUpdateDeliveryItem(String blNumber, Map<String, Object> updates) {
         DeliveryItem item = getDeliveryItemByBlNumber(blNumber);
+        DeliveryItemStatus previousStatus = item.getStatus();
 
         // Apply partial updates
         updates.forEach((key, value) -> {
@@ -88,6 +136,7 @@ public class DeliveryItemServiceImpl implements DeliveryItemService {
                 case "status":
                     DeliveryItemStatus status = DeliveryItemStatus.valueOf(value.toString());
                     item.setStatus(status);
+                    evictRoute(item);
                     if (status == DeliveryItemStatus.DELIVERED && item.getDeliveredAt() == null) {
                         item.setDeliveredAt(LocalDateTime.now());
                     }
@@ -104,20 +153,29 @@ public class DeliveryItemServiceImpl implements DeliveryItemService {
             }
         });
 
+        countStatusChange(item, previousStatus);
         return deliveryItemRepository.save(item);
     }
 
     @Override
     public void deleteDeliveryItem(String blNumber) {
-        if (!deliveryItemRepository.existsByBlNumber(blNumber)) {
+        if (!knownNumbersFilter.mightContainBlNumber(blNumber)) {
             throw new ResourceNotFoundException("DeliveryItem not found: " + blNumber);
         }
+        // Loaded anyway by the derived delete
+        DeliveryItem item = getDeliveryItemByBlNumber(blNumber);
+        if (item.getBordereau() != null) {
+            statusCounters.itemsChanged(StatusCounters.keyOf(item.getBordereau()), item.getStatus(), null, null, 1);
+        }
         deliveryItemRepository.deleteByBlNumber(blNumber);
+        knownNumbersFilter.removeBlNumber(blNumber);
+        evictRoute(item);
     }
 
     @Override
     public DeliveryItem updateProof(String blNumber, ProofRequest request) {
         DeliveryItem item = getDeliveryItemByBlNumber(blNumber);
+        DeliveryItemStatus previousStatus = item.getStatus();
 
         if (request.getDeliveryNotes() != null) {
             item.setDeliveryNotes(request.getDeliveryNotes());
@@ -130,8 +188,26 @@ public class DeliveryItemServiceImpl implements DeliveryItemService {
         if (item.getStatus() != DeliveryItemStatus.DELIVERED) {
             item.setStatus(DeliveryItemStatus.DELIVERED);
             item.setDeliveredAt(LocalDateTime.now());
+            evictRoute(item);
         }
 
+        countStatusChange(item, previousStatus);
         return deliveryItemRepository.save(item);
     }
+
+    private void countStatusChange(DeliveryItem item, DeliveryItemStatus previousStatus) {
+        if (item.getBordereau() != null && item.getStatus() != previousStatus) {
+            StatusCounters.Key key = StatusCounters.keyOf(item.getBordereau());
+            statusCounters.itemsChanged(key, previousStatus, key, item.getStatus(), 1);
+        }
+    }
+
+    /**
+     * The line left or joined the pending stops of its driver
+     */
+    private void evictRoute(DeliveryItem item) {
+        if (item.getBordereau() != null) {
+            driverRouteCache.evict(item.getBordereau().getCurrentDriver());
+        }
+    }
 }
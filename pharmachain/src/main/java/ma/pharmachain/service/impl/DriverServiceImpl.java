@@ -2,27 +2,47 @@ package ma.pharmachain.service.impl;
 
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import ma.pharmachain.dto.BordereauDetail;
+import ma.pharmachain.dto.ClientSummary;
+import ma.pharmachain.dto.DeliveryItemDetail;
+import ma.pharmachain.dto.DriverDaySheet;
+import ma.pharmachain.dto.DriverRoute;
 import ma.pharmachain.dto.DriverCreateRequest;
+import ma.pharmachain.dto.DriverSummary;
 import ma.pharmachain.dto.DriverUpdateRequest;
+import ma.pharmachain.dto.RouteStop;
+import ma.pharmachain.dto.SlicePage;
+import ma.pharmachain.dto.VersionStamp;
 import ma.pharmachain.exception.ResourceNotFoundException;
 import ma.pharmachain.entity.Bordereau;
 import ma.pharmachain.entity.DeliveryItem;
 import ma.pharmachain.entity.Driver;
 import ma.pharmachain.entity.Manager;
+import ma.pharmachain.enums.DeliveryItemStatus;
 import ma.pharmachain.repository.BordereauRepository;
 import ma.pharmachain.repository.DeliveryItemRepository;
 import ma.pharmachain.repository.DriverRepository;
-import ma.pharmachain.repository.ManagerRepository;
+import ma.pharmachain.repository.TableStatisticsRepository;
+import ma.pharmachain.service.ClientGeoIndex;
+import ma.pharmachain.service.DriverRouteCache;
 import ma.pharmachain.service.DriverService;
+import ma.pharmachain.service.GeoIndex;
 import ma.pharmachain.service.KeycloakAdminService;
+import ma.pharmachain.service.ReferenceCodeCache;
+import ma.pharmachain.service.StopSequencer;
+import org.hibernate.Hibernate;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.domain.Sort;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.time.LocalDate;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -33,10 +53,12 @@ import java.util.Map;
 public class DriverServiceImpl implements DriverService {
 
     private final DriverRepository driverRepository;
-    private final ManagerRepository managerRepository;
+    private final TableStatisticsRepository tableStatisticsRepository;
+    private final ReferenceCodeCache referenceCodeCache;
     private final BordereauRepository bordereauxRepository;
     private final DeliveryItemRepository deliveryItemRepository;
     private final KeycloakAdminService keycloakAdminService;
+    private final DriverRouteCache driverRouteCache;
 
     @Override
     @Transactional(readOnly = true)
@@ -47,12 +69,20 @@ public class DriverServiceImpl implements DriverService {
 
     @Override
     @Transactional(readOnly = true)
-    public Page<Driver> listDrivers(int page, int size) {
-        return driverRepository.findAll(
+    public Page<DriverSummary> listDrivers(int page, int size) {
+        return driverRepository.findSummaries(
                 PageRequest.of(page, size, Sort.by("createdAt").descending())
         );
     }
 
+    @Override
+    @Transactional(readOnly = true)
+    public SlicePage<DriverSummary> listDriversSlice(int page, int size, boolean approximateTotal) {
+        Slice<DriverSummary> slice = driverRepository.findSummarySlice(
+                PageRequest.of(page, size, Sort.by("createdAt").descending()));
+        return SlicePage.of(slice, approximateTotal ? tableStatisticsRepository.estimateUsers("DRIVER") : null);
+    }
+
     @Override
     @Transactional(readOnly = true)
     public Driver getDriverByCode(String code) {
@@ -76,7 +106,7 @@ public class DriverServiceImpl implements DriverService {
         }
 
         // Find assignedManager
-        Manager manager = managerRepository.findByCode(request.getAssignedManagerCode())
+        Manager manager = referenceCodeCache.managerReference(request.getAssignedManagerCode())
                 .orElseThrow(() -> new ResourceNotFoundException("Manager not found: " + request.getAssignedManagerCode()));
 
         try {
@@ -112,10 +142,11 @@ public class DriverServiceImpl implements DriverService {
             driver.setSyncedAt(LocalDateTime.now());
 
             Driver savedDriver = driverRepository.save(driver);
+            referenceCodeCache.evictDriver(savedDriver.getCode());
             log.info("Driver created successfully: {} with Keycloak ID: {}",
                     request.getUsername(), keycloakUserId);
 
-            return savedDriver;
+            return withManager(savedDriver);
 
         } catch (Exception e) {
             log.error("Error creating driver: {}", e.getMessage(), e);
@@ -163,7 +194,7 @@ public class DriverServiceImpl implements DriverService {
                 keycloakAdminService.setUserEnabled(driver.getKeycloakUserId(), request.getIsActive());
             }
             if (request.getAssignedManagerCode() != null) {
-                Manager manager = managerRepository.findByCode(request.getAssignedManagerCode())
+                Manager manager = referenceCodeCache.managerReference(request.getAssignedManagerCode())
                         .orElseThrow(() -> new ResourceNotFoundException("Manager not found: " + request.getAssignedManagerCode()));
                 driver.setAssignedManager(manager);
             }
@@ -176,7 +207,8 @@ public class DriverServiceImpl implements DriverService {
             keycloakAdminService.updateUserAttributes(driver.getKeycloakUserId(), attributes);
 
             driver.setSyncedAt(LocalDateTime.now());
-            return driverRepository.save(driver);
+            referenceCodeCache.evictDriver(code);
+            return withManager(driverRepository.save(driver));
 
         } catch (Exception e) {
             log.error("Error updating driver: {}", e.getMessage(), e);
@@ -214,7 +246,7 @@ public class DriverServiceImpl implements DriverService {
                         keycloakAdminService.setUserEnabled(driver.getKeycloakUserId(), isActive);
                         break;
                     case "assignedManagerCode":
-                        Manager manager = managerRepository.findByCode(value.toString())
+                        Manager manager = referenceCodeCache.managerReference(value.toString())
                                 .orElseThrow(() -> new ResourceNotFoundException("Manager not found: " + value));
                         driver.setAssignedManager(manager);
                         break;
@@ -222,7 +254,8 @@ public class DriverServiceImpl implements DriverService {
             });
 
             driver.setSyncedAt(LocalDateTime.now());
-            return driverRepository.save(driver);
+            referenceCodeCache.evictDriver(code);
+            return withManager(driverRepository.save(driver));
 
         } catch (Exception e) {
             log.error("Error partially updating driver: {}", e.getMessage(), e);
@@ -240,6 +273,7 @@ public class DriverServiceImpl implements DriverService {
 
             // Then delete from local database
             driverRepository.deleteByCode(code);
+            referenceCodeCache.evictDriver(code);
 
             log.info("Driver deleted successfully: {}", driver.getUsername());
         } catch (Exception e) {
@@ -250,19 +284,126 @@ public class DriverServiceImpl implements DriverService {
 
     @Override
     @Transactional(readOnly = true)
-    public List<Bordereau> getDriverBordereaux(String code) {
-        if (!driverRepository.existsByCode(code)) {
-            throw new ResourceNotFoundException("Driver not found: " + code);
+    public List<BordereauDetail> getDriverBordereaux(String code) {
+        // Bordereaux with their drivers and secteur, then all their items with clients: two queries
+        List<Bordereau> bordereaux = bordereauxRepository.findByCurrentDriver_Code(code);
+        if (bordereaux.isEmpty()) {
+            requireDriver(code);
+            return List.of();
+        }
+        return BordereauDetail.listOf(bordereaux, deliveryItemRepository.findByBordereauIn(bordereaux));
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public List<DeliveryItemDetail> getDriverDeliveryItems(String code) {
+        List<DeliveryItem> items = deliveryItemRepository.findByBordereau_CurrentDriver_Code(code);
+        if (items.isEmpty()) {
+            requireDriver(code);
         }
-        return bordereauxRepository.findByCurrentDriver_Code(code);
+        return items.stream().map(DeliveryItemDetail::from).toList();
     }
 
     @Override
     @Transactional(readOnly = true)
-    public List<DeliveryItem> getDriverDeliveryItems(String code) {
+    public DriverDaySheet getDriverDaySheet(String code, LocalDate date) {
+        // Three queries whatever the number of stops: driver row, bordereaux of the day, their items with clients
+        DriverSummary driver = driverRepository.findSummaryByCode(code)
+                .orElseThrow(() -> new ResourceNotFoundException("Driver not found: " + code));
+        List<Bordereau> bordereaux =
+                bordereauxRepository.findByCurrentDriver_CodeAndDeliveryDateOrderByBordereauNumber(code, date);
+        List<BordereauDetail> details = bordereaux.isEmpty()
+                ? List.of()
+                : BordereauDetail.listOf(bordereaux, deliveryItemRepository.findByBordereauIn(bordereaux));
+        return new DriverDaySheet(date, driver, details);
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public String getDriverDaySheetEtag(String code, LocalDate date) {
+        return bordereauxRepository.findDaySheetVersionStamp(code, date)
+                .map(VersionStamp::toEtag)
+                .orElseThrow(() -> new ResourceNotFoundException("Driver not found: " + code));
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public DriverRoute getDriverRoute(String code, LocalDate date) {
+        DriverRoute cached = driverRouteCache.get(code, date);
+        if (cached != null) {
+            return cached;
+        }
+        long generation = driverRouteCache.generation();
+        List<DeliveryItem> items = deliveryItemRepository
+                .findByBordereau_CurrentDriver_CodeAndBordereau_DeliveryDateAndStatus(code, date,
+                        DeliveryItemStatus.PENDING);
+        if (items.isEmpty()) {
+            requireDriver(code);
+        }
+        DriverRoute route = sequenceStops(code, date, items);
+        driverRouteCache.put(route, generation);
+        return route;
+    }
+
+    /**
+     * One stop per client with coordinates, in visiting order; lines of clients without coordinates are set apart
+     */
+    static DriverRoute sequenceStops(String code, LocalDate date, List<DeliveryItem> items) {
+        Map<String, List<DeliveryItemDetail>> itemsByClient = new LinkedHashMap<>();
+        List<ClientSummary> clients = new ArrayList<>();
+        List<double[]> positions = new ArrayList<>();
+        List<DeliveryItemDetail> unlocated = new ArrayList<>();
+        for (DeliveryItem item : items) {
+            DeliveryItemDetail detail = DeliveryItemDetail.from(item);
+            ClientSummary client = detail.getClient();
+            double[] position = client != null ? ClientGeoIndex.parseCoordinates(client.getCoordinates()) : null;
+            if (position == null) {
+                unlocated.add(detail);
+                continue;
+            }
+            itemsByClient.computeIfAbsent(client.getClientCode(), clientCode -> {
+                clients.add(client);
+                positions.add(position);
+                return new ArrayList<>();
+            }).add(detail);
+        }
+
+        double[] lats = new double[clients.size()];
+        double[] lngs = new double[clients.size()];
+        for (int i = 0; i < lats.length; i++) {
+            lats[i] = positions.get(i)[0];
+            lngs[i] = positions.get(i)[1];
+        }
+        int[] order = StopSequencer.sequence(lats, lngs);
+
+        List<RouteStop> stops = new ArrayList<>(order.length);
+        double totalKm = 0;
+        for (int i = 0; i < order.length; i++) {
+            int stop = order[i];
+            int previous = i > 0 ? order[i - 1] : stop;
+            double legKm = GeoIndex.distanceKm(lats[previous], lngs[previous], lats[stop], lngs[stop]);
+            totalKm += legKm;
+            ClientSummary client = clients.get(stop);
+            stops.add(new RouteStop(i + 1, client, legKm, itemsByClient.get(client.getClientCode())));
+        }
+        return new DriverRoute(date, code, totalKm, stops, unlocated);
+    }
+
+    /**
+     * An empty list is only a 404 when the driver itself does not exist
+     */
+    private void requireDriver(String code) {
         if (!driverRepository.existsByCode(code)) {
             throw new ResourceNotFoundException("Driver not found: " + code);
         }
-        return deliveryItemRepository.findByBordereau_CurrentDriver_Code(code);
     }
+
+    /**
+     * Loads a manager set by reference while the session is open, so it renders as an object and not its id
+     */
+    private static Driver withManager(Driver driver) {
+        Hibernate.initialize(driver.getAssignedManager());
+        return driver;
+    }
+
 }
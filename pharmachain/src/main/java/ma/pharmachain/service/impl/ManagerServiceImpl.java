@@ -2,19 +2,31 @@ package ma.pharmachain.service.impl;
 
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import ma.pharmachain.dto.BordereauDetail;
+import ma.pharmachain.dto.ClientSummary;
+import ma.pharmachain.dto.DriverSummary;
 import ma.pharmachain.dto.ManagerCreateRequest;
+import ma.pharmachain.dto.ManagerSummary;
 import ma.pharmachain.dto.ManagerUpdateRequest;
+import ma.pharmachain.dto.SlicePage;
+import ma.pharmachain.dto.StatusStats;
+import ma.pharmachain.dto.VersionStamp;
 import ma.pharmachain.exception.ResourceNotFoundException;
 import ma.pharmachain.entity.*;
 import ma.pharmachain.repository.*;
 import ma.pharmachain.service.ManagerService;
 import ma.pharmachain.service.KeycloakAdminService;
+import ma.pharmachain.service.ReferenceCodeCache;
+import ma.pharmachain.service.StatusCounters;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.domain.Sort;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.util.HashMap;
 import java.util.List;
@@ -27,11 +39,15 @@ import java.util.Map;
 public class ManagerServiceImpl implements ManagerService {
 
     private final ManagerRepository managerRepository;
+    private final TableStatisticsRepository tableStatisticsRepository;
     private final AdminRepository adminRepository;
     private final DriverRepository driverRepository;
     private final ClientRepository clientRepository;
     private final BordereauRepository bordereauxRepository;
+    private final DeliveryItemRepository deliveryItemRepository;
     private final KeycloakAdminService keycloakAdminService;
+    private final ReferenceCodeCache referenceCodeCache;
+    private final StatusCounters statusCounters;
 
     @Override
     @Transactional(readOnly = true)
@@ -42,12 +58,20 @@ public class ManagerServiceImpl implements ManagerService {
 
     @Override
     @Transactional(readOnly = true)
-    public Page<Manager> listManagers(int page, int size) {
-        return managerRepository.findAll(
+    public Page<ManagerSummary> listManagers(int page, int size) {
+        return managerRepository.findSummaries(
                 PageRequest.of(page, size, Sort.by("createdAt").descending())
         );
     }
 
+    @Override
+    @Transactional(readOnly = true)
+    public SlicePage<ManagerSummary> listManagersSlice(int page, int size, boolean approximateTotal) {
+        Slice<ManagerSummary> slice = managerRepository.findSummarySlice(
+                PageRequest.of(page, size, Sort.by("createdAt").descending()));
+        return SlicePage.of(slice, approximateTotal ? tableStatisticsRepository.estimateUsers("MANAGER") : null);
+    }
+
     @Override
     @Transactional(readOnly = true)
     public Manager getManagerByCode(String code) {
@@ -109,6 +133,7 @@ public class ManagerServiceImpl implements ManagerService {
             manager.setSyncedAt(LocalDateTime.now());
 
             Manager savedManager = managerRepository.save(manager);
+            referenceCodeCache.evictManager(savedManager.getCode());
             log.info("Manager created successfully: {} with Keycloak ID: {}",
                     request.getUsername(), keycloakUserId);
 
@@ -181,6 +206,7 @@ public class ManagerServiceImpl implements ManagerService {
             keycloakAdminService.updateUserAttributes(manager.getKeycloakUserId(), attributes);
 
             manager.setSyncedAt(LocalDateTime.now());
+            referenceCodeCache.evictManager(code);
             return managerRepository.save(manager);
 
         } catch (Exception e) {
@@ -230,6 +256,7 @@ public class ManagerServiceImpl implements ManagerService {
             });
 
             manager.setSyncedAt(LocalDateTime.now());
+            referenceCodeCache.evictManager(code);
             return managerRepository.save(manager);
 
         } catch (Exception e) {
@@ -248,6 +275,7 @@ public class ManagerServiceImpl implements ManagerService {
 
             // Then delete from local database
             managerRepository.deleteByCode(code);
+            referenceCodeCache.evictManager(code);
 
             log.info("Manager deleted successfully: {}", manager.getUsername());
         } catch (Exception e) {
@@ -258,28 +286,72 @@ public class ManagerServiceImpl implements ManagerService {
 
     @Override
     @Transactional(readOnly = true)
-    public List<Driver> getManagerDrivers(String code) {
-        if (!managerRepository.existsByCode(code)) {
-            throw new ResourceNotFoundException("Manager not found: " + code);
+    public List<DriverSummary> getManagerDrivers(String code) {
+        List<Driver> drivers = driverRepository.findByAssignedManager_Code(code);
+        if (drivers.isEmpty()) {
+            requireManager(code);
         }
-        return driverRepository.findByAssignedManager_Code(code);
+        return drivers.stream().map(DriverSummary::from).toList();
     }
 
     @Override
     @Transactional(readOnly = true)
-    public List<Client> getManagerClients(String code) {
-        if (!managerRepository.existsByCode(code)) {
-            throw new ResourceNotFoundException("Manager not found: " + code);
+    public List<ClientSummary> getManagerClients(String code) {
+        List<Client> clients = clientRepository.findBySecteur_Code(code);
+        if (clients.isEmpty()) {
+            requireManager(code);
         }
-        return clientRepository.findBySecteur_Code(code);
+        return clients.stream().map(ClientSummary::from).toList();
     }
 
     @Override
     @Transactional(readOnly = true)
-    public List<Bordereau> getManagerBordereaux(String code) {
+    public List<BordereauDetail> getManagerBordereaux(String code) {
+        // Same fetch plan as the driver's list: bordereaux with assignments, then their items with clients
+        List<Bordereau> bordereaux = bordereauxRepository.findBySecteur_Code(code);
+        if (bordereaux.isEmpty()) {
+            requireManager(code);
+            return List.of();
+        }
+        return BordereauDetail.listOf(bordereaux, deliveryItemRepository.findByBordereauIn(bordereaux));
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public String getManagerBordereauxEtag(String code) {
+        VersionStamp stamp = bordereauxRepository.findVersionStampBySecteurCode(code);
+        if (stamp.getRows() == 0) {
+            requireManager(code);
+        }
+        return stamp.toEtag();
+    }
+
+    @Override
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public StatusStats getManagerStats(String code, LocalDate date, String driverCode) {
+        // Cached code lookups and one counter cell: nothing is counted here
+        Long secteurId = referenceCodeCache.managerIds(List.of(code)).get(code);
+        if (secteurId == null) {
+            throw new ResourceNotFoundException("Manager not found: " + code);
+        }
+        long driverId = StatusCounters.ALL;
+        if (driverCode != null) {
+            Long id = referenceCodeCache.driverIds(List.of(driverCode)).get(driverCode);
+            if (id == null) {
+                throw new ResourceNotFoundException("Driver not found: " + driverCode);
+            }
+            driverId = id;
+        }
+        return StatusStats.of(date, code, driverCode,
+                statusCounters.counts(new StatusCounters.Key(secteurId, driverId, date)));
+    }
+
+    /**
+     * An empty list is only a 404 when the manager itself does not exist
+     */
+    private void requireManager(String code) {
         if (!managerRepository.existsByCode(code)) {
             throw new ResourceNotFoundException("Manager not found: " + code);
         }
-        return bordereauxRepository.findBySecteur_Code(code);
     }
 }
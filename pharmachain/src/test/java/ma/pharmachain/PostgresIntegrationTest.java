@@ -0,0 +1,28 @@
+package ma.pharmachain;
+
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+/**
+ * Base of the tests that need the real database: native upserts, locking, plans and SQL statement counts.
+ * One PostgreSQL container is shared by every subclass so the cached Spring contexts keep a live URL;
+ * the tests are skipped when no Docker daemon is available.
+ */
+@Testcontainers(disabledWithoutDocker = true)
+public abstract class PostgresIntegrationTest {
+
+    static final PostgreSQLContainer<?> POSTGRES = new PostgreSQLContainer<>("postgres:16-alpine");
+
+    @DynamicPropertySource
+    static void datasource(DynamicPropertyRegistry registry) {
+        POSTGRES.start();
+        registry.add("spring.datasource.url", () -> POSTGRES.getJdbcUrl() + "&reWriteBatchedInserts=true");
+        registry.add("spring.datasource.username", POSTGRES::getUsername);
+        registry.add("spring.datasource.password", POSTGRES::getPassword);
+        // Statement counts are read from the Hibernate statistics, which no background flush should add to
+        registry.add("spring.jpa.properties.hibernate.generate_statistics", () -> "true");
+        registry.add("pharmachain.stats.flush-interval", () -> "PT1H");
+    }
+}
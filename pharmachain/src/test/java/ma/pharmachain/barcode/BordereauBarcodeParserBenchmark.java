@@ -0,0 +1,53 @@
+package ma.pharmachain.barcode;
+
+import ma.pharmachain.dto.BordereauScanRequest;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parse cost per barcode. Run with
+ * <pre>
+ * mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=ma.pharmachain.barcode.BordereauBarcodeParserBenchmark
+ * </pre>
+ * The gc profiler reports gc.alloc.rate.norm, i.e. bytes allocated per parsed barcode.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class BordereauBarcodeParserBenchmark {
+
+    @Param({"1", "10", "40"})
+    public int lines;
+
+    private String barcode;
+
+    @Setup
+    public void setUp() {
+        StringBuilder builder = new StringBuilder("500001|220824|100001|200001");
+        for (int i = 0; i < lines; i++) {
+            builder.append(';').append(300000 + i).append('|').append(400000 + i)
+                    .append("|2|1|Pharmacie ").append(i).append("|12 Rue Fes");
+        }
+        barcode = builder.toString();
+    }
+
+    @Benchmark
+    public BordereauScanRequest parse() {
+        return BordereauBarcodeParser.parse(barcode);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(BordereauBarcodeParserBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build()).run();
+    }
+}
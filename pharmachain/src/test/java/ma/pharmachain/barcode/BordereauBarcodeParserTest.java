@@ -0,0 +1,58 @@
+package ma.pharmachain.barcode;
+
+import ma.pharmachain.dto.BordereauScanRequest;
+import ma.pharmachain.dto.DeliveryItemRequest;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class BordereauBarcodeParserTest {
+
+    @Test
+    void parsesHeaderAndLines() {
+        BordereauScanRequest request = BordereauBarcodeParser.parse(
+                "500001|220824|100001|200001;300001|400001|2|1|Pharmacie Atlas|12 Rue Fes;300002|400002|1|0;");
+
+        assertThat(request.getBordereauNumber()).isEqualTo("500001");
+        assertThat(request.getDeliveryDate()).isEqualTo(LocalDate.of(2024, 8, 22));
+        assertThat(request.getDriverCode()).isEqualTo("100001");
+        assertThat(request.getManagerCode()).isEqualTo("200001");
+        assertThat(request.getDeliveryItems()).hasSize(2);
+
+        DeliveryItemRequest first = request.getDeliveryItems().get(0);
+        assertThat(first.getBlNumber()).isEqualTo("300001");
+        assertThat(first.getClientCode()).isEqualTo("400001");
+        assertThat(first.getNombreColis()).isEqualTo(2);
+        assertThat(first.getNombreSachets()).isEqualTo(1);
+        assertThat(first.getClientName()).isEqualTo("Pharmacie Atlas");
+        assertThat(first.getClientAddress()).isEqualTo("12 Rue Fes");
+
+        DeliveryItemRequest second = request.getDeliveryItems().get(1);
+        assertThat(second.getClientName()).isNull();
+        assertThat(second.getClientAddress()).isNull();
+    }
+
+    @Test
+    void driverAndManagerAreOptional() {
+        BordereauScanRequest request = BordereauBarcodeParser.parse("500001|220824||");
+
+        assertThat(request.getDriverCode()).isNull();
+        assertThat(request.getManagerCode()).isNull();
+        assertThat(request.getDeliveryItems()).isEmpty();
+        assertThat(BordereauBarcodeParser.parse("500001|220824").getDriverCode()).isNull();
+    }
+
+    @Test
+    void rejectsMalformedBarcodesWithPosition() {
+        assertThatThrownBy(() -> BordereauBarcodeParser.parse("500001|320824"))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("invalid delivery date");
+        assertThatThrownBy(() -> BordereauBarcodeParser.parse("500001|220824;300001|40A001|1|0"))
+                .hasMessage("Malformed barcode: non-digit in client code at position 23");
+        assertThatThrownBy(() -> BordereauBarcodeParser.parse("500001|220824;300001|400001|1"))
+                .hasMessageContaining("missing nombre sachets");
+    }
+}
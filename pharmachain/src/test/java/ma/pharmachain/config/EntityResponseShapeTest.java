@@ -0,0 +1,256 @@
+package ma.pharmachain.config;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.persistence.EntityManager;
+import ma.pharmachain.PostgresIntegrationTest;
+import ma.pharmachain.dto.BordereauScanRequest;
+import ma.pharmachain.dto.DeliveryItemRequest;
+import ma.pharmachain.entity.Admin;
+import ma.pharmachain.entity.Bordereau;
+import ma.pharmachain.entity.BordereauTransfer;
+import ma.pharmachain.entity.Client;
+import ma.pharmachain.entity.Driver;
+import ma.pharmachain.entity.Manager;
+import ma.pharmachain.enums.TransferStatus;
+import ma.pharmachain.service.AdminService;
+import ma.pharmachain.service.BordereauScanService;
+import ma.pharmachain.service.BordereauService;
+import ma.pharmachain.service.BordereauTransferService;
+import ma.pharmachain.service.ClientService;
+import ma.pharmachain.service.DeliveryItemService;
+import ma.pharmachain.service.DriverService;
+import ma.pharmachain.service.ManagerService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Shapes of the entity endpoints' responses: what each service call behind them returns, serialized after its
+ * transaction as the controller does. Fields are listed without values; a nested {...} is an association rendered
+ * as an object, {id} or {bordereauNumber} one rendered as its id (see JacksonConfig). The drivers and the client
+ * belong to another manager than the bordereau's secteur, so no association is rendered only because the same row
+ * was loaded for another part of the response.
+ */
+@SpringBootTest(properties = "pharmachain.scan.archive.enabled=false")
+class EntityResponseShapeTest extends PostgresIntegrationTest {
+
+    private static final String USER = "id,keycloakUserId,username,code,isActive,createdAt,syncedAt";
+    private static final String ADMIN = "{" + USER + "}";
+    private static final String MANAGER = "{" + USER + ",secteurName,phone,address,assignedAdmin:{id}}";
+    private static final String DRIVER = "{" + USER + ",licenseNumber,phone,assignedManager:" + MANAGER + "}";
+    private static final String CLIENT = "{clientCode,name,address,phone,coordinates,secteur:" + MANAGER
+            + ",autoCreated,version}";
+    private static final String BORDEREAU_FIELDS = "status,deliveryItems,scannedAt,completedAt,autoCreated,"
+            + "scanFingerprint,version}";
+    private static final String ITEM_FIELDS = "blNumber,client:" + CLIENT + ",nombreColis,nombreSachets,status,"
+            + "deliveredAt,deliveryNotes,recipientSignature,scanFingerprint,version}";
+    // An item's bordereau: secteur fetched, drivers left as ids
+    private static final String ITEM = "{id,bordereau:{bordereauNumber,deliveryDate,currentDriver:{id},secteur:"
+            + MANAGER + ",originalDriver:{id}," + BORDEREAU_FIELDS + "," + ITEM_FIELDS;
+
+    private static Long adminId;
+    private static Long transferId;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+    @Autowired
+    private EntityManager entityManager;
+    @Autowired
+    private AdminService adminService;
+    @Autowired
+    private ManagerService managerService;
+    @Autowired
+    private DriverService driverService;
+    @Autowired
+    private ClientService clientService;
+    @Autowired
+    private BordereauService bordereauService;
+    @Autowired
+    private BordereauScanService bordereauScanService;
+    @Autowired
+    private DeliveryItemService deliveryItemService;
+    @Autowired
+    private BordereauTransferService transferService;
+
+    /**
+     * Admin 306601 over managers 266001 (the bordereau's secteur) and 266002 (the drivers' and the client's)
+     */
+    @BeforeEach
+    void seed() {
+        if (adminId != null) {
+            return;
+        }
+        transactionTemplate.executeWithoutResult(status -> {
+            Admin admin = new Admin();
+            admin.setKeycloakUserId("shape-admin");
+            admin.setCode("306601");
+            entityManager.persist(admin);
+            Manager secteur = manager("266001", admin);
+            Manager driversManager = manager("266002", admin);
+            for (String code : List.of("166001", "166002")) {
+                Driver driver = new Driver();
+                driver.setKeycloakUserId("shape-driver-" + code);
+                driver.setCode(code);
+                driver.setAssignedManager(driversManager);
+                entityManager.persist(driver);
+            }
+            Client client = new Client();
+            client.setClientCode("466001");
+            client.setName("Pharmacie Atlas");
+            client.setSecteur(driversManager);
+            entityManager.persist(client);
+            adminId = admin.getId();
+        });
+        bordereauScanService.scanBordereauAck(request());
+        transferId = transactionTemplate.execute(status -> {
+            BordereauTransfer transfer = new BordereauTransfer();
+            transfer.setBordereau(entityManager.getReference(Bordereau.class, "566001"));
+            transfer.setFromDriver(driver("166001"));
+            transfer.setToDriver(driver("166002"));
+            transfer.setTransferredAt(LocalDateTime.of(2024, 8, 22, 10, 0));
+            transfer.setStatus(TransferStatus.PENDING);
+            entityManager.persist(transfer);
+            return transfer.getId();
+        });
+    }
+
+    @Test
+    void admin() {
+        assertThat(shapeOf(adminService.getAdminById(adminId))).isEqualTo(ADMIN);
+    }
+
+    @Test
+    void adminProfile() {
+        assertThat(shapeOf(adminService.getAdminByKeycloakUserId("shape-admin"))).isEqualTo(ADMIN);
+    }
+
+    @Test
+    void manager() {
+        assertThat(shapeOf(managerService.getManagerByCode("266001")))
+                .isEqualTo("{" + USER + ",secteurName,phone,address,assignedAdmin:" + ADMIN + "}");
+    }
+
+    @Test
+    void managerProfile() {
+        assertThat(shapeOf(managerService.getManagerByKeycloakUserId("shape-manager-266001")))
+                .isEqualTo("{" + USER + ",secteurName,phone,address,assignedAdmin:" + ADMIN + "}");
+    }
+
+    @Test
+    void driver() {
+        assertThat(shapeOf(driverService.getDriverByCode("166001"))).isEqualTo(DRIVER);
+    }
+
+    @Test
+    void driverProfile() {
+        assertThat(shapeOf(driverService.getDriverByKeycloakUserId("shape-driver-166001"))).isEqualTo(DRIVER);
+    }
+
+    @Test
+    void client() {
+        assertThat(shapeOf(clientService.getClientByCode("466001"))).isEqualTo(CLIENT);
+    }
+
+    @Test
+    void clientDeliveryItems() {
+        assertThat(shapeOf(clientService.getClientDeliveryItems("466001"))).isEqualTo("[" + ITEM + "]");
+    }
+
+    @Test
+    void bordereau() {
+        assertThat(shapeOf(bordereauService.getBordereauByNumber("566001"))).isEqualTo(
+                "{bordereauNumber,deliveryDate,currentDriver:" + DRIVER + ",secteur:" + MANAGER + ",originalDriver:"
+                        + DRIVER + "," + BORDEREAU_FIELDS);
+    }
+
+    @Test
+    void bordereauDeliveryItems() {
+        // The bordereau is the one asked for: left as its id
+        assertThat(shapeOf(bordereauService.getDeliveryItems("566001")))
+                .isEqualTo("[{id,bordereau:{bordereauNumber}," + ITEM_FIELDS + "]");
+    }
+
+    @Test
+    void deliveryItem() {
+        assertThat(shapeOf(deliveryItemService.getDeliveryItemByBlNumber("366001"))).isEqualTo(ITEM);
+    }
+
+    @Test
+    void transfer() {
+        String driver = "{" + USER + ",licenseNumber,phone,assignedManager:{id}}";
+        assertThat(shapeOf(transferService.getTransferById(transferId))).isEqualTo(
+                "{id,bordereau:{bordereauNumber,deliveryDate,currentDriver:" + driver + ",secteur:{id},originalDriver:"
+                        + driver + "," + BORDEREAU_FIELDS + ",fromDriver:" + driver + ",toDriver:" + driver
+                        + ",transferredAt,transferBarcode,reason,status,version}");
+    }
+
+    private String shapeOf(Object response) {
+        return shape(objectMapper.valueToTree(response));
+    }
+
+    /**
+     * Field names in order, objects nested, an array by its first element
+     */
+    private static String shape(JsonNode node) {
+        if (node.isArray()) {
+            return node.isEmpty() ? "[]" : "[" + shape(node.get(0)) + "]";
+        }
+        StringBuilder out = new StringBuilder("{");
+        Iterator<Map.Entry<String, JsonNode>> fields = node.fields();
+        while (fields.hasNext()) {
+            Map.Entry<String, JsonNode> field = fields.next();
+            out.append(field.getKey());
+            if (field.getValue().isContainerNode()) {
+                out.append(':').append(shape(field.getValue()));
+            }
+            if (fields.hasNext()) {
+                out.append(',');
+            }
+        }
+        return out.append('}').toString();
+    }
+
+    private Manager manager(String code, Admin admin) {
+        Manager manager = new Manager();
+        manager.setKeycloakUserId("shape-manager-" + code);
+        manager.setCode(code);
+        manager.setAssignedAdmin(admin);
+        entityManager.persist(manager);
+        return manager;
+    }
+
+    private Driver driver(String code) {
+        return entityManager.createQuery("from Driver where code = :code", Driver.class)
+                .setParameter("code", code)
+                .getSingleResult();
+    }
+
+    private static BordereauScanRequest request() {
+        DeliveryItemRequest item = new DeliveryItemRequest();
+        item.setBlNumber("366001");
+        item.setClientCode("466001");
+        item.setClientName("Pharmacie Atlas");
+        item.setNombreColis(2);
+        item.setNombreSachets(1);
+        BordereauScanRequest request = new BordereauScanRequest();
+        request.setBordereauNumber("566001");
+        request.setDeliveryDate(LocalDate.of(2024, 8, 22));
+        request.setDriverCode("166001");
+        request.setManagerCode("266001");
+        request.setDeliveryItems(List.of(item));
+        return request;
+    }
+}
@@ -0,0 +1,178 @@
+package ma.pharmachain.config;
+
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.http.HttpServletResponse;
+import ma.pharmachain.entity.IdempotencyRecord;
+import ma.pharmachain.repository.IdempotencyRecordRepository;
+import ma.pharmachain.service.IdempotencyService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class IdempotencyFilterTest {
+
+    // Stands in for the idempotency_key table, with the claim as atomic as the INSERT ... ON CONFLICT
+    private final Map<String, IdempotencyRecord> table = new ConcurrentHashMap<>();
+    private static final String BODY = "{\"bordereauNumber\":\"500001\"}";
+
+    private final AtomicInteger chainCalls = new AtomicInteger();
+    // Bodies the controllers read behind the filter
+    private final List<String> bodies = new CopyOnWriteArrayList<>();
+    private IdempotencyFilter filter;
+
+    @BeforeEach
+    void setUp() {
+        IdempotencyRecordRepository repository = mock(IdempotencyRecordRepository.class);
+        when(repository.claim(anyString(), anyString(), any(), any())).thenAnswer(invocation -> {
+            String keyHash = invocation.getArgument(0);
+            LocalDateTime now = invocation.getArgument(3);
+            IdempotencyRecord claim = new IdempotencyRecord();
+            claim.setKeyHash(keyHash);
+            claim.setRequestHash(invocation.getArgument(1));
+            claim.setStatusCode(IdempotencyRecord.IN_PROGRESS);
+            claim.setExpiresAt(invocation.getArgument(2));
+            IdempotencyRecord current = table.compute(keyHash,
+                    (key, existing) -> existing == null || existing.getExpiresAt().isBefore(now) ? claim : existing);
+            return current == claim;
+        });
+        when(repository.findById(anyString())).thenAnswer(invocation ->
+                Optional.ofNullable(table.get(invocation.<String>getArgument(0))));
+        when(repository.save(any())).thenAnswer(invocation -> {
+            IdempotencyRecord record = invocation.getArgument(0);
+            table.put(record.getKeyHash(), record);
+            return record;
+        });
+        when(repository.deleteClaim(anyString())).thenAnswer(invocation -> table.computeIfPresent(
+                invocation.getArgument(0),
+                (key, existing) -> existing.getStatusCode() == IdempotencyRecord.IN_PROGRESS ? null : existing)
+                == null ? 1 : 0);
+
+        filter = new IdempotencyFilter(new IdempotencyService(repository, new IdempotencyConfig()),
+                JsonMapper.builder().findAndAddModules().build());
+    }
+
+    @Test
+    void retryAfterCompletionReplaysTheStoredResponse() throws Exception {
+        FilterChain chain = (request, response) -> {
+            chainCalls.incrementAndGet();
+            bodies.add(new String(request.getInputStream().readAllBytes(), StandardCharsets.UTF_8));
+            ((HttpServletResponse) response).setStatus(201);
+            response.setContentType("application/json");
+            response.getWriter().write("{\"bordereauNumber\":\"500001\"}");
+        };
+
+        MockHttpServletResponse first = scan(chain);
+        MockHttpServletResponse retry = scan(chain);
+
+        assertThat(chainCalls).hasValue(1);
+        assertThat(bodies).containsExactly(BODY);
+        assertThat(first.getStatus()).isEqualTo(201);
+        assertThat(first.getHeader(IdempotencyFilter.REPLAYED_HEADER)).isNull();
+        assertThat(retry.getStatus()).isEqualTo(201);
+        assertThat(retry.getHeader(IdempotencyFilter.REPLAYED_HEADER)).isEqualTo("true");
+        assertThat(retry.getContentAsString()).isEqualTo(first.getContentAsString());
+    }
+
+    @Test
+    void retryWhileTheFirstAttemptRunsIsRejectedAndTheChainRunsOnce() throws Exception {
+        CountDownLatch entered = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        FilterChain chain = (request, response) -> {
+            chainCalls.incrementAndGet();
+            entered.countDown();
+            try {
+                release.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            ((HttpServletResponse) response).setStatus(201);
+        };
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<MockHttpServletResponse> first = executor.submit(() -> scan(chain));
+            assertThat(entered.await(5, TimeUnit.SECONDS)).isTrue();
+
+            MockHttpServletResponse concurrent = scan(chain);
+            release.countDown();
+
+            assertThat(concurrent.getStatus()).isEqualTo(409);
+            assertThat(first.get(5, TimeUnit.SECONDS).getStatus()).isEqualTo(201);
+            assertThat(chainCalls).hasValue(1);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void failedAttemptFreesTheKeyForTheRetry() throws Exception {
+        FilterChain failing = (request, response) -> {
+            chainCalls.incrementAndGet();
+            ((HttpServletResponse) response).setStatus(503);
+        };
+        FilterChain succeeding = (request, response) -> {
+            chainCalls.incrementAndGet();
+            ((HttpServletResponse) response).setStatus(201);
+        };
+
+        assertThat(scan(failing).getStatus()).isEqualTo(503);
+        MockHttpServletResponse retry = scan(succeeding);
+
+        assertThat(retry.getStatus()).isEqualTo(201);
+        assertThat(retry.getHeader(IdempotencyFilter.REPLAYED_HEADER)).isNull();
+        assertThat(chainCalls).hasValue(2);
+    }
+
+    @Test
+    void keyReusedWithAnotherBodyIsRejectedWhileTheOriginalStillReplays() throws Exception {
+        FilterChain chain = (request, response) -> {
+            chainCalls.incrementAndGet();
+            ((HttpServletResponse) response).setStatus(201);
+        };
+
+        assertThat(scan(chain).getStatus()).isEqualTo(201);
+        MockHttpServletResponse reused = scan(chain, "{\"bordereauNumber\":\"500002\"}");
+        MockHttpServletResponse retry = scan(chain);
+
+        assertThat(reused.getStatus()).isEqualTo(422);
+        assertThat(reused.getContentAsString()).contains("different request body");
+        assertThat(retry.getStatus()).isEqualTo(201);
+        assertThat(retry.getHeader(IdempotencyFilter.REPLAYED_HEADER)).isEqualTo("true");
+        assertThat(chainCalls).hasValue(1);
+    }
+
+    private MockHttpServletResponse scan(FilterChain chain) throws Exception {
+        return scan(chain, BODY);
+    }
+
+    private MockHttpServletResponse scan(FilterChain chain, String body) throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", "/api/bordereaux/scan");
+        request.addHeader(IdempotencyFilter.IDEMPOTENCY_KEY_HEADER, "6f1c2a");
+        request.setContent(body.getBytes(StandardCharsets.UTF_8));
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        filter.doFilter(request, response, chain);
+        return response;
+    }
+}
@@ -0,0 +1,99 @@
+package ma.pharmachain.journal;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ScanArchiveTest {
+
+    private static final Instant DAY = Instant.parse("2024-08-22T00:00:00Z");
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void readsTimeRangeAcrossDaysInAppendOrder() {
+        try (ScanArchive archive = new ScanArchive(directory, 1024, ZoneOffset.UTC)) {
+            for (int i = 0; i < 48; i++) {
+                archive.append(DAY.plusSeconds(3600L * i), payload(i));
+            }
+        }
+
+        ScanArchive reopened = new ScanArchive(directory, 1024, ZoneOffset.UTC);
+        List<String> read = read(reopened, DAY.plusSeconds(3600L * 20), DAY.plusSeconds(3600L * 30));
+
+        assertThat(read).hasSize(10).first().isEqualTo("{\"scan\":20}");
+        assertThat(read).last().isEqualTo("{\"scan\":29}");
+        assertThat(reopened.count(DAY.plusSeconds(3600L * 20), DAY.plusSeconds(3600L * 30)))
+                .isGreaterThanOrEqualTo(10);
+        assertThat(directory.resolve("2024-08-22.idx")).exists();
+        assertThat(directory.resolve("2024-08-23.seg")).exists();
+    }
+
+    @Test
+    void blocksAreCompressed() throws IOException {
+        try (ScanArchive archive = new ScanArchive(directory, 64 * 1024, ZoneOffset.UTC)) {
+            for (int i = 0; i < 1000; i++) {
+                archive.append(DAY.plusMillis(i), ("{\"bordereauNumber\":\"" + (500000 + i)
+                        + "\",\"deliveryDate\":\"2024-08-22\",\"driverCode\":\"100001\",\"managerCode\":\"200001\"}")
+                        .getBytes(StandardCharsets.UTF_8));
+            }
+        }
+        assertThat(Files.size(directory.resolve("2024-08-22.seg"))).isLessThan(1000 * 100 / 4);
+    }
+
+    @Test
+    void dropsBlockWithoutIndexEntryOnReopen() throws IOException {
+        try (ScanArchive archive = new ScanArchive(directory, 1024, ZoneOffset.UTC)) {
+            archive.append(DAY, payload(1));
+            archive.append(DAY.plusSeconds(1), payload(2));
+        }
+        // Simulated crash between a block write and its index entry
+        Files.write(directory.resolve("2024-08-22.seg"), new byte[]{1, 2, 3}, StandardOpenOption.APPEND);
+        Files.write(directory.resolve("2024-08-22.idx"), new byte[]{9, 9}, StandardOpenOption.APPEND);
+
+        ScanArchive reopened = new ScanArchive(directory, 1024, ZoneOffset.UTC);
+        reopened.append(DAY.plusSeconds(2), payload(3));
+        reopened.flush();
+
+        assertThat(read(reopened, DAY, DAY.plusSeconds(60)))
+                .containsExactly("{\"scan\":1}", "{\"scan\":2}", "{\"scan\":3}");
+    }
+
+    @Test
+    void recordsOfTheUnflushedBlockSurviveACrash() throws IOException {
+        ScanArchive crashed = new ScanArchive(directory, 64 * 1024, ZoneOffset.UTC);
+        crashed.append(DAY, payload(1));
+        crashed.append(DAY.plusSeconds(1), payload(2));
+        // Torn append of a third record
+        Files.write(directory.resolve("pending.log"), new byte[]{7, 7, 7, 7, 0, 0}, StandardOpenOption.APPEND);
+        assertThat(read(new ScanArchive(directory, 64 * 1024, ZoneOffset.UTC), DAY, DAY.plusSeconds(60)))
+                .containsExactly("{\"scan\":1}", "{\"scan\":2}");
+
+        // Recovered once: the pending file was emptied
+        ScanArchive reopened = new ScanArchive(directory, 64 * 1024, ZoneOffset.UTC);
+        assertThat(read(reopened, DAY, DAY.plusSeconds(60))).hasSize(2);
+        assertThat(Files.size(directory.resolve("pending.log"))).isZero();
+    }
+
+    private static List<String> read(ScanArchive archive, Instant from, Instant to) {
+        List<String> read = new ArrayList<>();
+        archive.read(from, to, entry -> read.add(new String(entry.payload(), StandardCharsets.UTF_8)));
+        return read;
+    }
+
+    private static byte[] payload(int i) {
+        return ("{\"scan\":" + i + "}").getBytes(StandardCharsets.UTF_8);
+    }
+}
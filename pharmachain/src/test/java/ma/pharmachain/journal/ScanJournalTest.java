@@ -0,0 +1,45 @@
+package ma.pharmachain.journal;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ScanJournalTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void recoversUnappliedRecordsAfterRestart() {
+        ScanJournal journal = new ScanJournal(directory, 256, false);
+        for (int i = 1; i <= 10; i++) {
+            assertThat(journal.append(payload(i))).isEqualTo(i);
+        }
+        List<ScanJournal.Record> batch = journal.read(4);
+        journal.commit(batch.get(batch.size() - 1));
+        journal.close();
+
+        // Simulated crash: reopen from the files only
+        ScanJournal reopened = new ScanJournal(directory, 256, false);
+        assertThat(reopened.getAppliedTicket()).isEqualTo(4);
+        assertThat(reopened.getLastTicket()).isEqualTo(10);
+        assertThat(reopened.lag()).isEqualTo(6);
+
+        List<ScanJournal.Record> pending = reopened.read(100);
+        assertThat(pending).extracting(ScanJournal.Record::ticket).containsExactly(5L, 6L, 7L, 8L, 9L, 10L);
+        assertThat(new String(pending.get(0).payload(), StandardCharsets.UTF_8)).isEqualTo("{\"scan\":5}");
+
+        reopened.commit(pending.get(pending.size() - 1));
+        assertThat(reopened.lag()).isZero();
+        assertThat(reopened.append(payload(11))).isEqualTo(11);
+    }
+
+    private static byte[] payload(int i) {
+        return ("{\"scan\":" + i + "}").getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,66 @@
+package ma.pharmachain.journal;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TicketFailureLogTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void failuresAreReadBackAfterRestartAndOnlyTheLatestAreKept() {
+        TicketFailureLog log = new TicketFailureLog(directory, 2, 0);
+        assertThat(log.getUnknownThrough()).isZero();
+        log.append(3, payload(3));
+        log.append(5, payload(5));
+        log.append(8, payload(8));
+        log.close();
+
+        TicketFailureLog reopened = new TicketFailureLog(directory, 2, 8);
+        assertThat(reopened.get(3)).isNull();
+        assertThat(reopened.get(5)).isEqualTo(payload(5));
+        assertThat(reopened.get(8)).isEqualTo(payload(8));
+        assertThat(reopened.get(7)).isNull();
+        // Ticket 3 was dropped: the outcome of 1 to 3 is no longer known
+        assertThat(reopened.getUnknownThrough()).isEqualTo(3);
+        reopened.close();
+    }
+
+    @Test
+    void tornRecordAtTheEndIsCutOff() throws IOException {
+        TicketFailureLog log = new TicketFailureLog(directory, 10, 0);
+        log.append(4, payload(4));
+        log.close();
+        Files.write(directory.resolve("failures.log"), new byte[]{0, 1, 2, 3, 0, 0}, StandardOpenOption.APPEND);
+
+        TicketFailureLog reopened = new TicketFailureLog(directory, 10, 4);
+        reopened.append(6, payload(6));
+        reopened.close();
+
+        TicketFailureLog again = new TicketFailureLog(directory, 10, 6);
+        assertThat(again.get(4)).isEqualTo(payload(4));
+        assertThat(again.get(6)).isEqualTo(payload(6));
+        again.close();
+    }
+
+    @Test
+    void journalDrainedBeforeTheLogExistedHasUnknownOutcomes() {
+        TicketFailureLog log = new TicketFailureLog(directory, 10, 42);
+
+        assertThat(log.getUnknownThrough()).isEqualTo(42);
+        log.close();
+    }
+
+    private static byte[] payload(long ticket) {
+        return ("{\"error\":\"scan " + ticket + " failed\"}").getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,98 @@
+package ma.pharmachain.repository;
+
+import ma.pharmachain.PostgresIntegrationTest;
+import ma.pharmachain.dto.BordereauScanRequest;
+import ma.pharmachain.dto.DeliveryItemRequest;
+import ma.pharmachain.dto.VersionStamp;
+import ma.pharmachain.service.BordereauScanService;
+import ma.pharmachain.service.BordereauService;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.time.LocalDate;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest(properties = "pharmachain.scan.archive.enabled=false")
+class BordereauEtagDigestTest extends PostgresIntegrationTest {
+
+    @Autowired
+    private BordereauService bordereauService;
+    @Autowired
+    private BordereauScanService bordereauScanService;
+    @Autowired
+    private BordereauRepository bordereauRepository;
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Test
+    void digestChangesWithTheDriversTheirManagerAndSecteurTheResponseRenders() {
+        bordereauScanService.scanBordereauAck(request());
+        String scanned = digest();
+
+        jdbcTemplate.update("UPDATE users SET phone = '0600000000' WHERE code = '192001'");
+        String driverChanged = digest();
+        jdbcTemplate.update("UPDATE users SET address = 'Casablanca' WHERE code = '292001'");
+        String secteurChanged = digest();
+        jdbcTemplate.update("INSERT INTO users (user_type, keycloak_user_id, code, is_active) "
+                + "VALUES ('MANAGER', 'etag-manager-292002', '292002', true)");
+        jdbcTemplate.update("UPDATE users SET assigned_manager_id = (SELECT id FROM users WHERE code = '292002') "
+                + "WHERE code = '192001'");
+        String managerAssigned = digest();
+        jdbcTemplate.update("UPDATE users SET phone = '0522111111' WHERE code = '292002'");
+        String managerChanged = digest();
+
+        assertThat(List.of(scanned, driverChanged, secteurChanged, managerAssigned, managerChanged))
+                .doesNotHaveDuplicates();
+        assertThat(digest()).isEqualTo(managerChanged);
+        assertThat(bordereauRepository.findEtagDigestByBordereauNumber("592999")).isEmpty();
+    }
+
+    @Test
+    void daySheetStampChangesWithTheSheetAndIsEmptyForAnUnknownDriver() {
+        bordereauScanService.scanBordereauAck(request());
+        LocalDate date = LocalDate.of(2024, 8, 22);
+        VersionStamp scanned = daySheetStamp(date);
+
+        // Written through JPA, a client change bumps its version
+        jdbcTemplate.update("UPDATE client SET phone = '0522000000', version = version + 1 WHERE client_code = '492001'");
+        VersionStamp clientChanged = daySheetStamp(date);
+        jdbcTemplate.update("UPDATE users SET phone = '0611111111' WHERE code = '192001'");
+        VersionStamp driverChanged = daySheetStamp(date);
+
+        assertThat(scanned.getRows()).isEqualTo(1);
+        assertThat(List.of(scanned.getDigest(), clientChanged.getDigest(), driverChanged.getDigest()))
+                .doesNotHaveDuplicates();
+        assertThat(daySheetStamp(date.plusDays(1)).getRows()).isZero();
+        assertThat(daySheetStamp(date.plusDays(1)).getDigest())
+                .isNotEqualTo(daySheetStamp(date.plusDays(2)).getDigest());
+        assertThat(bordereauRepository.findDaySheetVersionStamp("199999", date)).isEmpty();
+    }
+
+    private VersionStamp daySheetStamp(LocalDate date) {
+        return bordereauRepository.findDaySheetVersionStamp("192001", date).orElseThrow();
+    }
+
+    private String digest() {
+        return bordereauRepository.findEtagDigestByBordereauNumber("592001").orElseThrow();
+    }
+
+    private static BordereauScanRequest request() {
+        DeliveryItemRequest item = new DeliveryItemRequest();
+        item.setBlNumber("392001");
+        item.setClientCode("492001");
+        item.setClientName("Pharmacie Atlas");
+        item.setNombreColis(1);
+        item.setNombreSachets(0);
+        BordereauScanRequest request = new BordereauScanRequest();
+        request.setBordereauNumber("592001");
+        request.setDeliveryDate(LocalDate.of(2024, 8, 22));
+        request.setDriverCode("192001");
+        request.setManagerCode("292001");
+        request.setDeliveryItems(List.of(item));
+        return request;
+    }
+}
@@ -0,0 +1,146 @@
+package ma.pharmachain.repository;
+
+import ma.pharmachain.PostgresIntegrationTest;
+import ma.pharmachain.dto.BordereauSearchCriteria;
+import ma.pharmachain.enums.BordereauStatus;
+import ma.pharmachain.service.BordereauService;
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Plans PostgreSQL picks for the page query of GET /bordereaux/search, as Hibernate generates it, for every
+ * combination of filters. The generic plan is explained: the one a prepared statement settles on, whatever the
+ * bound values.
+ */
+@SpringBootTest(properties = {
+        "pharmachain.scan.archive.enabled=false",
+        "spring.jpa.properties.hibernate.session_factory.statement_inspector="
+                + "ma.pharmachain.repository.BordereauSearchPlanTest$RecordingInspector"})
+class BordereauSearchPlanTest extends PostgresIntegrationTest {
+
+    private static final int DRIVERS = 200;
+    private static final int SECTEURS = 40;
+    private static final int BORDEREAUX = 50_000;
+
+    @Autowired
+    private BordereauService bordereauService;
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Test
+    void everyFilterCombinationReadsBordereauxThroughAnIndex() {
+        seed();
+
+        // status, date range, driver, secteur: each present or absent
+        for (int mask = 0; mask < 16; mask++) {
+            BordereauSearchCriteria criteria = new BordereauSearchCriteria(
+                    (mask & 1) != 0 ? BordereauStatus.CREATED : null,
+                    (mask & 2) != 0 ? LocalDate.of(2024, 8, 1) : null,
+                    (mask & 2) != 0 ? LocalDate.of(2024, 8, 31) : null,
+                    (mask & 4) != 0 ? "180001" : null,
+                    (mask & 8) != 0 ? "280001" : null);
+
+            String plan = String.join("\n", genericPlan(pageQuery(criteria)));
+
+            assertThat(plan).as("plan for %s", criteria)
+                    .doesNotContain("Seq Scan on bordereau")
+                    .containsPattern("Index Scan (Backward )?using idx_bordereau_\\w+ on bordereau|"
+                            + "Bitmap Index Scan on idx_bordereau_");
+        }
+    }
+
+    /**
+     * Drivers, secteurs and a year of bordereaux spread over them and the four statuses, then analyzed
+     */
+    private void seed() {
+        jdbcTemplate.update("""
+                INSERT INTO users (user_type, keycloak_user_id, code, is_active)
+                SELECT 'DRIVER', 'plan-driver-' || g, '18' || lpad(g::text, 4, '0'), true
+                FROM generate_series(1, ?) g
+                """, DRIVERS);
+        jdbcTemplate.update("""
+                INSERT INTO users (user_type, keycloak_user_id, code, is_active)
+                SELECT 'MANAGER', 'plan-manager-' || g, '28' || lpad(g::text, 4, '0'), true
+                FROM generate_series(1, ?) g
+                """, SECTEURS);
+        jdbcTemplate.update("""
+                WITH drivers AS (SELECT array_agg(id ORDER BY id) AS ids FROM users WHERE code LIKE '18____'),
+                     secteurs AS (SELECT array_agg(id ORDER BY id) AS ids FROM users WHERE code LIKE '28____')
+                INSERT INTO bordereau (bordereau_number, delivery_date, current_driver_id, original_driver_id,
+                                       secteur_id, status, version)
+                SELECT '7' || lpad(g::text, 6, '0'), DATE '2024-01-01' + g % 365,
+                       drivers.ids[1 + g % ?], drivers.ids[1 + g % ?], secteurs.ids[1 + g % ?],
+                       (ARRAY['CREATED', 'ASSIGNED', 'IN_TRANSIT', 'COMPLETED'])[1 + g % 4], 0
+                FROM generate_series(1, ?) g, drivers, secteurs
+                """, DRIVERS, DRIVERS, SECTEURS, BORDEREAUX);
+        jdbcTemplate.execute("ANALYZE users, bordereau");
+    }
+
+    /**
+     * The statement the search sends for its page, with JDBC placeholders
+     */
+    private String pageQuery(BordereauSearchCriteria criteria) {
+        RecordingInspector.STATEMENTS.clear();
+        bordereauService.searchBordereaux(criteria, 0, 20);
+        return RecordingInspector.STATEMENTS.stream()
+                .filter(sql -> sql.contains(" from bordereau ") && sql.contains(" order by "))
+                .findFirst()
+                .orElseThrow();
+    }
+
+    private List<String> genericPlan(String sql) {
+        StringBuilder numbered = new StringBuilder();
+        int parameters = 0;
+        for (char c : sql.toCharArray()) {
+            if (c == '?') {
+                numbered.append('$').append(++parameters);
+            } else {
+                numbered.append(c);
+            }
+        }
+        String execute = "EXPLAIN EXECUTE search(" + String.join(", ", Collections.nCopies(parameters, "NULL")) + ")";
+
+        // PREPARE keeps the $n placeholders from the driver; the values are ignored by a generic plan
+        return jdbcTemplate.execute((ConnectionCallback<List<String>>) connection -> {
+            List<String> plan = new ArrayList<>();
+            try (Statement statement = connection.createStatement()) {
+                statement.execute("SET plan_cache_mode = force_generic_plan");
+                statement.execute("PREPARE search AS " + numbered);
+                try (ResultSet rows = statement.executeQuery(execute)) {
+                    while (rows.next()) {
+                        plan.add(rows.getString(1));
+                    }
+                } finally {
+                    statement.execute("DEALLOCATE search");
+                    statement.execute("RESET plan_cache_mode");
+                }
+            }
+            return plan;
+        });
+    }
+
+    public static class RecordingInspector implements StatementInspector {
+
+        static final List<String> STATEMENTS = new CopyOnWriteArrayList<>();
+
+        @Override
+        public String inspect(String sql) {
+            STATEMENTS.add(sql);
+            return sql;
+        }
+    }
+}
@@ -0,0 +1,28 @@
+package ma.pharmachain.repository;
+
+import jakarta.persistence.criteria.CriteriaBuilder;
+import jakarta.persistence.criteria.CriteriaQuery;
+import jakarta.persistence.criteria.Path;
+import jakarta.persistence.criteria.Root;
+import ma.pharmachain.entity.Bordereau;
+import ma.pharmachain.entity.Driver;
+import ma.pharmachain.entity.Manager;
+import org.junit.jupiter.api.Test;
+
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+class BordereauSpecificationsTest {
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void driverAndSecteurAreComparedWithoutJoin() {
+        Root<Bordereau> root = mock(Root.class, RETURNS_MOCKS);
+        when(root.get(anyString())).thenAnswer(invocation -> mock(Path.class));
+
+        BordereauSpecifications.matching(null, null, null, new Driver(), new Manager())
+                .toPredicate(root, mock(CriteriaQuery.class), mock(CriteriaBuilder.class, RETURNS_MOCKS));
+
+        verify(root, never()).join(anyString());
+    }
+}
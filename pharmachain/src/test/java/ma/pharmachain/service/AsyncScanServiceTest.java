@@ -0,0 +1,144 @@
+package ma.pharmachain.service;
+
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import ma.pharmachain.config.ScanConfig;
+import ma.pharmachain.dto.BordereauScanRequest;
+import ma.pharmachain.dto.BordereauScanResult;
+import ma.pharmachain.dto.ScanCreatedEntities;
+import ma.pharmachain.dto.ScanTicket;
+import ma.pharmachain.entity.Bordereau;
+import ma.pharmachain.enums.ScanTicketState;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
+
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.*;
+
+class AsyncScanServiceTest {
+
+    @TempDir
+    Path directory;
+
+    private final BordereauScanService bordereauScanService = mock(BordereauScanService.class);
+    private AsyncScanService asyncScanService;
+
+    @BeforeEach
+    void setUp() {
+        asyncScanService = open();
+        for (int i = 1; i <= 3; i++) {
+            asyncScanService.submit(request("50000" + i));
+        }
+    }
+
+    @AfterEach
+    void tearDown() {
+        asyncScanService.close();
+    }
+
+    @Test
+    void transientFailureKeepsTheRecordAndTheOnesAfterItInTheJournal() {
+        when(bordereauScanService.scanBordereaux(anyList()))
+                .thenReturn(List.of(applied("500001"),
+                        BordereauScanResult.retryableFailure("500002", "Unable to acquire JDBC Connection"),
+                        applied("500003")))
+                .thenReturn(List.of(applied("500002"), applied("500003")));
+
+        asyncScanService.drain();
+
+        assertThat(asyncScanService.getTicket(1).getState()).isEqualTo(ScanTicketState.APPLIED);
+        assertThat(asyncScanService.getTicket(2).getState()).isEqualTo(ScanTicketState.PENDING);
+        assertThat(asyncScanService.getTicket(3).getState()).isEqualTo(ScanTicketState.PENDING);
+        verify(bordereauScanService, times(1)).scanBordereaux(anyList());
+
+        asyncScanService.drain();
+
+        assertThat(scannedNumbers(2)).containsExactly("500002", "500003");
+        assertThat(asyncScanService.getTicket(2).getState()).isEqualTo(ScanTicketState.APPLIED);
+        assertThat(asyncScanService.getTicket(3).getState()).isEqualTo(ScanTicketState.APPLIED);
+    }
+
+    @Test
+    void rejectedScanIsRecordedAndNotReadAgain() {
+        when(bordereauScanService.scanBordereaux(anyList()))
+                .thenReturn(List.of(applied("500001"), BordereauScanResult.failure("500002", "Bordereau number is required"),
+                        applied("500003")));
+
+        asyncScanService.drain();
+        asyncScanService.drain();
+
+        verify(bordereauScanService, times(1)).scanBordereaux(anyList());
+        assertThat(asyncScanService.getTicket(2).getState()).isEqualTo(ScanTicketState.FAILED);
+        assertThat(asyncScanService.getTicket(3).getState()).isEqualTo(ScanTicketState.APPLIED);
+    }
+
+    @Test
+    void batchThatThrowsIsReadAgain() {
+        when(bordereauScanService.scanBordereaux(anyList()))
+                .thenThrow(new IllegalStateException("Batch scan failed"))
+                .thenReturn(List.of(applied("500001"), applied("500002"), applied("500003")));
+
+        try {
+            asyncScanService.drain();
+        } catch (IllegalStateException expected) {
+            // Logged by the scheduler
+        }
+        asyncScanService.drain();
+
+        assertThat(scannedNumbers(2)).containsExactly("500001", "500002", "500003");
+        assertThat(asyncScanService.getTicket(1).getState()).isEqualTo(ScanTicketState.APPLIED);
+    }
+
+    @Test
+    void ticketOutcomesSurviveARestart() {
+        when(bordereauScanService.scanBordereaux(anyList()))
+                .thenReturn(List.of(applied("500001"), BordereauScanResult.failure("500002", "Bordereau number is required"),
+                        applied("500003")));
+        asyncScanService.drain();
+        asyncScanService.close();
+
+        asyncScanService = open();
+
+        assertThat(asyncScanService.getTicket(1).getState()).isEqualTo(ScanTicketState.APPLIED);
+        ScanTicket failed = asyncScanService.getTicket(2);
+        assertThat(failed.getState()).isEqualTo(ScanTicketState.FAILED);
+        assertThat(failed.getResult().getError()).isEqualTo("Bordereau number is required");
+        assertThat(asyncScanService.getTicket(3).getState()).isEqualTo(ScanTicketState.APPLIED);
+    }
+
+    private AsyncScanService open() {
+        ScanConfig scanConfig = new ScanConfig();
+        scanConfig.getJournal().setDirectory(directory.toString());
+        scanConfig.getJournal().setForceOnAppend(false);
+        return new AsyncScanService(bordereauScanService, JsonMapper.builder().findAndAddModules().build(), scanConfig,
+                new SimpleMeterRegistry());
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<String> scannedNumbers(int calls) {
+        ArgumentCaptor<List<BordereauScanRequest>> requests = ArgumentCaptor.forClass(List.class);
+        verify(bordereauScanService, times(calls)).scanBordereaux(requests.capture());
+        return requests.getValue().stream().map(BordereauScanRequest::getBordereauNumber).toList();
+    }
+
+    private static BordereauScanRequest request(String bordereauNumber) {
+        BordereauScanRequest request = new BordereauScanRequest();
+        request.setBordereauNumber(bordereauNumber);
+        request.setDeliveryDate(LocalDate.of(2024, 8, 22));
+        return request;
+    }
+
+    private static BordereauScanResult applied(String bordereauNumber) {
+        Bordereau bordereau = new Bordereau();
+        bordereau.setBordereauNumber(bordereauNumber);
+        return BordereauScanResult.success(bordereau, request(bordereauNumber), new ScanCreatedEntities());
+    }
+}
@@ -0,0 +1,90 @@
+package ma.pharmachain.service;
+
+import ma.pharmachain.PostgresIntegrationTest;
+import ma.pharmachain.dto.BordereauScanRequest;
+import ma.pharmachain.dto.DeliveryItemRequest;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest(properties = "pharmachain.scan.archive.enabled=false")
+class AutoCreateConcurrencyTest extends PostgresIntegrationTest {
+
+    private static final int THREADS = 8;
+    private static final List<String> CLIENT_CODES = List.of("491001", "491002", "491003", "491004", "491005");
+
+    @Autowired
+    private BordereauScanService bordereauScanService;
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Test
+    void concurrentScansOfTheSameNewCodesCreateEachRowOnce() throws Exception {
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            List<Future<?>> scans = new ArrayList<>();
+            for (int thread = 0; thread < THREADS; thread++) {
+                BordereauScanRequest request = request(thread);
+                scans.add(executor.submit(() -> {
+                    start.await();
+                    return bordereauScanService.scanBordereauAck(request);
+                }));
+            }
+            start.countDown();
+
+            // get() rethrows any scan failure
+            for (Future<?> scan : scans) {
+                scan.get(60, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertThat(count("SELECT count(*) FROM users WHERE code = '191001' AND user_type = 'DRIVER'")).isEqualTo(1);
+        assertThat(count("SELECT count(*) FROM users WHERE code = '291001' AND user_type = 'MANAGER'")).isEqualTo(1);
+        for (String clientCode : CLIENT_CODES) {
+            assertThat(count("SELECT count(*) FROM client WHERE client_code = '" + clientCode + "'")).isEqualTo(1);
+        }
+        assertThat(count("SELECT count(*) FROM bordereau WHERE bordereau_number LIKE '5910%'")).isEqualTo(THREADS);
+    }
+
+    private long count(String sql) {
+        return jdbcTemplate.queryForObject(sql, Long.class);
+    }
+
+    /**
+     * Its own bordereau and BL numbers, the shared driver, manager and clients
+     */
+    private static BordereauScanRequest request(int thread) {
+        List<DeliveryItemRequest> items = new ArrayList<>();
+        for (int i = 0; i < CLIENT_CODES.size(); i++) {
+            DeliveryItemRequest item = new DeliveryItemRequest();
+            item.setBlNumber("39" + thread + "00" + i);
+            item.setClientCode(CLIENT_CODES.get(i));
+            item.setClientName("Pharmacie " + i);
+            item.setNombreColis(1);
+            item.setNombreSachets(0);
+            items.add(item);
+        }
+        BordereauScanRequest request = new BordereauScanRequest();
+        request.setBordereauNumber("59100" + thread);
+        request.setDeliveryDate(LocalDate.of(2024, 8, 22));
+        request.setDriverCode("191001");
+        request.setManagerCode("291001");
+        request.setDeliveryItems(items);
+        return request;
+    }
+}
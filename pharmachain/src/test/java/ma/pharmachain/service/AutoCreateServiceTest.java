@@ -0,0 +1,95 @@
+package ma.pharmachain.service;
+
+import ma.pharmachain.entity.Client;
+import ma.pharmachain.repository.ClientRepository;
+import ma.pharmachain.repository.UserRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.Mockito.*;
+
+class AutoCreateServiceTest {
+
+    private final UserRepository userRepository = mock(UserRepository.class);
+    private final ClientRepository clientRepository = mock(ClientRepository.class);
+    private final ReferenceCodeCache referenceCodeCache = mock(ReferenceCodeCache.class);
+    private final ClientSearchIndex clientSearchIndex = mock(ClientSearchIndex.class);
+    private final AutoCreateService service = new AutoCreateService(userRepository, clientRepository,
+            referenceCodeCache, clientSearchIndex);
+
+    @BeforeEach
+    void setUp() {
+        // Stands in for the scan transaction
+        TransactionSynchronizationManager.initSynchronization();
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    @Test
+    void createdCodesReachTheCachesOnlyOnceTheScanCommits() {
+        when(userRepository.insertIfAbsent("DRIVER", "100001")).thenReturn(7L);
+        when(userRepository.insertIfAbsent("MANAGER", "200001")).thenReturn(4L);
+
+        assertThat(service.ensureDriver("100001")).isEqualTo(7L);
+        assertThat(service.ensureManager("200001")).isEqualTo(4L);
+        service.ensureClients(List.of(client("400001")));
+        verifyNoInteractions(referenceCodeCache, clientSearchIndex);
+
+        complete(TransactionSynchronization.STATUS_COMMITTED);
+
+        verify(referenceCodeCache).putDriver("100001", 7L);
+        verify(referenceCodeCache).putManager("200001", 4L);
+        verify(referenceCodeCache).putClients(List.of("400001"));
+        verify(clientSearchIndex).putAllAbsent(anyCollection());
+    }
+
+    @Test
+    void rolledBackScanLeavesTheCachesUntouched() {
+        when(userRepository.insertIfAbsent("DRIVER", "100001")).thenReturn(7L);
+
+        service.ensureDriver("100001");
+        service.ensureClients(List.of(client("400001")));
+        complete(TransactionSynchronization.STATUS_ROLLED_BACK);
+
+        verifyNoInteractions(referenceCodeCache, clientSearchIndex);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void clientsAreInsertedInCodeOrder() {
+        service.ensureClients(List.of(client("400003"), client("400001"), client("400002")));
+
+        ArgumentCaptor<List<Client>> inserted = ArgumentCaptor.forClass(List.class);
+        verify(clientRepository).batchInsertIfAbsent(inserted.capture());
+        assertThat(inserted.getValue()).extracting(Client::getClientCode)
+                .containsExactly("400001", "400002", "400003");
+    }
+
+    private static void complete(int status) {
+        List<TransactionSynchronization> synchronizations = TransactionSynchronizationManager.getSynchronizations();
+        TransactionSynchronizationManager.clearSynchronization();
+        if (status == TransactionSynchronization.STATUS_COMMITTED) {
+            synchronizations.forEach(TransactionSynchronization::afterCommit);
+        }
+        synchronizations.forEach(synchronization -> synchronization.afterCompletion(status));
+    }
+
+    private static Client client(String clientCode) {
+        Client client = new Client();
+        client.setClientCode(clientCode);
+        return client;
+    }
+}
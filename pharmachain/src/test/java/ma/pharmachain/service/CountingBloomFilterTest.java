@@ -0,0 +1,51 @@
+package ma.pharmachain.service;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class CountingBloomFilterTest {
+
+    private static final int KEYS = 100_000;
+
+    @Test
+    void neverReportsAnAddedKeyAsAbsentAndStaysNearTargetRate() {
+        CountingBloomFilter filter = new CountingBloomFilter(KEYS, 0.01);
+        for (int i = 0; i < KEYS; i++) {
+            filter.add(String.valueOf(300_000 + i));
+        }
+
+        int falsePositives = 0;
+        for (int i = 0; i < KEYS; i++) {
+            assertThat(filter.mightContain(String.valueOf(300_000 + i))).isTrue();
+            if (filter.mightContain(String.valueOf(900_000 + i))) {
+                falsePositives++;
+            }
+        }
+        assertThat((double) falsePositives / KEYS).isLessThan(0.02);
+        assertThat(filter.expectedFalsePositiveRate()).isBetween(0.005, 0.015);
+    }
+
+    @Test
+    void removeForgetsOnlyTheRemovedKey() {
+        CountingBloomFilter filter = new CountingBloomFilter(KEYS, 0.01);
+        for (int i = 0; i < KEYS; i++) {
+            filter.add(String.valueOf(300_000 + i));
+        }
+        for (int i = 0; i < KEYS; i += 2) {
+            filter.remove(String.valueOf(300_000 + i));
+        }
+
+        int stillPresent = 0;
+        for (int i = 0; i < KEYS; i++) {
+            boolean present = filter.mightContain(String.valueOf(300_000 + i));
+            if (i % 2 == 1) {
+                assertThat(present).isTrue();
+            } else if (present) {
+                stillPresent++;
+            }
+        }
+        assertThat(stillPresent).isLessThan(KEYS / 50);
+        assertThat(filter.count()).isEqualTo(KEYS / 2);
+    }
+}
@@ -0,0 +1,81 @@
+package ma.pharmachain.service;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Radius and nearest lookups over 100k clients, most of them in a few cities. Run with
+ * <pre>
+ * mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=ma.pharmachain.service.GeoIndexBenchmark
+ * </pre>
+ */
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class GeoIndexBenchmark {
+
+    // Casablanca, Rabat, Marrakech, Fes, Tanger, Agadir
+    private static final double[][] CITIES = {{33.5731, -7.5898}, {34.0209, -6.8416}, {31.6295, -7.9811},
+            {34.0181, -5.0078}, {35.7595, -5.8340}, {30.4278, -9.5981}};
+
+    @Param({"100000"})
+    public int clients;
+
+    private GeoIndex<String> index;
+    private double[][] origins;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        index = new GeoIndex<>(1.0);
+        Random random = new Random(42);
+        for (int i = 0; i < clients; i++) {
+            double[] position = position(random);
+            index.put(String.valueOf(400000 + i), position[0], position[1], String.valueOf(400000 + i));
+        }
+        origins = new double[1024][];
+        for (int i = 0; i < origins.length; i++) {
+            origins[i] = position(random);
+        }
+    }
+
+    // 90% within ~10 km of a city centre, the rest anywhere between Agadir and Tanger
+    private static double[] position(Random random) {
+        if (random.nextInt(10) == 0) {
+            return new double[]{30 + random.nextDouble() * 6, -10 + random.nextDouble() * 8};
+        }
+        double[] city = CITIES[random.nextInt(CITIES.length)];
+        return new double[]{city[0] + random.nextGaussian() * 0.05, city[1] + random.nextGaussian() * 0.05};
+    }
+
+    private double[] origin() {
+        return origins[next++ & (origins.length - 1)];
+    }
+
+    @Benchmark
+    public List<GeoIndex.Hit<String>> withinTwoKm() {
+        double[] origin = origin();
+        return index.within(origin[0], origin[1], 2, 50);
+    }
+
+    @Benchmark
+    public List<GeoIndex.Hit<String>> nearestTen() {
+        double[] origin = origin();
+        return index.nearest(origin[0], origin[1], 10);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(GeoIndexBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
@@ -0,0 +1,107 @@
+package ma.pharmachain.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+class GeoIndexTest {
+
+    private final GeoIndex<String> index = new GeoIndex<>(1.0);
+
+    @Test
+    void radiusAndNearestMatchABruteForceScan() {
+        Random random = new Random(7);
+        List<double[]> points = new ArrayList<>();
+        for (int i = 0; i < 5_000; i++) {
+            // Casablanca and a sparse spread over the country
+            double lat = i % 5 == 0 ? 29 + random.nextDouble() * 7 : 33.5 + random.nextGaussian() * 0.05;
+            double lng = i % 5 == 0 ? -10 + random.nextDouble() * 8 : -7.6 + random.nextGaussian() * 0.05;
+            points.add(new double[]{lat, lng});
+            index.put(String.valueOf(i), lat, lng, String.valueOf(i));
+        }
+
+        for (int q = 0; q < 50; q++) {
+            boolean city = q % 2 == 0;
+            double lat = city ? 33.5 + random.nextGaussian() * 0.05 : 29 + random.nextDouble() * 7;
+            double lng = city ? -7.6 + random.nextGaussian() * 0.05 : -10 + random.nextDouble() * 8;
+            List<String> expected = bruteForce(points, lat, lng);
+
+            List<String> nearest = index.nearest(lat, lng, 10).stream().map(GeoIndex.Hit::value).toList();
+            assertThat(nearest).containsExactlyElementsOf(expected.subList(0, 10));
+
+            double radius = city ? 3 : 60;
+            List<String> inRadius = expected.stream()
+                    .filter(key -> distance(points.get(Integer.parseInt(key)), lat, lng) <= radius)
+                    .limit(100).toList();
+            List<String> found = index.within(lat, lng, radius, 100).stream().map(GeoIndex.Hit::value).toList();
+            assertThat(found).containsExactlyElementsOf(inRadius);
+        }
+    }
+
+    @Test
+    void movedAndRemovedPointsLeaveTheirOldCell() {
+        index.put("400001", 33.5731, -7.5898, "casablanca");
+        index.put("400001", 34.0209, -6.8416, "rabat");
+
+        assertThat(index.within(33.5731, -7.5898, 5, 10)).isEmpty();
+        assertThat(index.nearest(33.5731, -7.5898, 5)).extracting(GeoIndex.Hit::value).containsExactly("rabat");
+
+        index.remove("400001");
+        assertThat(index.nearest(34.0209, -6.8416, 5)).isEmpty();
+        assertThat(index.size()).isZero();
+
+        index.put("400002", 34.0209, -6.8416, "reused");
+        assertThat(index.within(34.0209, -6.8416, 1, 10)).extracting(GeoIndex.Hit::value).containsExactly("reused");
+    }
+
+    @Test
+    void distancesAreGreatCircle() {
+        index.put("casablanca", 33.5731, -7.5898, "casablanca");
+
+        GeoIndex.Hit<String> hit = index.nearest(34.0209, -6.8416, 1).get(0);
+
+        assertThat(hit.distanceKm()).isCloseTo(85.7, within(0.5));
+    }
+
+    @Test
+    void putAllAbsentSkipsIndexedKeysAndMissingPositions() {
+        index.put("400001", 33.5731, -7.5898, "newer");
+
+        index.putAllAbsent(List.of("400001", "400002", "400003"), key -> key,
+                key -> key.equals("400003") ? null : new double[]{34.0209, -6.8416});
+
+        assertThat(index.size()).isEqualTo(2);
+        assertThat(index.nearest(33.5731, -7.5898, 1)).extracting(GeoIndex.Hit::value).containsExactly("newer");
+    }
+
+    @Test
+    void parsesClientCoordinates() {
+        assertThat(ClientGeoIndex.parseCoordinates("33.5731,-7.5898")).containsExactly(33.5731, -7.5898);
+        assertThat(ClientGeoIndex.parseCoordinates(" 34.02 , -6.84 ")).containsExactly(34.02, -6.84);
+        assertThat(ClientGeoIndex.parseCoordinates(null)).isNull();
+        assertThat(ClientGeoIndex.parseCoordinates("")).isNull();
+        assertThat(ClientGeoIndex.parseCoordinates("33.57")).isNull();
+        assertThat(ClientGeoIndex.parseCoordinates("abc,def")).isNull();
+        assertThat(ClientGeoIndex.parseCoordinates("91,0")).isNull();
+    }
+
+    private static List<String> bruteForce(List<double[]> points, double lat, double lng) {
+        List<Integer> ids = new ArrayList<>();
+        for (int i = 0; i < points.size(); i++) {
+            ids.add(i);
+        }
+        ids.sort(Comparator.<Integer>comparingDouble(i -> distance(points.get(i), lat, lng))
+                .thenComparing(Comparator.naturalOrder()));
+        return ids.stream().map(String::valueOf).toList();
+    }
+
+    private static double distance(double[] point, double lat, double lng) {
+        return GeoIndex.distanceKm(lat, lng, point[0], point[1]);
+    }
+}
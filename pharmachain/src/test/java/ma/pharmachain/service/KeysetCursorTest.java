@@ -0,0 +1,37 @@
+package ma.pharmachain.service;
+
+import ma.pharmachain.dto.KeysetPage;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class KeysetCursorTest {
+
+    @Test
+    void roundTripsSortKeyAndId() {
+        assertThat(KeysetCursor.decode(KeysetCursor.encode(LocalDate.of(2024, 8, 22), "500001")))
+                .containsExactly("2024-08-22", "500001");
+        assertThat(KeysetCursor.decode(KeysetCursor.encode(null, "500001"))).containsExactly(null, "500001");
+        assertThat(KeysetCursor.decodeId(KeysetCursor.encode(42L))).isEqualTo("42");
+        assertThat(KeysetCursor.isFirstPage("")).isTrue();
+        assertThatThrownBy(() -> KeysetCursor.decode("not a cursor!"))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void extraRowOnlySignalsNextPage() {
+        KeysetPage<Long> page = KeysetPage.of(List.of(9L, 8L, 7L), 2, KeysetCursor::encode);
+
+        assertThat(page.getContent()).containsExactly(9L, 8L);
+        assertThat(page.isHasNext()).isTrue();
+        assertThat(KeysetCursor.decodeId(page.getNext())).isEqualTo("8");
+
+        KeysetPage<Long> last = KeysetPage.of(List.of(7L), 2, KeysetCursor::encode);
+        assertThat(last.isHasNext()).isFalse();
+        assertThat(last.getNext()).isNull();
+    }
+}
@@ -0,0 +1,59 @@
+package ma.pharmachain.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import ma.pharmachain.config.CacheConfig;
+import ma.pharmachain.repository.BordereauRepository;
+import ma.pharmachain.repository.DeliveryItemRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.util.function.Consumer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+class KnownNumbersFilterTest {
+
+    private final BordereauRepository bordereauRepository = mock(BordereauRepository.class);
+    private final DeliveryItemRepository deliveryItemRepository = mock(DeliveryItemRepository.class);
+
+    @Test
+    void singleInstanceReportsNumbersNeverWrittenAsAbsent() {
+        doAnswer(invocation -> {
+            invocation.<Consumer<String>>getArgument(0).accept("500001");
+            return null;
+        }).when(bordereauRepository).forEachBordereauNumber(any());
+        KnownNumbersFilter filter = newFilter(true);
+
+        filter.rebuild();
+        filter.addBlNumber("300001");
+
+        assertThat(filter.mightContainBordereau("500001")).isTrue();
+        assertThat(filter.mightContainBordereau("500002")).isFalse();
+        assertThat(filter.mightContainBlNumber("300001")).isTrue();
+        assertThat(filter.mightContainBlNumber("300002")).isFalse();
+    }
+
+    @Test
+    void severalInstancesLeaveEveryLookupToTheDatabase() {
+        KnownNumbersFilter filter = newFilter(false);
+
+        filter.rebuild();
+        filter.addBordereau("500001");
+
+        assertThat(filter.mightContainBordereau("500002")).isTrue();
+        assertThat(filter.mightContainBlNumber("300002")).isTrue();
+        verify(bordereauRepository, never()).forEachBordereauNumber(any());
+        verify(deliveryItemRepository, never()).forEachBlNumber(any());
+    }
+
+    private KnownNumbersFilter newFilter(boolean singleInstance) {
+        CacheConfig cacheConfig = new CacheConfig();
+        cacheConfig.setBordereauFilterCapacity(1_000);
+        cacheConfig.setBlNumberFilterCapacity(1_000);
+        cacheConfig.setSingleInstance(singleInstance);
+        return new KnownNumbersFilter(bordereauRepository, deliveryItemRepository, cacheConfig,
+                mock(PlatformTransactionManager.class), new SimpleMeterRegistry());
+    }
+}
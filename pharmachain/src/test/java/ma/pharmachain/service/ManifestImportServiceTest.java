@@ -0,0 +1,66 @@
+package ma.pharmachain.service;
+
+import ma.pharmachain.config.ScanConfig;
+import ma.pharmachain.dto.ManifestImportReport;
+import ma.pharmachain.repository.BordereauRepository;
+import ma.pharmachain.repository.BordereauRepositoryCustom;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+class ManifestImportServiceTest {
+
+    @Test
+    void stagesValidLinesAndReportsRejectedOnes() {
+        String manifest = """
+                bordereau_number,delivery_date,driver_code,manager_code,bl_number,client_code,client_name,client_address,nombre_colis,nombre_sachets
+                500001,2024-08-22,100001,200001,300001,400001,"Pharmacie \"\"Atlas\"\"","12 Rue Fes, Casablanca",2,1
+                500001,2024-08-22,100001,200001,300002,400002,,,1,
+                500002,22/08/2024,100001,200001,300003,400003,,,1,0
+                500002,2024-08-22,100001,200001,,400003,,,1,0
+                500002,2024-08-22,100001,200001,300004,400004,"Pharmacie,1,0
+                500002,2024-08-22,100001,200001,300005,400005,,,x,0
+                """;
+        ByteArrayOutputStream staged = new ByteArrayOutputStream();
+        BordereauRepository repository = mock(BordereauRepository.class);
+        when(repository.copyManifestStaging(any())).thenAnswer(invocation -> {
+            invocation.<BordereauRepositoryCustom.CopyWriter>getArgument(0).writeTo(staged);
+            return 2L;
+        });
+
+        ManifestImportService service = new ManifestImportService(repository, new ScanConfig(),
+                mock(KnownNumbersFilter.class), mock(ClientSearchIndex.class), mock(DriverRouteCache.class),
+                mock(StatusCounters.class));
+        ManifestImportReport report = service.importManifest(
+                new ByteArrayInputStream(manifest.getBytes(StandardCharsets.UTF_8)));
+
+        assertThat(staged.toString(StandardCharsets.UTF_8)).isEqualTo("""
+                2,"500001","2024-08-22","100001","200001","300001","400001","Pharmacie \"\"Atlas\"\"","12 Rue Fes, Casablanca","2","1"
+                3,"500001","2024-08-22","100001","200001","300002","400002",,,"1",
+                """);
+        assertThat(report.getLinesRead()).isEqualTo(7);
+        assertThat(report.getRowsLoaded()).isEqualTo(2);
+        assertThat(report.getRejectedCount()).isEqualTo(4);
+        assertThat(report.getRejectedLines())
+                .extracting(ManifestImportReport.RejectedLine::getLineNumber)
+                .containsExactly(4L, 5L, 6L, 7L);
+        assertThat(report.getRejectedLines().get(0).getReason()).startsWith("invalid delivery_date");
+
+        // Merge order: users, then clients, then bordereaux, then their lines
+        var order = inOrder(repository);
+        order.verify(repository).createManifestStaging();
+        order.verify(repository).copyManifestStaging(any());
+        order.verify(repository).insertManifestManagers();
+        order.verify(repository).insertManifestDrivers();
+        order.verify(repository).insertManifestClients();
+        order.verify(repository).upsertManifestBordereaux();
+        order.verify(repository).upsertManifestDeliveryItems();
+        order.verify(repository).forEachStagedManifestNumber(any(), any());
+    }
+}
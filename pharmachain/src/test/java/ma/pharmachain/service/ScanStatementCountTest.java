@@ -0,0 +1,85 @@
+package ma.pharmachain.service;
+
+import jakarta.persistence.EntityManagerFactory;
+import ma.pharmachain.PostgresIntegrationTest;
+import ma.pharmachain.dto.BordereauScanRequest;
+import ma.pharmachain.dto.DeliveryItemRequest;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Statements Hibernate prepares for a scan, which must not grow with its lines. The line insert and the
+ * auto-created rows go through JdbcTemplate, one statement each whatever the line count, and are not counted.
+ */
+@SpringBootTest(properties = "pharmachain.scan.archive.enabled=false")
+class ScanStatementCountTest extends PostgresIntegrationTest {
+
+    @Autowired
+    private BordereauScanService bordereauScanService;
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+    private Statistics statistics;
+
+    @BeforeEach
+    void setUp() {
+        statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+    }
+
+    @Test
+    void newBordereauPreparesTheSameStatementsWhateverItsLineCount() {
+        long oneLine = statementsFor(request("593001", "193001", 1, 1));
+        long fortyLines = statementsFor(request("593002", "193002", 40, 1));
+
+        assertThat(fortyLines).isEqualTo(oneLine);
+    }
+
+    @Test
+    void rescanWithChangedLinesPreparesTheSameStatementsWhateverItsLineCount() {
+        bordereauScanService.scanBordereauAck(request("593011", "193011", 1, 1));
+        bordereauScanService.scanBordereauAck(request("593012", "193012", 40, 1));
+
+        long oneLine = statementsFor(request("593011", "193011", 1, 2));
+        long fortyLines = statementsFor(request("593012", "193012", 40, 2));
+
+        assertThat(fortyLines).isEqualTo(oneLine);
+    }
+
+    private long statementsFor(BordereauScanRequest request) {
+        statistics.clear();
+        bordereauScanService.scanBordereauAck(request);
+        return statistics.getPrepareStatementCount();
+    }
+
+    /**
+     * Lines and clients numbered after the bordereau, so each bordereau has its own
+     */
+    private static BordereauScanRequest request(String bordereauNumber, String driverCode, int lines, int colis) {
+        List<DeliveryItemRequest> items = new ArrayList<>();
+        for (int i = 0; i < lines; i++) {
+            DeliveryItemRequest item = new DeliveryItemRequest();
+            item.setBlNumber(bordereauNumber.substring(3) + String.format("%03d", i));
+            item.setClientCode("49" + bordereauNumber.substring(3) + String.format("%02d", i));
+            item.setClientName("Pharmacie " + i);
+            item.setNombreColis(colis);
+            item.setNombreSachets(0);
+            items.add(item);
+        }
+        BordereauScanRequest request = new BordereauScanRequest();
+        request.setBordereauNumber(bordereauNumber);
+        request.setDeliveryDate(LocalDate.of(2024, 8, 22));
+        request.setDriverCode(driverCode);
+        request.setManagerCode("293001");
+        request.setDeliveryItems(items);
+        return request;
+    }
+}
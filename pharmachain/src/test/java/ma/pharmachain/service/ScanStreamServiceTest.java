@@ -0,0 +1,192 @@
+package ma.pharmachain.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import ma.pharmachain.config.ScanConfig;
+import ma.pharmachain.dto.BordereauScanRequest;
+import ma.pharmachain.dto.BordereauScanResult;
+import ma.pharmachain.dto.ScanCreatedEntities;
+import ma.pharmachain.dto.ScanLineAck;
+import ma.pharmachain.entity.Bordereau;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.*;
+
+class ScanStreamServiceTest {
+
+    private final BordereauScanService bordereauScanService = mock(BordereauScanService.class);
+    private final ObjectMapper objectMapper = JsonMapper.builder().findAndAddModules().build();
+    private final ScanConfig scanConfig = new ScanConfig();
+    private final ScanStreamService scanStreamService = new ScanStreamService(bordereauScanService, objectMapper,
+            scanConfig);
+
+    @BeforeEach
+    void setUp() {
+        scanConfig.getStream().setChunkSize(2);
+        when(bordereauScanService.scanBordereaux(anyList())).thenAnswer(invocation ->
+                invocation.<List<BordereauScanRequest>>getArgument(0).stream()
+                        .map(ScanStreamServiceTest::applied)
+                        .toList());
+    }
+
+    @Test
+    void linesAreScannedInChunksOfTheConfiguredSize() throws IOException {
+        long lines = ingest(line("500001"), line("500002"), line("500003"), line("500004"), line("500005"));
+
+        assertThat(lines).isEqualTo(5);
+        assertThat(scannedChunks(3)).containsExactly(
+                List.of("500001", "500002"), List.of("500003", "500004"), List.of("500005"));
+    }
+
+    @Test
+    void malformedLineMidChunkIsAcknowledgedInPlace() throws IOException {
+        scanConfig.getStream().setChunkSize(3);
+
+        List<ScanLineAck> acks = acks(line("500001"), "{\"bordereauNumber\":", line("500003"), "", line("500005"));
+
+        assertThat(acks).extracting(ScanLineAck::getLine).containsExactly(1L, 2L, 3L, 5L);
+        assertThat(acks).extracting(ScanLineAck::getBordereauNumber)
+                .containsExactly("500001", null, "500003", "500005");
+        assertThat(acks).extracting(ScanLineAck::isSuccess).containsExactly(true, false, true, true);
+        assertThat(acks.get(1).getError()).startsWith("Invalid scan line");
+        // The blank line is counted but not acknowledged; the bad one is never sent to the scan
+        assertThat(scannedChunks(2)).containsExactly(List.of("500001", "500003"), List.of("500005"));
+    }
+
+    @Test
+    void eachChunkIsAcknowledgedBeforeTheNextOneIsScanned() throws IOException {
+        FlushCountingOutputStream out = new FlushCountingOutputStream();
+        List<Integer> acksBeforeEachScan = new ArrayList<>();
+        when(bordereauScanService.scanBordereaux(anyList())).thenAnswer(invocation -> {
+            acksBeforeEachScan.add(out.flushedLines());
+            return invocation.<List<BordereauScanRequest>>getArgument(0).stream()
+                    .map(ScanStreamServiceTest::applied)
+                    .toList();
+        });
+
+        scanStreamService.ingest(input(line("500001"), line("500002"), line("500003")), out);
+
+        assertThat(acksBeforeEachScan).containsExactly(0, 2);
+        assertThat(out.flushes).isEqualTo(2);
+        assertThat(out.flushedLines()).isEqualTo(3);
+    }
+
+    @Test
+    void overLongLineIsRejectedWithoutStoppingTheStream() throws IOException {
+        scanConfig.getStream().setMaxLineLength(64);
+        String overLong = "{\"bordereauNumber\":\"500002\",\"notes\":\"" + "x".repeat(200) + "\"}";
+
+        List<ScanLineAck> acks = acks(line("500001"), overLong, line("500003"));
+
+        assertThat(acks).extracting(ScanLineAck::isSuccess).containsExactly(true, false, true);
+        assertThat(acks.get(1).getLine()).isEqualTo(2);
+        assertThat(acks.get(1).getError()).isEqualTo("Scan line longer than 64 characters");
+        assertThat(scannedChunks(2)).containsExactly(List.of("500001"), List.of("500003"));
+    }
+
+    @Test
+    void chunkWhoseScanThrowsIsAcknowledgedAsFailedAndStopsTheStream() throws IOException {
+        when(bordereauScanService.scanBordereaux(anyList()))
+                .thenAnswer(invocation -> invocation.<List<BordereauScanRequest>>getArgument(0).stream()
+                        .map(ScanStreamServiceTest::applied)
+                        .toList())
+                .thenThrow(new IllegalStateException("Could not open JPA EntityManager"));
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        long lines = scanStreamService.ingest(input(line("500001"), line("500002"), line("500003"), "{",
+                line("500005"), line("500006")), out);
+
+        List<ScanLineAck> acks = parse(out);
+        assertThat(lines).isEqualTo(4);
+        assertThat(acks).extracting(ScanLineAck::getLine).containsExactly(1L, 2L, 3L, 4L);
+        assertThat(acks).extracting(ScanLineAck::isSuccess).containsExactly(true, true, false, false);
+        assertThat(acks.get(2).getError())
+                .isEqualTo("Chunk failed, stream stopped: Could not open JPA EntityManager");
+        assertThat(acks.get(3).getError()).startsWith("Invalid scan line");
+        // Lines 5 and 6 are neither read nor scanned
+        assertThat(scannedChunks(2)).containsExactly(List.of("500001", "500002"), List.of("500003"));
+    }
+
+    @Test
+    void boundedReaderSplitsOnBothLineEndingsAndKeepsAnUnterminatedLastLine() throws IOException {
+        ScanStreamService.BoundedLineReader reader = new ScanStreamService.BoundedLineReader(
+                new StringReader("first\r\nsecond\n\nthird"), 16);
+
+        assertThat(reader.readLine()).isEqualTo("first");
+        assertThat(reader.readLine()).isEqualTo("second");
+        assertThat(reader.readLine()).isEmpty();
+        assertThat(reader.isTooLong()).isFalse();
+        assertThat(reader.readLine()).isEqualTo("third");
+        assertThat(reader.readLine()).isNull();
+    }
+
+    private long ingest(String... lines) throws IOException {
+        return scanStreamService.ingest(input(lines), new ByteArrayOutputStream());
+    }
+
+    private List<ScanLineAck> acks(String... lines) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        scanStreamService.ingest(input(lines), out);
+        return parse(out);
+    }
+
+    private List<ScanLineAck> parse(ByteArrayOutputStream out) throws IOException {
+        List<ScanLineAck> acks = new ArrayList<>();
+        for (String ack : out.toString(StandardCharsets.UTF_8).split("\n")) {
+            acks.add(objectMapper.readValue(ack, ScanLineAck.class));
+        }
+        return acks;
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<List<String>> scannedChunks(int calls) {
+        ArgumentCaptor<List<BordereauScanRequest>> requests = ArgumentCaptor.forClass(List.class);
+        verify(bordereauScanService, times(calls)).scanBordereaux(requests.capture());
+        return requests.getAllValues().stream()
+                .map(chunk -> chunk.stream().map(BordereauScanRequest::getBordereauNumber).toList())
+                .toList();
+    }
+
+    private static ByteArrayInputStream input(String... lines) {
+        return new ByteArrayInputStream((String.join("\n", lines) + "\n").getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String line(String bordereauNumber) {
+        return "{\"bordereauNumber\":\"" + bordereauNumber + "\",\"deliveryDate\":\"2024-08-22\"}";
+    }
+
+    private static BordereauScanResult applied(BordereauScanRequest request) {
+        Bordereau bordereau = new Bordereau();
+        bordereau.setBordereauNumber(request.getBordereauNumber());
+        return BordereauScanResult.success(bordereau, request, new ScanCreatedEntities());
+    }
+
+    private static final class FlushCountingOutputStream extends ByteArrayOutputStream {
+        private int flushes;
+        private int flushedSize;
+
+        @Override
+        public void flush() {
+            flushes++;
+            flushedSize = size();
+        }
+
+        int flushedLines() {
+            return (int) new String(toByteArray(), 0, flushedSize, StandardCharsets.UTF_8).chars()
+                    .filter(c -> c == '\n')
+                    .count();
+        }
+    }
+}
@@ -0,0 +1,361 @@
+package ma.pharmachain.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import ma.pharmachain.config.StatsConfig;
+import ma.pharmachain.entity.Bordereau;
+import ma.pharmachain.entity.Driver;
+import ma.pharmachain.entity.StatusCountFlush;
+import ma.pharmachain.entity.StatusCountRollup;
+import ma.pharmachain.enums.BordereauStatus;
+import ma.pharmachain.enums.DeliveryItemStatus;
+import ma.pharmachain.repository.DeliveryItemRepository;
+import ma.pharmachain.repository.StatusCountFlushRepository;
+import ma.pharmachain.repository.StatusCountRollupRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.*;
+
+class StatusCountersTest {
+
+    private static final LocalDate DATE = LocalDate.of(2024, 8, 22);
+    private static final StatusCounters.Key DRIVER_7 = new StatusCounters.Key(4, 7, DATE);
+    private static final StatusCounters.Key DRIVER_9 = new StatusCounters.Key(4, 9, DATE);
+    private static final StatusCounters.Key SECTEUR = new StatusCounters.Key(4, StatusCounters.ALL, DATE);
+
+    private final StatusCountRollupRepository rollupRepository = mock(StatusCountRollupRepository.class);
+    private final StatusCountFlushRepository flushRepository = mock(StatusCountFlushRepository.class);
+    private final DeliveryItemRepository deliveryItemRepository = mock(DeliveryItemRepository.class);
+    private StatusCounters counters;
+
+    @BeforeEach
+    void setUp() {
+        counters = new StatusCounters(rollupRepository, flushRepository, deliveryItemRepository, new StatsConfig(),
+                mock(PlatformTransactionManager.class), new SimpleMeterRegistry());
+    }
+
+    @Test
+    void transitionsUpdateTheDriverCellAndTheSecteurTotal() {
+        counters.bordereauChanged("500001", null, null, DRIVER_7, BordereauStatus.CREATED);
+        counters.itemsChanged(null, null, DRIVER_7, DeliveryItemStatus.PENDING, 3);
+        counters.bordereauChanged("500002", null, null, DRIVER_9, BordereauStatus.CREATED);
+        counters.bordereauChanged("500001", DRIVER_7, BordereauStatus.CREATED, DRIVER_7, BordereauStatus.IN_TRANSIT);
+        counters.itemsChanged(DRIVER_7, DeliveryItemStatus.PENDING, DRIVER_7, DeliveryItemStatus.DELIVERED, 1);
+
+        assertThat(count(DRIVER_7, BordereauStatus.IN_TRANSIT)).isEqualTo(1);
+        assertThat(count(DRIVER_7, BordereauStatus.CREATED)).isZero();
+        assertThat(count(DRIVER_7, DeliveryItemStatus.PENDING)).isEqualTo(2);
+        assertThat(count(DRIVER_7, DeliveryItemStatus.DELIVERED)).isEqualTo(1);
+        assertThat(count(SECTEUR, BordereauStatus.CREATED)).isEqualTo(1);
+        assertThat(count(SECTEUR, BordereauStatus.IN_TRANSIT)).isEqualTo(1);
+        assertThat(count(SECTEUR, DeliveryItemStatus.PENDING)).isEqualTo(2);
+        // Status changes read nothing
+        verifyNoInteractions(deliveryItemRepository);
+    }
+
+    @Test
+    void bordereauMovingToAnotherDriverTakesItsLinesAlong() {
+        counters.bordereauChanged("500001", null, null, DRIVER_7, BordereauStatus.ASSIGNED);
+        counters.itemsChanged(null, null, DRIVER_7, DeliveryItemStatus.PENDING, 3);
+        counters.itemsChanged(DRIVER_7, DeliveryItemStatus.PENDING, DRIVER_7, DeliveryItemStatus.FAILED, 1);
+        when(deliveryItemRepository.countByStatusForBordereau("500001"))
+                .thenReturn(List.of(statusCount(DeliveryItemStatus.PENDING, 2), statusCount(DeliveryItemStatus.FAILED, 1)));
+
+        counters.bordereauChanged("500001", DRIVER_7, BordereauStatus.ASSIGNED, DRIVER_9, BordereauStatus.ASSIGNED);
+
+        assertThat(counters.counts(DRIVER_7)).containsOnly(0);
+        assertThat(count(DRIVER_9, BordereauStatus.ASSIGNED)).isEqualTo(1);
+        assertThat(count(DRIVER_9, DeliveryItemStatus.PENDING)).isEqualTo(2);
+        assertThat(count(DRIVER_9, DeliveryItemStatus.FAILED)).isEqualTo(1);
+        assertThat(counters.counts(SECTEUR)).isEqualTo(counters.counts(DRIVER_9));
+    }
+
+    @Test
+    void deletedBordereauIsCountedOutWithItsLines() {
+        counters.bordereauChanged("500001", null, null, DRIVER_7, BordereauStatus.CREATED);
+        counters.itemsChanged(null, null, DRIVER_7, DeliveryItemStatus.PENDING, 2);
+        when(deliveryItemRepository.countByStatusForBordereau("500001"))
+                .thenReturn(List.of(statusCount(DeliveryItemStatus.PENDING, 2)));
+
+        counters.bordereauChanged("500001", DRIVER_7, BordereauStatus.CREATED, null, null);
+
+        assertThat(counters.counts(DRIVER_7)).containsOnly(0);
+        assertThat(counters.counts(SECTEUR)).containsOnly(0);
+    }
+
+    @Test
+    void keyOfUsesIdsAndSkipsUndatedBordereaux() {
+        Driver driver = new Driver();
+        driver.setId(7L);
+        Bordereau bordereau = new Bordereau();
+        bordereau.setCurrentDriver(driver);
+
+        assertThat(StatusCounters.keyOf(bordereau)).isNull();
+        bordereau.setDeliveryDate(DATE);
+        assertThat(StatusCounters.keyOf(bordereau))
+                .isEqualTo(new StatusCounters.Key(StatusCountRollup.NONE, 7, DATE));
+    }
+
+    @Test
+    void loadAddsFlushedCellsToTheCountsSinceStartupAndFlushesOnlyTheDeltas() {
+        long[] flushed = new long[StatusCountRollup.METRICS];
+        flushed[StatusCountRollup.index(BordereauStatus.COMPLETED)] = 5;
+        when(rollupRepository.findAll()).thenReturn(List.of(new StatusCountRollup(4, 7, DATE, flushed)));
+        lastFlush(LocalDateTime.now().minusDays(1), true);
+        counters.bordereauChanged("500001", null, null, DRIVER_9, BordereauStatus.CREATED);
+
+        counters.load();
+
+        assertThat(count(DRIVER_7, BordereauStatus.COMPLETED)).isEqualTo(5);
+        assertThat(count(SECTEUR, BordereauStatus.COMPLETED)).isEqualTo(5);
+        assertThat(count(SECTEUR, BordereauStatus.CREATED)).isEqualTo(1);
+        // Added to the rows, so the counts another instance flushed are kept
+        assertThat(flushedDeltas()).containsOnlyKeys(DRIVER_9);
+        assertThat(flushedDeltas().get(DRIVER_9)[StatusCountRollup.index(BordereauStatus.CREATED)]).isEqualTo(1);
+        verify(rollupRepository, never()).countFromSource();
+
+        clearInvocations(rollupRepository);
+        counters.flush();
+        assertThat(flushedDeltas()).isEmpty();
+    }
+
+    @Test
+    void emptyRollupIsRecountedFromTheSourceTablesAndReplaced() {
+        long[] counted = new long[StatusCountRollup.METRICS];
+        counted[StatusCountRollup.index(DeliveryItemStatus.DELIVERED)] = 12;
+        List<StatusCountRollup> cells = List.of(new StatusCountRollup(4, 7, DATE, counted));
+        when(rollupRepository.findAll()).thenReturn(List.of());
+        sourceCount("100:100:", cells);
+
+        counters.load();
+
+        assertThat(count(DRIVER_7, DeliveryItemStatus.DELIVERED)).isEqualTo(12);
+        verify(rollupRepository).replaceAll(cells);
+        ArgumentCaptor<StatusCountFlush> flush = ArgumentCaptor.forClass(StatusCountFlush.class);
+        verify(flushRepository, atLeastOnce()).save(flush.capture());
+        assertThat(flush.getAllValues().get(0).getRecountSnapshot()).isEqualTo("100:100:");
+    }
+
+    @Test
+    void recountReplacesTheCells() {
+        when(rollupRepository.findAll()).thenReturn(List.of());
+        sourceCount("100:100:", List.of());
+        counters.load();
+        counters.bordereauChanged("500001", null, null, DRIVER_7, BordereauStatus.CREATED);
+        counters.flush();
+        long[] counted = new long[StatusCountRollup.METRICS];
+        counted[StatusCountRollup.index(BordereauStatus.CREATED)] = 2;
+        sourceCount("101:101:", List.of(new StatusCountRollup(4, 9, DATE, counted)));
+
+        counters.recountAfterCommit();
+
+        assertThat(counters.counts(DRIVER_7)).containsOnly(0);
+        assertThat(count(DRIVER_9, BordereauStatus.CREATED)).isEqualTo(2);
+        assertThat(count(SECTEUR, BordereauStatus.CREATED)).isEqualTo(2);
+    }
+
+    @Test
+    void rollupOfARunThatStoppedWithoutFlushingIsRecounted() {
+        long[] flushed = new long[StatusCountRollup.METRICS];
+        flushed[StatusCountRollup.index(BordereauStatus.CREATED)] = 5;
+        long[] counted = new long[StatusCountRollup.METRICS];
+        counted[StatusCountRollup.index(BordereauStatus.CREATED)] = 6;
+        when(rollupRepository.findAll()).thenReturn(List.of(new StatusCountRollup(4, 7, DATE, flushed)));
+        sourceCount("100:100:", List.of(new StatusCountRollup(4, 7, DATE, counted)));
+        lastFlush(LocalDateTime.now().minusHours(1), false);
+
+        counters.load();
+
+        assertThat(count(DRIVER_7, BordereauStatus.CREATED)).isEqualTo(6);
+        ArgumentCaptor<StatusCountFlush> flush = ArgumentCaptor.forClass(StatusCountFlush.class);
+        verify(flushRepository, atLeastOnce()).save(flush.capture());
+        assertThat(flush.getAllValues()).noneMatch(StatusCountFlush::isClosed);
+    }
+
+    @Test
+    void rollupStillFlushedByAnotherInstanceIsLoaded() {
+        when(rollupRepository.findAll()).thenReturn(List.of(new StatusCountRollup(4, 7, DATE,
+                new long[StatusCountRollup.METRICS])));
+        lastFlush(LocalDateTime.now(), false);
+
+        counters.load();
+
+        verify(rollupRepository, never()).countFromSource();
+    }
+
+    @Test
+    void transitionsAppliedDuringARecountAreReplayedOntoItUnlessItsSnapshotSawThem() {
+        when(rollupRepository.findAll()).thenReturn(List.of());
+        sourceCount("100:100:", List.of());
+        counters.load();
+        long[] counted = new long[StatusCountRollup.METRICS];
+        counted[StatusCountRollup.index(BordereauStatus.CREATED)] = 3;
+        when(rollupRepository.countFromSource()).thenAnswer(invocation -> {
+            // 104 committed before the snapshot, 103 was still running and 107 started after it
+            committed(104, () -> counters.bordereauChanged("500001", null, null, DRIVER_9, BordereauStatus.CREATED));
+            committed(103, () -> counters.bordereauChanged("500002", DRIVER_9, BordereauStatus.CREATED, DRIVER_9,
+                    BordereauStatus.ASSIGNED));
+            committed(107, () -> counters.bordereauChanged("500003", DRIVER_9, BordereauStatus.CREATED, DRIVER_9,
+                    BordereauStatus.ASSIGNED));
+            return new StatusCountRollupRepository.SourceCount("103:106:103",
+                    List.of(new StatusCountRollup(4, 9, DATE, counted)));
+        });
+
+        counters.recountAfterCommit();
+
+        assertThat(count(DRIVER_9, BordereauStatus.CREATED)).isEqualTo(1);
+        assertThat(count(DRIVER_9, BordereauStatus.ASSIGNED)).isEqualTo(2);
+        assertThat(count(SECTEUR, BordereauStatus.ASSIGNED)).isEqualTo(2);
+    }
+
+    @Test
+    void flushSkipsTransitionsTheLastRecountAlreadyCounted() {
+        when(rollupRepository.findAll()).thenReturn(List.of(new StatusCountRollup(4, 7, DATE,
+                new long[StatusCountRollup.METRICS])));
+        lastFlush(LocalDateTime.now(), false);
+        counters.load();
+        committed(99, () -> counters.bordereauChanged("500001", null, null, DRIVER_7, BordereauStatus.CREATED));
+        committed(120, () -> counters.bordereauChanged("500002", null, null, DRIVER_9, BordereauStatus.CREATED));
+        // Another instance recounted in between
+        when(rollupRepository.lockForFlush()).thenReturn("110:110:");
+        clearInvocations(rollupRepository);
+
+        counters.flush();
+
+        assertThat(flushedDeltas()).containsOnlyKeys(DRIVER_9);
+    }
+
+    @Test
+    void shutdownFlushIsMarkedClosed() {
+        when(rollupRepository.findAll()).thenReturn(List.of());
+        sourceCount("100:100:", List.of());
+        counters.load();
+        clearInvocations(flushRepository);
+
+        counters.close();
+
+        ArgumentCaptor<StatusCountFlush> flush = ArgumentCaptor.forClass(StatusCountFlush.class);
+        verify(flushRepository).save(flush.capture());
+        assertThat(flush.getValue().isClosed()).isTrue();
+    }
+
+    @Test
+    void failedFlushKeepsTheTransitionsForTheNextOne() {
+        when(rollupRepository.findAll()).thenReturn(List.of());
+        sourceCount("100:100:", List.of());
+        counters.load();
+        counters.bordereauChanged("500001", null, null, DRIVER_7, BordereauStatus.CREATED);
+        doThrow(new IllegalStateException("connection refused")).when(rollupRepository).addAll(anyList());
+        counters.flush();
+        doNothing().when(rollupRepository).addAll(anyList());
+        clearInvocations(rollupRepository);
+
+        counters.flush();
+
+        assertThat(flushedDeltas()).containsOnlyKeys(DRIVER_7);
+    }
+
+    @Test
+    void failedLoadIsRetriedByTheNextFlush() {
+        long[] flushed = new long[StatusCountRollup.METRICS];
+        flushed[StatusCountRollup.index(BordereauStatus.COMPLETED)] = 5;
+        when(rollupRepository.findAll())
+                .thenThrow(new IllegalStateException("connection refused"))
+                .thenReturn(List.of(new StatusCountRollup(4, 7, DATE, flushed)));
+        lastFlush(LocalDateTime.now().minusDays(1), true);
+
+        counters.load();
+        verify(rollupRepository, never()).addAll(anyList());
+        counters.flush();
+
+        assertThat(count(DRIVER_7, BordereauStatus.COMPLETED)).isEqualTo(5);
+        verify(rollupRepository).addAll(anyList());
+    }
+
+    @Test
+    void snapshotSawTheTransactionsCommittedBeforeIt() {
+        StatusCounters.Snapshot snapshot = StatusCounters.Snapshot.parse("100:105:101,103");
+
+        assertThat(snapshot.saw(99L)).isTrue();
+        assertThat(snapshot.saw(102L)).isTrue();
+        assertThat(snapshot.saw(101L)).isFalse();
+        assertThat(snapshot.saw(105L)).isFalse();
+        assertThat(snapshot.saw(null)).isFalse();
+        assertThat(StatusCounters.Snapshot.parse(null).saw(1L)).isFalse();
+    }
+
+    /**
+     * Runs the changes in a transaction with the given id and commits it
+     */
+    private void committed(long transactionId, Runnable changes) {
+        when(rollupRepository.currentTransactionId()).thenReturn(transactionId);
+        TransactionSynchronizationManager.initSynchronization();
+        TransactionSynchronizationManager.setActualTransactionActive(true);
+        try {
+            changes.run();
+            List<TransactionSynchronization> synchronizations =
+                    TransactionSynchronizationManager.getSynchronizations();
+            synchronizations.forEach(TransactionSynchronization::afterCommit);
+            synchronizations.forEach(synchronization ->
+                    synchronization.afterCompletion(TransactionSynchronization.STATUS_COMMITTED));
+        } finally {
+            TransactionSynchronizationManager.setActualTransactionActive(false);
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    private void sourceCount(String snapshot, List<StatusCountRollup> cells) {
+        when(rollupRepository.countFromSource())
+                .thenReturn(new StatusCountRollupRepository.SourceCount(snapshot, cells));
+    }
+
+    private void lastFlush(LocalDateTime flushedAt, boolean closed) {
+        when(flushRepository.findById(StatusCountFlush.ID))
+                .thenReturn(Optional.of(new StatusCountFlush(flushedAt, closed, null)));
+    }
+
+    private long count(StatusCounters.Key key, BordereauStatus status) {
+        return counters.counts(key)[StatusCountRollup.index(status)];
+    }
+
+    private long count(StatusCounters.Key key, DeliveryItemStatus status) {
+        return counters.counts(key)[StatusCountRollup.index(status)];
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<StatusCounters.Key, long[]> flushedDeltas() {
+        ArgumentCaptor<List<StatusCountRollup>> rollups = ArgumentCaptor.forClass(List.class);
+        verify(rollupRepository, atLeastOnce()).addAll(rollups.capture());
+        return rollups.getValue().stream()
+                .collect(Collectors.toMap(rollup -> new StatusCounters.Key(rollup.getSecteurId(),
+                        rollup.getDriverId(), rollup.getDeliveryDate()), StatusCountRollup::getCounts));
+    }
+
+    private static DeliveryItemRepository.StatusCount statusCount(DeliveryItemStatus status, long count) {
+        return new DeliveryItemRepository.StatusCount() {
+            @Override
+            public DeliveryItemStatus getStatus() {
+                return status;
+            }
+
+            @Override
+            public Long getCount() {
+                return count;
+            }
+        };
+    }
+}
@@ -0,0 +1,52 @@
+package ma.pharmachain.service;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sequencing cost of a driver's day, stops spread over a 15 x 20 km city. Run with
+ * <pre>
+ * mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=ma.pharmachain.service.StopSequencerBenchmark
+ * </pre>
+ */
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class StopSequencerBenchmark {
+
+    @Param({"35", "200"})
+    public int stops;
+
+    private double[] lats;
+    private double[] lngs;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        lats = new double[stops];
+        lngs = new double[stops];
+        for (int i = 0; i < stops; i++) {
+            lats[i] = 33.5 + random.nextDouble() * 0.15;
+            lngs[i] = -7.7 + random.nextDouble() * 0.2;
+        }
+    }
+
+    @Benchmark
+    public int[] sequence() {
+        return StopSequencer.sequence(lats, lngs);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(StopSequencerBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
@@ -0,0 +1,62 @@
+package ma.pharmachain.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class StopSequencerTest {
+
+    @Test
+    void stopsAlongAStreetAreVisitedEndToEnd() {
+        double[] lngs = {-7.55, -7.61, -7.52, -7.58, -7.50, -7.60};
+        double[] lats = new double[lngs.length];
+        Arrays.fill(lats, 33.57);
+
+        int[] order = StopSequencer.sequence(lats, lngs);
+
+        double[] visited = new double[order.length];
+        for (int i = 0; i < order.length; i++) {
+            visited[i] = lngs[order[i]];
+        }
+        assertThat(visited).satisfiesAnyOf(
+                v -> assertThat(v).containsExactly(-7.61, -7.60, -7.58, -7.55, -7.52, -7.50),
+                v -> assertThat(v).containsExactly(-7.50, -7.52, -7.55, -7.58, -7.60, -7.61));
+    }
+
+    @Test
+    void twoOptNeverLengthensTheNearestNeighbourPathAndVisitsEveryStopOnce() {
+        Random random = new Random(3);
+        int n = 200;
+        double[] lats = new double[n];
+        double[] lngs = new double[n];
+        for (int i = 0; i < n; i++) {
+            lats[i] = 33.5 + random.nextDouble() * 0.15;
+            lngs[i] = -7.7 + random.nextDouble() * 0.2;
+        }
+
+        int[] order = StopSequencer.sequence(lats, lngs);
+
+        assertThat(order).hasSize(n);
+        assertThat(Arrays.stream(order).distinct().count()).isEqualTo(n);
+        double[] distances = StopSequencer.distanceMatrix(lats, lngs);
+        int[] greedy = new int[n];
+        StopSequencer.nearestNeighbour(distances, n, order[0], greedy);
+        assertThat(StopSequencer.lengthKm(lats, lngs, order))
+                .isLessThanOrEqualTo(StopSequencer.lengthKm(lats, lngs, greedy));
+        // 2-opt local optimum: reversing any segment again gains nothing
+        int[] copy = order.clone();
+        StopSequencer.twoOpt(distances, n, copy);
+        assertThat(StopSequencer.lengthKm(lats, lngs, copy))
+                .isEqualTo(StopSequencer.lengthKm(lats, lngs, order));
+    }
+
+    @Test
+    void fewStopsAreReturnedAsGiven() {
+        assertThat(StopSequencer.sequence(new double[0], new double[0])).isEmpty();
+        assertThat(StopSequencer.sequence(new double[]{33.5}, new double[]{-7.6})).containsExactly(0);
+        assertThat(StopSequencer.sequence(new double[]{33.5, 33.6}, new double[]{-7.6, -7.5})).containsExactly(0, 1);
+    }
+}
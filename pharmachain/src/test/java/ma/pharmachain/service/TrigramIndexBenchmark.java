@@ -0,0 +1,61 @@
+package ma.pharmachain.service;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Client search latency over 100k pharmacies. Run with
+ * <pre>
+ * mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=ma.pharmachain.service.TrigramIndexBenchmark
+ * </pre>
+ * SampleTime mode reports the p99 of a single search.
+ */
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class TrigramIndexBenchmark {
+
+    private static final String[] NAMES = {"Atlas", "Alami", "Al Amal", "Essaada", "Annour", "Zerktouni",
+            "Bab Doukkala", "Yasmine", "Ibn Sina", "Al Farabi", "Hay Riad", "Agdal", "Maarif", "Oasis", "Anfa"};
+    private static final String[] STREETS = {"Rue Fes", "Avenue Hassan II", "Bd Zerktouni", "Rue de Rome",
+            "Avenue Mohammed V", "Bd Anfa", "Rue Tarik", "Avenue des FAR"};
+
+    @Param({"100000"})
+    public int clients;
+
+    @Param({"pharmacie al", "atlas", "zerktuoni", "4012"})
+    public String query;
+
+    private TrigramIndex<String> index;
+
+    @Setup
+    public void setUp() {
+        index = new TrigramIndex<>(0.5);
+        Random random = new Random(42);
+        for (int i = 0; i < clients; i++) {
+            String code = String.valueOf(400000 + i);
+            index.put(code, "Pharmacie " + NAMES[random.nextInt(NAMES.length)] + " " + random.nextInt(200) + " "
+                    + (1 + random.nextInt(150)) + " " + STREETS[random.nextInt(STREETS.length)] + " " + code, code);
+        }
+    }
+
+    @Benchmark
+    public List<String> search() {
+        return index.search(query, 20);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(TrigramIndexBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
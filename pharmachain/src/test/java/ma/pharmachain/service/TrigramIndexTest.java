@@ -0,0 +1,72 @@
+package ma.pharmachain.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TrigramIndexTest {
+
+    private final TrigramIndex<String> index = new TrigramIndex<>(0.5);
+
+    @Test
+    void findsByPrefixOfTheLastWordAndRanksFullMatchesFirst() {
+        index.put("400001", "Pharmacie Alami 12 Rue Fes 400001", "alami");
+        index.put("400002", "Pharmacie Atlas 3 Avenue Hassan II 400002", "atlas");
+        index.put("400003", "Pharmacie Al Amal Bd Zerktouni 400003", "amal");
+
+        assertThat(index.search("Pharmacie Ala", 10)).first().isEqualTo("alami");
+        assertThat(index.search("atl", 10)).containsExactly("atlas");
+        assertThat(index.search("40000", 10)).hasSize(3);
+        assertThat(index.search("400002", 10)).first().isEqualTo("atlas");
+    }
+
+    @Test
+    void toleratesTyposAccentsAndCase() {
+        index.put("400001", "Pharmacie Atlas", "atlas");
+        index.put("400002", "Pharmacie Essaâda", "essaada");
+
+        assertThat(index.search("atlsa", 10)).containsExactly("atlas");
+        assertThat(index.search("PHARMACIE ESSAADA", 10)).first().isEqualTo("essaada");
+        assertThat(index.search("zzz", 10)).isEmpty();
+        assertThat(index.search("  ", 10)).isEmpty();
+    }
+
+    @Test
+    void replacedAndRemovedDocumentsAreNotReturned() {
+        index.put("400001", "Pharmacie Atlas", "atlas");
+        index.put("400001", "Pharmacie Bab Doukkala", "doukkala");
+
+        assertThat(index.search("atlas", 10)).isEmpty();
+        assertThat(index.search("doukkala", 10)).containsExactly("doukkala");
+
+        index.remove("400001");
+        assertThat(index.search("doukkala", 10)).isEmpty();
+        assertThat(index.size()).isZero();
+    }
+
+    @Test
+    void putAllAbsentKeepsNewerDocuments() {
+        index.put("400001", "Pharmacie Atlas", "renamed");
+
+        index.putAllAbsent(List.of("400001", "400002"), key -> key, key -> "Pharmacie " + key);
+
+        assertThat(index.size()).isEqualTo(2);
+        assertThat(index.search("atlas", 10)).containsExactly("renamed");
+    }
+
+    @Test
+    void compactionKeepsLiveDocumentsSearchable() {
+        for (int i = 0; i < 5000; i++) {
+            index.put("k" + i, "Pharmacie " + i, "p" + i);
+        }
+        for (int i = 0; i < 4000; i++) {
+            index.remove("k" + i);
+        }
+
+        assertThat(index.size()).isEqualTo(1000);
+        assertThat(index.search("pharmacie 4321", 1)).containsExactly("p4321");
+        assertThat(index.search("pharmacie 1234", 5)).doesNotContain("p1234");
+    }
+}
@@ -0,0 +1,363 @@
+package ma.pharmachain.service.impl;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import ma.pharmachain.config.CacheConfig;
+import ma.pharmachain.config.ScanConfig;
+import ma.pharmachain.dto.BordereauDetail;
+import ma.pharmachain.dto.BordereauScanRequest;
+import ma.pharmachain.dto.BordereauScanResult;
+import ma.pharmachain.dto.DeliveryItemDetail;
+import ma.pharmachain.dto.DeliveryItemRequest;
+import ma.pharmachain.entity.Bordereau;
+import ma.pharmachain.entity.Client;
+import ma.pharmachain.entity.DeliveryItem;
+import ma.pharmachain.entity.Driver;
+import ma.pharmachain.entity.Manager;
+import ma.pharmachain.enums.BordereauStatus;
+import ma.pharmachain.enums.DeliveryItemStatus;
+import ma.pharmachain.repository.*;
+import ma.pharmachain.service.AutoCreateService;
+import ma.pharmachain.service.DriverRouteCache;
+import ma.pharmachain.service.KnownNumbersFilter;
+import ma.pharmachain.service.ReferenceCodeCache;
+import ma.pharmachain.service.ScanArchiveService;
+import ma.pharmachain.service.StatusCounters;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.mockito.junit.jupiter.MockitoSettings;
+import org.mockito.quality.Strictness;
+import org.springframework.transaction.CannotCreateTransactionException;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.SQLTransientConnectionException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+@MockitoSettings(strictness = Strictness.LENIENT)
+class BordereauScanServiceImplTest {
+
+    @Mock
+    private BordereauRepository bordereauxRepository;
+    @Mock
+    private DeliveryItemRepository deliveryItemRepository;
+    @Mock
+    private DriverRepository driverRepository;
+    @Mock
+    private ManagerRepository managerRepository;
+    @Mock
+    private ClientRepository clientRepository;
+    @Mock
+    private AutoCreateService autoCreateService;
+    @Mock
+    private TransactionTemplate transactionTemplate;
+    @Mock
+    private KnownNumbersFilter knownNumbersFilter;
+    @Mock
+    private ScanArchiveService scanArchiveService;
+    @Mock
+    private StatusCounters statusCounters;
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private BordereauScanServiceImpl bordereauScanService;
+
+    @BeforeEach
+    void setUp() {
+        Driver driver = new Driver();
+        driver.setId(7L);
+        driver.setCode("100001");
+        Manager manager = new Manager();
+        manager.setId(4L);
+        manager.setCode("200001");
+
+        when(bordereauxRepository.findByBordereauNumber(anyString())).thenReturn(Optional.empty());
+        when(bordereauxRepository.save(any())).thenAnswer(invocation -> invocation.getArgument(0));
+        when(driverRepository.findByCodeIn(anyCollection())).thenReturn(List.of(driver));
+        when(driverRepository.getReferenceById(any())).thenReturn(driver);
+        when(managerRepository.findByCodeIn(anyCollection())).thenReturn(List.of(manager));
+        when(managerRepository.getReferenceById(any())).thenReturn(manager);
+        when(knownNumbersFilter.mightContainBordereau(anyString())).thenReturn(true);
+        when(knownNumbersFilter.mightContainBlNumber(anyString())).thenReturn(true);
+        when(transactionTemplate.execute(any())).thenAnswer(invocation ->
+                invocation.<TransactionCallback<?>>getArgument(0).doInTransaction(null));
+        when(clientRepository.getReferenceById(anyString())).thenAnswer(invocation -> {
+            Client reference = new Client();
+            reference.setClientCode(invocation.getArgument(0));
+            return reference;
+        });
+        bordereauScanService = newService();
+    }
+
+    @Test
+    void scanResolvesAllLinesWithOneQueryPerEntityType() {
+        DeliveryItem existing = new DeliveryItem();
+        existing.setBlNumber("300000");
+        when(deliveryItemRepository.findScanFingerprintsByBlNumberIn(anyCollection()))
+                .thenReturn(List.of(fingerprint("300000", null)));
+        when(deliveryItemRepository.findByBlNumberIn(anyCollection())).thenReturn(List.of(existing));
+
+        bordereauScanService.scanBordereau(scanRequest(40));
+
+        verify(clientRepository, times(1)).findExistingClientCodes(anyCollection());
+        verify(deliveryItemRepository, times(1)).findScanFingerprintsByBlNumberIn(anyCollection());
+        verify(deliveryItemRepository, times(1)).findByBlNumberIn(argThat(blNumbers -> blNumbers.size() == 1));
+        verify(autoCreateService, times(1)).ensureClients(argThat(clients -> clients.size() == 40));
+        verify(deliveryItemRepository, times(1)).batchInsert(argThat(items -> items.size() == 39));
+        verify(clientRepository, never()).findByClientCode(anyString());
+        verify(deliveryItemRepository, never()).findByBlNumber(anyString());
+        verify(deliveryItemRepository, never()).save(any());
+        assertThat(existing.getNombreColis()).isEqualTo(1);
+        assertThat(existing.getScanFingerprint()).isNotNull();
+    }
+
+    @Test
+    void identicalRescanSkipsAllWrites() {
+        BordereauScanRequest request = scanRequest(3);
+        Bordereau stored = new Bordereau();
+        stored.setBordereauNumber("500001");
+        stored.setDeliveryDate(request.getDeliveryDate());
+        stored.setCurrentDriver(driverRepository.getReferenceById(7L));
+        stored.setOriginalDriver(driverRepository.getReferenceById(7L));
+        stored.setSecteur(managerRepository.getReferenceById(4L));
+        stored.refreshScanFingerprint();
+        when(bordereauxRepository.findByBordereauNumber("500001")).thenReturn(Optional.of(stored));
+        when(clientRepository.findExistingClientCodes(anyCollection())).thenReturn(List.of("400000", "400001", "400002"));
+        List<DeliveryItemRepository.ScanFingerprint> fingerprints = new ArrayList<>();
+        for (DeliveryItemRequest item : request.getDeliveryItems()) {
+            fingerprints.add(fingerprint(item.getBlNumber(), DeliveryItem.scanFingerprintOf("500001",
+                    item.getClientCode(), item.getNombreColis(), item.getNombreSachets())));
+        }
+        when(deliveryItemRepository.findScanFingerprintsByBlNumberIn(anyCollection())).thenReturn(fingerprints);
+
+        assertThat(bordereauScanService.scanBordereau(request)).isSameAs(stored);
+        request.getDeliveryItems().get(1).setNombreColis(5);
+        bordereauScanService.scanBordereau(request);
+
+        assertThat(meterRegistry.counter("pharmachain.scan.bordereaux", "outcome", "unchanged").count()).isEqualTo(1);
+        assertThat(meterRegistry.counter("pharmachain.scan.bordereaux", "outcome", "changed").count()).isEqualTo(1);
+        // Only the edited line is loaded on the second scan
+        verify(bordereauxRepository, times(1)).save(any());
+        verify(deliveryItemRepository, times(1)).findByBlNumberIn(argThat(blNumbers ->
+                blNumbers.size() == 1 && blNumbers.contains("300001")));
+    }
+
+    @Test
+    void fullScanResponseIsMappedWithCodesAndLines() {
+        DeliveryItem line = new DeliveryItem();
+        line.setBlNumber("300000");
+        when(deliveryItemRepository.findByBordereau_BordereauNumber("500001")).thenReturn(List.of(line));
+
+        BordereauDetail detail = bordereauScanService.scanBordereauDetail(scanRequest(1));
+
+        assertThat(detail.getBordereauNumber()).isEqualTo("500001");
+        assertThat(detail.getCurrentDriverCode()).isEqualTo("100001");
+        assertThat(detail.getSecteurCode()).isEqualTo("200001");
+        assertThat(detail.getDeliveryItems()).extracting(DeliveryItemDetail::getBlNumber).containsExactly("300000");
+    }
+
+    @Test
+    void batchScanSharesLookupsAndIsolatesFailures() {
+        BordereauScanRequest first = scanRequest(3);
+        BordereauScanRequest bad = scanRequest(2);
+        bad.setBordereauNumber(null);
+        BordereauScanRequest last = scanRequest(5);
+        last.setBordereauNumber("500002");
+
+        List<BordereauScanResult> results = bordereauScanService.scanBordereaux(List.of(first, bad, last));
+
+        assertThat(results).extracting(BordereauScanResult::isSuccess).containsExactly(true, false, true);
+        assertThat(results.get(2).getItemCount()).isEqualTo(5);
+        verify(driverRepository, times(1)).findByCodeIn(anyCollection());
+        verify(managerRepository, times(1)).findByCodeIn(anyCollection());
+        verify(clientRepository, times(1)).findExistingClientCodes(anyCollection());
+        verify(autoCreateService, never()).ensureDriver(anyString());
+    }
+
+    @Test
+    void databaseFailuresAreRetryableAndRejectionsAreNot() {
+        BordereauScanRequest bad = scanRequest(1);
+        bad.setBordereauNumber(null);
+        BordereauScanRequest unreachable = scanRequest(1);
+        unreachable.setBordereauNumber("500002");
+        when(bordereauxRepository.save(argThat(b -> b != null && "500002".equals(b.getBordereauNumber()))))
+                .thenThrow(new CannotCreateTransactionException("Could not open JPA EntityManager",
+                        new SQLTransientConnectionException("Connection is not available, request timed out")));
+
+        List<BordereauScanResult> results = bordereauScanService.scanBordereaux(List.of(bad, unreachable));
+
+        assertThat(results).extracting(BordereauScanResult::isSuccess).containsExactly(false, false);
+        assertThat(results).extracting(BordereauScanResult::isRetryable).containsExactly(false, true);
+    }
+
+    @Test
+    void batchScanRunsSecteursInParallelAndKeepsInputOrder() {
+        List<BordereauScanRequest> requests = new ArrayList<>();
+        for (int i = 0; i < 12; i++) {
+            BordereauScanRequest request = scanRequest(1);
+            request.setBordereauNumber(String.valueOf(500000 + i % 8));
+            request.setManagerCode(String.valueOf(200000 + i % 3));
+            request.getDeliveryItems().get(0).setNombreColis(i);
+            requests.add(request);
+        }
+
+        List<BordereauScanResult> results = bordereauScanService.scanBordereaux(requests);
+
+        assertThat(results).extracting(BordereauScanResult::getBordereauNumber)
+                .containsExactlyElementsOf(requests.stream().map(BordereauScanRequest::getBordereauNumber).toList());
+        assertThat(results).allMatch(BordereauScanResult::isSuccess);
+        // Re-scans of a bordereau stay on one partition, applied in input order
+        verify(bordereauxRepository, times(12)).save(any());
+        verify(driverRepository, times(1)).findByCodeIn(anyCollection());
+    }
+
+    @Test
+    void appliedScansAreArchivedButReplaysAreNot() {
+        BordereauScanRequest bad = scanRequest(1);
+        bad.setBordereauNumber(null);
+
+        bordereauScanService.scanBordereaux(List.of(scanRequest(2), bad));
+        verify(scanArchiveService, times(1)).record(any());
+
+        clearInvocations(scanArchiveService);
+        List<BordereauScanResult> replayed = bordereauScanService.replayScans(List.of(scanRequest(2)), 4);
+        assertThat(replayed).allMatch(BordereauScanResult::isSuccess);
+        verify(scanArchiveService, never()).record(any());
+    }
+
+    @Test
+    void repeatedScansResolveKnownCodesFromCache() {
+        when(clientRepository.findExistingClientCodes(anyCollection())).thenReturn(List.of("400000"));
+
+        bordereauScanService.scanBordereau(scanRequest(1));
+        bordereauScanService.scanBordereau(scanRequest(1));
+
+        verify(driverRepository, times(1)).findByCodeIn(anyCollection());
+        verify(managerRepository, times(1)).findByCodeIn(anyCollection());
+        verify(clientRepository, times(1)).findExistingClientCodes(anyCollection());
+    }
+
+    @Test
+    void numbersKnownToBeNewSkipTheLookups() {
+        when(knownNumbersFilter.mightContainBordereau(anyString())).thenReturn(false);
+        when(knownNumbersFilter.mightContainBlNumber(anyString())).thenReturn(false);
+
+        bordereauScanService.scanBordereau(scanRequest(10));
+
+        verify(bordereauxRepository, never()).findByBordereauNumber(anyString());
+        verify(deliveryItemRepository, never()).findScanFingerprintsByBlNumberIn(anyCollection());
+        verify(deliveryItemRepository, times(1)).batchInsert(argThat(items -> items.size() == 10));
+        verify(knownNumbersFilter).addBordereau("500001");
+        verify(knownNumbersFilter, times(10)).addBlNumber(anyString());
+    }
+
+    @Test
+    void scanAckListsAutoCreatedCodes() {
+        when(driverRepository.findByCodeIn(anyCollection())).thenReturn(List.of());
+        when(autoCreateService.ensureDriver("100001")).thenReturn(7L);
+        when(clientRepository.findExistingClientCodes(anyCollection())).thenReturn(List.of("400000"));
+
+        BordereauScanResult ack = bordereauScanService.scanBordereauAck(scanRequest(2));
+
+        assertThat(ack.getBordereauNumber()).isEqualTo("500001");
+        assertThat(ack.getStatus()).isEqualTo(BordereauStatus.CREATED);
+        assertThat(ack.getItemCount()).isEqualTo(2);
+        assertThat(ack.getCreated().isBordereau()).isTrue();
+        assertThat(ack.getCreated().getDrivers()).containsExactly("100001");
+        assertThat(ack.getCreated().getManagers()).isEmpty();
+        assertThat(ack.getCreated().getClients()).containsExactly("400001");
+        assertThat(ack.getCreated().getDeliveryItems()).containsExactlyInAnyOrder("300000", "300001");
+    }
+
+    @Test
+    void scanCountsNewBordereauWithItsPendingLines() {
+        bordereauScanService.scanBordereau(scanRequest(3));
+
+        StatusCounters.Key key = new StatusCounters.Key(4L, 7L, LocalDate.of(2024, 8, 22));
+        verify(statusCounters).bordereauChanged("500001", null, BordereauStatus.CREATED, key, BordereauStatus.CREATED);
+        verify(statusCounters).itemsChanged(null, null, key, DeliveryItemStatus.PENDING, 3);
+    }
+
+    @Test
+    void rescanOnAnotherDriverMovesTheBordereauCounts() {
+        Driver previousDriver = new Driver();
+        previousDriver.setId(9L);
+        Bordereau stored = new Bordereau();
+        stored.setBordereauNumber("500001");
+        stored.setDeliveryDate(LocalDate.of(2024, 8, 22));
+        stored.setCurrentDriver(previousDriver);
+        stored.setStatus(BordereauStatus.IN_TRANSIT);
+        when(bordereauxRepository.findByBordereauNumber("500001")).thenReturn(Optional.of(stored));
+
+        bordereauScanService.scanBordereau(scanRequest(0));
+
+        verify(statusCounters).bordereauChanged("500001",
+                new StatusCounters.Key(0L, 9L, LocalDate.of(2024, 8, 22)), BordereauStatus.IN_TRANSIT,
+                new StatusCounters.Key(4L, 7L, LocalDate.of(2024, 8, 22)), BordereauStatus.IN_TRANSIT);
+    }
+
+    @Test
+    void linesInsertedConcurrentlyAreTakenOverAndRecounted() {
+        when(deliveryItemRepository.batchInsert(anyList())).thenReturn(List.of("300001"));
+
+        BordereauScanResult ack = bordereauScanService.scanBordereauAck(scanRequest(3));
+
+        assertThat(ack.isSuccess()).isTrue();
+        assertThat(ack.getCreated().getDeliveryItems()).containsExactlyInAnyOrder("300000", "300002");
+        verify(statusCounters).recountAfterCommit();
+        verify(knownNumbersFilter, never()).addBlNumber("300001");
+    }
+
+    private BordereauScanServiceImpl newService() {
+        ReferenceCodeCache referenceCodeCache = new ReferenceCodeCache(driverRepository, managerRepository,
+                clientRepository, new CacheConfig(), meterRegistry);
+        return new BordereauScanServiceImpl(bordereauxRepository, deliveryItemRepository, driverRepository,
+                managerRepository, clientRepository, autoCreateService, referenceCodeCache, knownNumbersFilter,
+                scanArchiveService, transactionTemplate, meterRegistry, new ScanConfig(), mock(DriverRouteCache.class),
+                statusCounters);
+    }
+
+    private static DeliveryItemRepository.ScanFingerprint fingerprint(String blNumber, Long value) {
+        return new DeliveryItemRepository.ScanFingerprint() {
+            @Override
+            public String getBlNumber() {
+                return blNumber;
+            }
+
+            @Override
+            public Long getScanFingerprint() {
+                return value;
+            }
+        };
+    }
+
+    private BordereauScanRequest scanRequest(int itemCount) {
+        List<DeliveryItemRequest> items = new ArrayList<>();
+        for (int i = 0; i < itemCount; i++) {
+            DeliveryItemRequest item = new DeliveryItemRequest();
+            item.setBlNumber(String.valueOf(300000 + i));
+            item.setClientCode(String.valueOf(400000 + i));
+            item.setClientName("Pharmacie " + i);
+            item.setNombreColis(1);
+            item.setNombreSachets(2);
+            items.add(item);
+        }
+
+        BordereauScanRequest request = new BordereauScanRequest();
+        request.setBordereauNumber("500001");
+        request.setDeliveryDate(LocalDate.of(2024, 8, 22));
+        request.setDriverCode("100001");
+        request.setManagerCode("200001");
+        request.setDeliveryItems(items);
+        return request;
+    }
+}
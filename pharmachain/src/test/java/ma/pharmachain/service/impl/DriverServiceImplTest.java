@@ -0,0 +1,180 @@
+package ma.pharmachain.service.impl;
+
+import ma.pharmachain.dto.BordereauDetail;
+import ma.pharmachain.dto.DeliveryItemDetail;
+import ma.pharmachain.dto.DriverDaySheet;
+import ma.pharmachain.dto.DriverRoute;
+import ma.pharmachain.dto.DriverSummary;
+import ma.pharmachain.dto.RouteStop;
+import ma.pharmachain.dto.VersionStamp;
+import ma.pharmachain.entity.Bordereau;
+import ma.pharmachain.entity.Client;
+import ma.pharmachain.entity.DeliveryItem;
+import ma.pharmachain.entity.Driver;
+import ma.pharmachain.entity.Manager;
+import ma.pharmachain.enums.DeliveryItemStatus;
+import ma.pharmachain.exception.ResourceNotFoundException;
+import ma.pharmachain.repository.BordereauRepository;
+import ma.pharmachain.repository.DeliveryItemRepository;
+import ma.pharmachain.repository.DriverRepository;
+import ma.pharmachain.service.DriverRouteCache;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.within;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class DriverServiceImplTest {
+
+    @Mock
+    private DriverRepository driverRepository;
+    @Mock
+    private BordereauRepository bordereauxRepository;
+    @Mock
+    private DeliveryItemRepository deliveryItemRepository;
+    @Mock
+    private DriverRouteCache driverRouteCache;
+    @InjectMocks
+    private DriverServiceImpl driverService;
+
+    @Test
+    void bordereauDetailsCarryTheirItemsAndCodes() {
+        List<Bordereau> bordereaux = bordereaux(2);
+        when(bordereauxRepository.findByCurrentDriver_Code("100001")).thenReturn(bordereaux);
+        when(deliveryItemRepository.findByBordereauIn(bordereaux)).thenReturn(items(bordereaux, 2));
+
+        List<BordereauDetail> details = driverService.getDriverBordereaux("100001");
+
+        assertThat(details).extracting(BordereauDetail::getBordereauNumber).containsExactly("500000", "500001");
+        assertThat(details.get(0).getCurrentDriverCode()).isEqualTo("100001");
+        assertThat(details.get(0).getSecteurCode()).isEqualTo("200001");
+        assertThat(details.get(1).getDeliveryItems())
+                .extracting(DeliveryItemDetail::getBlNumber).containsExactly("300100", "300101");
+        assertThat(details.get(1).getDeliveryItems().get(0).getClient().getSecteurCode()).isEqualTo("200001");
+    }
+
+    @Test
+    void daySheetCarriesTheDriverAndItsBordereauxWithItems() {
+        LocalDate date = LocalDate.of(2024, 8, 22);
+        List<Bordereau> bordereaux = bordereaux(3);
+        DriverSummary driver = new DriverSummary(7L, "100001", "driver", null, null, true, "200001");
+        when(driverRepository.findSummaryByCode("100001")).thenReturn(Optional.of(driver));
+        when(bordereauxRepository.findByCurrentDriver_CodeAndDeliveryDateOrderByBordereauNumber("100001", date))
+                .thenReturn(bordereaux);
+        when(deliveryItemRepository.findByBordereauIn(bordereaux)).thenReturn(items(bordereaux, 15));
+
+        DriverDaySheet daySheet = driverService.getDriverDaySheet("100001", date);
+
+        assertThat(daySheet.getDriver()).isSameAs(driver);
+        assertThat(daySheet.getBordereaux()).hasSize(3)
+                .allSatisfy(bordereau -> assertThat(bordereau.getDeliveryItems()).hasSize(15));
+    }
+
+    @Test
+    void daySheetEtagComesFromTheVersionStampAlone() {
+        LocalDate date = LocalDate.of(2024, 8, 22);
+        when(bordereauxRepository.findDaySheetVersionStamp("100001", date))
+                .thenReturn(Optional.of(new VersionStamp(3L, "5e0f1a")));
+
+        assertThat(driverService.getDriverDaySheetEtag("100001", date)).isEqualTo("\"3.5e0f1a\"");
+        assertThatThrownBy(() -> driverService.getDriverDaySheetEtag("199999", date))
+                .isInstanceOf(ResourceNotFoundException.class);
+        verifyNoInteractions(driverRepository, deliveryItemRepository);
+    }
+
+    @Test
+    void routeHasOneStopPerClientInVisitingOrderAndSetsUnlocatedLinesApart() {
+        LocalDate date = LocalDate.of(2024, 8, 22);
+        List<DeliveryItem> items = items(bordereaux(2), 4);
+        // On one parallel: 400000 west, 400002 in the middle, 400001 east, 400003 without coordinates
+        for (DeliveryItem item : items) {
+            switch (item.getClient().getClientCode()) {
+                case "400000" -> item.getClient().setCoordinates("33.5,-7.6");
+                case "400001" -> item.getClient().setCoordinates("33.5,-7.4");
+                case "400002" -> item.getClient().setCoordinates("33.5,-7.5");
+                default -> item.getClient().setCoordinates(null);
+            }
+        }
+        when(driverRouteCache.generation()).thenReturn(4L);
+        when(deliveryItemRepository.findByBordereau_CurrentDriver_CodeAndBordereau_DeliveryDateAndStatus(
+                "100001", date, DeliveryItemStatus.PENDING)).thenReturn(items);
+
+        DriverRoute route = driverService.getDriverRoute("100001", date);
+
+        assertThat(route.getStops()).extracting(stop -> stop.getClient().getClientCode())
+                .containsExactly("400000", "400002", "400001");
+        assertThat(route.getStops()).extracting(RouteStop::getSequence).containsExactly(1, 2, 3);
+        assertThat(route.getStops()).allSatisfy(stop -> assertThat(stop.getDeliveryItems()).hasSize(2));
+        assertThat(route.getStops().get(0).getLegKm()).isZero();
+        assertThat(route.getTotalKm()).isCloseTo(18.5, within(0.2));
+        assertThat(route.getUnlocatedItems()).extracting(DeliveryItemDetail::getBlNumber)
+                .containsExactly("300003", "300103");
+        verify(driverRouteCache).put(route, 4L);
+    }
+
+    @Test
+    void cachedRouteIsReturnedWithoutQueries() {
+        LocalDate date = LocalDate.of(2024, 8, 22);
+        DriverRoute cached = new DriverRoute(date, "100001", 0, List.of(), List.of());
+        when(driverRouteCache.get("100001", date)).thenReturn(cached);
+
+        assertThat(driverService.getDriverRoute("100001", date)).isSameAs(cached);
+        verifyNoInteractions(deliveryItemRepository, driverRepository, bordereauxRepository);
+    }
+
+    @Test
+    void emptyListIsNotFoundOnlyForUnknownDriver() {
+        when(driverRepository.existsByCode("100001")).thenReturn(true);
+
+        assertThat(driverService.getDriverBordereaux("100001")).isEmpty();
+        verify(deliveryItemRepository, never()).findByBordereauIn(anyCollection());
+        assertThatThrownBy(() -> driverService.getDriverBordereaux("199999"))
+                .isInstanceOf(ResourceNotFoundException.class);
+    }
+
+    static List<Bordereau> bordereaux(int count) {
+        Driver driver = new Driver();
+        driver.setCode("100001");
+        Manager manager = new Manager();
+        manager.setCode("200001");
+        List<Bordereau> bordereaux = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            Bordereau bordereau = new Bordereau();
+            bordereau.setBordereauNumber(String.valueOf(500000 + i));
+            bordereau.setCurrentDriver(driver);
+            bordereau.setOriginalDriver(driver);
+            bordereau.setSecteur(manager);
+            bordereaux.add(bordereau);
+        }
+        return bordereaux;
+    }
+
+    static List<DeliveryItem> items(List<Bordereau> bordereaux, int perBordereau) {
+        List<DeliveryItem> items = new ArrayList<>();
+        for (int b = 0; b < bordereaux.size(); b++) {
+            for (int i = 0; i < perBordereau; i++) {
+                Client client = new Client();
+                client.setClientCode(String.valueOf(400000 + i));
+                client.setSecteur(bordereaux.get(b).getSecteur());
+                DeliveryItem item = new DeliveryItem();
+                item.setBlNumber(String.valueOf(300000 + b * 100 + i));
+                item.setBordereau(bordereaux.get(b));
+                item.setClient(client);
+                items.add(item);
+            }
+        }
+        return items;
+    }
+}
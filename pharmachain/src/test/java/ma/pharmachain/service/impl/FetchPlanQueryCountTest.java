@@ -0,0 +1,184 @@
+package ma.pharmachain.service.impl;
+
+import ma.pharmachain.PostgresIntegrationTest;
+import ma.pharmachain.dto.BordereauDetail;
+import ma.pharmachain.dto.DeliveryItemDetail;
+import ma.pharmachain.dto.DriverDaySheet;
+import ma.pharmachain.entity.Bordereau;
+import ma.pharmachain.entity.Client;
+import ma.pharmachain.entity.DeliveryItem;
+import ma.pharmachain.entity.Driver;
+import ma.pharmachain.entity.Manager;
+import ma.pharmachain.enums.BordereauStatus;
+import ma.pharmachain.enums.DeliveryItemStatus;
+import ma.pharmachain.repository.TableStatisticsRepository;
+import ma.pharmachain.service.DriverRouteCache;
+import ma.pharmachain.service.DriverService;
+import ma.pharmachain.service.KeycloakAdminService;
+import ma.pharmachain.service.ManagerService;
+import ma.pharmachain.service.ReferenceCodeCache;
+import ma.pharmachain.service.StatusCounters;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Supplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Statements the list endpoints of drivers and managers prepare, lazy loads included, on PostgreSQL. Each runs
+ * against a small world (1 driver, 1 bordereau, 1 line) and a larger one (4 drivers with 5 bordereaux of 8 lines
+ * each): the counts must be the same.
+ */
+@DataJpaTest
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Import({DriverServiceImpl.class, ManagerServiceImpl.class})
+class FetchPlanQueryCountTest extends PostgresIntegrationTest {
+
+    private static final LocalDate DELIVERY_DATE = LocalDate.of(2024, 8, 22);
+
+    @MockitoBean
+    private TableStatisticsRepository tableStatisticsRepository;
+    @MockitoBean
+    private ReferenceCodeCache referenceCodeCache;
+    @MockitoBean
+    private KeycloakAdminService keycloakAdminService;
+    @MockitoBean
+    private DriverRouteCache driverRouteCache;
+    @MockitoBean
+    private StatusCounters statusCounters;
+
+    @Autowired
+    private TestEntityManager entityManager;
+    @Autowired
+    private DriverService driverService;
+    @Autowired
+    private ManagerService managerService;
+    private Statistics statistics;
+
+    @BeforeEach
+    void setUp() {
+        statistics = entityManager.getEntityManager().getEntityManagerFactory().unwrap(SessionFactory.class)
+                .getStatistics();
+        seed(1, 1, 1, 1);
+        seed(2, 4, 5, 8);
+        entityManager.flush();
+    }
+
+    @Test
+    void driverBordereauxTakeTwoQueries() {
+        assertThat(queries(() -> driverService.getDriverBordereaux("171000"))).isEqualTo(2);
+        assertThat(queries(() -> driverService.getDriverBordereaux("172000"))).isEqualTo(2);
+
+        List<BordereauDetail> details = driverService.getDriverBordereaux("172000");
+        assertThat(details).hasSize(5).allSatisfy(detail -> assertThat(detail.getDeliveryItems()).hasSize(8));
+    }
+
+    @Test
+    void driverDeliveryItemsTakeOneQuery() {
+        assertThat(queries(() -> driverService.getDriverDeliveryItems("171000"))).isEqualTo(1);
+        assertThat(queries(() -> driverService.getDriverDeliveryItems("172000"))).isEqualTo(1);
+
+        assertThat(driverService.getDriverDeliveryItems("172000")).hasSize(40)
+                .extracting(DeliveryItemDetail::getClient).doesNotContainNull();
+    }
+
+    @Test
+    void daySheetTakesThreeQueries() {
+        assertThat(queries(() -> driverService.getDriverDaySheet("171000", DELIVERY_DATE))).isEqualTo(3);
+        assertThat(queries(() -> driverService.getDriverDaySheet("172000", DELIVERY_DATE))).isEqualTo(3);
+
+        DriverDaySheet daySheet = driverService.getDriverDaySheet("172000", DELIVERY_DATE);
+        assertThat(daySheet.getDriver().getAssignedManagerCode()).isEqualTo("272000");
+        assertThat(daySheet.getBordereaux()).hasSize(5);
+    }
+
+    @Test
+    void managerBordereauxTakeTwoQueries() {
+        assertThat(queries(() -> managerService.getManagerBordereaux("271000"))).isEqualTo(2);
+        assertThat(queries(() -> managerService.getManagerBordereaux("272000"))).isEqualTo(2);
+
+        assertThat(managerService.getManagerBordereaux("272000")).hasSize(20);
+    }
+
+    @Test
+    void managerDriversAndClientsTakeOneQueryEach() {
+        assertThat(queries(() -> managerService.getManagerDrivers("271000"))).isEqualTo(1);
+        assertThat(queries(() -> managerService.getManagerDrivers("272000"))).isEqualTo(1);
+        assertThat(queries(() -> managerService.getManagerClients("271000"))).isEqualTo(1);
+        assertThat(queries(() -> managerService.getManagerClients("272000"))).isEqualTo(1);
+
+        assertThat(managerService.getManagerClients("272000")).hasSize(8);
+    }
+
+    /**
+     * Statements prepared by the call, starting from an empty persistence context
+     */
+    private long queries(Supplier<?> call) {
+        entityManager.clear();
+        statistics.clear();
+        call.get();
+        return statistics.getPrepareStatementCount();
+    }
+
+    /**
+     * Manager 27w000 with drivers 17w00d, each with its bordereaux of the delivery date; line i of every
+     * bordereau goes to the manager's client 47w00i
+     */
+    private void seed(int world, int drivers, int bordereauxPerDriver, int linesPerBordereau) {
+        Manager manager = new Manager();
+        manager.setKeycloakUserId("fetch-plan-manager-" + world);
+        manager.setCode("27" + world + "000");
+        entityManager.persist(manager);
+
+        List<Client> clients = new ArrayList<>();
+        for (int i = 0; i < linesPerBordereau; i++) {
+            Client client = new Client();
+            client.setClientCode(String.format("47%d%03d", world, i));
+            client.setName("Pharmacie " + i);
+            client.setSecteur(manager);
+            clients.add(entityManager.persist(client));
+        }
+
+        for (int d = 0; d < drivers; d++) {
+            Driver driver = new Driver();
+            driver.setKeycloakUserId("fetch-plan-driver-" + world + "-" + d);
+            driver.setCode(String.format("17%d%03d", world, d));
+            driver.setAssignedManager(manager);
+            entityManager.persist(driver);
+
+            for (int b = 0; b < bordereauxPerDriver; b++) {
+                Bordereau bordereau = new Bordereau();
+                bordereau.setBordereauNumber(String.format("57%d%d%02d", world, d, b));
+                bordereau.setDeliveryDate(DELIVERY_DATE);
+                bordereau.setCurrentDriver(driver);
+                bordereau.setOriginalDriver(driver);
+                bordereau.setSecteur(manager);
+                bordereau.setStatus(BordereauStatus.CREATED);
+                entityManager.persist(bordereau);
+
+                for (int i = 0; i < linesPerBordereau; i++) {
+                    DeliveryItem item = new DeliveryItem();
+                    item.setBlNumber(String.format("37%d%d%02d%02d", world, d, b, i));
+                    item.setBordereau(bordereau);
+                    item.setClient(clients.get(i));
+                    item.setNombreColis(1);
+                    item.setNombreSachets(0);
+                    item.setStatus(DeliveryItemStatus.PENDING);
+                    entityManager.persist(item);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package ma.pharmachain.service.impl;
+
+import ma.pharmachain.dto.DriverSummary;
+import ma.pharmachain.dto.VersionStamp;
+import ma.pharmachain.entity.Bordereau;
+import ma.pharmachain.entity.Driver;
+import ma.pharmachain.entity.Manager;
+import ma.pharmachain.exception.ResourceNotFoundException;
+import ma.pharmachain.repository.*;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class ManagerServiceImplTest {
+
+    @Mock
+    private ManagerRepository managerRepository;
+    @Mock
+    private DriverRepository driverRepository;
+    @Mock
+    private ClientRepository clientRepository;
+    @Mock
+    private BordereauRepository bordereauxRepository;
+    @Mock
+    private DeliveryItemRepository deliveryItemRepository;
+    @InjectMocks
+    private ManagerServiceImpl managerService;
+
+    @Test
+    void bordereauxEtagComesFromTheVersionStampAlone() {
+        when(bordereauxRepository.findVersionStampBySecteurCode("200001"))
+                .thenReturn(new VersionStamp(25L, "9b1d0c"), new VersionStamp(25L, "41e7aa"));
+
+        String before = managerService.getManagerBordereauxEtag("200001");
+        String after = managerService.getManagerBordereauxEtag("200001");
+
+        assertThat(before).isEqualTo("\"25.9b1d0c\"");
+        assertThat(after).isNotEqualTo(before);
+        verify(bordereauxRepository, times(2)).findVersionStampBySecteurCode("200001");
+        verifyNoMoreInteractions(managerRepository, bordereauxRepository, deliveryItemRepository);
+    }
+
+    @Test
+    void emptyStampIsNotFoundOnlyForUnknownManager() {
+        when(bordereauxRepository.findVersionStampBySecteurCode(anyString())).thenReturn(new VersionStamp(0L, "d41d8cd98f00b204e9800998ecf8427e"));
+        when(managerRepository.existsByCode("200001")).thenReturn(true);
+
+        assertThat(managerService.getManagerBordereauxEtag("200001")).isEqualTo("\"0.d41d8cd98f00b204e9800998ecf8427e\"");
+        assertThatThrownBy(() -> managerService.getManagerBordereauxEtag("299999"))
+                .isInstanceOf(ResourceNotFoundException.class);
+    }
+
+    @Test
+    void driversCarryTheirManagerCode() {
+        Manager manager = new Manager();
+        manager.setCode("200001");
+        Driver driver = new Driver();
+        driver.setCode("100001");
+        driver.setAssignedManager(manager);
+        when(driverRepository.findByAssignedManager_Code("200001")).thenReturn(List.of(driver));
+
+        assertThat(managerService.getManagerDrivers("200001"))
+                .extracting(DriverSummary::getAssignedManagerCode).containsExactly("200001");
+    }
+}